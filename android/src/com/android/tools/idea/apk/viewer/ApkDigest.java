@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.apk.viewer;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Identifies the contents of an APK without reading them.
+ * <p>
+ * The digest is computed from the zip central directory only: the name, CRC32, sizes and compression method of every entry.
+ * Two APKs with the same digest have the same entries with the same contents, so results computed from the contents of an
+ * APK can be cached by its digest, even across copies of the file.
+ */
+public final class ApkDigest {
+  private ApkDigest() {
+  }
+
+  @NotNull
+  public static String compute(@NotNull Path apk) throws IOException {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    try (ZipFile zipFile = new ZipFile(apk.toFile())) {
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        hasher.putString(entry.getName(), Charsets.UTF_8)
+          .putLong(entry.getCrc())
+          .putLong(entry.getSize())
+          .putLong(entry.getCompressedSize())
+          .putInt(entry.getMethod());
+      }
+    }
+    return hasher.hash().toString();
+  }
+}
@@ -22,6 +22,7 @@ import com.android.tools.apk.analyzer.Archives;
 import com.android.tools.apk.analyzer.BinaryXmlParser;
 import com.android.tools.apk.analyzer.internal.ArchiveTreeNode;
 import com.android.tools.idea.apk.viewer.arsc.ArscViewer;
+import com.android.tools.idea.apk.viewer.dex.DexFileCache;
 import com.android.tools.idea.apk.viewer.dex.DexFileViewer;
 import com.android.tools.idea.apk.viewer.diff.ApkDiffPanel;
 import com.android.tools.idea.editors.NinePatchEditorProvider;
@@ -67,6 +68,7 @@ public class ApkEditor extends UserDataHolderBase implements FileEditor, ApkView
   private final VirtualFile myRoot;
   private ApkViewPanel myApkViewPanel;
   private Archive myArchive;
+  private final DexFileCache myDexFileCache = new DexFileCache();
 
   private JBSplitter mySplitter;
   private ApkFileEditorComponent myCurrentEditor;
@@ -113,7 +115,7 @@ public class ApkEditor extends UserDataHolderBase implements FileEditor, ApkView
       Path copyOfApk = Files.createTempFile(apkVirtualFile.getNameWithoutExtension(), "." + apkVirtualFile.getExtension());
       Files.copy(VfsUtilCore.virtualToIoFile(apkVirtualFile).toPath(), copyOfApk, StandardCopyOption.REPLACE_EXISTING);
       myArchive = Archives.open(copyOfApk);
-      myApkViewPanel = new ApkViewPanel(new ApkParser(myArchive, ApkSizeCalculator.getDefault()));
+      myApkViewPanel = new ApkViewPanel(new ApkParser(myArchive, new CachingApkSizeCalculator(ApkSizeCalculator.getDefault())));
       myApkViewPanel.setListener(this);
       mySplitter.setFirstComponent(myApkViewPanel.getContainer());
       selectionChanged(null);
@@ -246,6 +248,8 @@ public class ApkEditor extends UserDataHolderBase implements FileEditor, ApkView
         Logger.getInstance(ApkEditor.class).warn(e);
       }
       myArchive = null;
+      // the parsed dex files belong to the archive that was just closed
+      myDexFileCache.clear();
     }
   }
 
@@ -270,7 +274,7 @@ public class ApkEditor extends UserDataHolderBase implements FileEditor, ApkView
       for (int i = 0; i < nodes.length; i++) {
         paths[i] = nodes[i].getData().getPath();
       }
-      return new DexFileViewer(myProject, paths, myBaseFile.getParent());
+      return new DexFileViewer(myProject, paths, myBaseFile.getParent(), myDexFileCache);
     }
 
     //only one file or many files with different extensions are selected
@@ -291,7 +295,7 @@ public class ApkEditor extends UserDataHolderBase implements FileEditor, ApkView
     }
 
     if (p.toString().endsWith(SdkConstants.EXT_DEX)) {
-      return new DexFileViewer(myProject, new Path[]{p}, myBaseFile.getParent());
+      return new DexFileViewer(myProject, new Path[]{p}, myBaseFile.getParent(), myDexFileCache);
     }
 
     VirtualFile file = createVirtualFile(n.getData().getArchive(), p);
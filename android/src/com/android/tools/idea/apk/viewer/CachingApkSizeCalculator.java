@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.apk.viewer;
+
+import com.android.annotations.VisibleForTesting;
+import com.android.tools.apk.analyzer.ApkSizeCalculator;
+import com.android.tools.idea.util.LruFileStore;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An {@link ApkSizeCalculator} which remembers the download sizes estimated by another calculator.
+ * <p>
+ * Estimating the download size of an APK and of its entries recompresses all of them, which takes a while for large APKs, and
+ * happens every time an APK is opened. The estimates are kept in memory and stored in an index file next to the other caches,
+ * both keyed by the {@link ApkDigest} of the APK, so opening the same APK again, even after a restart or as a different copy,
+ * shows the download sizes at once. The raw sizes are cheap to compute and are not cached.
+ * <p>
+ * The store keeps the index files of the {@link #MAX_STORED_APKS} most recently used APKs.
+ */
+public class CachingApkSizeCalculator implements ApkSizeCalculator {
+  private static final Logger LOG = Logger.getInstance(CachingApkSizeCalculator.class);
+
+  private static final String STORE_DIRECTORY = "caches" + File.separator + "apk_download_sizes";
+  private static final String FULL_APK_KEY = "apk";
+  private static final String FILE_KEY_PREFIX = "file:";
+  private static final String STORED_FILE_EXTENSION = ".properties";
+  @VisibleForTesting static final int MAX_STORED_APKS = 100;
+
+  @NotNull private final ApkSizeCalculator myDelegate;
+
+  /** Store of the estimates, or null to not store them */
+  @Nullable private final LruFileStore myStore;
+  private final int myMaxStoredApks;
+
+  private final Map<String, Long> myFullApkDownloadSizes = new ConcurrentHashMap<>();
+  private final Map<String, Map<String, Long>> myDownloadSizesPerFile = new ConcurrentHashMap<>();
+
+  public CachingApkSizeCalculator(@NotNull ApkSizeCalculator delegate) {
+    this(delegate,
+         ApplicationManager.getApplication().isUnitTestMode() ? null : new File(PathManager.getSystemPath(), STORE_DIRECTORY),
+         MAX_STORED_APKS);
+  }
+
+  @VisibleForTesting
+  CachingApkSizeCalculator(@NotNull ApkSizeCalculator delegate, @Nullable File storeDirectory, int maxStoredApks) {
+    myDelegate = delegate;
+    myStore = storeDirectory != null ? new LruFileStore(storeDirectory, STORED_FILE_EXTENSION) : null;
+    myMaxStoredApks = maxStoredApks;
+  }
+
+  @Override
+  public long getFullApkDownloadSize(@NotNull Path apk) {
+    String digest = getDigest(apk);
+    if (digest == null) {
+      return myDelegate.getFullApkDownloadSize(apk);
+    }
+    Long size = myFullApkDownloadSizes.get(digest);
+    if (size == null) {
+      String stored = readStoredSizes(digest).get(FULL_APK_KEY);
+      size = stored != null ? Long.valueOf(stored) : null;
+    }
+    if (size == null) {
+      size = myDelegate.getFullApkDownloadSize(apk);
+      storeSizes(digest, Collections.singletonMap(FULL_APK_KEY, size));
+    }
+    myFullApkDownloadSizes.put(digest, size);
+    return size;
+  }
+
+  @Override
+  public long getFullApkRawSize(@NotNull Path apk) {
+    return myDelegate.getFullApkRawSize(apk);
+  }
+
+  @NotNull
+  @Override
+  public Map<String, Long> getDownloadSizePerFile(@NotNull Path apk) {
+    String digest = getDigest(apk);
+    if (digest == null) {
+      return myDelegate.getDownloadSizePerFile(apk);
+    }
+    Map<String, Long> sizes = myDownloadSizesPerFile.get(digest);
+    if (sizes == null) {
+      Map<String, String> stored = readStoredSizes(digest);
+      for (Map.Entry<String, String> entry : stored.entrySet()) {
+        if (entry.getKey().startsWith(FILE_KEY_PREFIX)) {
+          if (sizes == null) {
+            sizes = new HashMap<>();
+          }
+          sizes.put(entry.getKey().substring(FILE_KEY_PREFIX.length()), Long.valueOf(entry.getValue()));
+        }
+      }
+    }
+    if (sizes == null) {
+      sizes = myDelegate.getDownloadSizePerFile(apk);
+      Map<String, Long> toStore = new HashMap<>();
+      for (Map.Entry<String, Long> entry : sizes.entrySet()) {
+        toStore.put(FILE_KEY_PREFIX + entry.getKey(), entry.getValue());
+      }
+      storeSizes(digest, toStore);
+    }
+    myDownloadSizesPerFile.put(digest, sizes);
+    return sizes;
+  }
+
+  @NotNull
+  @Override
+  public Map<String, Long> getRawSizePerFile(@NotNull Path apk) {
+    return myDelegate.getRawSizePerFile(apk);
+  }
+
+  @Nullable
+  private static String getDigest(@NotNull Path apk) {
+    try {
+      return ApkDigest.compute(apk);
+    }
+    catch (IOException e) {
+      LOG.debug("Could not compute the digest of " + apk, e);
+      return null;
+    }
+  }
+
+  @NotNull
+  private Map<String, String> readStoredSizes(@NotNull String digest) {
+    Properties properties = myStore != null ? myStore.read(myStore.getFile(digest), CachingApkSizeCalculator::loadProperties) : null;
+    if (properties == null) {
+      return Collections.emptyMap();
+    }
+    Map<String, String> sizes = new HashMap<>();
+    for (String key : properties.stringPropertyNames()) {
+      sizes.put(key, properties.getProperty(key));
+    }
+    return sizes;
+  }
+
+  /**
+   * Adds the given sizes to the index file of the APK with the given digest
+   */
+  private synchronized void storeSizes(@NotNull String digest, @NotNull Map<String, Long> sizes) {
+    if (myStore == null) {
+      return;
+    }
+    File file = myStore.getFile(digest);
+    boolean isNew = !file.isFile();
+    Properties properties = new Properties();
+    properties.putAll(readStoredSizes(digest));
+    for (Map.Entry<String, Long> entry : sizes.entrySet()) {
+      properties.setProperty(entry.getKey(), entry.getValue().toString());
+    }
+    boolean stored = myStore.write(file, tempFile -> {
+      try (OutputStream stream = new BufferedOutputStream(new FileOutputStream(tempFile))) {
+        properties.store(stream, null);
+      }
+    });
+    if (stored && isNew) {
+      myStore.trimToCount(myMaxStoredApks);
+    }
+  }
+
+  @NotNull
+  private static Properties loadProperties(@NotNull File file) throws IOException {
+    Properties properties = new Properties();
+    try (InputStream stream = new BufferedInputStream(new FileInputStream(file))) {
+      properties.load(stream);
+    }
+    catch (IllegalArgumentException e) {
+      throw new IOException("Malformed index file " + file, e);
+    }
+    return properties;
+  }
+}
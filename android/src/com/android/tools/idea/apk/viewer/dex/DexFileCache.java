@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.apk.viewer.dex;
+
+import com.android.annotations.VisibleForTesting;
+import com.android.tools.apk.analyzer.dex.DexFiles;
+import com.google.common.base.Function;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jf.dexlib2.dexbacked.DexBackedDexFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Parsed dex files of an APK, shared by the {@link DexFileViewer}s opened on it.
+ * <p>
+ * Each dex file is read and parsed once, and the package tree, the dex stats, the references and the disassembly of a viewer,
+ * as well as the viewers opened later on other selections of the same APK, all use that copy. The dex files of a multidex
+ * selection are parsed in parallel. The parsed files are softly referenced, so they are parsed again only if memory ran low.
+ */
+public class DexFileCache {
+  @NotNull private final ListeningExecutorService myExecutor;
+  @NotNull private final LoadingCache<Path, DexBackedDexFile> myDexFiles = CacheBuilder.newBuilder()
+    .softValues()
+    .build(new CacheLoader<Path, DexBackedDexFile>() {
+      @Override
+      public DexBackedDexFile load(@NotNull Path path) throws IOException {
+        return DexFiles.getDexFile(path);
+      }
+    });
+
+  public DexFileCache() {
+    this(MoreExecutors.listeningDecorator(
+      AppExecutorUtil.createBoundedApplicationPoolExecutor("DexFileCache", Runtime.getRuntime().availableProcessors())));
+  }
+
+  @VisibleForTesting
+  DexFileCache(@NotNull ListeningExecutorService executor) {
+    myExecutor = executor;
+  }
+
+  /**
+   * Returns the parsed dex file at the given path, parsing it in the background if it is not cached.
+   */
+  @NotNull
+  public ListenableFuture<DexBackedDexFile> get(@NotNull Path path) {
+    DexBackedDexFile dexFile = myDexFiles.getIfPresent(path);
+    if (dexFile != null) {
+      return Futures.immediateFuture(dexFile);
+    }
+    return myExecutor.submit(() -> load(path));
+  }
+
+  /**
+   * Returns the parsed dex files at the given paths, in the same order, parsing the ones which are not cached in parallel.
+   */
+  @NotNull
+  public ListenableFuture<Map<Path, DexBackedDexFile>> get(@NotNull Path[] paths) {
+    List<ListenableFuture<DexBackedDexFile>> futures = new ArrayList<>(paths.length);
+    for (Path path : paths) {
+      futures.add(get(path));
+    }
+    return Futures.transform(Futures.allAsList(futures), new Function<List<DexBackedDexFile>, Map<Path, DexBackedDexFile>>() {
+      @NotNull
+      @Override
+      public Map<Path, DexBackedDexFile> apply(@Nullable List<DexBackedDexFile> input) {
+        assert input != null;
+        Map<Path, DexBackedDexFile> dexFiles = new LinkedHashMap<>();
+        for (int i = 0; i < paths.length; i++) {
+          dexFiles.put(paths[i], input.get(i));
+        }
+        return dexFiles;
+      }
+    }, MoreExecutors.directExecutor());
+  }
+
+  /**
+   * Drops the parsed dex files, e.g. when the APK they were read from is closed.
+   */
+  public void clear() {
+    myDexFiles.invalidateAll();
+  }
+
+  @NotNull
+  private DexBackedDexFile load(@NotNull Path path) throws IOException {
+    try {
+      // Concurrent requests of the same path wait for a single load
+      return myDexFiles.get(path);
+    }
+    catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause(), IOException.class);
+      throw new IOException(e.getCause());
+    }
+  }
+}
@@ -29,7 +29,6 @@ import com.android.tools.proguard.ProguardSeedsMap;
 import com.android.tools.proguard.ProguardUsagesMap;
 import com.google.common.base.Charsets;
 import com.google.common.base.Function;
-import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.*;
 import com.intellij.icons.AllIcons;
 import com.intellij.openapi.Disposable;
@@ -76,6 +75,7 @@ public class DexFileViewer implements ApkFileEditorComponent {
   @NotNull private final Project myProject;
   @NotNull private final VirtualFile myApkFolder;
   @NotNull private final DexViewFilters myDexFilters;
+  @NotNull private final DexFileCache myDexFileCache;
   private final DexTreeNodeRenderer myDexTreeRenderer;
 
   @Nullable private ProguardMappings myProguardMappings;
@@ -83,10 +83,14 @@ public class DexFileViewer implements ApkFileEditorComponent {
   private ListenableFuture<DexReferences> myDexReferences;
 
 
-  public DexFileViewer(@NotNull Project project, @NotNull Path[] dexFiles, @NotNull VirtualFile apkFolder) {
+  public DexFileViewer(@NotNull Project project,
+                       @NotNull Path[] dexFiles,
+                       @NotNull VirtualFile apkFolder,
+                       @NotNull DexFileCache dexFileCache) {
     myDexFiles = dexFiles;
     myProject = project;
     myApkFolder = apkFolder;
+    myDexFileCache = dexFileCache;
 
     //noinspection Convert2Lambda // we need a new instance of this disposable every time, not just a lambda method
     //noinspection AnonymousInnerClassMayBeStatic
@@ -188,7 +192,7 @@ public class DexFileViewer implements ApkFileEditorComponent {
   @NotNull
   private ActionGroup createPopupActionGroup(@NotNull Tree tree) {
     final DefaultActionGroup group = new DefaultActionGroup();
-    group.add(new ShowDisassemblyAction(tree));
+    group.add(new ShowDisassemblyAction(tree, myDexFileCache));
     group.add(new ShowReferencesAction(tree, this));
     group.add(new GenerateProguardKeepRuleAction(tree));
     return group;
@@ -272,13 +276,7 @@ public class DexFileViewer implements ApkFileEditorComponent {
 
   public void initDex() {
     ListeningExecutorService pooledThreadExecutor = MoreExecutors.listeningDecorator(PooledThreadExecutor.INSTANCE);
-    ListenableFuture<Map<Path, DexBackedDexFile>> dexFileFuture = pooledThreadExecutor.submit(() -> {
-      Map<Path, DexBackedDexFile> dexFiles = Maps.newHashMapWithExpectedSize(myDexFiles.length);
-      for (int i = 0; i < myDexFiles.length; i++) {
-        dexFiles.put(myDexFiles[i], DexFiles.getDexFile(myDexFiles[i]));
-      }
-      return dexFiles;
-    });
+    ListenableFuture<Map<Path, DexBackedDexFile>> dexFileFuture = myDexFileCache.get(myDexFiles);
 
     ListenableFuture<DexPackageNode> treeNodeFuture =
       Futures.transform(dexFileFuture, new Function<Map<Path, DexBackedDexFile>, DexPackageNode>() {
@@ -391,18 +389,13 @@ public class DexFileViewer implements ApkFileEditorComponent {
   ListenableFuture<DexReferences> getDexReferences() {
     if (myDexReferences == null) {
       ListeningExecutorService pooledThreadExecutor = MoreExecutors.listeningDecorator(PooledThreadExecutor.INSTANCE);
-      ListenableFuture<DexBackedDexFile[]> dexFileFuture = pooledThreadExecutor.submit(() -> {
-        DexBackedDexFile[] files = new DexBackedDexFile[myDexFiles.length];
-        for (int i = 0; i < files.length; i++) {
-          files[i] = DexFiles.getDexFile(myDexFiles[i]);
-        }
-        return files;
-      });
-      myDexReferences = Futures.transform(dexFileFuture, new Function<DexBackedDexFile[], DexReferences>() {
+      // The dex files are usually already parsed for the tree, so this only builds the references
+      ListenableFuture<Map<Path, DexBackedDexFile>> dexFileFuture = myDexFileCache.get(myDexFiles);
+      myDexReferences = Futures.transform(dexFileFuture, new Function<Map<Path, DexBackedDexFile>, DexReferences>() {
         @Override
-        public DexReferences apply(@Nullable DexBackedDexFile[] inputs) {
-          assert inputs != null;
-          return new DexReferences(inputs);
+        public DexReferences apply(@Nullable Map<Path, DexBackedDexFile> input) {
+          assert input != null;
+          return new DexReferences(input.values().toArray(new DexBackedDexFile[0]));
         }
       }, pooledThreadExecutor);
     }
@@ -17,7 +17,6 @@ package com.android.tools.idea.apk.viewer.dex;
 
 import com.android.annotations.VisibleForTesting;
 import com.android.tools.apk.analyzer.dex.DexDisassembler;
-import com.android.tools.apk.analyzer.dex.DexFiles;
 import com.android.tools.apk.analyzer.dex.tree.DexClassNode;
 import com.android.tools.apk.analyzer.dex.tree.DexElementNode;
 import com.android.tools.apk.analyzer.dex.tree.DexMethodNode;
@@ -37,7 +36,6 @@ import com.intellij.openapi.util.Disposer;
 import com.intellij.ui.treeStructure.Tree;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.jetbrains.ide.PooledThreadExecutor;
 import org.jf.dexlib2.dexbacked.DexBackedDexFile;
 import org.jf.dexlib2.iface.reference.MethodReference;
 import org.jf.dexlib2.util.ReferenceUtil;
@@ -48,10 +46,12 @@ import java.nio.file.Path;
 
 public class ShowDisassemblyAction extends AnAction implements DumbAware {
   private final Tree myTree;
+  private final DexFileCache myDexFileCache;
 
-  public ShowDisassemblyAction(@NotNull Tree tree) {
+  public ShowDisassemblyAction(@NotNull Tree tree, @NotNull DexFileCache dexFileCache) {
     super("Show Bytecode", "Show Bytecode", AllIcons.Toolwindows.Documentation);
     myTree = tree;
+    myDexFileCache = dexFileCache;
   }
 
   @Override
@@ -102,9 +102,8 @@ public class ShowDisassemblyAction extends AnAction implements DumbAware {
 
     Project project = getEventProject(e);
     assert project != null;
-    ListeningExecutorService pooledThreadExecutor = MoreExecutors.listeningDecorator(PooledThreadExecutor.INSTANCE);
     Path dexPath = (Path)node.getUserObject();
-    ListenableFuture<DexBackedDexFile> dexFileFuture = pooledThreadExecutor.submit(() -> DexFiles.getDexFile(dexPath));
+    ListenableFuture<DexBackedDexFile> dexFileFuture = myDexFileCache.get(dexPath);
     Futures.addCallback(dexFileFuture, new FutureCallback<DexBackedDexFile>() {
       @Override
       public void onSuccess(@Nullable DexBackedDexFile dexBackedDexFile) {
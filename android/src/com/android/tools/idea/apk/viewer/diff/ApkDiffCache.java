@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.apk.viewer.diff;
+
+import com.android.annotations.VisibleForTesting;
+import com.android.tools.idea.apk.viewer.ApkDigest;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.ide.PooledThreadExecutor;
+
+import javax.swing.tree.DefaultMutableTreeNode;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Diff trees computed by {@link ApkDiffPanel}, so that comparing the same APKs again, e.g. after reopening the panel, does not
+ * parse and diff them again.
+ * <p>
+ * The cached trees are never handed out, since panels own the nodes of their tree models. Each request gets its own copy of the
+ * nodes, which share the entries of the cached tree: the diff parsers do not modify them once the tree is built.
+ * <p>
+ * The trees are keyed by the {@link ApkDigest} of both APKs, which only reads their zip central directories: an APK that was
+ * rebuilt with identical contents, or copied, still hits the cache, while one whose entries changed is diffed again. The digests
+ * of both APKs are computed in parallel, and concurrent requests for the same diff share a single computation.
+ */
+class ApkDiffCache {
+  private static final int MAX_TREES = 8;
+
+  private static final ApkDiffCache ourInstance = new ApkDiffCache(MoreExecutors.listeningDecorator(PooledThreadExecutor.INSTANCE));
+
+  interface DiffComputer {
+    @NotNull
+    DefaultMutableTreeNode compute(@NotNull Path oldApk, @NotNull Path newApk) throws Exception;
+  }
+
+  @NotNull private final ListeningExecutorService myExecutor;
+  @NotNull private final Cache<String, ListenableFuture<DefaultMutableTreeNode>> myTrees = CacheBuilder.newBuilder()
+    .maximumSize(MAX_TREES)
+    .softValues()
+    .build();
+
+  @VisibleForTesting
+  ApkDiffCache(@NotNull ListeningExecutorService executor) {
+    myExecutor = executor;
+  }
+
+  @NotNull
+  static ApkDiffCache getInstance() {
+    return ourInstance;
+  }
+
+  /**
+   * Returns the diff tree of the given APKs, computing it with the given computer if no tree of that kind is cached for their
+   * contents. The kind identifies the computer, as the same APKs can be diffed in several ways.
+   */
+  @NotNull
+  ListenableFuture<DefaultMutableTreeNode> getDiffTree(@NotNull Path oldApk,
+                                                       @NotNull Path newApk,
+                                                       @NotNull String kind,
+                                                       @NotNull DiffComputer computer) {
+    ListenableFuture<String> oldDigest = myExecutor.submit(() -> ApkDigest.compute(oldApk));
+    ListenableFuture<String> newDigest = myExecutor.submit(() -> ApkDigest.compute(newApk));
+    return Futures.transformAsync(Futures.allAsList(oldDigest, newDigest), (List<String> digests) -> {
+      assert digests != null;
+      String key = kind + ':' + digests.get(0) + ':' + digests.get(1);
+      ListenableFuture<DefaultMutableTreeNode> tree = myTrees.get(key, () -> myExecutor.submit(() -> computer.compute(oldApk, newApk)));
+      Futures.addCallback(tree, new FutureCallback<DefaultMutableTreeNode>() {
+        @Override
+        public void onSuccess(@Nullable DefaultMutableTreeNode result) {
+        }
+
+        @Override
+        public void onFailure(@NotNull Throwable t) {
+          // Compute it again next time
+          myTrees.asMap().remove(key, tree);
+        }
+      }, MoreExecutors.directExecutor());
+      return Futures.transform(tree, ApkDiffCache::copyTree, MoreExecutors.directExecutor());
+    }, MoreExecutors.directExecutor());
+  }
+
+  /**
+   * Returns a copy of the nodes of the given tree, sharing their user objects.
+   */
+  @NotNull
+  private static DefaultMutableTreeNode copyTree(@NotNull DefaultMutableTreeNode node) {
+    // clone copies the node without its parent and children
+    DefaultMutableTreeNode copy = (DefaultMutableTreeNode)node.clone();
+    for (int i = 0; i < node.getChildCount(); i++) {
+      copy.add(copyTree((DefaultMutableTreeNode)node.getChildAt(i)));
+    }
+    return copy;
+  }
+}
@@ -27,8 +27,6 @@ import com.android.tools.idea.apk.viewer.ApkViewPanel.FutureCallBackAdapter;
 import com.android.tools.idea.ddms.EdtExecutor;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
-import com.google.common.util.concurrent.ListeningExecutorService;
-import com.google.common.util.concurrent.MoreExecutors;
 import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.ui.ColoredTreeCellRenderer;
@@ -38,7 +36,6 @@ import com.intellij.ui.treeStructure.Tree;
 import com.intellij.util.Function;
 import com.intellij.util.containers.Convertor;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.ide.PooledThreadExecutor;
 
 import javax.swing.*;
 import javax.swing.tree.DefaultMutableTreeNode;
@@ -47,12 +44,12 @@ import javax.swing.tree.TreePath;
 
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
+import java.nio.file.Path;
 
 import static com.android.tools.idea.apk.viewer.ApkViewPanel.getHumanizedSize;
 
 public class ApkDiffPanel {
 
-  private static final ListeningExecutorService ourExecutorService = MoreExecutors.listeningDecorator(PooledThreadExecutor.INSTANCE);
   private ListenableFuture<DefaultMutableTreeNode> myFbfTreeStructureFuture;
 
   private JPanel myContainer;
@@ -87,9 +84,9 @@ public class ApkDiffPanel {
 
   private void constructFbfTree(){
     if (myFbfTreeStructureFuture == null) {
-      myFbfTreeStructureFuture = ourExecutorService.submit(() -> {
-        try (Archive archive1 = Archives.open(VfsUtilCore.virtualToIoFile(myOldApk).toPath());
-             Archive archive2 = Archives.open(VfsUtilCore.virtualToIoFile(myNewApk).toPath())) {
+      myFbfTreeStructureFuture = getDiffTree("fileByFile", (oldApk, newApk) -> {
+        try (Archive archive1 = Archives.open(oldApk);
+             Archive archive2 = Archives.open(newApk)) {
           return ApkFileByFileDiffParser.createTreeNode(archive1, archive2);
         }
       });
@@ -107,9 +104,9 @@ public class ApkDiffPanel {
 
   private void constructDiffTree(){
     // construct the main tree
-    ListenableFuture<DefaultMutableTreeNode> treeStructureFuture = ourExecutorService.submit(() -> {
-      try (Archive archive1 = Archives.open(VfsUtilCore.virtualToIoFile(myOldApk).toPath());
-           Archive archive2 = Archives.open(VfsUtilCore.virtualToIoFile(myNewApk).toPath())) {
+    ListenableFuture<DefaultMutableTreeNode> treeStructureFuture = getDiffTree("size", (oldApk, newApk) -> {
+      try (Archive archive1 = Archives.open(oldApk);
+           Archive archive2 = Archives.open(newApk)) {
         return ApkDiffParser.createTreeNode(archive1, archive2);
       }
     });
@@ -123,6 +120,13 @@ public class ApkDiffPanel {
     Futures.addCallback(treeStructureFuture, setRootNode, EdtExecutor.INSTANCE);
   }
 
+  @NotNull
+  private ListenableFuture<DefaultMutableTreeNode> getDiffTree(@NotNull String kind, @NotNull ApkDiffCache.DiffComputer computer) {
+    Path oldApk = VfsUtilCore.virtualToIoFile(myOldApk).toPath();
+    Path newApk = VfsUtilCore.virtualToIoFile(myNewApk).toPath();
+    return ApkDiffCache.getInstance().getDiffTree(oldApk, newApk, kind, computer);
+  }
+
   private void createUIComponents() {
     myTreeModel = new DefaultTreeModel(new LoadingNode());
     myTree = new Tree(myTreeModel);
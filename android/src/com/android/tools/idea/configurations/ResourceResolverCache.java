@@ -23,13 +23,17 @@ import com.android.ide.common.resources.ResourceValueMap;
 import com.android.ide.common.resources.configuration.DensityQualifier;
 import com.android.ide.common.resources.configuration.FolderConfiguration;
 import com.android.ide.common.resources.configuration.LocaleQualifier;
+import com.android.ide.common.resources.configuration.ResourceQualifier;
 import com.android.resources.Density;
 import com.android.resources.ResourceType;
 import com.android.sdklib.IAndroidTarget;
 import com.android.tools.idea.rendering.Locale;
 import com.android.tools.idea.rendering.multi.CompatibilityRenderTarget;
 import com.android.tools.idea.res.AppResourceRepository;
+import com.android.tools.idea.res.FileResourceRepository;
 import com.android.tools.idea.res.LocalResourceRepository;
+import com.android.tools.idea.res.MultiResourceRepository;
+import com.android.tools.idea.res.ResourceFolderRepository;
 import com.android.tools.idea.res.ResourceHelper;
 import com.android.utils.SparseArray;
 import com.google.common.annotations.VisibleForTesting;
@@ -37,6 +41,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.android.sdk.AndroidPlatform;
 import org.jetbrains.android.sdk.AndroidTargetData;
 import org.jetbrains.annotations.NotNull;
@@ -47,6 +52,8 @@ import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.android.SdkConstants.DOT_PNG;
 import static com.android.SdkConstants.PREFIX_RESOURCE_REF;
@@ -71,6 +78,17 @@ public class ResourceResolverCache {
   @VisibleForTesting
   final Map<String, Map<ResourceType, ResourceValueMap>> myAppResourceMap;
 
+  /**
+   * Map of configured app resources keyed by the qualifiers of the full configuration which are used by at least one resource
+   * folder of the app. Configurations which only differ in qualifiers that no folder uses, for example the screen size of an
+   * app without size specific resources, select the same resources, so their entries of {@link #myAppResourceMap} share the
+   * same maps.
+   */
+  private final Map<String, Map<ResourceType, ResourceValueMap>> mySharedAppResourceMap;
+
+  /** The qualifiers (by index in {@link FolderConfiguration}) used by the resource folders of the app, or null if not computed yet */
+  @Nullable private volatile boolean[] myUsedAppQualifiers;
+
   /**
    * Map of configured framework resources. These are cached separately from the final resource
    * resolver since they can be shared between different layouts that only vary by theme
@@ -79,10 +97,10 @@ public class ResourceResolverCache {
   final Map<String, Map<ResourceType, ResourceValueMap>> myFrameworkResourceMap;
 
   /** The generation timestamp of our most recently cached app resources, used to invalidate on edits */
-  private long myCachedGeneration;
+  private volatile long myCachedGeneration;
 
   /** Map from API level to framework resources */
-  private SparseArray<AndroidTargetData> myFrameworkResources = new SparseArray<>();
+  private final SparseArray<AndroidTargetData> myFrameworkResources = new SparseArray<>();
 
   /**
    * Store map keys for the latest custom configuration cached, so that they can be removed from the cache
@@ -93,9 +111,11 @@ public class ResourceResolverCache {
 
   public ResourceResolverCache(ConfigurationManager manager) {
     myManager = manager;
-    myResolverMap = Maps.newHashMap();
-    myAppResourceMap = Maps.newHashMap();
-    myFrameworkResourceMap = Maps.newHashMap();
+    // The resolvers are requested both by the UI and by the render threads
+    myResolverMap = new ConcurrentHashMap<>();
+    myAppResourceMap = new ConcurrentHashMap<>();
+    mySharedAppResourceMap = new ConcurrentHashMap<>();
+    myFrameworkResourceMap = new ConcurrentHashMap<>();
   }
 
   @NotNull
@@ -110,6 +130,8 @@ public class ResourceResolverCache {
     if (myCachedGeneration != resources.getModificationCount()) {
       myResolverMap.clear();
       myAppResourceMap.clear();
+      mySharedAppResourceMap.clear();
+      myUsedAppQualifiers = null;
     }
 
     // Store the modification count as soon as possible. This ensures that if there is any modification of resources while the
@@ -165,8 +187,13 @@ public class ResourceResolverCache {
       // App resources
       configuredAppRes = myAppResourceMap.get(configurationKey);
       if (configuredAppRes == null) {
-        // Get the project resource values based on the current config.
-        configuredAppRes = ReadAction.compute(() -> resources.getConfiguredResources(fullConfiguration));
+        String sharedKey = getUsedQualifiersKey(resources, fullConfiguration);
+        configuredAppRes = mySharedAppResourceMap.get(sharedKey);
+        if (configuredAppRes == null) {
+          // Get the project resource values based on the current config.
+          configuredAppRes = ReadAction.compute(() -> resources.getConfiguredResources(fullConfiguration));
+          mySharedAppResourceMap.put(sharedKey, configuredAppRes);
+        }
         myAppResourceMap.put(configurationKey, configuredAppRes);
       }
 
@@ -193,6 +220,66 @@ public class ResourceResolverCache {
     return resolver;
   }
 
+  /**
+   * Returns a key made of the qualifiers of the given configuration which are used by at least one resource folder of the given
+   * repository. Resources are only selected by the qualifiers of their folders, so two configurations with the same key select
+   * the same resources. If a resource directory of the repository can't be found, the qualifiers used by its folders are unknown
+   * and the key of the full configuration is returned.
+   */
+  @NotNull
+  private String getUsedQualifiersKey(@NotNull LocalResourceRepository resources, @NotNull FolderConfiguration fullConfiguration) {
+    boolean[] used = myUsedAppQualifiers;
+    if (used == null) {
+      if (!areResourceDirsResolved(resources)) {
+        return fullConfiguration.getUniqueKey();
+      }
+      used = new boolean[FolderConfiguration.getQualifierCount()];
+      for (VirtualFile resourceDir : resources.getResourceDirs()) {
+        for (VirtualFile folder : resourceDir.getChildren()) {
+          FolderConfiguration folderConfiguration = folder.isDirectory() ? FolderConfiguration.getConfigForFolder(folder.getName()) : null;
+          if (folderConfiguration == null) {
+            continue;
+          }
+          for (int i = 0; i < used.length; i++) {
+            used[i] |= folderConfiguration.getQualifier(i) != null;
+          }
+        }
+      }
+      myUsedAppQualifiers = used;
+    }
+
+    StringBuilder key = new StringBuilder();
+    for (int i = 0; i < used.length; i++) {
+      ResourceQualifier qualifier = used[i] ? fullConfiguration.getQualifier(i) : null;
+      if (qualifier != null) {
+        key.append('-').append(qualifier.getFolderSegment());
+      }
+    }
+    return key.toString();
+  }
+
+  /**
+   * Returns false if a repository reading the resources of a directory, directly or through its children, failed to find it or
+   * found a directory which has since been deleted.
+   */
+  @VisibleForTesting
+  static boolean areResourceDirsResolved(@NotNull LocalResourceRepository resources) {
+    if (resources instanceof MultiResourceRepository) {
+      for (LocalResourceRepository child : ((MultiResourceRepository)resources).getChildren()) {
+        if (!areResourceDirsResolved(child)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    if (resources instanceof FileResourceRepository || resources instanceof ResourceFolderRepository) {
+      Set<VirtualFile> resourceDirs = resources.getResourceDirs();
+      return !resourceDirs.isEmpty() && resourceDirs.stream().allMatch(VirtualFile::isValid);
+    }
+    // The other repositories do not read resources from resource folders
+    return true;
+  }
+
   /**
    * Returns a {@link ResourceRepository} for the framework resources based on the current configuration selection.
    *
@@ -205,14 +292,17 @@ public class ResourceResolverCache {
     LocaleQualifier locale = configuration.getLocaleQualifier();
     boolean needLocales = locale != null && !locale.hasFakeValue() || myManager.getLocale() != Locale.ANY;
 
-    AndroidTargetData targetData = myFrameworkResources.get(apiLevel);
-    if (targetData == null) {
-      AndroidPlatform platform = AndroidPlatform.getInstance(myManager.getModule());
-      if (platform == null) {
-        return null;
+    AndroidTargetData targetData;
+    synchronized (myFrameworkResources) {
+      targetData = myFrameworkResources.get(apiLevel);
+      if (targetData == null) {
+        AndroidPlatform platform = AndroidPlatform.getInstance(myManager.getModule());
+        if (platform == null) {
+          return null;
+        }
+        targetData = platform.getSdkData().getTargetData(target); // uses soft ref
+        myFrameworkResources.put(apiLevel, targetData);
       }
-      targetData = platform.getSdkData().getTargetData(target); // uses soft ref
-      myFrameworkResources.put(apiLevel, targetData);
     }
 
     try {
@@ -312,6 +402,8 @@ public class ResourceResolverCache {
   public void reset() {
     myCachedGeneration = 0;
     myAppResourceMap.clear();
+    mySharedAppResourceMap.clear();
+    myUsedAppQualifiers = null;
     myResolverMap.clear();
   }
 
@@ -321,7 +413,7 @@ public class ResourceResolverCache {
    * @param themeStyle new theme
    * @param fullConfiguration new full configuration
    */
-  public void replaceCustomConfig(@NotNull String themeStyle, @NotNull final FolderConfiguration fullConfiguration) {
+  public synchronized void replaceCustomConfig(@NotNull String themeStyle, @NotNull final FolderConfiguration fullConfiguration) {
     String newCustomConfigurationKey = fullConfiguration.getUniqueKey();
     String newCustomResolverKey = themeStyle + newCustomConfigurationKey;
 
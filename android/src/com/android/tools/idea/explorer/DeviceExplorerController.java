@@ -18,6 +18,7 @@ package com.android.tools.idea.explorer;
 import com.android.tools.idea.explorer.adbimpl.AdbPathUtil;
 import com.android.tools.idea.explorer.fs.*;
 import com.android.tools.idea.explorer.ui.TreeUtil;
+import com.android.tools.idea.flags.StudioFlags;
 import com.android.utils.FileUtils;
 import com.google.common.primitives.Ints;
 import com.google.common.util.concurrent.FutureCallback;
@@ -55,6 +56,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -73,6 +75,7 @@ public class DeviceExplorerController {
   private static final String DEVICE_EXPLORER_BUSY_MESSAGE = "Device Explorer is busy, please retry later or cancel current operation";
   private static final long FILE_ENTRY_CREATION_TIMEOUT_MILLIS = 10_000;
   private static final long FILE_ENTRY_DELETION_TIMEOUT_MILLIS = 10_000;
+  private static final int MAX_CONCURRENT_DOWNLOADS = 4;
 
   private int myShowLoadingNodeDelayMillis = 200;
   private int myTransferringNodeRepaintMillis = 100;
@@ -82,6 +85,7 @@ public class DeviceExplorerController {
   @NotNull private final DeviceExplorerView myView;
   @NotNull private final DeviceFileSystemService myService;
   @NotNull private final FutureCallbackExecutor myEdtExecutor;
+  @NotNull private final FutureCallbackExecutor myTaskExecutor;
   @NotNull private final DeviceExplorerFileManager myFileManager;
   @NotNull private final FileTransferWorkEstimator myWorkEstimator;
   @NotNull private final Set<DeviceFileEntryNode> myTransferringNodes = new HashSet<>();
@@ -103,6 +107,7 @@ public class DeviceExplorerController {
     myView = view;
     myService = service;
     myEdtExecutor = FutureCallbackExecutor.wrap(edtExecutor);
+    myTaskExecutor = FutureCallbackExecutor.wrap(taskExecutor);
     myService.addListener(new ServiceListener());
     myView.addListener(new ViewListener());
     myFileManager = fileManager;
@@ -712,16 +717,55 @@ public class DeviceExplorerController {
       }
       tracker.getSummary().addDirectoryCount(1);
 
+      if (StudioFlags.DEVICE_EXPLORER_BULK_TRANSFER_ENABLED.get()) {
+        // Try downloading the whole directory at once, and download its files (several at a time) if that is not supported
+        ListenableFuture<Void> futureBulkDownload = downloadDirectoryEntry(treeNode, localDirectoryPath, tracker);
+        return myEdtExecutor.catchingAsync(futureBulkDownload, Throwable.class, t -> {
+          assert t != null;
+          if (tracker.isCancelled() || ExceptionUtil.getRootCause(t) instanceof CancellationException) {
+            return Futures.immediateCancelledFuture();
+          }
+          LOGGER.info(String.format("Error downloading directory in bulk, downloading each file instead: %s",
+                                    treeNode.getEntry().getFullPath()), t);
+          return downloadDirectoryChildren(treeNode, localDirectoryPath, tracker, true);
+        });
+      }
+      return downloadDirectoryChildren(treeNode, localDirectoryPath, tracker, false);
+    }
+
+    @NotNull
+    private ListenableFuture<Void> downloadDirectoryChildren(@NotNull DeviceFileEntryNode treeNode,
+                                                             @NotNull Path localDirectoryPath,
+                                                             @NotNull FileTransferOperationTracker tracker,
+                                                             boolean concurrentFileDownloads) {
       SettableFuture<Void> futureResult = SettableFuture.create();
 
       ListenableFuture<Void> futureLoadChildren = loadNodeChildren(treeNode);
       myEdtExecutor.addCallback(futureLoadChildren, new FutureCallback<Void>() {
         @Override
         public void onSuccess(@Nullable Void result) {
-          ListenableFuture<Void> futureDownloadChildren = executeFuturesInSequence(treeNode.getChildEntryNodes().iterator(), node -> {
-            Path nodePath = localDirectoryPath.resolve(node.getEntry().getName());
-            return downloadSingleNode(node, nodePath, tracker);
-          });
+          ListenableFuture<Void> futureDownloadChildren;
+          if (concurrentFileDownloads) {
+            // Pipeline the (typically many and small) files, then download the sub-directories one at a time,
+            // so that we never have more than MAX_CONCURRENT_DOWNLOADS transfers going on.
+            Map<Boolean, List<DeviceFileEntryNode>> nodes = treeNode.getChildEntryNodes()
+              .stream()
+              .collect(Collectors.partitioningBy(node -> node.getEntry().isDirectory()));
+            ListenableFuture<Void> futureFiles = myEdtExecutor.executeFuturesInParallel(nodes.get(false).iterator(), node -> {
+              Path nodePath = localDirectoryPath.resolve(node.getEntry().getName());
+              return downloadSingleNode(node, nodePath, tracker);
+            }, MAX_CONCURRENT_DOWNLOADS);
+            futureDownloadChildren = myEdtExecutor.transformAsync(futureFiles, aVoid -> executeFuturesInSequence(nodes.get(true).iterator(), node -> {
+              Path nodePath = localDirectoryPath.resolve(node.getEntry().getName());
+              return downloadSingleNode(node, nodePath, tracker);
+            }));
+          }
+          else {
+            futureDownloadChildren = executeFuturesInSequence(treeNode.getChildEntryNodes().iterator(), node -> {
+              Path nodePath = localDirectoryPath.resolve(node.getEntry().getName());
+              return downloadSingleNode(node, nodePath, tracker);
+            });
+          }
           myEdtExecutor.addConsumer(futureDownloadChildren, (aVoid, throwable) -> {
             if (throwable != null) {
               tracker.addProblem(throwable);
@@ -1348,6 +1392,55 @@ public class DeviceExplorerController {
       return myEdtExecutor.transform(futureSave, summary -> localPath);
     }
 
+    /**
+     * Downloads a directory and all its contents with {@link DeviceFileEntry#downloadDirectory}, then
+     * updates the progress and summary of the {@code tracker} with the transferred files and directories.
+     */
+    @NotNull
+    private ListenableFuture<Void> downloadDirectoryEntry(@NotNull DeviceFileEntryNode treeNode,
+                                                          @NotNull Path localDirectoryPath,
+                                                          @NotNull FileTransferOperationTracker tracker) {
+      tracker.setDownloadFileText(treeNode.getEntry(), 0, 0);
+
+      DeviceFileEntry entry = treeNode.getEntry();
+      startNodeDownload(treeNode);
+      // The bytes reported so far, to rewind the tracker if the directory is downloaded file by file instead
+      AtomicLong reportedBytes = new AtomicLong();
+      ListenableFuture<DirectoryTransferResult> futureDownload = entry.downloadDirectory(localDirectoryPath, new FileTransferProgress() {
+        @Override
+        public void progress(long currentBytes, long totalBytes) {
+          // Update progress UI
+          tracker.processFileBytes(currentBytes - reportedBytes.getAndSet(currentBytes));
+          tracker.setDownloadFileText(treeNode.getEntry(), currentBytes, totalBytes);
+
+          // Update Tree UI
+          treeNode.setTransferProgress(currentBytes, totalBytes);
+        }
+
+        @Override
+        public boolean isCancelled() {
+          return tracker.isCancelled();
+        }
+      });
+      myEdtExecutor.addListener(futureDownload, () -> stopNodeDownload(treeNode));
+      logFuture(futureDownload, millis -> String.format("Downloaded directory in %,d msec: %s", millis, entry.getFullPath()));
+
+      ListenableFuture<Void> futureResult = myEdtExecutor.transform(futureDownload, result -> {
+        assert result != null;
+        tracker.processDirectoryContents(result.getFileCount(), result.getDirectoryCount());
+        tracker.getSummary().addFileCount(result.getFileCount());
+        tracker.getSummary().addDirectoryCount(result.getDirectoryCount());
+        tracker.getSummary().addByteCount(result.getByteCount());
+        return null;
+      });
+      return myEdtExecutor.catchingAsync(futureResult, Throwable.class, t -> {
+        assert t != null;
+        // The files are downloaded again if the bulk download failed, so the bytes reported so far must not be counted twice
+        tracker.revertFileBytes(reportedBytes.getAndSet(0));
+        return Futures.immediateFailedFuture(t);
+      });
+    }
+
     @NotNull
     private ListenableFuture<Long> downloadFileEntry(@NotNull DeviceFileEntryNode treeNode,
                                                      @NotNull Path localPath,
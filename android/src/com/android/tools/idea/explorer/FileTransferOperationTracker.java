@@ -86,11 +86,29 @@ public class FileTransferOperationTracker extends LongRunningOperationTracker {
     showProgress();
   }
 
+  /**
+   * Accounts for the files and directories of a directory that was transferred as a whole, in a single operation.
+   */
+  public void processDirectoryContents(int fileCount, int directoryCount) {
+    myFinishedWorkUnits += fileCount * FileTransferWorkEstimator.getFileWorkUnits();
+    myFinishedWorkUnits += directoryCount * FileTransferWorkEstimator.getDirectoryWorkUnits();
+    myCurrentFileCount += fileCount;
+    myCurrentDirectoryCount += directoryCount;
+    showProgress();
+  }
+
   public void processFileBytes(long byteCount) {
     myFinishedWorkUnits += FileTransferWorkEstimator.getFileContentsWorkUnits(byteCount);
     showProgress();
   }
 
+  /**
+   * Takes back file bytes that were processed by a transfer that failed and is going to be retried another way.
+   */
+  public void revertFileBytes(long byteCount) {
+    processFileBytes(-byteCount);
+  }
+
   public void setUploadFileText(@NotNull VirtualFile file, long currentBytes, long totalBytes) {
     String text;
     if (myTotalFileCount > 1) {
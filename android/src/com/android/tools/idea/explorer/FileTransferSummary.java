@@ -36,7 +36,7 @@ public class FileTransferSummary {
     return myFileCount;
   }
 
-  public void addFileCount(@SuppressWarnings("SameParameterValue") int fileCount) {
+  public void addFileCount(int fileCount) {
     myFileCount += fileCount;
   }
 
@@ -44,7 +44,7 @@ public class FileTransferSummary {
     return myDirectoryCount;
   }
 
-  public void addDirectoryCount(@SuppressWarnings("SameParameterValue") int directoryCount) {
+  public void addDirectoryCount(int directoryCount) {
     myDirectoryCount += directoryCount;
   }
 
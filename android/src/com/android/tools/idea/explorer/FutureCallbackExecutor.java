@@ -23,6 +23,7 @@ import java.lang.reflect.UndeclaredThrowableException;
 import java.util.Iterator;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 
@@ -223,6 +224,51 @@ public class FutureCallbackExecutor implements Executor {
     }
   }
 
+  /**
+   * Similar to {@link #executeFuturesInSequence(Iterator, Function)}, except that up to {@code maxConcurrency}
+   * tasks are executed at the same time, typically as a way of pipelining tasks that mostly wait for I/O.
+   *
+   * <p>Returns a {@link ListenableFuture} that completes when all tasks have completed.
+   *
+   * @param iterator       The source of elements to process
+   * @param taskFactory    A factory {@link Function} that returns a {@link ListenableFuture} for a given element
+   * @param maxConcurrency The maximum number of tasks that are executing at the same time
+   * @param <T>            The type of the elements to process
+   */
+  @NotNull
+  public <T> ListenableFuture<Void> executeFuturesInParallel(@NotNull Iterator<T> iterator,
+                                                             @NotNull Function<T, ListenableFuture<Void>> taskFactory,
+                                                             int maxConcurrency) {
+    SettableFuture<Void> finalResult = SettableFuture.create();
+    AtomicInteger activeWorkers = new AtomicInteger(maxConcurrency);
+    for (int i = 0; i < maxConcurrency; i++) {
+      executeFuturesInParallelWorker(iterator, taskFactory, activeWorkers, finalResult);
+    }
+    return finalResult;
+  }
+
+  private <T> void executeFuturesInParallelWorker(@NotNull Iterator<T> iterator,
+                                                  @NotNull Function<T, ListenableFuture<Void>> taskFactory,
+                                                  @NotNull AtomicInteger activeWorkers,
+                                                  @NotNull SettableFuture<Void> finalResult) {
+    T element = null;
+    boolean hasElement;
+    synchronized (iterator) {
+      hasElement = iterator.hasNext();
+      if (hasElement) {
+        element = iterator.next();
+      }
+    }
+
+    if (hasElement) {
+      ListenableFuture<Void> future = taskFactory.apply(element);
+      addConsumer(future, (aVoid, throwable) -> executeFuturesInParallelWorker(iterator, taskFactory, activeWorkers, finalResult));
+    }
+    else if (activeWorkers.decrementAndGet() == 0) {
+      finalResult.set(null);
+    }
+  }
+
   /**
    * Wrap a {@link ThrowableFunction} into a {@link Function} using a {@link UndeclaredThrowableException}.
    *
@@ -43,6 +43,7 @@ public class AdbDeviceCapabilities {
   @Nullable private Boolean myIsRoot;
   @Nullable private Boolean mySupportsCpCommand;
   @Nullable private Boolean mySupportsMkTempCommand;
+  @Nullable private Boolean mySupportsTarCommand;
 
   public AdbDeviceCapabilities(@NotNull IDevice device) {
     myDevice = device;
@@ -105,6 +106,14 @@ public class AdbDeviceCapabilities {
     return mySupportsMkTempCommand;
   }
 
+  public synchronized boolean supportsTarCommand()
+    throws TimeoutException, AdbCommandRejectedException, ShellCommandUnresponsiveException, IOException, SyncException {
+    if (mySupportsTarCommand == null) {
+      mySupportsTarCommand = supportsTarCommandWorker();
+    }
+    return mySupportsTarCommand;
+  }
+
   @NotNull
   private static String getDeviceTraceInfo(@NotNull IDevice device) {
     return String.format("%s(%s)-%s", device.getName(), device.getSerialNumber(), device.getState());
@@ -281,6 +290,42 @@ public class AdbDeviceCapabilities {
     }
   }
 
+  private boolean supportsTarCommandWorker()
+    throws TimeoutException, AdbCommandRejectedException, ShellCommandUnresponsiveException, IOException, SyncException {
+
+    String srcFileName = ".__temp_tar_test_file__.tmp";
+    try (ScopedRemoteFile srcFile = new ScopedRemoteFile(AdbPathUtil.resolve(PROBE_FILES_TEMP_PATH, srcFileName));
+         ScopedRemoteFile dstFile = new ScopedRemoteFile(AdbPathUtil.resolve(PROBE_FILES_TEMP_PATH, ".__temp_tar_test_file_dst__.tmp"))) {
+      // Create the remote file used for testing capability
+      srcFile.create();
+
+      // Archive source file into destination file
+      String command = new AdbShellCommandBuilder()
+        .withText("tar -cf ")
+        .withEscapedPath(dstFile.getRemotePath())
+        .withText(" -C ")
+        .withEscapedPath(PROBE_FILES_TEMP_PATH)
+        .withText(" ")
+        .withText(srcFileName)
+        .build();
+      AdbShellCommandResult commandResult = AdbShellCommandsUtil.executeCommand(myDevice, command);
+      try {
+        commandResult.throwIfError();
+
+        // If "tar" succeeded, we need to delete the destination file
+        dstFile.setDeleteOnClose(true);
+        return true;
+      }
+      catch (AdbShellCommandException e) {
+        LOGGER.info(String.format("Device \"%s\" does not seem to support the \"tar\" command: %s",
+                                  getDeviceTraceInfo(myDevice),
+                                  getCommandOutputExtract(commandResult)),
+                    e);
+        return false;
+      }
+    }
+  }
+
   /**
    * An {@link AutoCloseable} wrapper around a temporary file on a remote device.
    * The {@link #close()} method attempts to delete the file from the remote device
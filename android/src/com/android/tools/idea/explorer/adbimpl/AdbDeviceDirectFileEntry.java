@@ -20,7 +20,9 @@ import com.android.ddmlib.ShellCommandUnresponsiveException;
 import com.android.ddmlib.SyncException;
 import com.android.ddmlib.TimeoutException;
 import com.android.tools.idea.explorer.fs.DeviceFileEntry;
+import com.android.tools.idea.explorer.fs.DirectoryTransferResult;
 import com.android.tools.idea.explorer.fs.FileTransferProgress;
+import com.android.tools.idea.flags.StudioFlags;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import org.jetbrains.annotations.NotNull;
@@ -54,6 +56,9 @@ public class AdbDeviceDirectFileEntry extends AdbDeviceFileEntry {
     ListenableFuture<List<AdbFileListingEntry>> children = myDevice.getAdbFileListing().getChildrenRunAs(myEntry, myRunAs);
     return myDevice.getTaskExecutor().transform(children, result -> {
       assert result != null;
+      if (StudioFlags.DEVICE_EXPLORER_PREFETCH_ENABLED.get()) {
+        myDevice.getAdbFileListing().prefetchChildrenRunAs(result, myRunAs);
+      }
       return result.stream()
         .map(listingEntry -> new AdbDeviceDefaultFileEntry(myDevice, listingEntry, this))
         .collect(Collectors.toList());
@@ -63,6 +68,7 @@ public class AdbDeviceDirectFileEntry extends AdbDeviceFileEntry {
   @NotNull
   @Override
   public ListenableFuture<Void> delete() {
+    myDevice.getAdbFileListing().invalidate(getFullPath());
     if (isDirectory()) {
       return myDevice.getAdbFileOperations().deleteRecursiveRunAs(getFullPath(), myRunAs);
     }
@@ -74,12 +80,14 @@ public class AdbDeviceDirectFileEntry extends AdbDeviceFileEntry {
   @NotNull
   @Override
   public ListenableFuture<Void> createNewFile(@NotNull String fileName) {
+    myDevice.getAdbFileListing().invalidate(getFullPath());
     return myDevice.getAdbFileOperations().createNewFileRunAs(getFullPath(), fileName, myRunAs);
   }
 
   @NotNull
   @Override
   public ListenableFuture<Void> createNewDirectory(@NotNull String directoryName) {
+    myDevice.getAdbFileListing().invalidate(getFullPath());
     return myDevice.getAdbFileOperations().createNewDirectoryRunAs(getFullPath(), directoryName, myRunAs);
   }
 
@@ -107,12 +115,24 @@ public class AdbDeviceDirectFileEntry extends AdbDeviceFileEntry {
     });
   }
 
+  @NotNull
+  @Override
+  public ListenableFuture<DirectoryTransferResult> downloadDirectory(@NotNull Path localPath,
+                                                                     @NotNull FileTransferProgress progress) {
+    // Note: The archive is created in a temporary directory the "run-as" user can't write to.
+    if (myRunAs != null) {
+      return Futures.immediateFailedFuture(new UnsupportedOperationException("Bulk download is not supported for application files"));
+    }
+    return myDevice.getAdbFileTransfer().downloadDirectoryViaArchive(getFullPath(), localPath, progress);
+  }
+
   @NotNull
   @Override
   public ListenableFuture<Void> uploadFile(@NotNull Path localPath,
                                            @NotNull String fileName,
                                            @NotNull FileTransferProgress progress) {
     String remotePath = AdbPathUtil.resolve(myEntry.getFullPath(), fileName);
+    myDevice.getAdbFileListing().invalidate(getFullPath());
 
     // If the device is *not* root, but supports "su 0", the ADB Sync service may not have the
     // permissions upload the local file directly to the remote location.
@@ -20,16 +20,20 @@ import com.android.ddmlib.IDevice;
 import com.android.ddmlib.ShellCommandUnresponsiveException;
 import com.android.ddmlib.TimeoutException;
 import com.android.tools.idea.explorer.FutureCallbackExecutor;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import com.intellij.openapi.diagnostic.Logger;
+import net.jcip.annotations.GuardedBy;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
-import java.util.List;
-import java.util.Objects;
+import java.util.*;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.stream.Collectors;
 
@@ -38,11 +42,31 @@ import static com.android.ddmlib.FileListingService.LS_L_PATTERN;
 
 public class AdbFileListing {
   @NotNull public static final Logger LOGGER = Logger.getInstance(AdbFileListing.class);
+  /**
+   * Line printed before the output of each path of a batched command, so that the output can be split back per path.
+   */
+  @NotNull private static final String BATCH_SECTION_MARKER = "LS-LS-LS-LS";
+  @NotNull private static final String BATCH_ERROR_MARKER = "ERR-ERR-ERR-ERR";
+  /**
+   * The maximum number of paths passed to a single batched command, to keep the command line reasonably short.
+   */
+  private static final int MAX_BATCH_SIZE = 32;
+  private static final int MAX_PREFETCHED_ENTRIES = 256;
+  /**
+   * How long a prefetched listing is used for. Prefetched listings are meant for the directories the user is about to
+   * expand, and the device is not watched for changes, so older listings are considered stale and listed again.
+   */
+  private static final long PREFETCH_TIME_TO_LIVE_MILLIS = 10_000;
 
   @NotNull private final IDevice myDevice;
   @NotNull private AdbDeviceCapabilities myDeviceCapabilities;
   @NotNull private final FutureCallbackExecutor myExecutor;
   @NotNull private final AdbFileListingEntry myRoot;
+  @GuardedBy("this")
+  @NotNull private final Map<PrefetchKey, Prefetched<List<AdbFileListingEntry>>> myPrefetchedChildren = createPrefetchMap();
+  @GuardedBy("this")
+  @NotNull private final Map<PrefetchKey, Prefetched<Boolean>> myPrefetchedDirectoryLinks = createPrefetchMap();
+  private volatile long myPrefetchTimeToLiveMillis = PREFETCH_TIME_TO_LIVE_MILLIS;
 
   public AdbFileListing(@NotNull IDevice device, @NotNull AdbDeviceCapabilities deviceCapabilities, @NotNull Executor taskExecutor) {
     myDevice = device;
@@ -64,6 +88,46 @@ public class AdbFileListing {
   @NotNull
   public ListenableFuture<List<AdbFileListingEntry>> getChildrenRunAs(@NotNull AdbFileListingEntry parentEntry,
                                                                       @Nullable String runAs) {
+    ListenableFuture<List<AdbFileListingEntry>> prefetched = takePrefetched(myPrefetchedChildren, parentEntry, runAs);
+    if (prefetched != null) {
+      // If the entry could not be listed as part of a batch, list it on its own to get the actual error
+      return myExecutor.catchingAsync(prefetched, Throwable.class, error -> listChildren(parentEntry, runAs));
+    }
+    return listChildren(parentEntry, runAs);
+  }
+
+  /**
+   * Lists the children of several directories with a single shell command.
+   *
+   * <p>The future value is the children of each directory of {@code parentEntries}, in the same order. The children of
+   * a directory that could not be listed are {@code null}, in which case {@link #getChildrenRunAs} gives the actual error.
+   */
+  @NotNull
+  public ListenableFuture<List<List<AdbFileListingEntry>>> getChildrenBatchRunAs(@NotNull List<AdbFileListingEntry> parentEntries,
+                                                                                  @Nullable String runAs) {
+    return myExecutor.executeAsync(() -> {
+      List<List<AdbFileListingEntry>> result = new ArrayList<>();
+      for (int i = 0; i < parentEntries.size(); i += MAX_BATCH_SIZE) {
+        List<AdbFileListingEntry> batch = parentEntries.subList(i, Math.min(i + MAX_BATCH_SIZE, parentEntries.size()));
+        List<List<String>> sections = executeBatchCommand(batch, runAs, "ls -l \"$f\" || echo " + BATCH_ERROR_MARKER);
+        for (int j = 0; j < batch.size(); j++) {
+          AdbFileListingEntry parentEntry = batch.get(j);
+          List<String> lines = sections.get(j);
+          List<AdbFileListingEntry> entries = lines
+            .stream()
+            .map(x -> processLsOutputLine(parentEntry, x))
+            .filter(Objects::nonNull)
+            .collect(Collectors.toList());
+          boolean isError = !lines.isEmpty() && BATCH_ERROR_MARKER.equals(lines.get(lines.size() - 1).trim());
+          result.add(entries.isEmpty() && isError ? null : entries);
+        }
+      }
+      return result;
+    });
+  }
+
+  @NotNull
+  private ListenableFuture<List<AdbFileListingEntry>> listChildren(@NotNull AdbFileListingEntry parentEntry, @Nullable String runAs) {
     return myExecutor.executeAsync(() -> {
       // Run "ls -l" command and process matching output lines
       String command = getCommand(runAs, "ls -l ").withDirectoryEscapedPath(parentEntry.getFullPath()).build(); //$NON-NLS-1$
@@ -100,6 +164,134 @@ public class AdbFileListing {
       return Futures.immediateFuture(false);
     }
 
+    ListenableFuture<Boolean> prefetched = takePrefetched(myPrefetchedDirectoryLinks, entry, runAs);
+    if (prefetched != null) {
+      return myExecutor.catchingAsync(prefetched, Throwable.class, error -> isDirectoryLink(entry, runAs));
+    }
+    return isDirectoryLink(entry, runAs);
+  }
+
+  /**
+   * Determines which of several symlink entries point to a directory, with a single shell command.
+   * See {@link #isDirectoryLink(AdbFileListingEntry)}.
+   *
+   * <p>The future value contains the full path of each entry of {@code entries} that points to a directory.
+   */
+  @NotNull
+  public ListenableFuture<Set<String>> getDirectoryLinksRunAs(@NotNull List<AdbFileListingEntry> entries,
+                                                              @Nullable String runAs) {
+    List<AdbFileListingEntry> links = entries.stream().filter(AdbFileListingEntry::isSymbolicLink).collect(Collectors.toList());
+    if (links.isEmpty()) {
+      return Futures.immediateFuture(Collections.emptySet());
+    }
+
+    return myExecutor.executeAsync(() -> {
+      Set<String> result = new HashSet<>();
+      for (int i = 0; i < links.size(); i += MAX_BATCH_SIZE) {
+        List<AdbFileListingEntry> batch = links.subList(i, Math.min(i + MAX_BATCH_SIZE, links.size()));
+        List<List<String>> sections = executeBatchCommand(batch, runAs, "ls -l -d \"$f\"");
+        for (int j = 0; j < batch.size(); j++) {
+          if (sections.get(j).stream().anyMatch(line -> LS_LD_PATTERN.matcher(line).matches())) {
+            result.add(batch.get(j).getFullPath());
+          }
+        }
+      }
+      return result;
+    });
+  }
+
+  /**
+   * Lists the directories (and symlinks to directories) among {@code entries} in the background, with as few shell
+   * commands as possible, so that the next {@link #getChildrenRunAs} call for one of them does not have to go to the device.
+   *
+   * <p>A prefetched listing is only used once, and only within {@link #PREFETCH_TIME_TO_LIVE_MILLIS} of the prefetch.
+   * It is also not used if the entry passed to {@link #getChildrenRunAs} has a different modification time than the
+   * entry it was prefetched for, which happens when the parent directory was listed again since. See also
+   * {@link #invalidate(String)}.
+   */
+  public void prefetchChildrenRunAs(@NotNull List<AdbFileListingEntry> entries, @Nullable String runAs) {
+    List<AdbFileListingEntry> candidates = entries
+      .stream()
+      .filter(x -> (x.isDirectory() || x.isSymbolicLink()) && x.getDate() != null && x.getTime() != null)
+      .limit(MAX_BATCH_SIZE)
+      .collect(Collectors.toList());
+    if (candidates.isEmpty()) {
+      return;
+    }
+
+    // Register the pending results first, so that a listing requested while the prefetch is running waits for it
+    Map<String, SettableFuture<List<AdbFileListingEntry>>> futureChildren = new HashMap<>();
+    Map<String, SettableFuture<Boolean>> futureLinks = new HashMap<>();
+    for (AdbFileListingEntry entry : candidates) {
+      futureChildren.put(entry.getFullPath(), putPrefetched(myPrefetchedChildren, entry, runAs));
+      if (entry.isSymbolicLink()) {
+        futureLinks.put(entry.getFullPath(), putPrefetched(myPrefetchedDirectoryLinks, entry, runAs));
+      }
+    }
+
+    ListenableFuture<Set<String>> futureDirectoryLinks = getDirectoryLinksRunAs(candidates, runAs);
+    ListenableFuture<List<List<AdbFileListingEntry>>> futureListings = myExecutor.transformAsync(futureDirectoryLinks, directoryLinks -> {
+      assert directoryLinks != null;
+      futureLinks.forEach((path, future) -> future.set(directoryLinks.contains(path)));
+
+      List<AdbFileListingEntry> directories = new ArrayList<>();
+      for (AdbFileListingEntry entry : candidates) {
+        if (entry.isDirectory() || directoryLinks.contains(entry.getFullPath())) {
+          directories.add(entry);
+        }
+        else {
+          futureChildren.remove(entry.getFullPath()).setException(new AdbShellCommandException("Not a directory"));
+        }
+      }
+      return getChildrenBatchRunAs(directories, runAs);
+    });
+
+    myExecutor.addCallback(futureListings, new FutureCallback<List<List<AdbFileListingEntry>>>() {
+      @Override
+      public void onSuccess(@Nullable List<List<AdbFileListingEntry>> result) {
+        assert result != null;
+        int index = 0;
+        for (AdbFileListingEntry entry : candidates) {
+          SettableFuture<List<AdbFileListingEntry>> future = futureChildren.get(entry.getFullPath());
+          if (future == null) {
+            continue;
+          }
+          List<AdbFileListingEntry> children = result.get(index++);
+          if (children != null) {
+            future.set(children);
+          }
+          else {
+            future.setException(new AdbShellCommandException("Error listing directory"));
+          }
+        }
+      }
+
+      @Override
+      public void onFailure(@NotNull Throwable t) {
+        // Prefetching is best effort: callers will list the entries on their own
+        LOGGER.info("Error prefetching directory listings", t);
+        futureLinks.values().forEach(future -> future.setException(t));
+        futureChildren.values().forEach(future -> future.setException(t));
+      }
+    });
+  }
+
+  /**
+   * Forgets the prefetched listing of the directory at {@code path}, and whether it is a symlink to a directory.
+   * This should be called when the contents of the directory are modified.
+   */
+  public synchronized void invalidate(@NotNull String path) {
+    myPrefetchedChildren.keySet().removeIf(key -> key.myPath.equals(path));
+    myPrefetchedDirectoryLinks.keySet().removeIf(key -> key.myPath.equals(path));
+  }
+
+  @VisibleForTesting
+  void setPrefetchTimeToLiveMillis(long timeToLiveMillis) {
+    myPrefetchTimeToLiveMillis = timeToLiveMillis;
+  }
+
+  @NotNull
+  private ListenableFuture<Boolean> isDirectoryLink(@NotNull AdbFileListingEntry entry, @Nullable String runAs) {
     return myExecutor.executeAsync(() -> {
       // We simply need to determine whether the referent is a directory or not.
       // We do this by running `ls -ld ${link}/`.  If the referent exists and is a
@@ -126,6 +318,68 @@ public class AdbFileListing {
     });
   }
 
+  /**
+   * Runs {@code command} for each entry of {@code entries} in a single shell invocation, with the path of the entry
+   * (as a directory) in the {@code $f} variable, and returns the output lines of each entry.
+   */
+  @NotNull
+  private List<List<String>> executeBatchCommand(@NotNull List<AdbFileListingEntry> entries,
+                                                 @Nullable String runAs,
+                                                 @NotNull String command)
+    throws TimeoutException, AdbCommandRejectedException, ShellCommandUnresponsiveException, IOException, AdbShellCommandException {
+    AdbShellCommandBuilder builder = getCommand(runAs, "for f in");
+    for (AdbFileListingEntry entry : entries) {
+      builder.withText(" ").withDirectoryEscapedPath(entry.getFullPath());
+    }
+    builder.withText("; do echo " + BATCH_SECTION_MARKER + "; " + command + "; done");
+    AdbShellCommandResult commandResult = AdbShellCommandsUtil.executeCommandNoErrorCheck(myDevice, builder.build());
+
+    List<List<String>> sections = new ArrayList<>();
+    for (String line : commandResult.getOutput()) {
+      if (BATCH_SECTION_MARKER.equals(line.trim())) {
+        sections.add(new ArrayList<>());
+      }
+      else if (!sections.isEmpty()) {
+        sections.get(sections.size() - 1).add(line);
+      }
+    }
+    if (sections.size() != entries.size()) {
+      throw AdbShellCommandException.create("Unexpected output of batched shell command (%d sections for %d paths)",
+                                            sections.size(), entries.size());
+    }
+    return sections;
+  }
+
+  @NotNull
+  private synchronized <V> SettableFuture<V> putPrefetched(@NotNull Map<PrefetchKey, Prefetched<V>> map,
+                                                           @NotNull AdbFileListingEntry entry,
+                                                           @Nullable String runAs) {
+    Prefetched<V> prefetched = new Prefetched<>(entry);
+    map.put(new PrefetchKey(entry.getFullPath(), runAs), prefetched);
+    return prefetched.myFuture;
+  }
+
+  @Nullable
+  private synchronized <V> ListenableFuture<V> takePrefetched(@NotNull Map<PrefetchKey, Prefetched<V>> map,
+                                                              @NotNull AdbFileListingEntry entry,
+                                                              @Nullable String runAs) {
+    Prefetched<V> prefetched = map.remove(new PrefetchKey(entry.getFullPath(), runAs));
+    if (prefetched == null || !prefetched.isUpToDate(entry, myPrefetchTimeToLiveMillis)) {
+      return null;
+    }
+    return prefetched.myFuture;
+  }
+
+  @NotNull
+  private static <V> Map<PrefetchKey, Prefetched<V>> createPrefetchMap() {
+    return new LinkedHashMap<PrefetchKey, Prefetched<V>>() {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<PrefetchKey, Prefetched<V>> eldest) {
+        return size() > MAX_PREFETCHED_ENTRIES;
+      }
+    };
+  }
+
   @Nullable
   private static AdbFileListingEntry processLsOutputLine(@NotNull AdbFileListingEntry parentEntry, @NotNull String line) {
     // no need to handle empty lines.
@@ -220,4 +474,53 @@ public class AdbFileListing {
     }
     return command.withText(text);
   }
-}
\ No newline at end of file
+
+  private static final class PrefetchKey {
+    @NotNull private final String myPath;
+    @Nullable private final String myRunAs;
+
+    PrefetchKey(@NotNull String path, @Nullable String runAs) {
+      myPath = path;
+      myRunAs = runAs;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      PrefetchKey key = (PrefetchKey)o;
+      return myPath.equals(key.myPath) && Objects.equals(myRunAs, key.myRunAs);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(myPath, myRunAs);
+    }
+  }
+
+  /**
+   * A prefetched result, along with when it was prefetched and the modification time of the entry it was prefetched for.
+   */
+  private static final class Prefetched<V> {
+    @Nullable private final String myDate;
+    @Nullable private final String myTime;
+    private final long myStartNanos = System.nanoTime();
+    @NotNull private final SettableFuture<V> myFuture = SettableFuture.create();
+
+    Prefetched(@NotNull AdbFileListingEntry entry) {
+      myDate = entry.getDate();
+      myTime = entry.getTime();
+    }
+
+    boolean isUpToDate(@NotNull AdbFileListingEntry entry, long timeToLiveMillis) {
+      if (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - myStartNanos) >= timeToLiveMillis) {
+        return false;
+      }
+      return myDate != null && myTime != null && myDate.equals(entry.getDate()) && myTime.equals(entry.getTime());
+    }
+  }
+}
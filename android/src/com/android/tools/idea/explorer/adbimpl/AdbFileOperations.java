@@ -237,6 +237,40 @@ public class AdbFileOperations {
     });
   }
 
+  /**
+   * Archives the contents of the directory at {@code directoryPath}, recursively, into the {@code archivePath} file
+   * using the "tar" command, and returns the size of the archive.
+   *
+   * <p>The future completes with an {@link UnsupportedOperationException} if the device does not support "tar".
+   */
+  @NotNull
+  public ListenableFuture<Long> createArchive(@NotNull String directoryPath, @NotNull String archivePath) {
+    return myExecutor.executeAsync(() -> {
+      if (!myDeviceCapabilities.supportsTarCommand()) {
+        throw new UnsupportedOperationException("Device does not support the \"tar\" command");
+      }
+      String command = getCommand(null, "tar -cf ")
+        .withEscapedPath(archivePath)
+        .withText(" -C ")
+        .withDirectoryEscapedPath(directoryPath)
+        .withText(" . && wc -c ")
+        .withEscapedPath(archivePath)
+        .build();
+      AdbShellCommandResult commandResult = AdbShellCommandsUtil.executeCommand(myDevice, command);
+      commandResult.throwIfError();
+
+      // The last line is the output of "wc -c", e.g. "12345 /data/local/tmp/temp"
+      List<String> output = commandResult.getOutput().stream().filter(x -> !x.trim().isEmpty()).collect(Collectors.toList());
+      String sizeText = output.isEmpty() ? "" : output.get(output.size() - 1).trim().split("\\s+")[0];
+      try {
+        return Long.parseLong(sizeText);
+      }
+      catch (NumberFormatException e) {
+        throw AdbShellCommandException.create("Unexpected output of \"wc -c\" for archive \"%s\": %s", archivePath, sizeText);
+      }
+    });
+  }
+
   @NotNull
   public ListenableFuture<String> createTempFile(@NotNull String tempPath) {
     return createTempFileRunAs(tempPath, null);
@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.explorer.adbimpl;
+
+import com.android.tools.idea.explorer.fs.DirectoryTransferResult;
+import com.android.tools.idea.explorer.fs.FileTransferProgress;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Extracts a tar archive, as created by the "tar" command of Android devices, to a local directory.
+ *
+ * <p>Both the ustar format and the GNU and pax extensions for long names are supported. Directories, regular
+ * files and hard links (as copies of the files they link to) are extracted. Other entries (e.g. symbolic links
+ * or devices) can't be represented faithfully, so the extraction fails with an {@link IOException} instead of
+ * leaving them out.
+ */
+final class TarArchiveExtractor {
+  private static final int BLOCK_SIZE = 512;
+
+  private TarArchiveExtractor() {
+  }
+
+  /**
+   * Extracts the archive to {@code directoryPath}, reporting the {@code progress} in bytes of extracted file
+   * contents, with an unknown total. Returns the number of files and directories extracted, not counting
+   * {@code directoryPath} itself, and the total number of bytes of their contents.
+   *
+   * @throws CancellationException if the {@code progress} is cancelled
+   */
+  @NotNull
+  public static DirectoryTransferResult extract(@NotNull Path archivePath,
+                                                @NotNull Path directoryPath,
+                                                @NotNull FileTransferProgress progress) throws IOException {
+    Path rootPath = directoryPath.toAbsolutePath().normalize();
+    Files.createDirectories(rootPath);
+
+    int fileCount = 0;
+    int directoryCount = 0;
+    long contentBytes = 0;
+    try (InputStream stream = new BufferedInputStream(Files.newInputStream(archivePath))) {
+      byte[] header = new byte[BLOCK_SIZE];
+      String longName = null;
+      String longLinkName = null;
+      while (readBlock(stream, header) && !isZeroBlock(header)) {
+        if (progress.isCancelled()) {
+          throw new CancellationException();
+        }
+
+        String name = getString(header, 0, 100);
+        if (getString(header, 257, 6).startsWith("ustar")) {
+          String prefix = getString(header, 345, 155);
+          if (!prefix.isEmpty()) {
+            name = prefix + "/" + name;
+          }
+        }
+        long size = getSize(header);
+        char type = (char)header[156];
+
+        // Extended headers apply to the next entry
+        if (type == 'L') {
+          longName = trimTrailingNul(readString(stream, size));
+          continue;
+        }
+        if (type == 'K') {
+          longLinkName = trimTrailingNul(readString(stream, size));
+          continue;
+        }
+        if (type == 'x') {
+          String records = readString(stream, size);
+          String paxPath = getPaxRecord(records, "path");
+          if (paxPath != null) {
+            longName = paxPath;
+          }
+          String paxLinkPath = getPaxRecord(records, "linkpath");
+          if (paxLinkPath != null) {
+            longLinkName = paxLinkPath;
+          }
+          continue;
+        }
+        if (type == 'g') {
+          // Global pax headers only hold metadata we don't restore
+          skip(stream, getPaddedSize(size));
+          continue;
+        }
+        if (longName != null) {
+          name = longName;
+          longName = null;
+        }
+        String linkName = getString(header, 157, 100);
+        if (longLinkName != null) {
+          linkName = longLinkName;
+          longLinkName = null;
+        }
+
+        Path path = resolve(rootPath, name);
+        switch (type) {
+          case '5':
+            Files.createDirectories(path);
+            if (!path.equals(rootPath)) {
+              directoryCount++;
+            }
+            skip(stream, getPaddedSize(size));
+            break;
+          case '0':
+          case '7':
+          case '\0':
+            Files.createDirectories(path.getParent());
+            try (OutputStream output = Files.newOutputStream(path)) {
+              contentBytes = copy(stream, output, size, contentBytes, progress);
+            }
+            fileCount++;
+            skip(stream, getPaddedSize(size) - size);
+            break;
+          case '1':
+            // Hard links always come after the entry of the file they link to
+            Path targetPath = resolve(rootPath, linkName);
+            if (!Files.isRegularFile(targetPath)) {
+              throw new IOException(String.format("Archive entry \"%s\" links to missing file \"%s\"", name, linkName));
+            }
+            Files.createDirectories(path.getParent());
+            Files.copy(targetPath, path, StandardCopyOption.REPLACE_EXISTING);
+            fileCount++;
+            contentBytes += Files.size(path);
+            progress.progress(contentBytes, -1);
+            skip(stream, getPaddedSize(size));
+            break;
+          default:
+            throw new IOException(String.format("Archive entry \"%s\" of type '%c' is not supported", name, type));
+        }
+      }
+    }
+    return new DirectoryTransferResult(fileCount, directoryCount, contentBytes);
+  }
+
+  @NotNull
+  private static Path resolve(@NotNull Path rootPath, @NotNull String name) throws IOException {
+    Path path = rootPath.resolve(name).normalize();
+    if (!path.startsWith(rootPath)) {
+      throw new IOException(String.format("Archive entry \"%s\" is outside of the destination directory", name));
+    }
+    return path;
+  }
+
+  private static boolean readBlock(@NotNull InputStream stream, @NotNull byte[] block) throws IOException {
+    int count = 0;
+    while (count < block.length) {
+      int read = stream.read(block, count, block.length - count);
+      if (read < 0) {
+        if (count == 0) {
+          // Archives should end with zero blocks, but an archive without them is not an error
+          return false;
+        }
+        throw new EOFException("Unexpected end of archive");
+      }
+      count += read;
+    }
+    return true;
+  }
+
+  private static boolean isZeroBlock(@NotNull byte[] block) {
+    for (byte b : block) {
+      if (b != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @NotNull
+  private static String getString(@NotNull byte[] header, int offset, int length) {
+    int end = offset;
+    while (end < offset + length && header[end] != 0) {
+      end++;
+    }
+    return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+  }
+
+  private static long getSize(@NotNull byte[] header) throws IOException {
+    // Sizes of 8GB and more are stored as big-endian binary numbers, flagged by the high bit of the first byte
+    if ((header[124] & 0x80) != 0) {
+      long size = 0;
+      for (int i = 125; i < 136; i++) {
+        size = (size << 8) | (header[i] & 0xff);
+      }
+      return size;
+    }
+    String text = getString(header, 124, 12).trim();
+    try {
+      return text.isEmpty() ? 0 : Long.parseLong(text, 8);
+    }
+    catch (NumberFormatException e) {
+      throw new IOException(String.format("Invalid size \"%s\" in archive entry header", text), e);
+    }
+  }
+
+  private static long getPaddedSize(long size) {
+    return (size + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+  }
+
+  @NotNull
+  private static String readString(@NotNull InputStream stream, long size) throws IOException {
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("Archive entry header is too large");
+    }
+    byte[] bytes = new byte[(int)size];
+    int count = 0;
+    while (count < bytes.length) {
+      int read = stream.read(bytes, count, bytes.length - count);
+      if (read < 0) {
+        throw new EOFException("Unexpected end of archive");
+      }
+      count += read;
+    }
+    skip(stream, getPaddedSize(size) - size);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  @NotNull
+  private static String trimTrailingNul(@NotNull String value) {
+    int end = value.length();
+    while (end > 0 && value.charAt(end - 1) == '\0') {
+      end--;
+    }
+    return value.substring(0, end);
+  }
+
+  /**
+   * Returns the value of the {@code key} record of a pax extended header, made of "length key=value\n" records.
+   */
+  @Nullable
+  private static String getPaxRecord(@NotNull String records, @NotNull String key) {
+    String prefix = key + "=";
+    for (String record : records.split("\n")) {
+      int space = record.indexOf(' ');
+      if (space >= 0 && record.startsWith(prefix, space + 1)) {
+        return record.substring(space + 1 + prefix.length());
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Copies {@code size} bytes of file contents, reporting them on top of the {@code contentBytes} extracted before.
+   * Returns the number of bytes of file contents extracted so far.
+   */
+  private static long copy(@NotNull InputStream stream,
+                           @NotNull OutputStream output,
+                           long size,
+                           long contentBytes,
+                           @NotNull FileTransferProgress progress) throws IOException {
+    byte[] buffer = new byte[64 * 1024];
+    long remaining = size;
+    while (remaining > 0) {
+      int read = stream.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+      if (read < 0) {
+        throw new EOFException("Unexpected end of archive");
+      }
+      output.write(buffer, 0, read);
+      remaining -= read;
+      contentBytes += read;
+      progress.progress(contentBytes, -1);
+    }
+    return contentBytes;
+  }
+
+  private static void skip(@NotNull InputStream stream, long count) throws IOException {
+    long remaining = count;
+    while (remaining > 0) {
+      long skipped = stream.skip(remaining);
+      if (skipped <= 0) {
+        if (stream.read() < 0) {
+          throw new EOFException("Unexpected end of archive");
+        }
+        skipped = 1;
+      }
+      remaining -= skipped;
+    }
+  }
+}
@@ -15,6 +15,7 @@
  */
 package com.android.tools.idea.explorer.fs;
 
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -93,6 +94,21 @@ public interface DeviceFileEntry {
   ListenableFuture<Void> downloadFile(@NotNull Path localPath,
                                       @NotNull FileTransferProgress progress);
 
+  /**
+   * Downloads the contents of the {@link DeviceFileEntry} directory, recursively, to a local directory,
+   * as a single bulk transfer. The <code>progress</code> is reported in bytes of file contents, and the total
+   * may be <code>-1</code> if it is not known in advance. Completes with the number of files and directories
+   * transferred, and the size of their contents.
+   *
+   * <p>Completes with an {@link UnsupportedOperationException} if the entry does not support bulk transfers,
+   * in which case each file should be downloaded with {@link #downloadFile}.
+   */
+  @NotNull
+  default ListenableFuture<DirectoryTransferResult> downloadDirectory(@NotNull Path localPath,
+                                                                      @NotNull FileTransferProgress progress) {
+    return Futures.immediateFailedFuture(new UnsupportedOperationException("Bulk download is not supported"));
+  }
+
   /**
    * Uploads the contents of a local file to a remote {@link DeviceFileEntry} directory.
    */
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.explorer.fs;
+
+/**
+ * The contents transferred by a {@link DeviceFileEntry#downloadDirectory} operation, not including
+ * the directory itself.
+ */
+public final class DirectoryTransferResult {
+  private final int myFileCount;
+  private final int myDirectoryCount;
+  private final long myByteCount;
+
+  public DirectoryTransferResult(int fileCount, int directoryCount, long byteCount) {
+    myFileCount = fileCount;
+    myDirectoryCount = directoryCount;
+    myByteCount = byteCount;
+  }
+
+  public int getFileCount() {
+    return myFileCount;
+  }
+
+  public int getDirectoryCount() {
+    return myDirectoryCount;
+  }
+
+  public long getByteCount() {
+    return myByteCount;
+  }
+}
@@ -137,12 +137,37 @@ public final class StudioFlags {
     RUNDEBUG_GROUP, "logcat.console.output.enabled", "Show logcat process output in Run/Debug console window",
     "When running or debugging an Android process, output the logcat output of the process in the console window.",
     true);
+  public static final Flag<Boolean> RUNDEBUG_LOGCAT_HISTORY_ENABLED = Flag.create(
+    RUNDEBUG_GROUP, "logcat.history.enabled", "Store logcat history on disk",
+    "Store the logcat output of each device session on disk, so that it can be read and searched after it is gone from the console.",
+    false);
+
+  private static final FlagGroup DEVICE_EXPLORER = new FlagGroup(FLAGS, "device.explorer", "Device Explorer");
+  public static final Flag<Boolean> DEVICE_EXPLORER_PREFETCH_ENABLED = Flag.create(
+    DEVICE_EXPLORER, "prefetch.enabled", "Prefetch directory listings",
+    "List the child directories of an expanded directory in the background, with batched shell commands, so that expanding them is instant.",
+    false);
+  public static final Flag<Boolean> DEVICE_EXPLORER_BULK_TRANSFER_ENABLED = Flag.create(
+    DEVICE_EXPLORER, "bulk.transfer.enabled", "Download directories in bulk",
+    "Download a directory as a single archive when the device supports it, and otherwise download several of its files at the same time.",
+    false);
 
   private static final FlagGroup GRADLE_IDE = new FlagGroup(FLAGS, "gradle.ide", "Gradle/IDE");
   public static final Flag<Boolean> GRADLE_INVOCATIONS_INDEXING_AWARE = Flag.create(
     GRADLE_IDE, "indexing.aware", "Execute gradle actions in indexing-aware mode",
     "Make Gradle actions and IDE indexing mutually exclusive to allow better utilisation of machine resources.",
     false);
+  public static final Flag<Boolean> GRADLE_DSL_MODEL_CACHE_ENABLED = Flag.create(
+    GRADLE_IDE, "dsl.model.cache", "Parse build files ahead of time",
+    "Parse the build.gradle files of all modules in parallel, and hand each parsed model to the first caller requesting it, " +
+    "unless the file, or a file it depends on, was modified since.",
+    false);
+
+  private static final FlagGroup RESOURCES = new FlagGroup(FLAGS, "resources", "Resources");
+  public static final Flag<Integer> RESOURCES_AAR_CACHE_WEIGHT = Flag.create(
+    RESOURCES, "aar.cache.weight", "AAR resource cache budget",
+    "Maximum number of resource items and declared ids of AAR libraries kept in memory for reuse.",
+    1_000_000);
 
   private StudioFlags() {
   }
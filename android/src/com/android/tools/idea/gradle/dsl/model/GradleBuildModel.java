@@ -15,6 +15,7 @@
  */
 package com.android.tools.idea.gradle.dsl.model;
 
+import com.android.tools.idea.flags.StudioFlags;
 import com.android.tools.idea.gradle.dsl.model.android.AndroidModel;
 import com.android.tools.idea.gradle.dsl.model.build.BuildScriptModel;
 import com.android.tools.idea.gradle.dsl.model.dependencies.DependenciesModel;
@@ -61,6 +62,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 
 import static com.android.SdkConstants.FN_GRADLE_PROPERTIES;
 import static com.android.tools.idea.gradle.dsl.model.GradlePropertiesModel.parsePropertiesFile;
@@ -87,13 +89,38 @@ public class GradleBuildModel extends GradleFileModel {
   @Nullable
   public static GradleBuildModel get(@NotNull Project project) {
     VirtualFile file = getGradleBuildFile(getBaseDirPath(project));
-    return file != null ? parseBuildFile(file, project, project.getName()) : null;
+    return file != null ? getOrParseBuildFile(file, project, project.getName()) : null;
   }
 
   @Nullable
   public static GradleBuildModel get(@NotNull Module module) {
     VirtualFile file = getGradleBuildFile(module);
-    return file != null ? parseBuildFile(file, module.getProject(), module.getName()) : null;
+    return file != null ? getOrParseBuildFile(file, module.getProject(), module.getName()) : null;
+  }
+
+  /**
+   * Reads the build file of the given module with {@code reader}. The model passed to the reader may be shared with other callers, so
+   * the reader must not modify it, nor keep it after returning; use {@link #get(Module)} to make changes. Returns null if the module has
+   * no build file.
+   */
+  @Nullable
+  public static <T> T read(@NotNull Module module, @NotNull Function<GradleBuildModel, T> reader) {
+    VirtualFile file = getGradleBuildFile(module);
+    if (file == null) {
+      return null;
+    }
+    if (StudioFlags.GRADLE_DSL_MODEL_CACHE_ENABLED.get()) {
+      return GradleBuildModelCache.getInstance(module.getProject()).read(file, module.getName(), reader);
+    }
+    return reader.apply(parseBuildFile(file, module.getProject(), module.getName()));
+  }
+
+  @NotNull
+  private static GradleBuildModel getOrParseBuildFile(@NotNull VirtualFile file, @NotNull Project project, @NotNull String moduleName) {
+    if (StudioFlags.GRADLE_DSL_MODEL_CACHE_ENABLED.get()) {
+      return GradleBuildModelCache.getInstance(project).get(file, moduleName);
+    }
+    return parseBuildFile(file, project, moduleName);
   }
 
   @NotNull
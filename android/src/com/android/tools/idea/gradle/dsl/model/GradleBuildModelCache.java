@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.gradle.dsl.model;
+
+import com.android.tools.idea.gradle.dsl.parser.GradleDslFile;
+import com.google.common.annotations.VisibleForTesting;
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import static com.android.SdkConstants.FN_GRADLE_PROPERTIES;
+import static com.android.tools.idea.gradle.util.GradleUtil.getGradleBuildFile;
+import static com.android.tools.idea.gradle.util.GradleUtil.getGradleSettingsFilePath;
+import static com.android.tools.idea.gradle.util.Projects.getBaseDirPath;
+import static com.intellij.openapi.vfs.VfsUtilCore.virtualToIoFile;
+
+/**
+ * Caches the {@link GradleBuildModel}s of a project's build files.
+ * <p>
+ * Models are mutable and not thread-safe, so there are two kinds of cached models:
+ * <ul>
+ * <li>Models parsed ahead of time by {@link #parse(Module[])}, on several threads. Each of them is handed to a single caller of
+ * {@link #get(VirtualFile, String)}, which then owns it and may modify it.</li>
+ * <li>Shared models, used by every caller of {@link #read(VirtualFile, String, Function)} that only reads the build file, e.g. inspections.
+ * They are kept until one of their files is modified, so only the build files that changed since are parsed again.</li>
+ * </ul>
+ * A model is only returned while the files its contents depend on (the build file, its gradle.properties file, the settings file and
+ * the build files of its parent modules) are unmodified since it was parsed. Otherwise the build file is parsed again.
+ */
+public class GradleBuildModelCache {
+  private static final Logger LOG = Logger.getInstance(GradleBuildModelCache.class);
+
+  /**
+   * The modification stamp recorded for a file that does not exist, or has no PSI.
+   */
+  private static final long NO_FILE = -1;
+
+  @NotNull private final Project myProject;
+  @NotNull private final ConcurrentMap<VirtualFile, CachedModel> myPrefetchedModels = new ConcurrentHashMap<>();
+  @NotNull private final ConcurrentMap<VirtualFile, CachedModel> mySharedModels = new ConcurrentHashMap<>();
+
+  @NotNull
+  public static GradleBuildModelCache getInstance(@NotNull Project project) {
+    return ServiceManager.getService(project, GradleBuildModelCache.class);
+  }
+
+  public GradleBuildModelCache(@NotNull Project project) {
+    myProject = project;
+  }
+
+  /**
+   * Returns a model of the given build file that no other caller has. The model parsed ahead of time is returned if it is still up to
+   * date, otherwise the build file is parsed again.
+   */
+  @NotNull
+  public GradleBuildModel get(@NotNull VirtualFile file, @NotNull String moduleName) {
+    CachedModel cached = myPrefetchedModels.remove(file);
+    if (cached != null && cached.myModuleName.equals(moduleName) && isUpToDate(cached)) {
+      return cached.myModel;
+    }
+    return GradleBuildModel.parseBuildFile(file, myProject, moduleName);
+  }
+
+  /**
+   * Reads the given build file with {@code reader}, using a model that is shared by all callers of this method. The build file is only
+   * parsed again if it, or another file the model depends on, was modified since the model was parsed. The reader must not modify the
+   * model, nor keep it after returning.
+   */
+  @Nullable
+  public <T> T read(@NotNull VirtualFile file, @NotNull String moduleName, @NotNull Function<GradleBuildModel, T> reader) {
+    CachedModel cached = mySharedModels.get(file);
+    if (cached == null || !cached.myModuleName.equals(moduleName) || !isUpToDate(cached)) {
+      cached = parseAndRecordDependencies(file, moduleName);
+      mySharedModels.put(file, cached);
+    }
+    // Models are not thread-safe, and even reading a block that is not in the build file adds an empty one to the model.
+    synchronized (cached) {
+      return reader.apply(cached.myModel);
+    }
+  }
+
+  /**
+   * Drops the models parsed ahead of time that were not handed out.
+   */
+  public void clearPrefetched() {
+    myPrefetchedModels.clear();
+  }
+
+  /**
+   * Parses the build files of the given modules, that don't have an up to date model yet, using several threads. Returns when all of
+   * them have been parsed.
+   */
+  public void parse(@NotNull Module[] modules) {
+    Map<VirtualFile, String> files = new LinkedHashMap<>();
+    for (Module module : modules) {
+      VirtualFile file = getGradleBuildFile(module);
+      if (file != null) {
+        files.put(file, module.getName());
+      }
+    }
+    Application application = ApplicationManager.getApplication();
+    if (files.size() < 2 || application.isWriteAccessAllowed()) {
+      // Parsing happens in read actions, which can't run on other threads until the write action is finished.
+      files.forEach(this::parseIfNeeded);
+      return;
+    }
+
+    int maxThreads = Math.min(files.size(), Runtime.getRuntime().availableProcessors());
+    ExecutorService executor = AppExecutorUtil.createBoundedApplicationPoolExecutor("GradleBuildModelCache", maxThreads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      files.forEach((file, moduleName) -> futures.add(executor.submit(() -> parseIfNeeded(file, moduleName))));
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        catch (ExecutionException e) {
+          // The build file is parsed again, and the error reported, when its model is requested.
+          LOG.warn("Failed to parse build file", e.getCause());
+        }
+      }
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  private void parseIfNeeded(@NotNull VirtualFile file, @NotNull String moduleName) {
+    CachedModel cached = myPrefetchedModels.get(file);
+    if (cached != null && cached.myModuleName.equals(moduleName) && isUpToDate(cached)) {
+      return;
+    }
+    myPrefetchedModels.put(file, parseAndRecordDependencies(file, moduleName));
+  }
+
+  @NotNull
+  private CachedModel parseAndRecordDependencies(@NotNull VirtualFile file, @NotNull String moduleName) {
+    // Files can't be modified while parsing and recording their modification stamps, as both happen in the same read action.
+    return ApplicationManager.getApplication().runReadAction((Computable<CachedModel>)() -> {
+      GradleBuildModel model = GradleBuildModel.parseBuildFile(file, myProject, moduleName);
+      return new CachedModel(model, moduleName, getDependencies(model));
+    });
+  }
+
+  @VisibleForTesting
+  boolean isCached(@NotNull VirtualFile file) {
+    CachedModel cached = myPrefetchedModels.get(file);
+    return cached != null && isUpToDate(cached);
+  }
+
+  @NotNull
+  private List<Dependency> getDependencies(@NotNull GradleBuildModel model) {
+    List<Dependency> dependencies = new ArrayList<>();
+    dependencies.add(createDependency(getGradleSettingsFilePath(getBaseDirPath(myProject))));
+    for (GradleDslFile dslFile = model.myGradleDslFile; dslFile != null; dslFile = dslFile.getParentModuleDslFile()) {
+      dependencies.add(createDependency(virtualToIoFile(dslFile.getFile())));
+      dependencies.add(createDependency(new File(dslFile.getDirectoryPath(), FN_GRADLE_PROPERTIES)));
+    }
+    return dependencies;
+  }
+
+  @NotNull
+  private Dependency createDependency(@NotNull File path) {
+    VirtualFile file = findFile(path);
+    return new Dependency(path, getModificationStamp(file), getPsiModificationStamp(file));
+  }
+
+  private boolean isUpToDate(@NotNull CachedModel cached) {
+    return ApplicationManager.getApplication().runReadAction((Computable<Boolean>)() -> {
+      for (Dependency dependency : cached.myDependencies) {
+        VirtualFile file = findFile(dependency.myPath);
+        if (getModificationStamp(file) != dependency.myModificationStamp ||
+            getPsiModificationStamp(file) != dependency.myPsiModificationStamp) {
+          return false;
+        }
+      }
+      return true;
+    });
+  }
+
+  @Nullable
+  private static VirtualFile findFile(@NotNull File path) {
+    // The file system is not refreshed here, as files are only looked up again with a refresh when they are parsed.
+    VirtualFile file = LocalFileSystem.getInstance().findFileByIoFile(path);
+    return file != null && file.isValid() ? file : null;
+  }
+
+  private static long getModificationStamp(@Nullable VirtualFile file) {
+    return file != null ? file.getModificationStamp() : NO_FILE;
+  }
+
+  private long getPsiModificationStamp(@Nullable VirtualFile file) {
+    // The PSI stamp also changes with unsaved edits, once they are committed to PSI, which is what the parser reads.
+    PsiFile psiFile = file != null ? PsiManager.getInstance(myProject).findFile(file) : null;
+    return psiFile != null ? psiFile.getModificationStamp() : NO_FILE;
+  }
+
+  private static class CachedModel {
+    @NotNull private final GradleBuildModel myModel;
+    @NotNull private final String myModuleName;
+    @NotNull private final List<Dependency> myDependencies;
+
+    CachedModel(@NotNull GradleBuildModel model, @NotNull String moduleName, @NotNull List<Dependency> dependencies) {
+      myModel = model;
+      myModuleName = moduleName;
+      myDependencies = dependencies;
+    }
+  }
+
+  private static class Dependency {
+    @NotNull private final File myPath;
+    private final long myModificationStamp;
+    private final long myPsiModificationStamp;
+
+    Dependency(@NotNull File path, long modificationStamp, long psiModificationStamp) {
+      myPath = path;
+      myModificationStamp = modificationStamp;
+      myPsiModificationStamp = psiModificationStamp;
+    }
+  }
+}
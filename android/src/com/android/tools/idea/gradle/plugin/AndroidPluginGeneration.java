@@ -179,9 +179,8 @@ public abstract class AndroidPluginGeneration {
     }
 
     // Now look at the applied plugins in the build.gradle file.
-    GradleBuildModel buildModel = GradleBuildModel.get(module);
-    if (buildModel != null) {
-      List<String> appliedPlugins = getValues(buildModel.appliedPlugins());
+    List<String> appliedPlugins = GradleBuildModel.read(module, buildModel -> getValues(buildModel.appliedPlugins()));
+    if (appliedPlugins != null) {
       for (AndroidPluginGeneration generation : ourValues) {
         if (appliedPlugins.contains(generation.getApplicationPluginId()) || appliedPlugins.contains(generation.getLibraryPluginId())) {
           return generation;
@@ -34,6 +34,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import static com.android.builder.model.level2.Library.*;
@@ -47,7 +48,8 @@ public class IdeDependenciesFactory {
   // When creating IdeLevel2Dependencies, check if current library is available in this map,
   // if it's available, don't create new one, simple add reference to it.
   // If it's not available, create new instance and save to this map, so it can be reused the next time when the same library is added.
-  @NotNull private final Map<String, Library> myLibrariesById = new HashMap<>();
+  // Dependencies of several artifacts can be created at the same time, from different threads.
+  @NotNull private final Map<String, Library> myLibrariesById = new ConcurrentHashMap<>();
 
   @NotNull private final IdeLibraryFactory myLibraryFactory = new IdeLibraryFactory();
   @NotNull private final BuildFolderPaths myBuildFolderPaths = new BuildFolderPaths();
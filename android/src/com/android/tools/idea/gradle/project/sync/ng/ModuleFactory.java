@@ -72,6 +72,16 @@ class ModuleFactory {
     return newModule;
   }
 
+  /**
+   * Returns the path of the root folder of the module {@link #createModule(SyncAction.ModuleModels)} creates for the given models.
+   */
+  @NotNull
+  File getModuleRootFolderPath(@NotNull SyncAction.ModuleModels moduleModels) {
+    GradleProject gradleProject = moduleModels.findModel(GradleProject.class);
+    assert gradleProject != null;
+    return new File(getModulePath(gradleProject, moduleModels));
+  }
+
   @NotNull
   private File getModuleImlFilePath(@NotNull GradleProject gradleProject, @NotNull SyncAction.ModuleModels moduleModels) {
     String modulePath = getModulePath(gradleProject, moduleModels);
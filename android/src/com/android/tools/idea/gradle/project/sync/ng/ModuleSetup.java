@@ -37,10 +37,14 @@ import com.android.tools.idea.gradle.project.sync.setup.module.ndk.ContentRootMo
 import com.android.tools.idea.gradle.project.sync.setup.module.ndk.NdkFacetModuleSetupStep;
 import com.android.tools.idea.gradle.project.sync.setup.post.ProjectCleanup;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.externalSystem.service.project.IdeModifiableModelsProvider;
 import com.intellij.openapi.module.Module;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.project.Project;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import org.gradle.tooling.model.GradleProject;
 import org.jetbrains.android.facet.AndroidFacet;
 import org.jetbrains.annotations.NotNull;
@@ -48,14 +52,24 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import static com.android.tools.idea.gradle.project.sync.ng.AndroidModuleProcessor.MODULE_GRADLE_MODELS_KEY;
 import static com.android.tools.idea.gradle.project.sync.ng.GradleSyncProgress.notifyProgress;
 import static com.android.tools.idea.gradle.project.sync.setup.Facets.removeAllFacets;
-import static com.android.tools.idea.gradle.util.Projects.findModuleRootFolderPath;
 
 abstract class ModuleSetup {
+  /**
+   * Converts the models of all modules, using several threads. Called before {@link #setUpModules}, outside of the write action.
+   */
+  abstract void convertModels(@NotNull SyncAction.ProjectModels projectModels, @NotNull ProgressIndicator indicator);
+
   abstract void setUpModules(@NotNull SyncAction.ProjectModels projectModels, @NotNull ProgressIndicator indicator);
 
   static class Factory {
@@ -73,6 +87,8 @@ abstract class ModuleSetup {
 
   @VisibleForTesting
   static class ModuleSetupImpl extends ModuleSetup {
+    private static final Logger LOG = Logger.getInstance(ModuleSetup.class);
+
     @NotNull private final Project myProject;
     @NotNull private final IdeModifiableModelsProvider myModelsProvider;
     @NotNull private final GradleSyncState mySyncState;
@@ -92,6 +108,9 @@ abstract class ModuleSetup {
     @NotNull private final IdeDependenciesFactory myDependenciesFactory;
 
     @NotNull private final List<Module> myAndroidModules = new ArrayList<>();
+    // Key: Gradle path of a module.
+    @NotNull private final Map<String, ConvertedModels> myConvertedModels = new HashMap<>();
+    private boolean myModelsConverted;
 
     ModuleSetupImpl(@NotNull Project project,
                     @NotNull IdeModifiableModelsProvider modelsProvider,
@@ -130,21 +149,83 @@ abstract class ModuleSetup {
     }
 
     @Override
-    void setUpModules(@NotNull SyncAction.ProjectModels projectModels, @NotNull ProgressIndicator indicator) {
-      notifyProgress(indicator, "Configuring modules");
+    void convertModels(@NotNull SyncAction.ProjectModels projectModels, @NotNull ProgressIndicator indicator) {
+      notifyProgress(indicator, "Converting models");
+      long startTimeMillis = System.currentTimeMillis();
       GlobalLibraryMap globalLibraryMap = projectModels.getGlobalLibraryMap();
       if (globalLibraryMap != null) {
         myDependenciesFactory.setupGlobalLibraryMap(globalLibraryMap);
       }
+      populateModuleBuildDirs(projectModels);
+
+      // Converting models, including their dependency graphs, does not read or write any IDE model, and can run in parallel.
+      ExecutorService executor =
+        AppExecutorUtil.createBoundedApplicationPoolExecutor("ModuleSetup", Runtime.getRuntime().availableProcessors());
+      try {
+        Map<String, Future<ConvertedModels>> conversionsByPath = new LinkedHashMap<>();
+        for (String gradlePath : projectModels.getProjectPaths()) {
+          SyncAction.ModuleModels moduleModels = projectModels.getModels(gradlePath);
+          if (moduleModels != null) {
+            conversionsByPath.put(gradlePath, executor.submit(() -> convertModuleModels(moduleModels)));
+          }
+        }
+        for (Map.Entry<String, Future<ConvertedModels>> entry : conversionsByPath.entrySet()) {
+          indicator.checkCanceled();
+          myConvertedModels.put(entry.getKey(), getConvertedModels(entry.getValue()));
+        }
+      }
+      finally {
+        executor.shutdownNow();
+      }
+      myModelsConverted = true;
+      logTiming("Converting models of " + myConvertedModels.size() + " modules", startTimeMillis);
+    }
+
+    @NotNull
+    private static ConvertedModels getConvertedModels(@NotNull Future<ConvertedModels> conversion) {
+      try {
+        return conversion.get();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new ProcessCanceledException(e);
+      }
+      catch (ExecutionException e) {
+        // Fail the same way as if the models had been converted on this thread.
+        Throwables.propagateIfPossible(e.getCause());
+        throw new RuntimeException(e.getCause());
+      }
+    }
+
+    @Override
+    void setUpModules(@NotNull SyncAction.ProjectModels projectModels, @NotNull ProgressIndicator indicator) {
+      if (!myModelsConverted) {
+        convertModels(projectModels, indicator);
+      }
+      notifyProgress(indicator, "Configuring modules");
+      long startTimeMillis = System.currentTimeMillis();
       createAndSetUpModules(projectModels, indicator);
+      logTiming("Setting up " + myConvertedModels.size() + " modules", startTimeMillis);
+
+      startTimeMillis = System.currentTimeMillis();
       myAndroidModuleProcessor.processAndroidModels(myAndroidModules, indicator);
+      logTiming("Processing Android models", startTimeMillis);
+
+      startTimeMillis = System.currentTimeMillis();
       myProjectCleanup.cleanUpProject(myProject, myModelsProvider, indicator);
+      logTiming("Cleaning up project", startTimeMillis);
+
+      startTimeMillis = System.currentTimeMillis();
       myModuleDisposer.disposeObsoleteModules(indicator);
+      logTiming("Disposing obsolete modules", startTimeMillis);
+    }
+
+    private static void logTiming(@NotNull String step, long startTimeMillis) {
+      LOG.info(String.format("%1$s took %2$d ms.", step, System.currentTimeMillis() - startTimeMillis));
     }
 
     private void createAndSetUpModules(@NotNull SyncAction.ProjectModels projectModels, @NotNull ProgressIndicator indicator) {
       boolean syncSkipped = mySyncState.isSyncSkipped();
-      populateModuleBuildDirs(projectModels);
       for (String gradlePath : projectModels.getProjectPaths()) {
         createAndSetupModule(gradlePath, projectModels, indicator, syncSkipped);
       }
@@ -167,6 +248,38 @@ abstract class ModuleSetup {
       }
     }
 
+    @NotNull
+    private ConvertedModels convertModuleModels(@NotNull SyncAction.ModuleModels moduleModels) {
+      GradleProject gradleProject = moduleModels.findModel(GradleProject.class);
+      assert gradleProject != null;
+      String moduleName = gradleProject.getName();
+      File moduleRootFolderPath = myModuleFactory.getModuleRootFolderPath(moduleModels);
+
+      AndroidProject androidProject = moduleModels.findModel(AndroidProject.class);
+      if (androidProject != null) {
+        return new ConvertedModels(createAndroidModel(moduleName, moduleRootFolderPath, androidProject), null, null);
+      }
+
+      NativeAndroidProject nativeAndroidProject = moduleModels.findModel(NativeAndroidProject.class);
+      if (nativeAndroidProject != null) {
+        IdeNativeAndroidProject copy = myNativeAndroidProjectFactory.create(nativeAndroidProject);
+        return new ConvertedModels(null, new NdkModuleModel(moduleName, moduleRootFolderPath, copy), null);
+      }
+
+      // This is a Java module.
+      JavaProject javaProject = moduleModels.findModel(JavaProject.class);
+      if (javaProject != null) {
+        return new ConvertedModels(null, null, myNewJavaModuleModelFactory.create(gradleProject, javaProject, false));
+      }
+
+      // This is a Jar/Aar module or root module.
+      ArtifactModel jarAarProject = moduleModels.findModel(ArtifactModel.class);
+      if (jarAarProject != null) {
+        return new ConvertedModels(null, null, myArtifactModuleModelFactory.create(gradleProject, jarAarProject));
+      }
+      return new ConvertedModels(null, null, null);
+    }
+
     private void createAndSetupModule(@NotNull String gradlePath,
                                       @NotNull SyncAction.ProjectModels projectModels,
                                       @NotNull ProgressIndicator indicator,
@@ -175,17 +288,17 @@ abstract class ModuleSetup {
       if (moduleModels == null) {
         return;
       }
+      ConvertedModels convertedModels = myConvertedModels.get(gradlePath);
+      assert convertedModels != null;
+
       Module module = myModuleFactory.createModule(moduleModels);
       module.putUserData(MODULE_GRADLE_MODELS_KEY, moduleModels);
 
-      File moduleRootFolderPath = findModuleRootFolderPath(module);
-      assert moduleRootFolderPath != null;
-
       myGradleModuleSetup.setUpModule(module, myModelsProvider, moduleModels);
 
       AndroidProject androidProject = moduleModels.findModel(AndroidProject.class);
       if (androidProject != null) {
-        AndroidModuleModel androidModel = createAndroidModel(module, androidProject);
+        AndroidModuleModel androidModel = convertedModels.myAndroidModel;
         if (androidModel != null) {
           myNewAndroidModuleSetup.setUpModule(module, myModelsProvider, androidModel, moduleModels, indicator, syncSkipped);
           myAndroidModules.add(module);
@@ -202,43 +315,31 @@ abstract class ModuleSetup {
       // This is not an Android module. Remove any AndroidFacet set in a previous sync operation.
       removeAndroidFacetFrom(module);
 
-      NativeAndroidProject nativeAndroidProject = moduleModels.findModel(NativeAndroidProject.class);
-      if (nativeAndroidProject != null) {
-        IdeNativeAndroidProject copy = myNativeAndroidProjectFactory.create(nativeAndroidProject);
-        NdkModuleModel ndkModuleModel = new NdkModuleModel(module.getName(), moduleRootFolderPath, copy);
+      NdkModuleModel ndkModuleModel = convertedModels.myNdkModel;
+      if (ndkModuleModel != null) {
         myNdkModuleSetup.setUpModule(module, myModelsProvider, ndkModuleModel, moduleModels, indicator, syncSkipped);
         return;
       }
       // This is not an Android module. Remove any AndroidFacet set in a previous sync operation.
       removeAllFacets(myModelsProvider.getModifiableFacetModel(module), NdkFacet.getFacetTypeId());
 
-      // This is a Java module.
-      JavaProject javaProject = moduleModels.findModel(JavaProject.class);
-      GradleProject gradleProject = moduleModels.findModel(GradleProject.class);
-      if (gradleProject != null && javaProject != null) {
-        JavaModuleModel javaModuleModel = myNewJavaModuleModelFactory.create(gradleProject, javaProject, false);
-        myJavaModuleSetup.setUpModule(module, myModelsProvider, javaModuleModel, moduleModels, indicator, syncSkipped);
-        myExtraSyncModelExtensionManager.setupExtraJavaModels(moduleModels, myProject, module, myModelsProvider);
-        return;
-      }
-
-      // This is a Jar/Aar module or root module.
-      ArtifactModel jarAarProject = moduleModels.findModel(ArtifactModel.class);
-      if (gradleProject != null && jarAarProject != null) {
-        JavaModuleModel javaModuleModel = myArtifactModuleModelFactory.create(gradleProject, jarAarProject);
+      // This is a Java, Jar/Aar or root module.
+      JavaModuleModel javaModuleModel = convertedModels.myJavaModel;
+      if (javaModuleModel != null) {
         myJavaModuleSetup.setUpModule(module, myModelsProvider, javaModuleModel, moduleModels, indicator, syncSkipped);
+        if (moduleModels.findModel(JavaProject.class) != null) {
+          myExtraSyncModelExtensionManager.setupExtraJavaModels(moduleModels, myProject, module, myModelsProvider);
+        }
       }
     }
 
     @Nullable
-    private AndroidModuleModel createAndroidModel(@NotNull Module module, @NotNull AndroidProject androidProject) {
+    private AndroidModuleModel createAndroidModel(@NotNull String moduleName,
+                                                  @NotNull File moduleRootFolderPath,
+                                                  @NotNull AndroidProject androidProject) {
       Variant variantToSelect = myVariantSelector.findVariantToSelect(androidProject);
       if (variantToSelect != null) {
-        File moduleRootFolderPath = findModuleRootFolderPath(module);
-        if (moduleRootFolderPath != null) {
-          return new AndroidModuleModel(module.getName(), moduleRootFolderPath, androidProject, variantToSelect.getName(),
-                                        myDependenciesFactory);
-        }
+        return new AndroidModuleModel(moduleName, moduleRootFolderPath, androidProject, variantToSelect.getName(), myDependenciesFactory);
       }
       // If an Android project does not have variants, it would be impossible to build. This is a possible but invalid use case.
       // For now we are going to treat this case as a Java library module, because everywhere in the IDE (e.g. run configurations,
@@ -252,4 +353,19 @@ abstract class ModuleSetup {
       removeAllFacets(myModelsProvider.getModifiableFacetModel(module), AndroidFacet.ID);
     }
   }
+
+  /**
+   * The IDE models of a module, at most one of them is set.
+   */
+  private static class ConvertedModels {
+    @Nullable private final AndroidModuleModel myAndroidModel;
+    @Nullable private final NdkModuleModel myNdkModel;
+    @Nullable private final JavaModuleModel myJavaModel;
+
+    ConvertedModels(@Nullable AndroidModuleModel androidModel, @Nullable NdkModuleModel ndkModel, @Nullable JavaModuleModel javaModel) {
+      myAndroidModel = androidModel;
+      myNdkModel = ndkModel;
+      myJavaModel = javaModel;
+    }
+  }
 }
@@ -55,6 +55,8 @@ abstract class ProjectSetup {
     void setUpProject(@NotNull SyncAction.ProjectModels models, @NotNull ProgressIndicator indicator) {
       ModuleSetup moduleSetup = myModuleSetupFactory.create(myProject, myModelsProvider);
       try {
+        // Only setting up the modules needs the write action.
+        moduleSetup.convertModels(models, indicator);
         executeProjectChangeAction(true /* synchronous */, new DisposeAwareProjectChange(myProject) {
           @Override
           public void execute() {
@@ -42,16 +42,10 @@ class BuildTools23Rc1ValidationStrategy extends AndroidProjectValidationStrategy
   @NotNull private final List<String> myModules = new ArrayList<>();
 
   BuildTools23Rc1ValidationStrategy(@NotNull Project project) {
-    this(project, module -> {
-      GradleBuildModel buildModel = GradleBuildModel.get(module);
-      if (buildModel != null) {
-        AndroidModel android = buildModel.android();
-        if (android != null) {
-          return android.buildToolsVersion().value();
-        }
-      }
-      return null;
-    });
+    this(project, module -> GradleBuildModel.read(module, buildModel -> {
+      AndroidModel android = buildModel.android();
+      return android != null ? android.buildToolsVersion().value() : null;
+    }));
   }
 
   @VisibleForTesting
@@ -15,6 +15,8 @@
  */
 package com.android.tools.idea.gradle.structure.model;
 
+import com.android.tools.idea.flags.StudioFlags;
+import com.android.tools.idea.gradle.dsl.model.GradleBuildModelCache;
 import com.android.tools.idea.gradle.project.model.AndroidModuleModel;
 import com.android.tools.idea.gradle.project.model.JavaModuleModel;
 import com.android.tools.idea.gradle.project.facet.java.JavaFacet;
@@ -28,6 +30,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Consumer;
 
@@ -44,32 +47,50 @@ public class PsProject extends PsModel {
     super(null);
     myProject = project;
 
+    List<Module> resolvedModels = new ArrayList<>();
     for (Module resolvedModel : ModuleManager.getInstance(myProject).getModules()) {
-      String gradlePath = getGradlePath(resolvedModel);
-      if (gradlePath != null) {
-        // Only Gradle-based modules are displayed in the PSD.
-        PsModule module = null;
+      // Only Gradle-based modules are displayed in the PSD.
+      // TODO enable Java modules that are not buildable when Java module support is complete.
+      if (getGradlePath(resolvedModel) != null &&
+          (AndroidModuleModel.get(resolvedModel) != null || getBuildableJavaModuleModel(resolvedModel) != null)) {
+        resolvedModels.add(resolvedModel);
+      }
+    }
 
+    GradleBuildModelCache cache = StudioFlags.GRADLE_DSL_MODEL_CACHE_ENABLED.get() ? GradleBuildModelCache.getInstance(myProject) : null;
+    if (cache != null) {
+      // Parse the build files of the displayed modules at once, instead of one by one when creating the modules below.
+      cache.parse(resolvedModels.toArray(Module.EMPTY_ARRAY));
+    }
+    try {
+      for (Module resolvedModel : resolvedModels) {
+        String gradlePath = getGradlePath(resolvedModel);
+        assert gradlePath != null;
         AndroidModuleModel gradleModel = AndroidModuleModel.get(resolvedModel);
         if (gradleModel != null) {
-          module = new PsAndroidModule(this, resolvedModel, gradlePath, gradleModel);
+          myModules.add(new PsAndroidModule(this, resolvedModel, gradlePath, gradleModel));
         }
-        // TODO enable when Java module support is complete.
         else {
-          JavaFacet facet = JavaFacet.getInstance(resolvedModel);
-          if (facet != null) {
-            JavaModuleModel javaModuleModel = facet.getJavaModuleModel();
-            if (javaModuleModel != null && javaModuleModel.isBuildable()) {
-              module = new PsJavaModule(this, resolvedModel, gradlePath, javaModuleModel);
-            }
-          }
-        }
-
-        if (module != null) {
-          myModules.add(module);
+          JavaModuleModel javaModuleModel = getBuildableJavaModuleModel(resolvedModel);
+          assert javaModuleModel != null;
+          myModules.add(new PsJavaModule(this, resolvedModel, gradlePath, javaModuleModel));
         }
       }
     }
+    finally {
+      if (cache != null) {
+        // The modules own the models handed to them. Models that were not handed out, e.g. because their build file was modified in
+        // the meantime, are not kept around until the next time the project structure is displayed.
+        cache.clearPrefetched();
+      }
+    }
+  }
+
+  @Nullable
+  private static JavaModuleModel getBuildableJavaModuleModel(@NotNull Module resolvedModel) {
+    JavaFacet facet = JavaFacet.getInstance(resolvedModel);
+    JavaModuleModel javaModuleModel = facet != null ? facet.getJavaModuleModel() : null;
+    return javaModuleModel != null && javaModuleModel.isBuildable() ? javaModuleModel : null;
   }
 
   @Nullable
@@ -69,7 +69,17 @@ public abstract class AndroidLogFilterModel extends LogFilterModel {
 
   private final ImmutableList<AndroidLogLevelFilter> myLogLevelFilters;
 
+  @NotNull private final FormattedLogcatLines myLines;
+
   public AndroidLogFilterModel() {
+    this(new FormattedLogcatLines());
+  }
+
+  /**
+   * @param lines the messages of the lines formatted for the console, so that they don't need to be parsed again
+   */
+  AndroidLogFilterModel(@NotNull FormattedLogcatLines lines) {
+    myLines = lines;
     ImmutableList.Builder<AndroidLogLevelFilter> builder = ImmutableList.builder();
     for (Log.LogLevel logLevel : Log.LogLevel.values()) {
       builder.add(new AndroidLogLevelFilter(logLevel));
@@ -230,7 +240,7 @@ public abstract class AndroidLogFilterModel extends LogFilterModel {
   @Override
   @NotNull
   public final MyProcessingResult processLine(String line) {
-    LogCatMessage message = AndroidLogcatFormatter.tryParseMessage(line);
+    LogCatMessage message = myLines.getMessage(line);
     String continuation = (message == null) ? AndroidLogcatFormatter.tryParseContinuation(line) : null;
 
     boolean validContinuation = continuation != null && myPrevHeader != null;
@@ -40,9 +40,18 @@ import java.util.regex.Pattern;
  */
 public final class AndroidLogcatFormatter extends DefaultLogFormatter {
   private final AndroidLogcatPreferences myPreferences;
+  private final FormattedLogcatLines myLines;
 
   public AndroidLogcatFormatter(@NotNull AndroidLogcatPreferences preferences) {
+    this(preferences, new FormattedLogcatLines());
+  }
+
+  /**
+   * @param lines the messages of the lines formatted for the console, so that they don't need to be parsed again
+   */
+  AndroidLogcatFormatter(@NotNull AndroidLogcatPreferences preferences, @NotNull FormattedLogcatLines lines) {
     myPreferences = preferences;
+    myLines = lines;
   }
 
   @NonNls private static final Pattern MESSAGE_WITH_HEADER = Pattern.compile(
@@ -170,13 +179,14 @@ public final class AndroidLogcatFormatter extends DefaultLogFormatter {
       return null;
     }
 
+    // Undo the "no break" spaces of formatMessage, so the tag is the same as the one of the message that was formatted
     @SuppressWarnings("ConstantConditions") // matcher.matches verifies all groups below are non-null
     LogCatHeader header = new LogCatHeader(
       Log.LogLevel.getByLetter(matcher.group(5).charAt(0)),
       Integer.parseInt(matcher.group(2)),
       Integer.parseInt(matcher.group(3)),
       matcher.group(4),
-      matcher.group(6),
+      matcher.group(6).replace('\u00A0', ' '),
       LogCatTimestamp.fromString(matcher.group(1)));
 
     String message = matcher.group(7);
@@ -223,9 +233,10 @@ public final class AndroidLogcatFormatter extends DefaultLogFormatter {
       return Strings.repeat(" ", myLastHeaderLength) + continuation;
     }
     else {
-      LogCatMessage message = tryParseMessage(msg);
+      LogCatMessage message = myLines.getMessage(msg);
       if (message != null) {
-        String formatted = formatMessage(myPreferences.LOGCAT_FORMAT_STRING, msg);
+        String format = myPreferences.LOGCAT_FORMAT_STRING;
+        String formatted = format.isEmpty() ? msg : formatMessage(format, message.getHeader(), message.getMessage());
         myLastHeaderLength = formatted.indexOf(message.getMessage());
         return formatted;
       }
@@ -19,23 +19,29 @@ import com.android.ddmlib.*;
 import com.android.ddmlib.logcat.LogCatHeader;
 import com.android.ddmlib.logcat.LogCatMessage;
 import com.android.ddmlib.logcat.LogCatTimestamp;
+import com.android.tools.idea.flags.StudioFlags;
 import com.android.tools.idea.run.LoggingReceiver;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
-import com.intellij.execution.impl.ConsoleBuffer;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import net.jcip.annotations.GuardedBy;
 import net.jcip.annotations.ThreadSafe;
 import org.jetbrains.android.util.AndroidBundle;
 import org.jetbrains.android.util.AndroidOutputReceiver;
 import org.jetbrains.android.util.AndroidUtils;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.TestOnly;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
@@ -54,26 +60,6 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
     return Logger.getInstance(AndroidLogcatService.class);
   }
 
-  private static class LogcatBuffer {
-    private int myBufferSize;
-    private final LinkedList<LogCatMessage> myMessages = new LinkedList<>();
-
-    public void addMessage(@NotNull LogCatMessage message) {
-      myMessages.add(message);
-      myBufferSize += message.getMessage().length();
-      if (ConsoleBuffer.useCycleBuffer()) {
-        while (myBufferSize > ConsoleBuffer.getCycleBufferSize()) {
-          myBufferSize -= myMessages.removeFirst().getMessage().length();
-        }
-      }
-    }
-
-    @NotNull
-    public List<LogCatMessage> getMessages() {
-      return myMessages;
-    }
-  }
-
   public interface LogcatListener {
     default void onLogLineReceived(@NotNull LogCatMessage line) {}
     default void onCleared() {}
@@ -90,6 +76,17 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
   @GuardedBy("myLock")
   private final Map<IDevice, AndroidLogcatReceiver> myLogReceivers = new HashMap<>();
 
+  /**
+   * The on-disk history of the devices, if enabled. Unlike the buffers, these are kept when logcat is cleared or nobody listens to
+   * the device anymore, until the device is disconnected.
+   */
+  @GuardedBy("myLock")
+  private final Map<IDevice, LogcatHistory> myHistories = new HashMap<>();
+
+  /** Writes and reads the histories, created the first time a history is */
+  @GuardedBy("myLock")
+  @Nullable private ListeningExecutorService myHistoryExecutor;
+
   /**
    * This is a list of commands to execute per device. We use a newSingleThreadExecutor
    * to model a single queue of tasks to run, but that is poorly reflected in the
@@ -117,6 +114,17 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
       final AndroidLogcatReceiver receiver = createReceiver(device);
       myLogReceivers.put(device, receiver);
       myLogBuffers.put(device, new LogcatBuffer());
+      LogcatHistory history = myHistories.get(device);
+      if (history != null) {
+        history.resume();
+      }
+      else if (StudioFlags.RUNDEBUG_LOGCAT_HISTORY_ENABLED.get()) {
+        if (myHistoryExecutor == null) {
+          myHistoryExecutor = MoreExecutors.listeningDecorator(AppExecutorUtil.createBoundedApplicationPoolExecutor("LogcatHistory", 1));
+        }
+        File root = new File(PathManager.getSystemPath(), "logcat");
+        myHistories.put(device, LogcatHistory.create(root, device.getSerialNumber(), myHistoryExecutor));
+      }
       ExecutorService executor = myExecutors.get(device);
       executor.submit((() -> {
         try {
@@ -147,6 +155,9 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
           if (myLogBuffers.containsKey(device)) {
             myLogBuffers.get(device).addMessage(line);
           }
+          if (myHistories.containsKey(device)) {
+            myHistories.get(device).add(line);
+          }
         }
       }
     };
@@ -166,10 +177,31 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
   private void disconnect(@NotNull IDevice device) {
     synchronized (myLock) {
       stopReceiving(device);
+      closeHistory(device);
       myExecutors.remove(device);
     }
   }
 
+  private void closeHistory(@NotNull IDevice device) {
+    synchronized (myLock) {
+      LogcatHistory history = myHistories.remove(device);
+      if (history != null) {
+        history.flush();
+      }
+    }
+  }
+
+  /**
+   * Returns the on-disk history of the logs received from the given device in this session, or null if logs are not being
+   * received from it or if storing the history is disabled.
+   */
+  @Nullable
+  public LogcatHistory getHistory(@NotNull IDevice device) {
+    synchronized (myLock) {
+      return myHistories.get(device);
+    }
+  }
+
   private void stopReceiving(@NotNull IDevice device) {
     synchronized (myLock) {
       if (myLogReceivers.containsKey(device)) {
@@ -237,7 +269,33 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
           listener.onLogLineReceived(line);
         }
       }
+      addListener(device, listener);
+    }
+  }
+
+  /**
+   * Same as {@link #addListener(IDevice, LogcatListener, boolean)}, but only notifies the listener of the old log messages
+   * accepted by the given filter. This is faster than letting the listener skip the other messages, as the buffered messages are
+   * indexed by their header.
+   */
+  public void addListener(@NotNull IDevice device, @NotNull LogcatListener listener, @NotNull AndroidLogcatFilter oldLogsFilter) {
+    synchronized (myLock) {
+      if (myLogBuffers.containsKey(device)) {
+        for (LogCatMessage line : myLogBuffers.get(device).getMessages(oldLogsFilter)) {
+          listener.onLogLineReceived(line);
+        }
+      }
+      addListener(device, listener);
+    }
+  }
 
+  /**
+   * Add a listener which receives each line, unfiltered, that comes from the specified device, from now on.
+   *
+   * @see #addListener(IDevice, LogcatListener, boolean)
+   */
+  public void addListener(@NotNull IDevice device, @NotNull LogcatListener listener) {
+    synchronized (myLock) {
       if (!myListeners.containsKey(device)) {
         myListeners.put(device, new ArrayList<>());
       }
@@ -250,13 +308,6 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
     }
   }
 
-  /**
-   * @see #addListener(IDevice, LogcatListener, boolean)
-   */
-  public void addListener(@NotNull IDevice device, @NotNull LogcatListener listener) {
-    addListener(device, listener, false);
-  }
-
   public void removeListener(@NotNull IDevice device, @NotNull LogcatListener listener) {
     synchronized (myLock) {
       if (myListeners.containsKey(device)) {
@@ -264,6 +315,11 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
 
         if (myListeners.get(device).isEmpty()) {
           stopReceiving(device);
+          // The session goes on until the device is disconnected, the receiver is started again by the next listener
+          LogcatHistory history = myHistories.get(device);
+          if (history != null) {
+            history.flush();
+          }
         }
       }
     }
@@ -299,6 +355,10 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
       for (AndroidLogcatReceiver receiver : myLogReceivers.values()) {
         receiver.cancel();
       }
+      for (LogcatHistory history : myHistories.values()) {
+        history.flush();
+      }
+      myHistories.clear();
     }
   }
 
@@ -18,11 +18,16 @@ package com.android.tools.idea.logcat;
 import com.android.ddmlib.Client;
 import com.android.ddmlib.ClientData;
 import com.android.ddmlib.IDevice;
+import com.android.ddmlib.logcat.LogCatMessage;
 import com.android.tools.idea.actions.BrowserHelpAction;
 import com.android.tools.idea.ddms.DeviceContext;
+import com.android.tools.idea.ddms.EdtExecutor;
 import com.android.tools.idea.ddms.actions.ScreenRecorderAction;
 import com.android.tools.idea.ddms.actions.ScreenshotAction;
 import com.android.tools.idea.ddms.actions.TerminateVMAction;
+import com.android.tools.idea.flags.StudioFlags;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.intellij.diagnostic.logging.LogConsoleBase;
 import com.intellij.diagnostic.logging.LogFormatter;
 import com.intellij.execution.impl.ConsoleViewImpl;
@@ -30,6 +35,9 @@ import com.intellij.execution.ui.ConsoleView;
 import com.intellij.icons.AllIcons;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.actionSystem.*;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.fileTypes.PlainTextFileType;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.progress.Task;
@@ -41,10 +49,13 @@ import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.wm.ToolWindow;
 import com.intellij.openapi.wm.ToolWindowManager;
 import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.testFramework.LightVirtualFile;
 import com.intellij.ui.ColoredListCellRenderer;
 import com.intellij.ui.IdeBorderFactory;
 import com.intellij.ui.SideBorder;
+import com.intellij.util.Alarm;
 import com.intellij.util.ui.UIUtil;
+import net.jcip.annotations.GuardedBy;
 import org.jetbrains.android.util.AndroidBundle;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -53,6 +64,7 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
+import java.util.ArrayList;
 import java.util.List;
 
 import static javax.swing.BoxLayout.X_AXIS;
@@ -67,6 +79,12 @@ public class AndroidLogcatView implements Disposable {
   static final String NO_FILTERS = AndroidBundle.message("android.logcat.filters.none");
   static final String EDIT_FILTER_CONFIGURATION = AndroidBundle.message("android.logcat.filters.edit");
 
+  /**
+   * How long received lines wait before being added to the console, so that the console gets them in batches, about once per
+   * frame, instead of line by line from the thread reading logcat.
+   */
+  private static final int FLUSH_DELAY_MS = 16;
+
   private final Project myProject;
   private final DeviceContext myDeviceContext;
   private final String myToolWindowId;
@@ -80,6 +98,17 @@ public class AndroidLogcatView implements Disposable {
   private final FormattedLogcatReceiver myLogcatReceiver;
   private final AndroidLogFilterModel myLogFilterModel;
 
+  /** Lines received but not yet added to the console, see {@link #flushPendingLines()} */
+  @GuardedBy("myPendingLinesLock")
+  private List<String> myPendingLines = new ArrayList<>();
+  private final Object myPendingLinesLock = new Object();
+  /**
+   * Held while adding lines to the console or clearing it, so pending lines dropped by a clear can't be added after it. It is taken
+   * before {@link #myPendingLinesLock}, which is only held to swap the list so receiving lines never waits for the console.
+   */
+  private final Object myConsoleLock = new Object();
+  private final Alarm myFlushAlarm;
+
   /**
    * A default filter which will always let everything through.
    */
@@ -132,9 +161,13 @@ public class AndroidLogcatView implements Disposable {
     myHideMonitors = hideMonitors;
 
     Disposer.register(myProject, this);
+    myFlushAlarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, this);
 
+    // The messages of the lines sent to the console, shared by the receiver, the filter model and the formatter so that the lines
+    // are never parsed back
+    FormattedLogcatLines lines = new FormattedLogcatLines();
     myLogFilterModel =
-      new AndroidLogFilterModel() {
+      new AndroidLogFilterModel(lines) {
 
         @NotNull
         private AndroidLogcatPreferences getPreferences() {
@@ -157,20 +190,28 @@ public class AndroidLogcatView implements Disposable {
         }
       };
 
-    AndroidLogcatFormatter logFormatter = new AndroidLogcatFormatter(AndroidLogcatPreferences.getInstance(project));
+    AndroidLogcatFormatter logFormatter = new AndroidLogcatFormatter(AndroidLogcatPreferences.getInstance(project), lines);
     myLogConsole = new AndroidLogConsole(project, myLogFilterModel, logFormatter);
-    myLogcatReceiver = new FormattedLogcatReceiver() {
+    myLogcatReceiver = new FormattedLogcatReceiver(lines) {
       @Override
       protected void receiveFormattedLogLine(@NotNull String line) {
-        myLogConsole.addLogLine(line);
+        synchronized (myPendingLinesLock) {
+          myPendingLines.add(line);
+          if (myPendingLines.size() == 1) {
+            myFlushAlarm.addRequest(AndroidLogcatView.this::flushPendingLines, FLUSH_DELAY_MS);
+          }
+        }
       }
 
       @Override
       public void onCleared() {
-        myLogFilterModel.beginRejectingOldMessages();
-        // We check for null, because myLogConsole.clear() depends on myLogConsole.getConsole() not being null
-        if (myLogConsole.getConsole() != null) {
-          myLogConsole.clear();
+        synchronized (myConsoleLock) {
+          clearPendingLines();
+          myLogFilterModel.beginRejectingOldMessages();
+          // We check for null, because myLogConsole.clear() depends on myLogConsole.getConsole() not being null
+          if (myLogConsole.getConsole() != null) {
+            myLogConsole.clear();
+          }
         }
       }
     };
@@ -225,6 +266,28 @@ public class AndroidLogcatView implements Disposable {
     updateLogConsole();
   }
 
+  /**
+   * Adds the lines received since the last flush to the console.
+   */
+  private void flushPendingLines() {
+    synchronized (myConsoleLock) {
+      List<String> lines;
+      synchronized (myPendingLinesLock) {
+        lines = myPendingLines;
+        myPendingLines = new ArrayList<>();
+      }
+      for (String line : lines) {
+        myLogConsole.addLogLine(line);
+      }
+    }
+  }
+
+  private void clearPendingLines() {
+    synchronized (myPendingLinesLock) {
+      myPendingLines.clear();
+    }
+  }
+
   @NotNull
   public final JPanel createSearchComponent() {
     final JPanel panel = new JPanel();
@@ -325,11 +388,14 @@ public class AndroidLogcatView implements Disposable {
       if (myDevice != null) {
         androidLogcatService.removeListener(myDevice, myLogcatReceiver);
       }
-      // We check for null, because myLogConsole.clear() depends on myLogConsole.getConsole() not being null
-      if (myLogConsole.getConsole() != null) {
-        myLogConsole.clear();
+      synchronized (myConsoleLock) {
+        clearPendingLines();
+        // We check for null, because myLogConsole.clear() depends on myLogConsole.getConsole() not being null
+        if (myLogConsole.getConsole() != null) {
+          myLogConsole.clear();
+        }
+        myLogFilterModel.processingStarted();
       }
-      myLogFilterModel.processingStarted();
       myDevice = device;
       androidLogcatService.addListener(myDevice, myLogcatReceiver, true);
     }
@@ -459,6 +525,64 @@ public class AndroidLogcatView implements Disposable {
     }
   }
 
+  /**
+   * Opens the lines stored in the {@link LogcatHistory} of the device, one segment at a time: the first click opens the most recent
+   * segment, and each following one the segment before it. The segments are only read when they are opened.
+   */
+  private final class MyShowOlderLinesAction extends AnAction {
+    @Nullable private LogcatHistory myHistory;
+    private int mySegment;
+
+    public MyShowOlderLinesAction() {
+      super(AndroidBundle.message("android.logcat.history.older.action.text"),
+            AndroidBundle.message("android.logcat.history.older.action.description"), AllIcons.Actions.PreviousOccurence);
+    }
+
+    @Override
+    public void update(AnActionEvent e) {
+      IDevice device = myDevice;
+      LogcatHistory history = device != null ? AndroidLogcatService.getInstance().getHistory(device) : null;
+      e.getPresentation().setEnabled(history != null && (history != myHistory || mySegment > 0));
+    }
+
+    @Override
+    public void actionPerformed(AnActionEvent e) {
+      IDevice device = myDevice;
+      LogcatHistory history = device != null ? AndroidLogcatService.getInstance().getHistory(device) : null;
+      if (history == null) {
+        return;
+      }
+      if (history != myHistory) {
+        myHistory = history;
+        mySegment = history.getSegmentCount() - 1;
+      }
+      else if (mySegment > 0) {
+        mySegment--;
+      }
+      String name = String.format("logcat-%1$s-%2$d.log", device.getSerialNumber(), mySegment + 1);
+      Futures.addCallback(history.readSegment(mySegment), new FutureCallback<List<LogCatMessage>>() {
+        @Override
+        public void onSuccess(@Nullable List<LogCatMessage> messages) {
+          if (messages == null || myProject.isDisposed()) {
+            return;
+          }
+          StringBuilder text = new StringBuilder();
+          for (LogCatMessage message : messages) {
+            text.append(message).append('\n');
+          }
+          LightVirtualFile file = new LightVirtualFile(name, PlainTextFileType.INSTANCE, text);
+          file.setWritable(false);
+          FileEditorManager.getInstance(myProject).openFile(file, true);
+        }
+
+        @Override
+        public void onFailure(@NotNull Throwable t) {
+          Logger.getInstance(AndroidLogcatView.class).warn("Could not read logcat history of " + device.getSerialNumber(), t);
+        }
+      }, EdtExecutor.INSTANCE);
+    }
+  }
+
   final class AndroidLogConsole extends LogConsoleBase {
     private final RegexFilterComponent myRegexFilterComponent = new RegexFilterComponent("LOG_FILTER_HISTORY", 5);
     private final AndroidLogcatPreferences myPreferences;
@@ -471,6 +595,9 @@ public class AndroidLogcatView implements Disposable {
         c.addCustomConsoleAction(new Separator());
         c.addCustomConsoleAction(new MyRestartAction());
         c.addCustomConsoleAction(new MyConfigureLogcatHeaderAction());
+        if (StudioFlags.RUNDEBUG_LOGCAT_HISTORY_ENABLED.get()) {
+          c.addCustomConsoleAction(new MyShowOlderLinesAction());
+        }
         if (myHideMonitors) {
           // TODO: Decide if these should be part of the profiler window
           c.addCustomConsoleAction(new Separator());
@@ -129,6 +129,31 @@ public final class DefaultAndroidLogcatFilter implements AndroidLogcatFilter {
     return myName;
   }
 
+  @Nullable
+  Pattern getMessagePattern() {
+    return myMessagePattern;
+  }
+
+  @Nullable
+  Pattern getTagPattern() {
+    return myTagPattern;
+  }
+
+  @Nullable
+  Pattern getPackagePattern() {
+    return myPkgNamePattern;
+  }
+
+  @Nullable
+  String getPid() {
+    return myPid;
+  }
+
+  @Nullable
+  Log.LogLevel getLogLevel() {
+    return myLogLevel;
+  }
+
   @NotNull
   public static DefaultAndroidLogcatFilter compile(@NotNull PersistentAndroidLogFilters.FilterData filterData, @NotNull String name) {
 
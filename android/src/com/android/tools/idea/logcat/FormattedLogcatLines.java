@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.logcat.LogCatMessage;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The messages behind the lines formatted by a {@link FormattedLogcatReceiver}.
+ * <p>
+ * The console of a logcat view only handles text, so the {@link AndroidLogFilterModel} and the {@link AndroidLogcatFormatter} of
+ * the view get the header of each line back from here, instead of parsing the line again with
+ * {@link AndroidLogcatFormatter#tryParseMessage(String)}, both when the line is added and when the console is filtered again.
+ * Only the most recently used lines are remembered; other lines, e.g. lines pasted in the console, are parsed.
+ */
+@ThreadSafe
+final class FormattedLogcatLines {
+  private static final int MAX_LINES = 16 * 1024;
+
+  @GuardedBy("this")
+  private final Map<String, LogCatMessage> myMessages = new LinkedHashMap<String, LogCatMessage>(MAX_LINES, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, LogCatMessage> eldest) {
+      return size() > MAX_LINES;
+    }
+  };
+
+  /**
+   * Remembers the message of a line formatted with {@link AndroidLogcatFormatter#formatMessageFull}.
+   */
+  public synchronized void add(@NotNull String line, @NotNull LogCatMessage message) {
+    myMessages.put(line, message);
+  }
+
+  /**
+   * Returns the message of the given line, or {@code null} if the line is not the first line of a logcat message.
+   */
+  @Nullable
+  public LogCatMessage getMessage(@NotNull String line) {
+    synchronized (this) {
+      LogCatMessage message = myMessages.get(line);
+      if (message != null) {
+        return message;
+      }
+    }
+    LogCatMessage message = AndroidLogcatFormatter.tryParseMessage(line);
+    if (message != null) {
+      add(line, message);
+    }
+    return message;
+  }
+}
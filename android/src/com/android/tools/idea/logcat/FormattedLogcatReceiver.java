@@ -20,13 +20,26 @@ import com.android.ddmlib.logcat.LogCatMessage;
 import org.jetbrains.annotations.NotNull;
 
 abstract class FormattedLogcatReceiver implements AndroidLogcatService.LogcatListener {
+  @NotNull private final FormattedLogcatLines myLines;
   private LogCatHeader myActiveHeader;
 
+  FormattedLogcatReceiver() {
+    this(new FormattedLogcatLines());
+  }
+
+  /**
+   * @param lines where to remember the message of each formatted line, for the filter model and formatter of the console
+   */
+  FormattedLogcatReceiver(@NotNull FormattedLogcatLines lines) {
+    myLines = lines;
+  }
+
   @Override
   public final void onLogLineReceived(@NotNull LogCatMessage line) {
     if (!line.getHeader().equals(myActiveHeader)) {
       myActiveHeader = line.getHeader();
       String message = AndroidLogcatFormatter.formatMessageFull(myActiveHeader, line.getMessage());
+      myLines.add(message, line);
       receiveFormattedLogLine(message);
     } else {
       String message = AndroidLogcatFormatter.formatContinuation(line.getMessage());
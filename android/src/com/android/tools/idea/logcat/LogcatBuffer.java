@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.annotations.VisibleForTesting;
+import com.android.ddmlib.Log;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.ddmlib.logcat.LogCatTimestamp;
+import com.intellij.execution.impl.ConsoleBuffer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * The log lines received from a device, kept as columns in a ring buffer rather than as a list of {@link LogCatMessage}s.
+ * <p>
+ * Each line takes a pid, tid and log level, references to its timestamp and message, and references to its tag and package
+ * name, which are interned so that the many lines sharing them share a single string. Like the console, the buffer only keeps
+ * as many lines as fit in {@link ConsoleBuffer#getCycleBufferSize()} characters.
+ * <p>
+ * The lines are also indexed by level, tag, package name and pid, so {@link #getMessages(AndroidLogcatFilter)} only tests the
+ * patterns of a {@link DefaultAndroidLogcatFilter} once per distinct tag or package name, and only looks at the lines that
+ * matched, instead of matching every line.
+ * <p>
+ * This class is not thread safe.
+ */
+final class LogcatBuffer {
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final Log.LogLevel[] LEVELS = Log.LogLevel.values();
+
+  private final int myMaxBufferSize;
+
+  private int[] myPids;
+  private int[] myTids;
+  private byte[] myLevels;
+  private LogCatTimestamp[] myTimestamps;
+  private String[] myTags;
+  private String[] myAppNames;
+  private String[] myLines;
+
+  /** The slots holding the first line of a message, as opposed to a continuation line */
+  private BitSet myMessageStarts;
+
+  /** Slot of the oldest line */
+  private int myStart;
+  private int mySize;
+
+  /** Total length of the lines in the buffer */
+  private int myBufferSize;
+
+  @Nullable private LogCatHeader myLastHeader;
+
+  private final Map<String, String> myStrings = new HashMap<>();
+  private final BitSet[] myLevelIndex = new BitSet[LEVELS.length];
+  private final Map<String, BitSet> myTagIndex = new HashMap<>();
+  private final Map<String, BitSet> myAppNameIndex = new HashMap<>();
+  private final Map<Integer, BitSet> myPidIndex = new HashMap<>();
+
+  LogcatBuffer() {
+    this(ConsoleBuffer.useCycleBuffer() ? ConsoleBuffer.getCycleBufferSize() : Integer.MAX_VALUE);
+  }
+
+  @VisibleForTesting
+  LogcatBuffer(int maxBufferSize) {
+    myMaxBufferSize = maxBufferSize;
+    allocate(INITIAL_CAPACITY);
+  }
+
+  /**
+   * Adds a line. Lines of the same message are received with the same header object, which is how the buffer tells them apart
+   * from the first line of the next message.
+   */
+  public void addMessage(@NotNull LogCatMessage message) {
+    if (mySize == myLines.length) {
+      grow();
+    }
+    LogCatHeader header = message.getHeader();
+    int slot = (myStart + mySize) % myLines.length;
+    myPids[slot] = header.getPid();
+    myTids[slot] = header.getTid();
+    myLevels[slot] = (byte)header.getLogLevel().ordinal();
+    myTimestamps[slot] = header.getTimestamp();
+    myTags[slot] = intern(header.getTag());
+    myAppNames[slot] = intern(header.getAppName());
+    myLines[slot] = message.getMessage();
+    myMessageStarts.set(slot, header != myLastHeader);
+    myLastHeader = header;
+    mySize++;
+    index(slot);
+
+    myBufferSize += message.getMessage().length();
+    while (myBufferSize > myMaxBufferSize && mySize > 0) {
+      removeFirst();
+    }
+  }
+
+  public int size() {
+    return mySize;
+  }
+
+  /**
+   * Returns all the lines in the buffer, oldest first.
+   */
+  @NotNull
+  public List<LogCatMessage> getMessages() {
+    BitSet all = new BitSet(myLines.length);
+    all.set(0, myLines.length);
+    return collect(all, null);
+  }
+
+  /**
+   * Returns the lines of the messages accepted by the given filter, oldest first. As in {@link AndroidLogFilterModel}, a message
+   * spanning several lines is accepted as a whole if the filter accepts any of its lines.
+   */
+  @NotNull
+  public List<LogCatMessage> getMessages(@NotNull AndroidLogcatFilter filter) {
+    if (filter instanceof DefaultAndroidLogcatFilter) {
+      DefaultAndroidLogcatFilter defaultFilter = (DefaultAndroidLogcatFilter)filter;
+      BitSet candidates = select(defaultFilter);
+      Pattern messagePattern = defaultFilter.getMessagePattern();
+      return collect(candidates, messagePattern == null ? null : slot -> messagePattern.matcher(myLines[slot]).find());
+    }
+    BitSet all = new BitSet(myLines.length);
+    all.set(0, myLines.length);
+    return collect(all, slot -> filter.isApplicable(myLines[slot], myTags[slot], myAppNames[slot], myPids[slot], LEVELS[myLevels[slot]]));
+  }
+
+  /**
+   * Returns the slots of the lines whose header is accepted by the given filter.
+   */
+  @NotNull
+  private BitSet select(@NotNull DefaultAndroidLogcatFilter filter) {
+    BitSet selected = new BitSet(myLines.length);
+    selected.set(0, myLines.length);
+
+    Log.LogLevel minLevel = filter.getLogLevel();
+    if (minLevel != null) {
+      BitSet levels = new BitSet(myLines.length);
+      for (Log.LogLevel level : LEVELS) {
+        if (level.getPriority() >= minLevel.getPriority() && myLevelIndex[level.ordinal()] != null) {
+          levels.or(myLevelIndex[level.ordinal()]);
+        }
+      }
+      selected.and(levels);
+    }
+
+    String pid = filter.getPid();
+    if (pid != null && !pid.isEmpty()) {
+      BitSet pids = null;
+      try {
+        pids = myPidIndex.get(Integer.parseInt(pid));
+      }
+      catch (NumberFormatException ignored) {
+      }
+      if (pids == null) {
+        return new BitSet();
+      }
+      selected.and(pids);
+    }
+
+    Pattern tagPattern = filter.getTagPattern();
+    if (tagPattern != null) {
+      selected.and(select(myTagIndex, tagPattern));
+    }
+
+    Pattern appNamePattern = filter.getPackagePattern();
+    if (appNamePattern != null) {
+      selected.and(select(myAppNameIndex, appNamePattern));
+    }
+    return selected;
+  }
+
+  @NotNull
+  private BitSet select(@NotNull Map<String, BitSet> index, @NotNull Pattern pattern) {
+    BitSet selected = new BitSet(myLines.length);
+    for (Map.Entry<String, BitSet> entry : index.entrySet()) {
+      if (pattern.matcher(entry.getKey()).find()) {
+        selected.or(entry.getValue());
+      }
+    }
+    return selected;
+  }
+
+  private interface LinePredicate {
+    boolean test(int slot);
+  }
+
+  /**
+   * Returns the lines of the messages whose slots are set in the given candidates, oldest first. The lines of a message have
+   * the same header, so either all or none of them are candidates. If a predicate is given, only the messages with a line it
+   * accepts are returned.
+   */
+  @NotNull
+  private List<LogCatMessage> collect(@NotNull BitSet candidates, @Nullable LinePredicate predicate) {
+    List<LogCatMessage> messages = new ArrayList<>();
+    int index = nextCandidate(candidates, 0);
+    while (index < mySize) {
+      int end = index + 1;
+      while (end < mySize && !myMessageStarts.get(slot(end))) {
+        end++;
+      }
+      boolean accepted = predicate == null;
+      for (int i = index; i < end && !accepted; i++) {
+        accepted = predicate.test(slot(i));
+      }
+      if (accepted) {
+        LogCatHeader header = createHeader(slot(index));
+        for (int i = index; i < end; i++) {
+          messages.add(new LogCatMessage(header, myLines[slot(i)]));
+        }
+      }
+      index = nextCandidate(candidates, end);
+    }
+    return messages;
+  }
+
+  /**
+   * Returns the position, from the oldest line, of the first candidate line at or after the given position, or {@link #mySize}
+   * if there is none.
+   */
+  private int nextCandidate(@NotNull BitSet candidates, int index) {
+    if (index >= mySize) {
+      return mySize;
+    }
+    int slot = slot(index);
+    int end = myStart + mySize;
+    if (end <= myLines.length || slot >= myStart) {
+      int next = candidates.nextSetBit(slot);
+      if (next >= 0 && next < Math.min(end, myLines.length)) {
+        return next - myStart;
+      }
+      slot = 0;
+    }
+    int wrappedEnd = end - myLines.length;
+    int next = wrappedEnd > 0 ? candidates.nextSetBit(slot) : -1;
+    return next >= 0 && next < wrappedEnd ? next + myLines.length - myStart : mySize;
+  }
+
+  private int slot(int index) {
+    return (myStart + index) % myLines.length;
+  }
+
+  @NotNull
+  private LogCatHeader createHeader(int slot) {
+    return new LogCatHeader(LEVELS[myLevels[slot]], myPids[slot], myTids[slot], myAppNames[slot], myTags[slot], myTimestamps[slot]);
+  }
+
+  private void removeFirst() {
+    int slot = myStart;
+    myBufferSize -= myLines[slot].length();
+    unindex(slot);
+    myTimestamps[slot] = null;
+    myTags[slot] = null;
+    myAppNames[slot] = null;
+    myLines[slot] = null;
+    myStart = (myStart + 1) % myLines.length;
+    mySize--;
+  }
+
+  @NotNull
+  private String intern(@NotNull String string) {
+    String interned = myStrings.putIfAbsent(string, string);
+    return interned != null ? interned : string;
+  }
+
+  private void index(int slot) {
+    int level = myLevels[slot];
+    if (myLevelIndex[level] == null) {
+      myLevelIndex[level] = new BitSet();
+    }
+    myLevelIndex[level].set(slot);
+    myTagIndex.computeIfAbsent(myTags[slot], tag -> new BitSet()).set(slot);
+    myAppNameIndex.computeIfAbsent(myAppNames[slot], appName -> new BitSet()).set(slot);
+    myPidIndex.computeIfAbsent(myPids[slot], pid -> new BitSet()).set(slot);
+  }
+
+  private void unindex(int slot) {
+    myLevelIndex[myLevels[slot]].clear(slot);
+    String tag = myTags[slot];
+    String appName = myAppNames[slot];
+    unindex(myTagIndex, tag, slot);
+    unindex(myAppNameIndex, appName, slot);
+    unindex(myPidIndex, myPids[slot], slot);
+    // Forget the strings no longer used by any line
+    if (!myTagIndex.containsKey(tag) && !myAppNameIndex.containsKey(tag)) {
+      myStrings.remove(tag);
+    }
+    if (!myTagIndex.containsKey(appName) && !myAppNameIndex.containsKey(appName)) {
+      myStrings.remove(appName);
+    }
+  }
+
+  private static <K> void unindex(@NotNull Map<K, BitSet> index, @NotNull K key, int slot) {
+    BitSet slots = index.get(key);
+    slots.clear(slot);
+    if (slots.isEmpty()) {
+      index.remove(key);
+    }
+  }
+
+  private void allocate(int capacity) {
+    myPids = new int[capacity];
+    myTids = new int[capacity];
+    myLevels = new byte[capacity];
+    myTimestamps = new LogCatTimestamp[capacity];
+    myTags = new String[capacity];
+    myAppNames = new String[capacity];
+    myLines = new String[capacity];
+    myMessageStarts = new BitSet(capacity);
+  }
+
+  /**
+   * Doubles the capacity of the buffer, moving the oldest line to the first slot and indexing the lines again.
+   */
+  private void grow() {
+    int[] pids = myPids;
+    int[] tids = myTids;
+    byte[] levels = myLevels;
+    LogCatTimestamp[] timestamps = myTimestamps;
+    String[] tags = myTags;
+    String[] appNames = myAppNames;
+    String[] lines = myLines;
+    BitSet messageStarts = myMessageStarts;
+
+    allocate(lines.length * 2);
+    Arrays.fill(myLevelIndex, null);
+    myTagIndex.clear();
+    myAppNameIndex.clear();
+    myPidIndex.clear();
+    for (int i = 0; i < mySize; i++) {
+      int slot = (myStart + i) % lines.length;
+      myPids[i] = pids[slot];
+      myTids[i] = tids[slot];
+      myLevels[i] = levels[slot];
+      myTimestamps[i] = timestamps[slot];
+      myTags[i] = tags[slot];
+      myAppNames[i] = appNames[slot];
+      myLines[i] = lines[slot];
+      myMessageStarts.set(i, messageStarts.get(slot));
+      index(i);
+    }
+    myStart = 0;
+  }
+}
@@ -0,0 +1,550 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.annotations.VisibleForTesting;
+import com.android.ddmlib.Log;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.ddmlib.logcat.LogCatTimestamp;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The log lines received from a device during one session, stored on disk so that they can be read and searched after they are
+ * gone from the console and from the {@link LogcatBuffer}.
+ * <p>
+ * The lines are appended to segments of {@link #SEGMENT_LINES} lines. Full segments are compressed and written in the
+ * background, each with a small index of the time range, levels, tags, package names and pids of its lines. Segments are read
+ * one at a time with {@link #readSegment(int)}, {@link #findSegment(long)} finds the segment of a point in time, and
+ * {@link #search(AndroidLogcatFilter)} only decompresses the segments whose index may match the filter.
+ * <p>
+ * Each session has its own directory under the directory of its device, and only the last {@link #MAX_SESSIONS} sessions of a
+ * device are kept.
+ */
+@ThreadSafe
+public final class LogcatHistory {
+  private static final Logger LOG = Logger.getInstance(LogcatHistory.class);
+
+  @VisibleForTesting
+  static final int SEGMENT_LINES = 8 * 1024;
+  private static final int MAX_SESSIONS = 10;
+  private static final String SEGMENT_SUFFIX = ".gz";
+  private static final String INDEX_SUFFIX = ".idx";
+  private static final Log.LogLevel[] LEVELS = Log.LogLevel.values();
+
+  private static final AtomicLong ourLastSessionMillis = new AtomicLong();
+
+  @NotNull private final File myDirectory;
+  @NotNull private final ListeningExecutorService myExecutor;
+
+  private final Object myLock = new Object();
+
+  /** The segments written, or being written, to disk */
+  @GuardedBy("myLock")
+  private final List<Segment> mySegments = new ArrayList<>();
+
+  /** The lines of the last segment, not yet written */
+  @GuardedBy("myLock")
+  private List<Line> myLines = new ArrayList<>();
+
+  @GuardedBy("myLock")
+  @Nullable private LogCatHeader myLastHeader;
+
+  /** Lines up to this time are skipped, see {@link #resume()} */
+  @GuardedBy("myLock")
+  @Nullable private LogCatTimestamp mySkipUntil;
+
+  private LogcatHistory(@NotNull File directory, @NotNull ListeningExecutorService executor) {
+    myDirectory = directory;
+    myExecutor = executor;
+  }
+
+  /**
+   * Starts a new session for the device with the given serial number, in a new directory under the given root directory. The
+   * directory is created, and the oldest sessions of the device are deleted, in the background.
+   *
+   * @param executor runs the reads and writes of segments. It must run them one at a time and in order, so that reading a segment
+   *                 always happens after writing it.
+   */
+  @NotNull
+  public static LogcatHistory create(@NotNull File root, @NotNull String serialNumber, @NotNull ListeningExecutorService executor) {
+    File deviceDirectory = new File(root, FileUtil.sanitizeFileName(serialNumber));
+    File directory = new File(deviceDirectory, Long.toString(nextSessionMillis()));
+    // Callers may hold locks, so the directory is created by the executor, before it writes any segment
+    executor.execute(() -> {
+      if (!FileUtil.createDirectory(directory)) {
+        LOG.warn("Could not create logcat history " + directory);
+      }
+      deleteOldSessions(deviceDirectory);
+    });
+    return new LogcatHistory(directory, executor);
+  }
+
+  /**
+   * Opens the session stored in the given directory, e.g. one of the {@link #getSessions(File, String)}.
+   */
+  @NotNull
+  public static LogcatHistory open(@NotNull File directory, @NotNull ListeningExecutorService executor) throws IOException {
+    LogcatHistory history = new LogcatHistory(directory, executor);
+    File[] indexes = directory.listFiles((dir, name) -> name.endsWith(INDEX_SUFFIX));
+    if (indexes != null) {
+      Arrays.sort(indexes);
+      synchronized (history.myLock) {
+        for (File index : indexes) {
+          history.mySegments.add(Segment.readIndex(index));
+        }
+      }
+    }
+    return history;
+  }
+
+  /**
+   * Returns the directories of the stored sessions of the device with the given serial number, oldest first.
+   */
+  @NotNull
+  public static List<File> getSessions(@NotNull File root, @NotNull String serialNumber) {
+    File[] sessions = new File(root, FileUtil.sanitizeFileName(serialNumber)).listFiles(File::isDirectory);
+    if (sessions == null) {
+      return Collections.emptyList();
+    }
+    Arrays.sort(sessions);
+    return Arrays.asList(sessions);
+  }
+
+  /**
+   * Returns the current time, or a later one if a session was already started at that time, so that sessions started in the
+   * same millisecond still get their own directory without checking which ones exist.
+   */
+  private static long nextSessionMillis() {
+    long now = System.currentTimeMillis();
+    return ourLastSessionMillis.updateAndGet(last -> Math.max(now, last + 1));
+  }
+
+  private static void deleteOldSessions(@NotNull File deviceDirectory) {
+    List<File> sessions = getSessions(deviceDirectory.getParentFile(), deviceDirectory.getName());
+    // The new session is the last one
+    for (int i = 0; i < sessions.size() - MAX_SESSIONS; i++) {
+      FileUtil.delete(sessions.get(i));
+    }
+  }
+
+  @NotNull
+  public File getDirectory() {
+    return myDirectory;
+  }
+
+  public void add(@NotNull LogCatMessage message) {
+    add(message, System.currentTimeMillis());
+  }
+
+  /**
+   * Appends a line received at the given time. Lines of the same message are received with the same header object.
+   */
+  @VisibleForTesting
+  void add(@NotNull LogCatMessage message, long receivedMillis) {
+    synchronized (myLock) {
+      if (mySkipUntil != null) {
+        if (!mySkipUntil.isBefore(message.getHeader().getTimestamp())) {
+          return;
+        }
+        mySkipUntil = null;
+      }
+      // Each segment is read on its own, so the first line of a segment stores its header even if it continues a message
+      boolean messageStart = message.getHeader() != myLastHeader || myLines.isEmpty();
+      myLines.add(new Line(receivedMillis, message, messageStart));
+      myLastHeader = message.getHeader();
+      if (myLines.size() == SEGMENT_LINES) {
+        writeLines();
+      }
+    }
+  }
+
+  /**
+   * Called when the device sends lines again after it stopped, e.g. because nobody listened to it anymore. It then sends its whole
+   * log buffer again, so the lines up to the time of the last line added are skipped.
+   */
+  public void resume() {
+    synchronized (myLock) {
+      mySkipUntil = myLastHeader != null ? myLastHeader.getTimestamp() : null;
+    }
+  }
+
+  /**
+   * Writes the lines not written yet, e.g. when the device stops sending lines.
+   */
+  @NotNull
+  public ListenableFuture<?> flush() {
+    synchronized (myLock) {
+      return myLines.isEmpty() ? Futures.immediateFuture(null) : writeLines();
+    }
+  }
+
+  @GuardedBy("myLock")
+  @NotNull
+  private ListenableFuture<?> writeLines() {
+    List<Line> lines = myLines;
+    myLines = new ArrayList<>();
+    Segment segment = Segment.create(mySegments.size(), lines);
+    mySegments.add(segment);
+    return myExecutor.submit(() -> {
+      try {
+        segment.write(myDirectory, lines);
+        segment.myWritten = true;
+      }
+      catch (IOException e) {
+        LOG.warn("Could not write logcat history " + myDirectory, e);
+      }
+    });
+  }
+
+  /**
+   * Returns the number of segments, including the one being appended to.
+   */
+  public int getSegmentCount() {
+    synchronized (myLock) {
+      return mySegments.size() + 1;
+    }
+  }
+
+  /**
+   * Returns the index of the segment holding the lines received at the given time, or the closest one.
+   */
+  public int findSegment(long millis) {
+    synchronized (myLock) {
+      int low = 0;
+      int high = mySegments.size() - 1;
+      while (low <= high) {
+        int middle = (low + high) >>> 1;
+        Segment segment = mySegments.get(middle);
+        if (segment.myLastMillis < millis) {
+          low = middle + 1;
+        }
+        else if (segment.myFirstMillis > millis) {
+          high = middle - 1;
+        }
+        else {
+          return middle;
+        }
+      }
+      return low;
+    }
+  }
+
+  /**
+   * Reads the lines of the given segment in the background.
+   */
+  @NotNull
+  public ListenableFuture<List<LogCatMessage>> readSegment(int index) {
+    synchronized (myLock) {
+      if (index == mySegments.size()) {
+        List<Line> lines = ImmutableList.copyOf(myLines);
+        return Futures.immediateFuture(toMessages(lines));
+      }
+      Segment segment = mySegments.get(index);
+      // Segments are written by the same executor, so this runs after the segment was written
+      return myExecutor.submit(() -> segment.readLines(myDirectory));
+    }
+  }
+
+  /**
+   * Returns, in the background, the lines of all the messages accepted by the given filter, oldest first.
+   */
+  @NotNull
+  public ListenableFuture<List<LogCatMessage>> search(@NotNull AndroidLogcatFilter filter) {
+    List<Segment> segments;
+    List<Line> lines;
+    synchronized (myLock) {
+      segments = ImmutableList.copyOf(mySegments);
+      lines = ImmutableList.copyOf(myLines);
+    }
+    return myExecutor.submit(() -> {
+      List<LogCatMessage> messages = new ArrayList<>();
+      for (Segment segment : segments) {
+        if (segment.mayMatch(filter)) {
+          messages.addAll(select(segment.readLines(myDirectory), filter));
+        }
+      }
+      messages.addAll(select(toMessages(lines), filter));
+      return messages;
+    });
+  }
+
+  @NotNull
+  private static List<LogCatMessage> select(@NotNull List<LogCatMessage> messages, @NotNull AndroidLogcatFilter filter) {
+    LogcatBuffer buffer = new LogcatBuffer(Integer.MAX_VALUE);
+    for (LogCatMessage message : messages) {
+      buffer.addMessage(message);
+    }
+    return buffer.getMessages(filter);
+  }
+
+  @NotNull
+  private static List<LogCatMessage> toMessages(@NotNull List<Line> lines) {
+    List<LogCatMessage> messages = new ArrayList<>(lines.size());
+    LogCatHeader header = null;
+    for (Line line : lines) {
+      if (line.myMessageStart || header == null) {
+        header = line.myMessage.getHeader();
+      }
+      messages.add(new LogCatMessage(header, line.myMessage.getMessage()));
+    }
+    return messages;
+  }
+
+  private static final class Line {
+    private final long myReceivedMillis;
+    @NotNull private final LogCatMessage myMessage;
+    private final boolean myMessageStart;
+
+    private Line(long receivedMillis, @NotNull LogCatMessage message, boolean messageStart) {
+      myReceivedMillis = receivedMillis;
+      myMessage = message;
+      myMessageStart = messageStart;
+    }
+  }
+
+  /**
+   * The index of a segment.
+   */
+  private static final class Segment {
+    private final int myIndex;
+    private final long myFirstMillis;
+    private final long myLastMillis;
+    /** The levels of the lines, as a mask of level ordinals */
+    private final int myLevels;
+    @NotNull private final Set<String> myTags;
+    @NotNull private final Set<String> myAppNames;
+    @NotNull private final Set<Integer> myPids;
+    private volatile boolean myWritten;
+
+    private Segment(int index,
+                    long firstMillis,
+                    long lastMillis,
+                    int levels,
+                    @NotNull Set<String> tags,
+                    @NotNull Set<String> appNames,
+                    @NotNull Set<Integer> pids) {
+      myIndex = index;
+      myFirstMillis = firstMillis;
+      myLastMillis = lastMillis;
+      myLevels = levels;
+      myTags = tags;
+      myAppNames = appNames;
+      myPids = pids;
+    }
+
+    @NotNull
+    private static Segment create(int index, @NotNull List<Line> lines) {
+      int levels = 0;
+      Set<String> tags = new HashSet<>();
+      Set<String> appNames = new HashSet<>();
+      Set<Integer> pids = new HashSet<>();
+      for (Line line : lines) {
+        LogCatHeader header = line.myMessage.getHeader();
+        levels |= 1 << header.getLogLevel().ordinal();
+        tags.add(header.getTag());
+        appNames.add(header.getAppName());
+        pids.add(header.getPid());
+      }
+      return new Segment(index, lines.get(0).myReceivedMillis, lines.get(lines.size() - 1).myReceivedMillis, levels, tags, appNames,
+                         pids);
+    }
+
+    /**
+     * Returns false if none of the lines of this segment can be accepted by the given filter.
+     */
+    private boolean mayMatch(@NotNull AndroidLogcatFilter filter) {
+      if (!(filter instanceof DefaultAndroidLogcatFilter)) {
+        return true;
+      }
+      DefaultAndroidLogcatFilter defaultFilter = (DefaultAndroidLogcatFilter)filter;
+      Log.LogLevel minLevel = defaultFilter.getLogLevel();
+      if (minLevel != null) {
+        boolean anyLevel = false;
+        for (Log.LogLevel level : LEVELS) {
+          anyLevel |= level.getPriority() >= minLevel.getPriority() && (myLevels & (1 << level.ordinal())) != 0;
+        }
+        if (!anyLevel) {
+          return false;
+        }
+      }
+      String pid = defaultFilter.getPid();
+      if (pid != null && !pid.isEmpty() && !myPids.contains(parsePid(pid))) {
+        return false;
+      }
+      return mayMatch(myTags, defaultFilter.getTagPattern()) && mayMatch(myAppNames, defaultFilter.getPackagePattern());
+    }
+
+    private static boolean mayMatch(@NotNull Set<String> values, @Nullable Pattern pattern) {
+      if (pattern == null) {
+        return true;
+      }
+      for (String value : values) {
+        if (pattern.matcher(value).find()) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Nullable
+    private static Integer parsePid(@NotNull String pid) {
+      try {
+        return Integer.parseInt(pid);
+      }
+      catch (NumberFormatException e) {
+        return null;
+      }
+    }
+
+    private void write(@NotNull File directory, @NotNull List<Line> lines) throws IOException {
+      try (DataOutputStream stream = new DataOutputStream(
+        new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(getFile(directory, SEGMENT_SUFFIX)))))) {
+        stream.writeInt(lines.size());
+        for (Line line : lines) {
+          LogCatHeader header = line.myMessage.getHeader();
+          stream.writeBoolean(line.myMessageStart);
+          stream.writeLong(line.myReceivedMillis);
+          if (line.myMessageStart) {
+            stream.writeByte(header.getLogLevel().ordinal());
+            stream.writeInt(header.getPid());
+            stream.writeInt(header.getTid());
+            writeString(stream, header.getAppName());
+            writeString(stream, header.getTag());
+            writeString(stream, header.getTimestamp().toString());
+          }
+          writeString(stream, line.myMessage.getMessage());
+        }
+      }
+      // The index is written last, so that a session opened later only lists complete segments
+      File indexFile = getFile(directory, INDEX_SUFFIX);
+      try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+        stream.writeInt(myIndex);
+        stream.writeLong(myFirstMillis);
+        stream.writeLong(myLastMillis);
+        stream.writeInt(myLevels);
+        writeStrings(stream, myTags);
+        writeStrings(stream, myAppNames);
+        stream.writeInt(myPids.size());
+        for (int pid : myPids) {
+          stream.writeInt(pid);
+        }
+      }
+    }
+
+    @NotNull
+    private static Segment readIndex(@NotNull File indexFile) throws IOException {
+      try (DataInputStream stream = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+        int index = stream.readInt();
+        long firstMillis = stream.readLong();
+        long lastMillis = stream.readLong();
+        int levels = stream.readInt();
+        Set<String> tags = readStrings(stream);
+        Set<String> appNames = readStrings(stream);
+        Set<Integer> pids = new HashSet<>();
+        for (int i = stream.readInt(); i > 0; i--) {
+          pids.add(stream.readInt());
+        }
+        Segment segment = new Segment(index, firstMillis, lastMillis, levels, tags, appNames, pids);
+        segment.myWritten = true;
+        return segment;
+      }
+    }
+
+    @NotNull
+    private List<LogCatMessage> readLines(@NotNull File directory) throws IOException {
+      if (!myWritten) {
+        throw new IOException("Segment " + myIndex + " of " + directory + " was not written");
+      }
+      try (DataInputStream stream = new DataInputStream(
+        new GZIPInputStream(new BufferedInputStream(new FileInputStream(getFile(directory, SEGMENT_SUFFIX)))))) {
+        int count = stream.readInt();
+        List<LogCatMessage> messages = new ArrayList<>(count);
+        LogCatHeader header = null;
+        for (int i = 0; i < count; i++) {
+          boolean messageStart = stream.readBoolean();
+          stream.readLong();
+          if (messageStart) {
+            Log.LogLevel level = LEVELS[stream.readByte()];
+            int pid = stream.readInt();
+            int tid = stream.readInt();
+            String appName = readString(stream);
+            String tag = readString(stream);
+            LogCatTimestamp timestamp = LogCatTimestamp.fromString(readString(stream));
+            header = new LogCatHeader(level, pid, tid, appName, tag, timestamp);
+          }
+          if (header == null) {
+            throw new IOException("Segment " + myIndex + " of " + directory + " does not start with a message");
+          }
+          messages.add(new LogCatMessage(header, readString(stream)));
+        }
+        return messages;
+      }
+    }
+
+    @NotNull
+    private File getFile(@NotNull File directory, @NotNull String suffix) {
+      return new File(directory, String.format(Locale.US, "segment-%05d%s", myIndex, suffix));
+    }
+  }
+
+  private static void writeString(@NotNull DataOutputStream stream, @NotNull String string) throws IOException {
+    // Not writeUTF, which is limited to 64K
+    byte[] bytes = string.getBytes(Charsets.UTF_8);
+    stream.writeInt(bytes.length);
+    stream.write(bytes);
+  }
+
+  @NotNull
+  private static String readString(@NotNull DataInputStream stream) throws IOException {
+    byte[] bytes = new byte[stream.readInt()];
+    stream.readFully(bytes);
+    return new String(bytes, Charsets.UTF_8);
+  }
+
+  private static void writeStrings(@NotNull DataOutputStream stream, @NotNull Set<String> strings) throws IOException {
+    stream.writeInt(strings.size());
+    for (String string : strings) {
+      writeString(stream, string);
+    }
+  }
+
+  @NotNull
+  private static Set<String> readStrings(@NotNull DataInputStream stream) throws IOException {
+    Set<String> strings = new HashSet<>();
+    for (int i = stream.readInt(); i > 0; i--) {
+      strings.add(readString(stream));
+    }
+    return strings;
+  }
+}
@@ -17,21 +17,55 @@ package com.android.tools.idea.rendering;
 
 import com.android.annotations.VisibleForTesting;
 import com.android.ide.common.resources.ResourceResolver;
-import com.google.common.collect.Maps;
+import com.android.tools.idea.util.LruFileStore;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.EditorFactory;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.intellij.util.ui.EmptyIcon;
 import com.intellij.util.ui.JBUI;
 import com.intellij.util.ui.UIUtil;
 import icons.AndroidIcons;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import javax.imageio.ImageIO;
 import javax.swing.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 
-import java.util.Map;
+import static com.android.SdkConstants.DOT_PNG;
+import static com.android.SdkConstants.DOT_XML;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
+/**
+ * Cache of the thumbnails displayed for image resources in the editor gutter and the property sheet.
+ * <p>
+ * Thumbnails are rendered on a background thread; until a thumbnail is ready, {@link #getIcon} returns the previous thumbnail of
+ * the image, if any, or an empty placeholder, and the editors of the file displaying it are repainted once it is ready. The rendered
+ * thumbnails are kept in memory up to {@link #MAX_CACHE_SIZE_BYTES} and stored on disk keyed by the contents of the image so they do
+ * not need to be rendered again in later sessions. The least recently used stored thumbnails are deleted once the store exceeds
+ * {@link #MAX_STORE_SIZE_BYTES}.
+ */
 public class GutterIconCache {
   private static final Logger LOG = Logger.getInstance(GutterIconCache.class);
   private static final Icon NONE = AndroidIcons.Android; // placeholder
@@ -39,18 +73,59 @@ public class GutterIconCache {
   @VisibleForTesting static final int MAX_WIDTH = JBUI.scale(16);
   @VisibleForTesting static final int MAX_HEIGHT = JBUI.scale(16);
 
+  /** Icon returned while the thumbnail is being rendered */
+  private static final Icon RENDERING_PLACEHOLDER = EmptyIcon.create(MAX_WIDTH, MAX_HEIGHT);
+
+  /** Maximum number of bytes used by the thumbnails kept in memory */
+  @VisibleForTesting static final long MAX_CACHE_SIZE_BYTES = 8 * 1024 * 1024;
+
+  /** Maximum number of bytes used by the thumbnails stored on disk */
+  @VisibleForTesting static final long MAX_STORE_SIZE_BYTES = 4 * 1024 * 1024;
+
+  private static final String STORE_DIRECTORY = "caches" + File.separator + "gutter_icons";
+
+  /** Matches XML attribute values which are resource or theme references */
+  private static final Pattern REFERENCE_PATTERN = Pattern.compile("=\\s*[\"'][@?]");
+
   private static final GutterIconCache ourInstance = new GutterIconCache();
 
-  private Map<String, Icon> myThumbnailCache = Maps.newHashMap();
+  private final Cache<String, Thumbnail> myThumbnailCache;
 
-  /**
-   * Stores timestamps for the last modification time of image files using the
-   * path as a key.
-   */
-  private Map<String, Long> myTimestampCache = Maps.newHashMap();
-  private boolean myRetina;
+  /** Paths of the images being rendered in the background */
+  private final Set<String> myPendingPaths = ConcurrentHashMap.newKeySet();
+
+  /** Files displaying the images being rendered, whose editors are repainted once the thumbnails are ready */
+  private final ConcurrentMap<String, Set<VirtualFile>> myDisplayingFiles = new ConcurrentHashMap<>();
+
+  @NotNull private final Executor myExecutor;
+
+  /** Store of the rendered thumbnails, or null to not store them */
+  @Nullable private final LruFileStore myStore;
+
+  private final long myMaxStoreSizeBytes;
+
+  /** Number of bytes used by the store, or -1 if it has not been measured yet in this session */
+  private final AtomicLong myStoreSizeBytes = new AtomicLong(-1);
+
+  private volatile boolean myRetina;
 
   public GutterIconCache() {
+    this(ApplicationManager.getApplication().isUnitTestMode()
+         ? MoreExecutors.directExecutor()
+         : AppExecutorUtil.createBoundedApplicationPoolExecutor("GutterIconCache", 2),
+         ApplicationManager.getApplication().isUnitTestMode() ? null : new File(PathManager.getSystemPath(), STORE_DIRECTORY),
+         MAX_CACHE_SIZE_BYTES, MAX_STORE_SIZE_BYTES);
+  }
+
+  @VisibleForTesting
+  GutterIconCache(@NotNull Executor executor, @Nullable File storeDirectory, long maxCacheSizeBytes, long maxStoreSizeBytes) {
+    myExecutor = executor;
+    myStore = storeDirectory != null ? new LruFileStore(storeDirectory, DOT_PNG) : null;
+    myMaxStoreSizeBytes = maxStoreSizeBytes;
+    myThumbnailCache = CacheBuilder.newBuilder()
+      .maximumWeight(maxCacheSizeBytes)
+      .weigher((String path, Thumbnail thumbnail) -> thumbnail.getSizeBytes())
+      .build();
   }
 
   @NotNull
@@ -60,43 +135,181 @@ public class GutterIconCache {
 
   @VisibleForTesting
   boolean isIconUpToDate(@NotNull String path) {
-    if (myTimestampCache.containsKey(path)) {
-      // Entry is valid if image resource has not been modified since the entry was cached
-      VirtualFile file = LocalFileSystem.getInstance().findFileByPath(path);
-      if (file != null) {
-        return myTimestampCache.get(path) == file.getTimeStamp()
-               && !FileDocumentManager.getInstance().isFileModified(file);
-      }
+    Thumbnail thumbnail = myThumbnailCache.getIfPresent(path);
+    if (thumbnail == null) {
+      return false;
     }
+    // Entry is valid if image resource has not been modified since the entry was cached. Images that could not be found are
+    // up to date as long as they are still missing, so that they are not rendered again on every repaint.
+    VirtualFile file = LocalFileSystem.getInstance().findFileByPath(path);
+    long timeStamp = file != null ? file.getTimeStamp() : -1;
+    long documentStamp = file != null ? getDocumentStamp(file) : -1;
+    return thumbnail.myTimeStamp == timeStamp && thumbnail.myDocumentStamp == documentStamp;
+  }
 
-    return false;
+  /**
+   * Returns the modification stamp of the unsaved changes of the given file, or -1 if the file has no unsaved changes.
+   */
+  private static long getDocumentStamp(@NotNull VirtualFile file) {
+    FileDocumentManager documentManager = FileDocumentManager.getInstance();
+    if (!documentManager.isFileModified(file)) {
+      return -1;
+    }
+    Document document = documentManager.getCachedDocument(file);
+    return document != null ? document.getModificationStamp() : -1;
   }
 
+  /**
+   * Same as {@link #getIcon(String, ResourceResolver, VirtualFile)}, for callers that don't display the thumbnail in an editor.
+   */
   @Nullable
   public Icon getIcon(@NotNull String path, @Nullable ResourceResolver resolver) {
+    return getIcon(path, resolver, null);
+  }
+
+  /**
+   * Returns the thumbnail of the image resource at the given path, or null if the image can not be rendered. If the thumbnail is
+   * not up to date, it is rendered in the background and either the previous thumbnail or a placeholder is returned in the meantime.
+   * The editors of {@code displayingFile} are repainted once the thumbnail is ready.
+   */
+  @Nullable
+  public Icon getIcon(@NotNull String path, @Nullable ResourceResolver resolver, @Nullable VirtualFile displayingFile) {
     boolean isRetina = UIUtil.isRetina();
     if (myRetina != isRetina) {
       myRetina = isRetina;
-      myThumbnailCache.clear();
+      myThumbnailCache.invalidateAll();
     }
-    Icon myIcon = myThumbnailCache.get(path);
-    if (myIcon == null || !isIconUpToDate(path)) {
-      myIcon = GutterIconFactory.createIcon(path, resolver, MAX_WIDTH, MAX_HEIGHT);
 
-      if (myIcon == null) {
-        myIcon = NONE;
+    if (!isIconUpToDate(path)) {
+      if (displayingFile != null) {
+        myDisplayingFiles.computeIfAbsent(path, key -> ConcurrentHashMap.newKeySet()).add(displayingFile);
+      }
+      if (myPendingPaths.add(path)) {
+        scheduleRender(path, resolver, isRetina);
       }
+    }
 
-      myThumbnailCache.put(path, myIcon);
+    Thumbnail thumbnail = myThumbnailCache.getIfPresent(path);
+    if (thumbnail == null) {
+      return RENDERING_PLACEHOLDER;
+    }
+    return thumbnail.myIcon != NONE ? thumbnail.myIcon : null;
+  }
 
-      // Record timestamp of image resource at the time of caching
-      VirtualFile file = LocalFileSystem.getInstance().findFileByPath(path);
-      if (file != null) {
-        myTimestampCache.put(path, file.getTimeStamp());
+  private void scheduleRender(@NotNull String path, @Nullable ResourceResolver resolver, boolean isRetina) {
+    myExecutor.execute(() -> {
+      try {
+        render(path, resolver, isRetina);
+      }
+      finally {
+        myPendingPaths.remove(path);
+      }
+      Set<VirtualFile> displayingFiles = myDisplayingFiles.remove(path);
+      if (displayingFiles != null) {
+        ApplicationManager.getApplication().invokeLater(() -> repaintEditors(displayingFiles));
+      }
+    });
+  }
+
+  private static void repaintEditors(@NotNull Set<VirtualFile> files) {
+    FileDocumentManager documentManager = FileDocumentManager.getInstance();
+    for (VirtualFile file : files) {
+      Document document = file.isValid() ? documentManager.getCachedDocument(file) : null;
+      if (document != null) {
+        for (Editor editor : EditorFactory.getInstance().getEditors(document)) {
+          editor.getComponent().repaint();
+        }
+      }
+    }
+  }
+
+  private void render(@NotNull String path, @Nullable ResourceResolver resolver, boolean isRetina) {
+    // Record timestamp of image resource before rendering so changes made while rendering invalidate the entry
+    VirtualFile file = LocalFileSystem.getInstance().findFileByPath(path);
+    long timeStamp = file != null ? file.getTimeStamp() : -1;
+    long documentStamp = file != null ? getDocumentStamp(file) : -1;
+
+    File storedFile = getStoredFile(path, resolver, isRetina);
+    BufferedImage image = myStore != null && storedFile != null ? myStore.read(storedFile, ImageIO::read) : null;
+    if (image == null) {
+      image = GutterIconFactory.createImage(path, resolver, MAX_WIDTH, MAX_HEIGHT);
+      if (image != null && storedFile != null) {
+        storeImage(storedFile, image);
       }
     }
 
-    return myIcon != NONE ? myIcon : null;
+    Icon icon = image != null ? GutterIconFactory.createIcon(image, MAX_WIDTH, MAX_HEIGHT) : NONE;
+    myThumbnailCache.put(path, new Thumbnail(icon, image, timeStamp, documentStamp));
   }
 
+  /**
+   * Returns the file where the thumbnail of the given image is stored. The file name is a hash of the contents of the image and
+   * of the thumbnail size. Returns null if the thumbnail can not be stored, for example because the image contains references
+   * that depend on the {@link ResourceResolver}.
+   */
+  @Nullable
+  private File getStoredFile(@NotNull String path, @Nullable ResourceResolver resolver, boolean isRetina) {
+    if (myStore == null) {
+      return null;
+    }
+
+    byte[] content;
+    try {
+      if (path.endsWith(DOT_XML)) {
+        String xml = GutterIconFactory.getXmlContent(path);
+        if (resolver != null && REFERENCE_PATTERN.matcher(xml).find()) {
+          return null;
+        }
+        content = xml.getBytes(UTF_8);
+      }
+      else {
+        content = Files.readAllBytes(new File(path).toPath());
+      }
+    }
+    catch (IOException e) {
+      return null;
+    }
+
+    Hasher hasher = Hashing.murmur3_128().newHasher()
+      .putBytes(content)
+      .putBoolean(path.endsWith(DOT_XML))
+      .putInt(MAX_WIDTH)
+      .putInt(MAX_HEIGHT)
+      .putBoolean(isRetina);
+    return myStore.getFile(hasher.hash().toString());
+  }
+
+  private void storeImage(@NotNull File file, @NotNull BufferedImage image) {
+    assert myStore != null;
+    if (!myStore.write(file, tempFile -> ImageIO.write(image, "PNG", tempFile))) {
+      return;
+    }
+    if (myStoreSizeBytes.get() < 0 || myStoreSizeBytes.addAndGet(file.length()) > myMaxStoreSizeBytes) {
+      myStoreSizeBytes.set(myStore.trimToSize(myMaxStoreSizeBytes));
+    }
+  }
+
+  @VisibleForTesting
+  long getCachedSizeBytes() {
+    return myThumbnailCache.asMap().values().stream().mapToLong(Thumbnail::getSizeBytes).sum();
+  }
+
+  private static final class Thumbnail {
+    @NotNull private final Icon myIcon;
+    private final int mySizeBytes;
+    private final long myTimeStamp;
+    private final long myDocumentStamp;
+
+    private Thumbnail(@NotNull Icon icon, @Nullable BufferedImage image, long timeStamp, long documentStamp) {
+      myIcon = icon;
+      // Entries without an image still need to weigh something so the number of entries is bounded
+      mySizeBytes = image != null ? image.getWidth() * image.getHeight() * 4 : 64;
+      myTimeStamp = timeStamp;
+      myDocumentStamp = documentStamp;
+    }
+
+    private int getSizeBytes() {
+      return mySizeBytes;
+    }
+  }
 }
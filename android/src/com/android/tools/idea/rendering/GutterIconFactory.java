@@ -25,8 +25,10 @@ import com.android.tools.idea.res.ResourceHelper;
 import com.android.utils.XmlUtils;
 import com.google.common.base.Charsets;
 import com.google.common.io.Files;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.ui.Gray;
@@ -64,19 +66,45 @@ public class GutterIconFactory {
    */
   @Nullable
   public static Icon createIcon(@NotNull String path, @Nullable ResourceResolver resolver, int maxWidth, int maxHeight) {
+    BufferedImage image = createImage(path, resolver, maxWidth, maxHeight);
+    return image != null ? createIcon(image, maxWidth, maxHeight) : null;
+  }
+
+  /**
+   * Returns the image that {@link #createIcon(String, ResourceResolver, int, int)} displays for the given image resource, or null
+   * if unable to read or render the image resource. On retina displays the image can be up to twice the size of the icon.
+   */
+  @Nullable
+  static BufferedImage createImage(@NotNull String path, @Nullable ResourceResolver resolver, int maxWidth, int maxHeight) {
     if (path.endsWith(DOT_XML)) {
-      return createXmlIcon(path, resolver, maxWidth);
+      return createXmlImage(path, resolver, maxWidth);
     }
     else {
-      return createBitmapIcon(path, maxWidth, maxHeight);
+      return createBitmapImage(path, maxWidth, maxHeight);
+    }
+  }
+
+  /**
+   * Returns an {@link Icon} for an image returned by {@link #createImage}.
+   */
+  @NotNull
+  static Icon createIcon(@NotNull BufferedImage image, int maxWidth, int maxHeight) {
+    // Only images rendered for retina displays are bigger than the icon
+    if (isRetinaEnabled() && (image.getWidth() > maxWidth || image.getHeight() > maxHeight)) {
+      RetinaImageIcon retinaIcon = getRetinaIcon(image);
+      if (retinaIcon != null) {
+        return retinaIcon;
+      }
     }
+    return new ImageIcon(image);
   }
 
   /**
    * Read XML data from Document when possible (in case there are unsaved changes
    * for a file open in an editor).
    */
-  private static String getXmlContent(@NotNull String path) throws IOException {
+  @NotNull
+  static String getXmlContent(@NotNull String path) throws IOException {
     VirtualFile file = LocalFileSystem.getInstance().findFileByPath(path);
 
     if (file == null) {
@@ -90,12 +118,12 @@ public class GutterIconFactory {
       return new String(file.contentsToByteArray());
     }
 
-    return document.getText();
+    return ApplicationManager.getApplication().runReadAction((Computable<String>)document::getText);
   }
 
 
   @Nullable
-  private static Icon createXmlIcon(@NotNull String path, @Nullable ResourceResolver resolver, int maxWidth) {
+  private static BufferedImage createXmlImage(@NotNull String path, @Nullable ResourceResolver resolver, int maxWidth) {
     try {
       VdPreview.TargetSize imageTargetSize =
         VdPreview.TargetSize.createSizeFromWidth(isRetinaEnabled() ? ImageUtils.RETINA_SCALE * maxWidth : maxWidth);
@@ -120,15 +148,7 @@ public class GutterIconFactory {
         if (builder.length() > 0) {
           LOG.warn("Problems rendering " + path + ": " + builder);
         }
-        if (image != null) {
-          if (isRetinaEnabled()) {
-            RetinaImageIcon retinaIcon = getRetinaIcon(image);
-            if (retinaIcon != null) {
-              return retinaIcon;
-            }
-          }
-          return new ImageIcon(image);
-        }
+        return image;
       }
     }
     catch (Throwable e) {
@@ -184,10 +204,10 @@ public class GutterIconFactory {
   }
 
   @Nullable
-  private static Icon createBitmapIcon(@NotNull String path, int maxWidth, int maxHeight) {
+  private static BufferedImage createBitmapImage(@NotNull String path, int maxWidth, int maxHeight) {
     try {
-      Icon icon = createBitmapIcon(ImageIO.read(new File(path)), maxWidth, maxHeight);
-      if (icon != null) return icon;
+      BufferedImage image = createBitmapImage(ImageIO.read(new File(path)), maxWidth, maxHeight);
+      if (image != null) return image;
     }
     catch (Throwable e) {
       // Not just IOExceptions here; for example, we've seen
@@ -199,17 +219,13 @@ public class GutterIconFactory {
   }
 
   @Nullable
-  private static Icon createBitmapIcon(BufferedImage image, int maxWidth, int maxHeight) {
+  private static BufferedImage createBitmapImage(BufferedImage image, int maxWidth, int maxHeight) {
     if (image != null) {
       int imageWidth = image.getWidth();
       int imageHeight = image.getHeight();
       if (isRetinaEnabled() && (imageWidth > ImageUtils.RETINA_SCALE * maxWidth || imageHeight > ImageUtils.RETINA_SCALE * maxHeight)) {
         double scale = ImageUtils.RETINA_SCALE * Math.min(maxWidth / (double)imageWidth, maxHeight / (double)imageHeight);
-        BufferedImage scaled = ImageUtils.scale(image, scale, scale);
-        RetinaImageIcon retinaIcon = getRetinaIcon(scaled);
-        if (retinaIcon != null) {
-          return retinaIcon;
-        }
+        return ImageUtils.scale(image, scale, scale);
       }
 
       if (imageWidth > maxWidth || imageHeight > maxHeight) {
@@ -231,7 +247,7 @@ public class GutterIconFactory {
         image = ImageUtils.scale(image, scale, scale);
       }
 
-      return new ImageIcon(image);
+      return image;
     }
     return null;
   }
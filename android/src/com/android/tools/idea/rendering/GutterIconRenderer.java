@@ -31,6 +31,7 @@ import com.intellij.openapi.ui.popup.JBPopupFactory;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
 import com.intellij.ui.awt.RelativePoint;
 import com.intellij.ui.components.JBLabel;
 import com.intellij.util.ui.JBUI;
@@ -56,7 +57,8 @@ public class GutterIconRenderer extends com.intellij.openapi.editor.markup.Gutte
   @NotNull
   @Override
   public Icon getIcon() {
-    Icon icon = GutterIconCache.getInstance().getIcon(myFile.getPath(), myResourceResolver);
+    PsiFile file = myElement.getContainingFile();
+    Icon icon = GutterIconCache.getInstance().getIcon(myFile.getPath(), myResourceResolver, file != null ? file.getVirtualFile() : null);
 
     if (icon != null) {
       return icon;
@@ -27,6 +27,7 @@ import com.google.common.base.Splitter;
 import com.google.common.collect.*;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.psi.xml.XmlAttribute;
 import com.intellij.psi.xml.XmlFile;
@@ -35,6 +36,7 @@ import org.jetbrains.annotations.NotNull;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import static com.android.SdkConstants.*;
@@ -71,6 +73,12 @@ public class LayoutPsiPullParser extends LayoutPullParser implements AaptAttrPar
                                                                                  ),
                                                                                  ImmutableList.of());
 
+  /**
+   * Snapshot of the root tag taken by the last parser created for it. Used to only snapshot the modified parts of the layout
+   * on the next render.
+   */
+  private static final Key<TagSnapshot> PREVIOUS_SNAPSHOT = Key.create("LayoutPsiPullParser.previousSnapshot");
+
   private static final Consumer<TagSnapshot> TAG_SNAPSHOT_DECORATOR = (tag) -> {
     if ("com.google.android.gms.ads.AdView".equals(tag.tagName) || "com.google.android.gms.maps.MapView".equals(tag.tagName)) {
       tag.setAttribute(ATTR_MIN_WIDTH, TOOLS_URI, TOOLS_PREFIX, "50dp", false);
@@ -99,6 +107,9 @@ public class LayoutPsiPullParser extends LayoutPullParser implements AaptAttrPar
 
   private final ImmutableMap<String, TagSnapshot> myDeclaredAaptAttrs;
 
+  /** Time spent creating the {@link TagSnapshot} hierarchy of the layout, in milliseconds */
+  private final long mySnapshotBuildTimeMs;
+
   /**
    * Constructs a new {@link LayoutPsiPullParser}, a parser dedicated to the special case of
    * parsing a layout resource files.
@@ -207,6 +218,7 @@ public class LayoutPsiPullParser extends LayoutPullParser implements AaptAttrPar
   protected LayoutPsiPullParser(@Nullable final XmlTag root, @NotNull ILayoutLog logger, boolean honorMergeParentTag) {
     myLogger = logger;
 
+    long start = System.nanoTime();
     if (root != null) {
       myRoot = ApplicationManager.getApplication().runReadAction((Computable<TagSnapshot>)() -> {
         if (root.isValid()) {
@@ -222,11 +234,13 @@ public class LayoutPsiPullParser extends LayoutPullParser implements AaptAttrPar
     myNamespacePrefixes = buildNamespacesMap(myRoot);
     // Obtain a list of all the aapt declared attributes
     myDeclaredAaptAttrs = findDeclaredAaptAttrs(myRoot);
+    mySnapshotBuildTimeMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
   }
 
   protected LayoutPsiPullParser(@NotNull TagSnapshot root, @NotNull ILayoutLog log) {
     myLogger = log;
     myDeclaredAaptAttrs = ImmutableMap.of();
+    mySnapshotBuildTimeMs = 0;
     myRoot = ApplicationManager.getApplication().runReadAction((Computable<TagSnapshot>)() -> {
       if (root.tag != null && root.tag.isValid()) {
         return root;
@@ -248,6 +262,13 @@ public class LayoutPsiPullParser extends LayoutPullParser implements AaptAttrPar
     return myDeclaredAaptAttrs;
   }
 
+  /**
+   * Returns the time, in milliseconds, that it took to create the snapshot of the layout read by this parser.
+   */
+  public long getSnapshotBuildTimeMs() {
+    return mySnapshotBuildTimeMs;
+  }
+
   /**
    * Method that walks the snapshot and finds all the aapt:attr elements declared.
    */
@@ -694,7 +715,10 @@ public class LayoutPsiPullParser extends LayoutPullParser implements AaptAttrPar
   @Nullable
   private static TagSnapshot createSnapshot(@NotNull XmlTag tag, boolean honorMergeParentTag) {
     Consumer<TagSnapshot> tagDecorator = TAG_SNAPSHOT_DECORATOR;
+    boolean reusePreviousSnapshot = true;
     if (tag.getName().equals(TAG_LAYOUT)) {
+      // The decorator below numbers the tags in creation order so all of them need to be created again
+      reusePreviousSnapshot = false;
       // If we are creating a snapshot of a databinding layout (the root tag is <layout>), we need to emulate some post-processing that
       // the databinding code does in the layouts.
       // For all the children of the root tag, it adds a tag that identifies. The tag is "layout/layout_name_<number>"
@@ -731,13 +755,13 @@ public class LayoutPsiPullParser extends LayoutPullParser implements AaptAttrPar
         return createSnapshotForViewFragment(tag);
 
       case FRAME_LAYOUT:
-        return createSnapshotForFrameLayout(tag, tagDecorator);
+        return createSnapshotForFrameLayout(tag, tagDecorator, reusePreviousSnapshot);
 
       case VIEW_MERGE:
-        return createSnapshotForMerge(tag, honorMergeParentTag, tagDecorator);
+        return createSnapshotForMerge(tag, honorMergeParentTag, tagDecorator, reusePreviousSnapshot);
 
       default:
-        TagSnapshot root = TagSnapshot.createTagSnapshot(tag, tagDecorator);
+        TagSnapshot root = createTagSnapshot(tag, tagDecorator, reusePreviousSnapshot);
 
         // Ensure that root tags that qualify for adapter binding specify an id attribute, since that is required for
         // attribute binding to work. (Without this, a <ListView> at the root level will not show Item 1, Item 2, etc.
@@ -751,10 +775,28 @@ public class LayoutPsiPullParser extends LayoutPullParser implements AaptAttrPar
           }
         }
 
+        if (reusePreviousSnapshot) {
+          tag.putUserData(PREVIOUS_SNAPSHOT, root);
+        }
         return root;
     }
   }
 
+  /**
+   * Creates a {@link TagSnapshot} of the given tag. If {@code reusePreviousSnapshot} is true, the unmodified parts of the snapshot
+   * taken for the previous render of the tag are reused. Callers are responsible for storing the new snapshot once it is complete.
+   */
+  @NotNull
+  private static TagSnapshot createTagSnapshot(@NotNull XmlTag tag,
+                                               @NotNull Consumer<TagSnapshot> tagDecorator,
+                                               boolean reusePreviousSnapshot) {
+    if (!reusePreviousSnapshot) {
+      tag.putUserData(PREVIOUS_SNAPSHOT, null);
+      return TagSnapshot.createTagSnapshot(tag, tagDecorator);
+    }
+    return TagSnapshot.createTagSnapshot(tag, tagDecorator, tag.getUserData(PREVIOUS_SNAPSHOT));
+  }
+
   @NotNull
   private static TagSnapshot createSnapshotForViewFragment(@NotNull XmlTag rootTag) {
     XmlAttribute[] psiAttributes = rootTag.getAttributes();
@@ -789,8 +831,13 @@ public class LayoutPsiPullParser extends LayoutPullParser implements AaptAttrPar
   }
 
   @NotNull
-  private static TagSnapshot createSnapshotForFrameLayout(@NotNull XmlTag rootTag, @NotNull Consumer<TagSnapshot> tagDecorator) {
-    TagSnapshot root = TagSnapshot.createTagSnapshot(rootTag, tagDecorator);
+  private static TagSnapshot createSnapshotForFrameLayout(@NotNull XmlTag rootTag,
+                                                         @NotNull Consumer<TagSnapshot> tagDecorator,
+                                                         boolean reusePreviousSnapshot) {
+    // tools:visibleChildren modifies the children snapshots so they can not be shared with the next render
+    String visibleChild = rootTag.getAttributeValue("visibleChildren", TOOLS_URI);
+    reusePreviousSnapshot &= visibleChild == null;
+    TagSnapshot root = createTagSnapshot(rootTag, tagDecorator, reusePreviousSnapshot);
 
     // tools:layout on a <FrameLayout> acts like an <include> child. This
     // lets you preview runtime additions on FrameLayouts.
@@ -810,7 +857,6 @@ public class LayoutPsiPullParser extends LayoutPullParser implements AaptAttrPar
     }
 
     // Allow <FrameLayout tools:visibleChildren="1,3,5"> to make all but the given children visible
-    String visibleChild = rootTag.getAttributeValue("visibleChildren", TOOLS_URI);
     if (visibleChild != null) {
       Set<Integer> indices = Sets.newHashSet();
       for (String s : Splitter.on(',').trimResults().omitEmptyStrings().split(visibleChild)) {
@@ -830,6 +876,9 @@ public class LayoutPsiPullParser extends LayoutPullParser implements AaptAttrPar
       }
     }
 
+    if (reusePreviousSnapshot) {
+      rootTag.putUserData(PREVIOUS_SNAPSHOT, root);
+    }
     return root;
   }
 
@@ -840,8 +889,12 @@ public class LayoutPsiPullParser extends LayoutPullParser implements AaptAttrPar
   @NotNull
   private static TagSnapshot createSnapshotForMerge(@NotNull XmlTag rootTag,
                                                     boolean honorMergeParentTag,
-                                                    @NotNull Consumer<TagSnapshot> tagDecorator) {
-    TagSnapshot root = TagSnapshot.createTagSnapshot(rootTag, tagDecorator);
+                                                    @NotNull Consumer<TagSnapshot> tagDecorator,
+                                                    boolean reusePreviousSnapshot) {
+    TagSnapshot root = createTagSnapshot(rootTag, tagDecorator, reusePreviousSnapshot);
+    if (reusePreviousSnapshot) {
+      rootTag.putUserData(PREVIOUS_SNAPSHOT, root);
+    }
     String parentTag = honorMergeParentTag ? rootTag.getAttributeValue(ATTR_PARENT_TAG, TOOLS_URI) : null;
     if (parentTag == null) {
       return root;
@@ -96,7 +96,7 @@ public class RenderTask implements IImageFactory {
   private XmlFile myPsiFile;
 
   @NotNull
-  private final RenderLogger myLogger;
+  private RenderLogger myLogger;
 
   @NotNull
   private final LayoutlibCallbackImpl myLayoutlibCallback;
@@ -130,6 +130,9 @@ public class RenderTask implements IImageFactory {
 
   private long myTimeout;
 
+  /** Time spent taking the snapshot of the layout for the last inflation, in milliseconds */
+  private long mySnapshotBuildTimeMs;
+
   @Nullable
   private EditorDesignSurface mySurface;
 
@@ -242,6 +245,29 @@ public class RenderTask implements IImageFactory {
     return myLogger;
   }
 
+  /**
+   * Replaces the logger of this task so the task can be inflated again without reporting the problems found by the previous
+   * inflation. The state recorded while loading the project classes, which only happens when the task is created, is carried
+   * over to the new logger.
+   */
+  public void setLogger(@NotNull RenderLogger logger) {
+    if (logger == myLogger) {
+      return;
+    }
+    if (myLogger.getResourceClass() != null) {
+      logger.setResourceClass(myLogger.getResourceClass());
+    }
+    if (myLogger.isMissingResourceClass()) {
+      logger.setMissingResourceClass();
+    }
+    if (myLogger.hasLoadedClasses()) {
+      logger.setHasLoadedClasses();
+    }
+    myLogger.getClassesWithIncorrectFormat().forEach(logger::addIncorrectFormatClass);
+    myLogger = logger;
+    myLayoutlibCallback.setLogger(logger);
+  }
+
   @NotNull
   public HardwareConfigHelper getHardwareConfigHelper() {
     return myHardwareConfigHelper;
@@ -355,6 +381,14 @@ public class RenderTask implements IImageFactory {
     return this;
   }
 
+  /**
+   * Returns the time, in milliseconds, spent taking the snapshot of the layout file the last time it was inflated. This is
+   * part of the total inflation time.
+   */
+  public long getSnapshotBuildTimeMs() {
+    return mySnapshotBuildTimeMs;
+  }
+
   /**
    * Sets the overriding background color to be used, if any. The color should be a
    * bitmask of AARRGGBB. The default is null.
@@ -445,6 +479,10 @@ public class RenderTask implements IImageFactory {
       boolean useSrcCompat = androidModel != null && GradleUtil.dependsOn(androidModel, APPCOMPAT_LIB_ARTIFACT);
       ((LayoutPsiPullParser)modelParser).setUseSrcCompat(useSrcCompat);
       myLayoutlibCallback.setAaptDeclaredResources(((LayoutPsiPullParser)modelParser).getAaptDeclaredAttrs());
+      mySnapshotBuildTimeMs = ((LayoutPsiPullParser)modelParser).getSnapshotBuildTimeMs();
+    }
+    else {
+      mySnapshotBuildTimeMs = 0;
     }
 
 
@@ -555,7 +593,12 @@ public class RenderTask implements IImageFactory {
         }
         RenderResult result =
           RenderResult.create(this, session, myPsiFile, myLogger, myImagePool.copyOf(session.getImage()));
+        // When the task is inflated again, the session of the previous inflation is no longer used
+        RenderSession previousSession = myRenderSession;
         myRenderSession = session;
+        if (previousSession != null) {
+          previousSession.dispose();
+        }
         addDiagnostics(result.getRenderResult());
         return result;
       }
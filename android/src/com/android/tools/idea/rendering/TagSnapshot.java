@@ -19,12 +19,16 @@ import com.google.common.collect.Lists;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.impl.source.tree.CompositeElement;
 import com.intellij.psi.xml.XmlTag;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
 
 import static com.android.SdkConstants.*;
@@ -50,6 +54,10 @@ public class TagSnapshot {
   @NotNull public List<AttributeSnapshot> attributes;
   /** Whether this element or any of its children has any aapt:attr definitions */
   public boolean hasDeclaredAaptAttrs = false;
+  /** The modification count of the {@link #tag} node when this snapshot was taken, or -1 if unknown */
+  private long myModificationCount = -1;
+  /** The namespaces declared by the {@link #tag} when this snapshot was taken */
+  @NotNull private Map<String, String> myNamespaceDeclarations = Collections.emptyMap();
 
   private TagSnapshot(@Nullable XmlTag tag, @Nullable String tagName, @Nullable String prefix, @Nullable String namespace,
                       @NotNull List<AttributeSnapshot> attributes, @NotNull List<TagSnapshot> children, boolean hasDeclaredAaptAttrs) {
@@ -75,6 +83,34 @@ public class TagSnapshot {
    */
   @NotNull
   public static TagSnapshot createTagSnapshot(@NotNull XmlTag tag, @Nullable Consumer<TagSnapshot> afterCreate) {
+    return createTagSnapshot(tag, afterCreate, null);
+  }
+
+  /**
+   * Creates a new tag snapshot starting at the given tag, reusing the parts of a previous snapshot of the same tag that
+   * have not been modified since it was taken.
+   * <p>
+   * A child subtree of {@code previous} is reused when it was created for the same {@link XmlTag} and the modification
+   * count of that tag has not changed. Reused subtrees are shared between both snapshots, only their top node is copied
+   * so the sibling links of the new snapshot are correct. {@code afterCreate} is not called again for the shared
+   * nodes so it must only apply changes that depend on the tag itself.
+   *
+   * @param tag The root tag to create the snapshot from
+   * @param afterCreate If not null, this will be called for every new {@link TagSnapshot} created by this call
+   * @param previous If not null, a snapshot previously created for the same tag by this method
+   */
+  @NotNull
+  public static TagSnapshot createTagSnapshot(@NotNull XmlTag tag,
+                                              @Nullable Consumer<TagSnapshot> afterCreate,
+                                              @Nullable TagSnapshot previous) {
+    long modificationCount = getModificationCount(tag);
+    if (previous != null && previous.tag != tag) {
+      previous = null;
+    }
+    if (previous != null && modificationCount != -1 && modificationCount == previous.myModificationCount) {
+      return previous.copy();
+    }
+
     // Attributes
     List<AttributeSnapshot> attributes = AttributeSnapshot.createAttributesForTag(tag);
 
@@ -82,7 +118,13 @@ public class TagSnapshot {
     List<TagSnapshot> children;
     XmlTag[] subTags = tag.getSubTags();
     boolean hasDeclaredAaptAttrs = false;
+    Map<String, String> namespaceDeclarations = tag.getLocalNamespaceDeclarations();
     if (subTags.length > 0) {
+      // Namespace declarations are resolved into the attributes of the children so these can only be reused if the
+      // declarations have not changed.
+      Map<XmlTag, TagSnapshot> previousChildren = previous != null && namespaceDeclarations.equals(previous.myNamespaceDeclarations)
+                                                  ? indexByTag(previous.children)
+                                                  : Collections.emptyMap();
       TagSnapshot last = null;
       children = Lists.newArrayListWithCapacity(subTags.length);
       for (XmlTag subTag : subTags) {
@@ -98,7 +140,7 @@ public class TagSnapshot {
           continue;
         }
 
-        TagSnapshot child = createTagSnapshot(subTag, afterCreate);
+        TagSnapshot child = createTagSnapshot(subTag, afterCreate, previousChildren.get(subTag));
         hasDeclaredAaptAttrs |= child.hasDeclaredAaptAttrs;
         children.add(child);
         if (last != null) {
@@ -112,6 +154,10 @@ public class TagSnapshot {
 
     TagSnapshot newSnapshot =
       new TagSnapshot(tag, tag.getName(), tag.getNamespacePrefix(), tag.getNamespace(), attributes, children, hasDeclaredAaptAttrs);
+    newSnapshot.myModificationCount = modificationCount;
+    if (!namespaceDeclarations.isEmpty()) {
+      newSnapshot.myNamespaceDeclarations = namespaceDeclarations;
+    }
     if (afterCreate != null) {
       afterCreate.accept(newSnapshot);
     }
@@ -119,6 +165,42 @@ public class TagSnapshot {
     return newSnapshot;
   }
 
+  /**
+   * Returns the modification count of the given tag. The count changes every time the tag or any of its children is
+   * modified. Returns -1 if the count is not available for this tag.
+   */
+  public static long getModificationCount(@NotNull XmlTag tag) {
+    ASTNode node = tag.getNode();
+    return node instanceof CompositeElement ? ((CompositeElement)node).getModificationCount() : -1;
+  }
+
+  @NotNull
+  private static Map<XmlTag, TagSnapshot> indexByTag(@NotNull List<TagSnapshot> snapshots) {
+    if (snapshots.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    Map<XmlTag, TagSnapshot> index = new IdentityHashMap<>(snapshots.size());
+    for (TagSnapshot snapshot : snapshots) {
+      if (snapshot.tag != null) {
+        index.put(snapshot.tag, snapshot);
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Returns a copy of this node that shares the children with this one. The attributes list is copied so
+   * {@link #setAttribute} calls on the copy do not modify this snapshot.
+   */
+  @NotNull
+  private TagSnapshot copy() {
+    TagSnapshot copy = new TagSnapshot(tag, tagName, prefix, namespace, attributes.isEmpty() ? attributes : Lists.newArrayList(attributes),
+                                       children, hasDeclaredAaptAttrs);
+    copy.myModificationCount = myModificationCount;
+    copy.myNamespaceDeclarations = myNamespaceDeclarations;
+    return copy;
+  }
+
   @NotNull
   public static TagSnapshot createTagSnapshotWithoutChildren(@NotNull XmlTag tag) {
     List<AttributeSnapshot> attributes = AttributeSnapshot.createAttributesForTag(tag);
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering.multi;
+
+import com.android.annotations.VisibleForTesting;
+import com.android.tools.adtui.ImageUtils;
+import com.android.tools.idea.configurations.Configuration;
+import com.android.tools.idea.configurations.ResourceResolverCache;
+import com.android.tools.idea.rendering.*;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.psi.xml.XmlFile;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.android.facet.AndroidFacet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders a layout in many configurations, for example to preview it on all the screen sizes or in all the locales, and hands
+ * the thumbnail of each configuration to a {@link Listener} as soon as it is ready.
+ * <p>
+ * Layoutlib only renders on the render thread, so up to {@link #MAX_CONCURRENT_CONFIGURATIONS} configurations are processed at
+ * once instead: while one of them is rendered, the next ones resolve their resources and create their {@link RenderTask}, and
+ * the rendered ones are scaled down to thumbnails. The work which does not depend on the configuration is done once. The layout
+ * snapshot is built before the configurations are rendered and its subtrees are reused by all the tasks, and configurations that
+ * only differ in qualifiers the app resources do not use share their configured resources (see {@link ResourceResolverCache}).
+ * <p>
+ * The configurations must not be modified while they are rendered.
+ */
+public class RenderPreviewBatch {
+  private static final Logger LOG = Logger.getInstance(RenderPreviewBatch.class);
+  private static final int MAX_CONCURRENT_CONFIGURATIONS = 4;
+
+  public interface Listener {
+    /**
+     * Called on the event dispatch thread when the given configuration has been rendered, with its thumbnail or null if the
+     * layout could not be rendered in it.
+     */
+    void thumbnailReady(@NotNull Configuration configuration, @Nullable BufferedImage thumbnail);
+  }
+
+  @NotNull private final AndroidFacet myFacet;
+  @NotNull private final XmlFile myFile;
+  private final int myMaxThumbnailSize;
+  @NotNull private final Executor myExecutor;
+
+  /**
+   * @param facet            the facet of the module the layout belongs to
+   * @param file             the layout to render
+   * @param maxThumbnailSize the maximum width and height of the thumbnails, in pixels
+   */
+  public RenderPreviewBatch(@NotNull AndroidFacet facet, @NotNull XmlFile file, int maxThumbnailSize) {
+    this(facet, file, maxThumbnailSize,
+         AppExecutorUtil.createBoundedApplicationPoolExecutor("RenderPreviewBatch", MAX_CONCURRENT_CONFIGURATIONS));
+  }
+
+  @VisibleForTesting
+  RenderPreviewBatch(@NotNull AndroidFacet facet, @NotNull XmlFile file, int maxThumbnailSize, @NotNull Executor executor) {
+    myFacet = facet;
+    myFile = file;
+    myMaxThumbnailSize = maxThumbnailSize;
+    myExecutor = executor;
+  }
+
+  /**
+   * Renders the layout in the given configurations. The listener is called for each configuration in the order they finish,
+   * which is not necessarily the order of the list. The returned future completes once all the configurations have been
+   * rendered; cancelling it skips the configurations which have not started yet.
+   */
+  @NotNull
+  public ListenableFuture<Void> render(@NotNull List<Configuration> configurations, @NotNull Listener listener) {
+    SettableFuture<Void> done = SettableFuture.create();
+    if (configurations.isEmpty()) {
+      done.set(null);
+      return done;
+    }
+
+    RenderService renderService = RenderService.getInstance(myFacet);
+    // Build the snapshot of the layout once; the parsers of the tasks reuse its unmodified subtrees
+    LayoutPsiPullParser.create(myFile, renderService.createLogger());
+
+    AtomicInteger remaining = new AtomicInteger(configurations.size());
+    for (Configuration configuration : configurations) {
+      myExecutor.execute(() -> {
+        try {
+          if (!done.isCancelled()) {
+            BufferedImage thumbnail = renderThumbnail(renderService, configuration);
+            ApplicationManager.getApplication().invokeLater(() -> {
+              if (!done.isCancelled()) {
+                listener.thumbnailReady(configuration, thumbnail);
+              }
+            }, ModalityState.any());
+          }
+        }
+        finally {
+          if (remaining.decrementAndGet() == 0) {
+            done.set(null);
+          }
+        }
+      });
+    }
+    return done;
+  }
+
+  @Nullable
+  private BufferedImage renderThumbnail(@NotNull RenderService renderService, @NotNull Configuration configuration) {
+    // Resolve the resources here so the render thread only has to copy the resolver
+    if (configuration.getResourceResolver() == null) {
+      return null;
+    }
+
+    RenderTask task = renderService.createTask(myFile, configuration, renderService.createLogger(), null);
+    if (task == null) {
+      return null;
+    }
+    try {
+      RenderResult result = task.render().get();
+      if (result == null || !result.hasImage()) {
+        return null;
+      }
+      BufferedImage image = result.getRenderedImage().getCopy();
+      if (image == null) {
+        return null;
+      }
+      double scale = Math.min(1, myMaxThumbnailSize / (double)Math.max(image.getWidth(), image.getHeight()));
+      return scale < 1 ? ImageUtils.scale(image, scale, scale) : image;
+    }
+    catch (InterruptedException | ExecutionException e) {
+      LOG.debug(e);
+      return null;
+    }
+    finally {
+      task.dispose();
+    }
+  }
+}
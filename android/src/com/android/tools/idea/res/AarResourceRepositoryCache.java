@@ -0,0 +1,572 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.res;
+
+import com.android.annotations.VisibleForTesting;
+import com.android.ide.common.res2.ResourceFile;
+import com.android.ide.common.res2.ResourceItem;
+import com.android.ide.common.res2.ResourceTable;
+import com.android.resources.ResourceType;
+import com.android.tools.idea.flags.StudioFlags;
+import com.google.common.base.Objects;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Table;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.annotation.concurrent.GuardedBy;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+import static com.android.SdkConstants.FN_RESOURCE_TEXT;
+
+/**
+ * Content-addressed store for the parsed contents of AAR resource directories, shared by all the
+ * {@link FileResourceRepository} instances whose directories have identical contents (e.g. the same AAR exploded into the
+ * build directories of several modules).
+ *
+ * <p>Contents are keyed by the layout of the resource directory (the relative paths and sizes of its files and of the AAR's
+ * {@code R.txt}), which only requires listing the directory, and are held strongly in an LRU cache bounded by
+ * {@link StudioFlags#RESOURCES_AAR_CACHE_WEIGHT}, where the weight of an AAR is the number of resource items and declared ids
+ * it contains. Resource names and declared ids are interned in a global pool, since {@code R.txt} files repeat the ids of all
+ * transitive dependencies.
+ *
+ * <p>Cached contents are only returned for the directory they were parsed from while its stamp (file count, total size and
+ * last modification time) is unchanged, so an AAR edited in place is parsed again. Only when a second directory has the
+ * same layout as cached contents are the files of both directories read, to check that their contents are identical. Computing such a digest requires reading every file of the directory, so digests are
+ * recorded in a compact binary index in the system directory, together with a cheap stamp (file count, total size and last
+ * modification time) of the directory they were computed for. On the next session, unchanged AAR directories are recognized
+ * from the stamp alone. The parsed items themselves are not persisted: they hold onto the DOM nodes produced by the resource
+ * merger.
+ *
+ * <p>Resource items and files point to the directory they were parsed from, so each directory sharing the contents gets its
+ * own copies of them (see {@link Contents#getTable(File)}); only the names, values and declared ids are shared.
+ */
+final class AarResourceRepositoryCache {
+  private static final Logger LOG = Logger.getInstance(AarResourceRepositoryCache.class);
+
+  private static final String DIGEST_INDEX_FILE = "aar_resource_digests.bin";
+  private static final int DIGEST_INDEX_VERSION = 1;
+
+  private static final AarResourceRepositoryCache ourInstance = new AarResourceRepositoryCache(getDefaultIndexFile());
+
+  private final Interner<String> myInterner = Interners.newWeakInterner();
+  private final Cache<ContentKey, Contents> myContents;
+  @Nullable private final File myIndexFile;
+
+  @GuardedBy("this")
+  private Map<String, DigestEntry> myDigests;
+
+  @VisibleForTesting
+  AarResourceRepositoryCache(@Nullable File indexFile) {
+    this(indexFile, StudioFlags.RESOURCES_AAR_CACHE_WEIGHT.get());
+  }
+
+  @VisibleForTesting
+  AarResourceRepositoryCache(@Nullable File indexFile, long maximumWeight) {
+    myIndexFile = indexFile;
+    myContents = CacheBuilder.newBuilder()
+      .maximumWeight(maximumWeight)
+      .weigher((ContentKey key, Contents contents) -> contents.getWeight())
+      .build();
+  }
+
+  @NotNull
+  static AarResourceRepositoryCache getInstance() {
+    return ourInstance;
+  }
+
+  @Nullable
+  private static File getDefaultIndexFile() {
+    Application application = ApplicationManager.getApplication();
+    if (application == null || application.isUnitTestMode()) {
+      return null;
+    }
+    return new File(PathManager.getSystemPath(), "caches" + File.separator + DIGEST_INDEX_FILE);
+  }
+
+  /**
+   * Returns the contents of the given resource directory. If a directory with the same contents and library name was
+   * loaded before and is still cached, its contents are returned; otherwise they are computed by {@code parser}, which
+   * parses {@code resourceDir}.
+   */
+  @NotNull
+  Contents getContents(@NotNull File resourceDir, @Nullable String libraryName, @NotNull Supplier<Contents> parser) {
+    List<File> files = collectFiles(resourceDir);
+    // The stamp is taken before parsing, so changes made while parsing cause the directory to be parsed again.
+    DirectoryStamp stamp = DirectoryStamp.of(files);
+    ContentKey key = new ContentKey(computeLayoutDigest(resourceDir, files), libraryName);
+    Contents contents;
+    try {
+      contents = myContents.get(key, () -> intern(parser.get(), resourceDir, stamp));
+    }
+    catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+      // Report the parser's failure as if it had been called directly.
+      Throwables.propagateIfPossible(e.getCause());
+      throw new RuntimeException(e.getCause());
+    }
+    boolean sameDir = FileUtil.filesEqual(contents.myResourceDir, resourceDir);
+    if (sameDir) {
+      if (stamp.equals(contents.myStamp)) {
+        return contents;
+      }
+    }
+    else if (isUnmodified(contents) && getDigest(resourceDir, files).equals(getDigest(contents))) {
+      return contents;
+    }
+
+    Contents parsed = intern(parser.get(), resourceDir, stamp);
+    if (sameDir || !isUnmodified(contents)) {
+      // The cached directory was modified in place, so its contents are stale.
+      myContents.put(key, parsed);
+    }
+    // Otherwise another directory has the same layout but different contents. This is rare enough not to be worth caching.
+    return parsed;
+  }
+
+  /**
+   * Returns true if the directory the given contents were parsed from has not been modified since.
+   */
+  private static boolean isUnmodified(@NotNull Contents contents) {
+    return DirectoryStamp.of(collectFiles(contents.myResourceDir)).equals(contents.myStamp);
+  }
+
+  void clear() {
+    myContents.invalidateAll();
+  }
+
+  @VisibleForTesting
+  long getCachedWeight() {
+    long weight = 0;
+    for (Contents contents : myContents.asMap().values()) {
+      weight += contents.getWeight();
+    }
+    return weight;
+  }
+
+  /**
+   * Re-keys the resource maps and declared ids with interned strings.
+   */
+  @NotNull
+  private Contents intern(@NotNull Contents contents, @NotNull File resourceDir, @NotNull DirectoryStamp stamp) {
+    ResourceTable table = new ResourceTable();
+    for (Table.Cell<String, ResourceType, ListMultimap<String, ResourceItem>> cell : contents.getTable().cellSet()) {
+      ListMultimap<String, ResourceItem> items = cell.getValue();
+      ListMultimap<String, ResourceItem> interned = ArrayListMultimap.create(items.keySet().size(), 1);
+      for (Map.Entry<String, ResourceItem> entry : items.entries()) {
+        interned.put(myInterner.intern(entry.getKey()), entry.getValue());
+      }
+      table.put(cell.getRowKey(), cell.getColumnKey(), interned);
+    }
+
+    Collection<String> declaredIds = contents.getDeclaredIds();
+    if (declaredIds != null) {
+      List<String> internedIds = new ArrayList<>(declaredIds.size());
+      for (String id : declaredIds) {
+        internedIds.add(myInterner.intern(id));
+      }
+      declaredIds = internedIds;
+    }
+    return new Contents(table, declaredIds, resourceDir, stamp);
+  }
+
+  /**
+   * Returns the files of the given resource directory and the AAR's {@code R.txt}, in a stable order.
+   */
+  @NotNull
+  private static List<File> collectFiles(@NotNull File resourceDir) {
+    List<File> files = new ArrayList<>();
+    collectFiles(resourceDir, files);
+    File rDotTxt = new File(resourceDir.getParentFile(), FN_RESOURCE_TEXT);
+    if (rDotTxt.isFile()) {
+      files.add(rDotTxt);
+    }
+    return files;
+  }
+
+  /**
+   * Returns the digest of the directory the given contents were parsed from. It is computed the first time another directory
+   * with the same layout is loaded.
+   */
+  @NotNull
+  private HashCode getDigest(@NotNull Contents contents) {
+    synchronized (contents) {
+      if (contents.myDigest == null) {
+        contents.myDigest = getDigest(contents.myResourceDir, collectFiles(contents.myResourceDir));
+      }
+      return contents.myDigest;
+    }
+  }
+
+  @NotNull
+  private HashCode getDigest(@NotNull File resourceDir, @NotNull List<File> files) {
+    DirectoryStamp stamp = DirectoryStamp.of(files);
+    String path = resourceDir.getAbsolutePath();
+    synchronized (this) {
+      DigestEntry entry = getDigests().get(path);
+      if (entry != null && entry.matches(stamp.fileCount, stamp.totalSize, stamp.lastModified)) {
+        return entry.digest;
+      }
+    }
+
+    HashCode digest = computeDigest(resourceDir, files);
+    DigestEntry entry = new DigestEntry(stamp.fileCount, stamp.totalSize, stamp.lastModified, digest);
+    synchronized (this) {
+      getDigests().put(path, entry);
+      appendToIndex(path, entry);
+    }
+    return digest;
+  }
+
+  private static void collectFiles(@NotNull File dir, @NotNull List<File> result) {
+    File[] children = dir.listFiles();
+    if (children == null) {
+      return;
+    }
+    // Sort so the digest does not depend on the order the file system lists the files in.
+    Arrays.sort(children);
+    for (File child : children) {
+      if (child.isDirectory()) {
+        collectFiles(child, result);
+      }
+      else {
+        result.add(child);
+      }
+    }
+  }
+
+  /**
+   * Hashes the relative paths and sizes of the given files, without reading them.
+   */
+  @NotNull
+  private static HashCode computeLayoutDigest(@NotNull File resourceDir, @NotNull List<File> files) {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    for (File file : files) {
+      hasher.putString(getRelativePath(resourceDir, file), StandardCharsets.UTF_8);
+      hasher.putLong(file.length());
+    }
+    return hasher.hash();
+  }
+
+  @NotNull
+  private static HashCode computeDigest(@NotNull File resourceDir, @NotNull List<File> files) {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    for (File file : files) {
+      hasher.putString(getRelativePath(resourceDir, file), StandardCharsets.UTF_8);
+      try {
+        byte[] bytes = Files.toByteArray(file);
+        hasher.putInt(bytes.length);
+        hasher.putBytes(bytes);
+      }
+      catch (IOException e) {
+        // Unreadable files are hashed by name only; the resource merger will not be able to read them either.
+        hasher.putInt(-1);
+      }
+    }
+    return hasher.hash();
+  }
+
+  /**
+   * Returns the path of the given file relative to the resource directory, so that identical AARs exploded in different
+   * directories have the same digests. Files outside of the directory, like {@code R.txt}, are identified by their name.
+   */
+  @NotNull
+  private static String getRelativePath(@NotNull File resourceDir, @NotNull File file) {
+    String relativePath = FileUtil.isAncestor(resourceDir, file, true) ? FileUtil.getRelativePath(resourceDir, file) : null;
+    return relativePath != null ? FileUtil.toSystemIndependentName(relativePath) : file.getName();
+  }
+
+  @GuardedBy("this")
+  @NotNull
+  private Map<String, DigestEntry> getDigests() {
+    if (myDigests == null) {
+      myDigests = new HashMap<>();
+      if (myIndexFile != null) {
+        loadIndex(myIndexFile, myDigests);
+      }
+    }
+    return myDigests;
+  }
+
+  /**
+   * Reads the digest index. The index is an append-only log of records, so later records for the same path replace the
+   * earlier ones; if the log holds many stale records, it is compacted.
+   */
+  private static void loadIndex(@NotNull File indexFile, @NotNull Map<String, DigestEntry> digests) {
+    if (!indexFile.isFile()) {
+      return;
+    }
+    int records = 0;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+      if (in.readInt() != DIGEST_INDEX_VERSION) {
+        FileUtil.delete(indexFile);
+        return;
+      }
+      while (in.available() > 0) {
+        String path = in.readUTF();
+        int fileCount = in.readInt();
+        long totalSize = in.readLong();
+        long lastModified = in.readLong();
+        byte[] digest = new byte[in.readUnsignedByte()];
+        in.readFully(digest);
+        digests.put(path, new DigestEntry(fileCount, totalSize, lastModified, HashCode.fromBytes(digest)));
+        records++;
+      }
+    }
+    catch (IOException | IllegalArgumentException e) {
+      // A truncated record at the end of the log is expected if the IDE was killed while writing; keep what was read.
+      LOG.debug("Failed to read " + indexFile, e);
+    }
+
+    if (records > 2 * digests.size() + 16) {
+      writeIndex(indexFile, digests);
+    }
+  }
+
+  private static void writeIndex(@NotNull File indexFile, @NotNull Map<String, DigestEntry> digests) {
+    try {
+      FileUtil.ensureExists(indexFile.getParentFile());
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+        out.writeInt(DIGEST_INDEX_VERSION);
+        for (Map.Entry<String, DigestEntry> entry : digests.entrySet()) {
+          writeRecord(out, entry.getKey(), entry.getValue());
+        }
+      }
+    }
+    catch (IOException e) {
+      LOG.warn("Failed to write " + indexFile, e);
+      FileUtil.delete(indexFile);
+    }
+  }
+
+  @GuardedBy("this")
+  private void appendToIndex(@NotNull String path, @NotNull DigestEntry entry) {
+    if (myIndexFile == null) {
+      return;
+    }
+    boolean exists = myIndexFile.isFile();
+    try {
+      FileUtil.ensureExists(myIndexFile.getParentFile());
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(myIndexFile, true)))) {
+        if (!exists) {
+          out.writeInt(DIGEST_INDEX_VERSION);
+        }
+        writeRecord(out, path, entry);
+      }
+    }
+    catch (IOException e) {
+      LOG.warn("Failed to update " + myIndexFile, e);
+    }
+  }
+
+  private static void writeRecord(@NotNull DataOutputStream out, @NotNull String path, @NotNull DigestEntry entry)
+    throws IOException {
+    out.writeUTF(path);
+    out.writeInt(entry.fileCount);
+    out.writeLong(entry.totalSize);
+    out.writeLong(entry.lastModified);
+    byte[] digest = entry.digest.asBytes();
+    out.writeByte(digest.length);
+    out.write(digest);
+  }
+
+  /**
+   * The parsed resources of an AAR resource directory, shared between all the repositories for identical directories.
+   * The contents are never modified after they have been parsed.
+   */
+  static final class Contents {
+    @NotNull private final ResourceTable myTable;
+    @Nullable private final Collection<String> myDeclaredIds;
+    @NotNull private final File myResourceDir;
+    private final int myWeight;
+
+    @GuardedBy("this")
+    @Nullable private HashCode myDigest;
+
+    /** Stamp of {@link #myResourceDir} when the contents were parsed, or null if it is not known */
+    @Nullable private final DirectoryStamp myStamp;
+
+    Contents(@NotNull ResourceTable table, @Nullable Collection<String> declaredIds, @NotNull File resourceDir) {
+      this(table, declaredIds, resourceDir, null);
+    }
+
+    private Contents(@NotNull ResourceTable table,
+                     @Nullable Collection<String> declaredIds,
+                     @NotNull File resourceDir,
+                     @Nullable DirectoryStamp stamp) {
+      myTable = table;
+      myDeclaredIds = declaredIds;
+      myResourceDir = resourceDir;
+      myStamp = stamp;
+      int weight = declaredIds != null ? declaredIds.size() : 0;
+      for (ListMultimap<String, ResourceItem> items : table.values()) {
+        weight += items.size();
+      }
+      myWeight = Math.max(1, weight);
+    }
+
+    /**
+     * Returns the resources of the given directory, which has the same contents as the directory they were parsed from. The
+     * table is shared if it is that same directory; otherwise the items and their files are copied so that their sources
+     * point into {@code resourceDir}. The copies share the names and values of the parsed items.
+     */
+    @NotNull
+    ResourceTable getTable(@NotNull File resourceDir) {
+      if (FileUtil.filesEqual(resourceDir, myResourceDir)) {
+        return myTable;
+      }
+
+      Map<ResourceItem, ResourceItem> copies = new IdentityHashMap<>();
+      Map<ResourceFile, List<ResourceItem>> copiesBySource = new IdentityHashMap<>();
+      for (ListMultimap<String, ResourceItem> items : myTable.values()) {
+        for (ResourceItem item : items.values()) {
+          ResourceItem copy = new ResourceItem(item.getName(), null, item.getType(), item.getValue(), item.getLibraryName());
+          copies.put(item, copy);
+          ResourceFile source = item.getSource();
+          if (source != null) {
+            copiesBySource.computeIfAbsent(source, file -> new ArrayList<>()).add(copy);
+          }
+        }
+      }
+      copiesBySource.forEach((source, items) -> {
+        String relativePath = FileUtil.getRelativePath(myResourceDir, source.getFile());
+        File file = relativePath != null ? new File(resourceDir, relativePath) : source.getFile();
+        // Sets the source of the copied items.
+        new ResourceFile(file, items, source.getQualifiers(), source.getFolderConfiguration());
+      });
+
+      ResourceTable table = new ResourceTable();
+      for (Table.Cell<String, ResourceType, ListMultimap<String, ResourceItem>> cell : myTable.cellSet()) {
+        ListMultimap<String, ResourceItem> items = cell.getValue();
+        ListMultimap<String, ResourceItem> copied = ArrayListMultimap.create(items.keySet().size(), 1);
+        for (Map.Entry<String, ResourceItem> entry : items.entries()) {
+          copied.put(entry.getKey(), copies.get(entry.getValue()));
+        }
+        table.put(cell.getRowKey(), cell.getColumnKey(), copied);
+      }
+      return table;
+    }
+
+    @Nullable
+    Collection<String> getDeclaredIds() {
+      return myDeclaredIds;
+    }
+
+    int getWeight() {
+      return myWeight;
+    }
+  }
+
+  private static final class ContentKey {
+    @NotNull private final HashCode myLayoutDigest;
+    @Nullable private final String myLibraryName;
+
+    ContentKey(@NotNull HashCode layoutDigest, @Nullable String libraryName) {
+      myLayoutDigest = layoutDigest;
+      myLibraryName = libraryName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof ContentKey)) return false;
+      ContentKey other = (ContentKey)o;
+      return myLayoutDigest.equals(other.myLayoutDigest) && Objects.equal(myLibraryName, other.myLibraryName);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(myLayoutDigest, myLibraryName);
+    }
+  }
+
+  /**
+   * A cheap stamp of the files of a directory, which changes when any of them is added, removed or modified.
+   */
+  private static final class DirectoryStamp {
+    final int fileCount;
+    final long totalSize;
+    final long lastModified;
+
+    private DirectoryStamp(int fileCount, long totalSize, long lastModified) {
+      this.fileCount = fileCount;
+      this.totalSize = totalSize;
+      this.lastModified = lastModified;
+    }
+
+    @NotNull
+    static DirectoryStamp of(@NotNull List<File> files) {
+      long totalSize = 0;
+      long lastModified = 0;
+      for (File file : files) {
+        totalSize += file.length();
+        lastModified = Math.max(lastModified, file.lastModified());
+      }
+      return new DirectoryStamp(files.size(), totalSize, lastModified);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof DirectoryStamp)) return false;
+      DirectoryStamp other = (DirectoryStamp)o;
+      return fileCount == other.fileCount && totalSize == other.totalSize && lastModified == other.lastModified;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(fileCount, totalSize, lastModified);
+    }
+  }
+
+  private static final class DigestEntry {
+    final int fileCount;
+    final long totalSize;
+    final long lastModified;
+    @NotNull final HashCode digest;
+
+    DigestEntry(int fileCount, long totalSize, long lastModified, @NotNull HashCode digest) {
+      this.fileCount = fileCount;
+      this.totalSize = totalSize;
+      this.lastModified = lastModified;
+      this.digest = digest;
+    }
+
+    boolean matches(int fileCount, long totalSize, long lastModified) {
+      return this.fileCount == fileCount && this.totalSize == totalSize && this.lastModified == lastModified;
+    }
+  }
+}
@@ -192,11 +192,7 @@ public class AppResourceRepository extends MultiResourceRepository {
       }
     }
 
-    List<FileResourceRepository> resources = Lists.newArrayListWithExpectedSize(aarDirs.size());
-    for (File root : dirs) {
-      resources.add(FileResourceRepository.get(root, aarDirs.get(root)));
-    }
-    return resources;
+    return FileResourceRepository.getAll(dirs, aarDirs);
   }
 
   @NotNull
@@ -395,8 +391,8 @@ public class AppResourceRepository extends MultiResourceRepository {
     }
     setChildren(resources);
 
-    // Clear the fake R class cache and the ModuleClassLoader cache.
-    resetDynamicIds(true);
+    // Clear the ModuleClassLoader cache. The dynamic ids are keyed by resource type and name, so they stay valid when the
+    // roots change; the R class generator revalidates each of its inner classes against the new roots.
     ModuleClassLoader.clearCache(myFacet.getModule());
   }
 
@@ -529,6 +525,10 @@ public class AppResourceRepository extends MultiResourceRepository {
    */
   private Map<IntArrayWrapper, String> myStyleableValueToNameMap;
 
+  /**
+   * Ids handed out to resources that are not in the compiled R classes. They are kept in memory for as long as the repository exists,
+   * and not persisted, since the classes loaded with them don't outlive the IDE session either.
+   */
   private final TObjectIntHashMap<TypedResourceName> myName2DynamicIdMap = new TObjectIntHashMap<>();
   private final TIntObjectHashMap<TypedResourceName> myDynamicId2ResourceMap = new TIntObjectHashMap<>();
   private int myDynamicSeed = DYNAMIC_ID_SEED_START;
@@ -28,14 +28,16 @@ import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.vfs.VfsUtil;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import com.intellij.util.containers.ContainerUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
-import java.util.Collection;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import static com.android.SdkConstants.FN_RESOURCE_TEXT;
 
@@ -50,7 +52,7 @@ import static com.android.SdkConstants.FN_RESOURCE_TEXT;
  */
 public class FileResourceRepository extends LocalResourceRepository {
   private static final Logger LOG = Logger.getInstance(FileResourceRepository.class);
-  protected final ResourceTable myFullTable = new ResourceTable();
+  protected final ResourceTable myFullTable;
   /**
    * A collection of resource id names found in the R.txt file if the file referenced by this repository is an AAR.
    * The Ids obtained using {@link #getItemsOfType(ResourceType)} by passing in {@link ResourceType#ID} only contains
@@ -68,25 +70,99 @@ public class FileResourceRepository extends LocalResourceRepository {
   /** R.txt file associated with the repository. This is only available for aars. */
   @Nullable private File myResourceTextFile;
 
-  private final static Map<File, FileResourceRepository> ourCache = ContainerUtil.createSoftValueMap();
+  /**
+   * Repositories by resource directory. The repositories are cheap views on top of the parsed contents, which are shared
+   * between identical directories and cached by {@link AarResourceRepositoryCache}, so they are only held weakly here.
+   */
+  private final static Map<File, FileResourceRepository> ourCache = ContainerUtil.createWeakValueMap();
 
   private FileResourceRepository(@NotNull File file, @Nullable String namespace, @Nullable String libraryName) {
+    this(file, namespace, libraryName, new ResourceTable());
+  }
+
+  private FileResourceRepository(@NotNull File file,
+                                 @Nullable String namespace,
+                                 @Nullable String libraryName,
+                                 @NotNull ResourceTable fullTable) {
     super(file.getName());
     myFile = file;
     myNamespace = namespace;
     myLibraryName = libraryName;
+    myFullTable = fullTable;
   }
 
   @NotNull
   // TODO: namespaces
-  static synchronized FileResourceRepository get(@NotNull final File file, @Nullable String libraryName) {
-    FileResourceRepository repository = ourCache.get(file);
-    if (repository == null) {
-      repository = create(file, null, libraryName);
+  static FileResourceRepository get(@NotNull final File file, @Nullable String libraryName) {
+    synchronized (FileResourceRepository.class) {
+      FileResourceRepository repository = ourCache.get(file);
+      if (repository != null) {
+        return repository;
+      }
+    }
+
+    // Created outside of the lock, so that repositories for different directories can be created in parallel.
+    FileResourceRepository repository = createShared(file, libraryName);
+    synchronized (FileResourceRepository.class) {
+      FileResourceRepository existing = ourCache.get(file);
+      if (existing != null) {
+        return existing;
+      }
       ourCache.put(file, repository);
+      return repository;
+    }
+  }
+
+  /**
+   * Returns the repositories for the given resource directories, in the given order. Repositories which are not cached
+   * yet are created in parallel on a bounded pool; parsing them only involves java.io files, so no read access is needed.
+   *
+   * @param files the resource directories to look up
+   * @param libraryNames the library name of each resource directory
+   */
+  @NotNull
+  static List<FileResourceRepository> getAll(@NotNull List<File> files, @NotNull Map<File, String> libraryNames) {
+    List<File> missing = new ArrayList<>();
+    synchronized (FileResourceRepository.class) {
+      for (File file : files) {
+        if (!ourCache.containsKey(file)) {
+          missing.add(file);
+        }
+      }
     }
 
-    return repository;
+    if (missing.size() > 1) {
+      int maxThreads = Math.min(missing.size(), Runtime.getRuntime().availableProcessors());
+      ExecutorService executor = AppExecutorUtil.createBoundedApplicationPoolExecutor("FileResourceRepository", maxThreads);
+      List<Future<FileResourceRepository>> jobs = new ArrayList<>(missing.size());
+      for (File file : missing) {
+        jobs.add(executor.submit(() -> createShared(file, libraryNames.get(file))));
+      }
+      for (Future<FileResourceRepository> job : jobs) {
+        try {
+          FileResourceRepository repository = job.get();
+          synchronized (FileResourceRepository.class) {
+            if (!ourCache.containsKey(repository.myFile)) {
+              ourCache.put(repository.myFile, repository);
+            }
+          }
+        }
+        catch (ExecutionException e) {
+          // Not fatal: the repository is created synchronously by get below.
+          LOG.warn(e);
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+    }
+
+    List<FileResourceRepository> repositories = new ArrayList<>(files.size());
+    for (File file : files) {
+      repositories.add(get(file, libraryNames.get(file)));
+    }
+    return repositories;
   }
 
   @Nullable
@@ -95,6 +171,25 @@ public class FileResourceRepository extends LocalResourceRepository {
     return ourCache.get(file);
   }
 
+  /**
+   * Creates a repository for the given directory on top of the contents shared with identical directories.
+   */
+  @NotNull
+  private static FileResourceRepository createShared(@NotNull File file, @Nullable String libraryName) {
+    AarResourceRepositoryCache.Contents contents = AarResourceRepositoryCache.getInstance().getContents(file, libraryName, () -> {
+      FileResourceRepository parsed = create(file, null, libraryName);
+      return new AarResourceRepositoryCache.Contents(parsed.myFullTable, parsed.myAarDeclaredIds, file);
+    });
+
+    FileResourceRepository repository = new FileResourceRepository(file, null, libraryName, contents.getTable(file));
+    File rDotTxt = new File(file.getParentFile(), FN_RESOURCE_TEXT);
+    if (rDotTxt.exists()) {
+      repository.myResourceTextFile = rDotTxt;
+      repository.myAarDeclaredIds = contents.getDeclaredIds();
+    }
+    return repository;
+  }
+
   @NotNull
   private static FileResourceRepository create(@NotNull final File file, @Nullable String namespace, @Nullable String libraryName) {
     final FileResourceRepository repository = new FileResourceRepository(file, namespace, libraryName);
@@ -131,6 +226,7 @@ public class FileResourceRepository extends LocalResourceRepository {
 
   public static synchronized void reset() {
     ourCache.clear();
+    AarResourceRepositoryCache.getInstance().clear();
   }
 
   @NotNull
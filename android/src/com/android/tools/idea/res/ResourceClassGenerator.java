@@ -24,8 +24,6 @@ import com.google.common.collect.Maps;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.Computable;
-import gnu.trove.TObjectIntHashMap;
-import gnu.trove.TObjectIntProcedure;
 import org.jetbrains.android.util.AndroidResourceUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -33,10 +31,10 @@ import org.jetbrains.org.objectweb.asm.ClassWriter;
 import org.jetbrains.org.objectweb.asm.MethodVisitor;
 import org.jetbrains.org.objectweb.asm.Type;
 
+import java.io.File;
 import java.util.*;
 
 import static com.android.tools.idea.LogAnonymizerUtil.anonymizeClassName;
-import static com.android.tools.idea.LogAnonymizerUtil.isPublicClass;
 import static org.jetbrains.org.objectweb.asm.Opcodes.*;
 
 /**
@@ -66,9 +64,16 @@ import static org.jetbrains.org.objectweb.asm.Opcodes.*;
 public class ResourceClassGenerator {
   private static final Logger LOG = Logger.getInstance(ResourceClassGenerator.class);
 
-  private Map<ResourceType, TObjectIntHashMap<String>> myCache;
-  /** For int[] in styleables. The ints in styleables are stored in {@link #myCache}. */
-  private Map<String, List<Integer>> myStyleableCache;
+  /**
+   * Field values of the generated inner classes, by resource type. An entry is revalidated against the resources when
+   * the {@link AppResourceRepository#getModificationCount() generation} of the repository changes, and only recomputed
+   * if the resources of its own type changed. Resource ids come from {@link AppResourceRepository#getResourceId}, which
+   * hands out the same dynamic id for the same resource until {@link AppResourceRepository#resetDynamicIds} is called,
+   * so a recomputed class keeps the ids of its existing fields.
+   */
+  private final Map<ResourceType, TypeContents> myTypeContents = new EnumMap<>(ResourceType.class);
+  /** Generated class bytes by class name, along with the contents they were generated from. */
+  private final Map<String, GeneratedClass> myClasses = Maps.newHashMap();
   @NotNull private final AppResourceRepository myAppResources;
 
   private ResourceClassGenerator(@NotNull AppResourceRepository appResources) {
@@ -90,15 +95,14 @@ public class ResourceClassGenerator {
    * @param fqcn Fully qualified class name (as accepted by ClassLoader, or as returned by Class.getName())
    */
   @Nullable
-  public byte[] generate(String fqcn) {
+  public synchronized byte[] generate(String fqcn) {
     String className = fqcn.replace('.', '/');
 
     if (LOG.isDebugEnabled()) {
       LOG.debug(String.format("generate(%s)", anonymizeClassName(className)));
     }
-    ClassWriter cw = new ClassWriter(0);  // Don't compute MAXS and FRAMES.
-    cw.visit(V1_6, ACC_PUBLIC + ACC_FINAL + ACC_SUPER, className, null, Type.getInternalName(Object.class), null);
 
+    Object source;
     int index = className.lastIndexOf('$');
     if (index != -1) {
       String typeName = className.substring(index + 1);
@@ -109,66 +113,92 @@ public class ResourceClassGenerator {
         }
         return null;
       }
+      source = getTypeContents(type);
+    }
+    else {
+      source = getInnerClassTypes();
+    }
+
+    GeneratedClass generated = myClasses.get(className);
+    if (generated != null && generated.source.equals(source)) {
+      return generated.bytes;
+    }
 
+    ClassWriter cw = new ClassWriter(0);  // Don't compute MAXS and FRAMES.
+    cw.visit(V1_6, ACC_PUBLIC + ACC_FINAL + ACC_SUPER, className, null, Type.getInternalName(Object.class), null);
+    if (index != -1) {
+      String typeName = className.substring(index + 1);
       cw.visitInnerClass(className, className.substring(0, index), typeName, ACC_PUBLIC + ACC_FINAL + ACC_STATIC);
-      if (myCache == null) {
-        myCache = Maps.newHashMap();
+      TypeContents contents = (TypeContents)source;
+      generateFields(cw, contents.fields);
+      if (!contents.arrays.isEmpty()) {
+        generateIntArrayFromCache(cw, className, contents.arrays);
       }
-      if (type == ResourceType.STYLEABLE) {
-        if (myStyleableCache == null) {
-          TObjectIntHashMap<String> styleableIntCache = new TObjectIntHashMap<String>();
-          myCache.put(type, styleableIntCache);
-          myStyleableCache = Maps.newHashMap();
-          generateStyleable(cw, styleableIntCache, className);
-        }
-        else {
-          TObjectIntHashMap<String> styleableIntCache = myCache.get(type);
-          assert styleableIntCache != null;
-          generateFields(cw, styleableIntCache);
-          generateIntArrayFromCache(cw, className, myStyleableCache);
-        }
-      } else {
-        TObjectIntHashMap<String> typeCache = myCache.get(type);
-        if (typeCache == null) {
-          typeCache = new TObjectIntHashMap<String>();
-          myCache.put(type, typeCache);
-          generateValuesForType(cw, type, typeCache);
-        }
-        else {
-          generateFields(cw, typeCache);
-        }
-      }
-    } else {
+    }
+    else {
       // Default R class.
-      boolean styleableAdded = false;
-      for (ResourceType t : myAppResources.getAvailableResourceTypes()) {
-        // getAvailableResourceTypes() sometimes returns both styleable and declare styleable. Make sure that we only create one subclass.
-        if (t == ResourceType.DECLARE_STYLEABLE) {
-          t = ResourceType.STYLEABLE;
-        }
-        if (t == ResourceType.STYLEABLE) {
-          if (styleableAdded) {
-            continue;
-          } else {
-            styleableAdded = true;
-          }
-        }
+      //noinspection unchecked
+      for (ResourceType t : (Set<ResourceType>)source) {
         cw.visitInnerClass(className + "$" + t.getName(), className, t.getName(), ACC_PUBLIC + ACC_FINAL + ACC_STATIC);
       }
     }
 
     generateConstructor(cw);
     cw.visitEnd();
-    return cw.toByteArray();
+    byte[] bytes = cw.toByteArray();
+    myClasses.put(className, new GeneratedClass(source, bytes));
+    return bytes;
+  }
+
+  /**
+   * Returns the types of the inner classes of the default R class.
+   */
+  @NotNull
+  private Set<ResourceType> getInnerClassTypes() {
+    Set<ResourceType> types = EnumSet.noneOf(ResourceType.class);
+    for (ResourceType t : myAppResources.getAvailableResourceTypes()) {
+      // getAvailableResourceTypes() sometimes returns both styleable and declare styleable. Make sure that we only create one subclass.
+      types.add(t == ResourceType.DECLARE_STYLEABLE ? ResourceType.STYLEABLE : t);
+    }
+    return types;
+  }
+
+  /**
+   * Returns the field values of the inner class for the given type, recomputing them only if the resources of that type
+   * changed since they were last computed.
+   */
+  @NotNull
+  private TypeContents getTypeContents(@NotNull ResourceType type) {
+    long generation = myAppResources.getModificationCount();
+    TypeContents contents = myTypeContents.get(type);
+    if (contents != null && contents.generation == generation) {
+      return contents;
+    }
+
+    if (type == ResourceType.STYLEABLE) {
+      Map<String, List<List<AttrResourceValue>>> styleables = getStyleables();
+      List<String> fingerprint = getStyleablesFingerprint(styleables);
+      if (contents == null || !contents.fingerprint.equals(fingerprint)) {
+        contents = new TypeContents(fingerprint);
+        generateStyleable(contents, styleables);
+      }
+    }
+    else {
+      List<String> names = new ArrayList<>(myAppResources.getItemsOfType(type));
+      if (contents == null || !contents.fingerprint.equals(names)) {
+        contents = new TypeContents(names);
+        generateValuesForType(contents, type);
+      }
+    }
+    contents.generation = generation;
+    myTypeContents.put(type, contents);
+    return contents;
   }
 
-  private void generateValuesForType(@NotNull ClassWriter cw, @NotNull ResourceType resType, @NotNull TObjectIntHashMap<String> cache) {
-    Collection<String> keys = myAppResources.getItemsOfType(resType);
-    for (String key : keys) {
+  private void generateValuesForType(@NotNull TypeContents contents, @NotNull ResourceType resType) {
+    for (String key : contents.fingerprint) {
       int initialValue = myAppResources.getResourceId(resType, key);
-      key = AndroidResourceUtil.getFieldNameByResourceName(key);
-      generateField(cw, key, initialValue);
-      cache.put(key, initialValue);
+      contents.fields.put(AndroidResourceUtil.getFieldNameByResourceName(key), initialValue);
     }
   }
 
@@ -184,67 +214,69 @@ public class ResourceClassGenerator {
     return dv.getAllAttributes();
   }
 
-  private void generateStyleable(@NotNull ClassWriter cw, @NotNull TObjectIntHashMap<String> styleableIntCache, String className) {
-    if (LOG.isDebugEnabled()) {
-      LOG.debug(String.format("generateStyleable(%s)", anonymizeClassName(className)));
-    }
-
-    boolean debug = LOG.isDebugEnabled() && isPublicClass(className);
-    Collection<String> declaredStyleables = myAppResources.getItemsOfType(ResourceType.DECLARE_STYLEABLE);
-    // Generate all declarations - both int[] and int for the indices into the array.
-    for (String styleableName : declaredStyleables) {
+  /**
+   * Returns the attributes of each of the items of each declared styleable, in declaration order.
+   */
+  @NotNull
+  private Map<String, List<List<AttrResourceValue>>> getStyleables() {
+    Map<String, List<List<AttrResourceValue>>> styleables = new LinkedHashMap<>();
+    for (String styleableName : myAppResources.getItemsOfType(ResourceType.DECLARE_STYLEABLE)) {
       List<ResourceItem> items = myAppResources.getResourceItem(ResourceType.DECLARE_STYLEABLE, styleableName);
       if (items == null || items.isEmpty()) {
-        if (debug) {
+        if (LOG.isDebugEnabled()) {
           LOG.debug("  No items for " + styleableName);
         }
         continue;
       }
-      String fieldName = AndroidResourceUtil.getFieldNameByResourceName(styleableName);
-      cw.visitField(ACC_PUBLIC + ACC_FINAL + ACC_STATIC, fieldName, "[I", null, null);
-      if (debug) {
-        LOG.debug("  Defined styleable " + fieldName);
-      }
-
-      // Merge all the styleables with the same name
-      List<AttrResourceValue> mergedAttributes = new ArrayList<>();
+      List<List<AttrResourceValue>> attributes = new ArrayList<>(items.size());
       for (ResourceItem item : items) {
-        mergedAttributes.addAll(getStyleableAttributes(item));
+        attributes.add(getStyleableAttributes(item));
       }
+      styleables.put(styleableName, attributes);
+    }
+    return styleables;
+  }
 
-      int idx = 0;
-      HashSet<String> styleablesEntries = new HashSet<>();
-      for (AttrResourceValue value : mergedAttributes) {
-        String styleableEntryName = getResourceName(fieldName, value);
-        // Because we are merging styleables from multiple sources, we could have duplicates
-        if (!styleablesEntries.add(styleableEntryName)) {
-          continue;
-        }
-
-        Integer initialValue = idx++;
-        cw.visitField(ACC_PUBLIC + ACC_FINAL + ACC_STATIC, styleableEntryName, "I", null, initialValue);
-        styleableIntCache.put(styleableEntryName, initialValue);
-        if (debug) {
-          LOG.debug("  Defined styleable " + styleableEntryName);
+  /**
+   * Returns a summary of the styleables which changes whenever the generated styleable class would change.
+   */
+  @NotNull
+  private List<String> getStyleablesFingerprint(@NotNull Map<String, List<List<AttrResourceValue>>> styleables) {
+    List<String> fingerprint = new ArrayList<>();
+    // The array values are looked up in the R.txt files of the libraries, which are rewritten in place when a library is rebuilt.
+    for (FileResourceRepository library : myAppResources.getLibraries()) {
+      File resourceTextFile = library.getResourceTextFile();
+      if (resourceTextFile != null) {
+        fingerprint.add(resourceTextFile.getPath() + ':' + resourceTextFile.lastModified() + ':' + resourceTextFile.length());
+      }
+    }
+    for (Map.Entry<String, List<List<AttrResourceValue>>> entry : styleables.entrySet()) {
+      fingerprint.add(entry.getKey());
+      for (List<AttrResourceValue> attributes : entry.getValue()) {
+        StringBuilder sb = new StringBuilder();
+        for (AttrResourceValue value : attributes) {
+          sb.append(value.isFramework() ? "android:" : "").append(value.getName()).append(',');
         }
+        fingerprint.add(sb.toString());
       }
     }
+    return fingerprint;
+  }
 
-    // Generate class initializer block to initialize the arrays declared above.
-    MethodVisitor mv = cw.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
-    mv.visitCode();
-    for (String styleableName : declaredStyleables) {
-      List<ResourceItem> items = myAppResources.getResourceItem(ResourceType.DECLARE_STYLEABLE, styleableName);
-      if (items == null || items.isEmpty()) {
-        continue;
-      }
+  private void generateStyleable(@NotNull TypeContents contents, @NotNull Map<String, List<List<AttrResourceValue>>> styleables) {
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(String.format("generateStyleable(%d styleables)", styleables.size()));
+    }
 
-      List<Integer> values = new ArrayList<>();
-      List<AttrResourceValue> mergedAttributes = new ArrayList<>();
+    // Generate all declarations - both int[] and int for the indices into the array.
+    for (Map.Entry<String, List<List<AttrResourceValue>>> entry : styleables.entrySet()) {
+      String styleableName = entry.getKey();
       String fieldName = AndroidResourceUtil.getFieldNameByResourceName(styleableName);
-      myStyleableCache.put(fieldName, values);
-      for (ResourceItem item : items) {
-        List<AttrResourceValue> attributes = getStyleableAttributes(item);
+
+      // Merge all the styleables with the same name
+      List<AttrResourceValue> mergedAttributes = new ArrayList<>();
+      List<Integer> values = new ArrayList<>();
+      for (List<AttrResourceValue> attributes : entry.getValue()) {
         if (attributes.isEmpty()) {
           continue;
         }
@@ -255,9 +287,21 @@ public class ResourceClassGenerator {
         }
         Collections.addAll(values, valuesArray);
       }
+      StyleableArray array = new StyleableArray(values);
+      contents.arrays.put(fieldName, array);
+
+      int idx = 0;
+      for (AttrResourceValue value : mergedAttributes) {
+        String styleableEntryName = getResourceName(fieldName, value);
+        // Because we are merging styleables from multiple sources, we could have duplicates
+        if (array.indexFields.containsKey(styleableEntryName)) {
+          continue;
+        }
+        array.indexFields.put(styleableEntryName, idx++);
+      }
 
       HashSet<String> styleableEntries = new HashSet<>();
-      int idx = -1;
+      idx = -1;
       for (AttrResourceValue value : mergedAttributes) {
         idx++;
         if (values.get(idx) == null || !value.isFramework()) {
@@ -272,38 +316,34 @@ public class ResourceClassGenerator {
           }
         }
       }
-      generateArrayInitialization(mv, className, fieldName, values);
     }
-    mv.visitInsn(RETURN);
-    mv.visitMaxs(4, 0);
-    mv.visitEnd();
   }
 
-  private static void generateFields(@NotNull final ClassWriter cw, @NotNull TObjectIntHashMap<String> values) {
-    values.forEachEntry(new TObjectIntProcedure<String>() {
-      @Override
-      public boolean execute(String name, int value) {
-        generateField(cw, name, value);
-        return true;
-      }
-    });
+  private static void generateFields(@NotNull ClassWriter cw, @NotNull Map<String, Integer> values) {
+    for (Map.Entry<String, Integer> entry : values.entrySet()) {
+      generateField(cw, entry.getKey(), entry.getValue());
+    }
   }
 
   private static void generateField(@NotNull ClassWriter cw, String name, int value) {
     cw.visitField(ACC_PUBLIC + ACC_FINAL + ACC_STATIC, name, "I", null, value).visitEnd();
   }
 
-  private static void generateIntArrayFromCache(@NotNull ClassWriter cw, String className, Map<String, List<Integer>> styleableCache) {
+  /**
+   * Generates the int[] fields of a styleable class, each followed by the int fields which hold the indices into it.
+   */
+  private static void generateIntArrayFromCache(@NotNull ClassWriter cw, String className, Map<String, StyleableArray> styleableCache) {
     // Generate the field declarations.
-    for (String name : styleableCache.keySet()) {
-      cw.visitField(ACC_PUBLIC + ACC_FINAL + ACC_STATIC, name, "[I", null, null);
+    for (Map.Entry<String, StyleableArray> entry : styleableCache.entrySet()) {
+      cw.visitField(ACC_PUBLIC + ACC_FINAL + ACC_STATIC, entry.getKey(), "[I", null, null);
+      generateFields(cw, entry.getValue().indexFields);
     }
 
     // Generate class initializer block to initialize the arrays declared above.
     MethodVisitor mv = cw.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
     mv.visitCode();
-    for (Map.Entry<String, List<Integer>> entry : styleableCache.entrySet()) {
-      List<Integer> values = entry.getValue();
+    for (Map.Entry<String, StyleableArray> entry : styleableCache.entrySet()) {
+      List<Integer> values = entry.getValue().values;
       if (!values.isEmpty()) {
         generateArrayInitialization(mv, className, entry.getKey(), values);
       }
@@ -387,4 +427,44 @@ public class ResourceClassGenerator {
     }
     return sb.toString();
   }
+
+  /**
+   * The fields of a generated inner R class. The contents are computed from the resources of a single type, which are
+   * summarized by the fingerprint; they are valid for as long as the fingerprint doesn't change.
+   */
+  private static final class TypeContents {
+    @NotNull final List<String> fingerprint;
+    /** Field names to values, for all types but styleables. */
+    @NotNull final Map<String, Integer> fields = new LinkedHashMap<>();
+    /** Styleable array fields, for styleables. */
+    @NotNull final Map<String, StyleableArray> arrays = new LinkedHashMap<>();
+    long generation;
+
+    TypeContents(@NotNull List<String> fingerprint) {
+      this.fingerprint = fingerprint;
+    }
+  }
+
+  /**
+   * The int[] field of a styleable, and the fields holding the indices of its attributes within it.
+   */
+  private static final class StyleableArray {
+    @NotNull final List<Integer> values;
+    @NotNull final Map<String, Integer> indexFields = new LinkedHashMap<>();
+
+    StyleableArray(@NotNull List<Integer> values) {
+      this.values = values;
+    }
+  }
+
+  private static final class GeneratedClass {
+    /** The {@link TypeContents} of an inner class, or the set of inner class types of the default R class. */
+    @NotNull final Object source;
+    @NotNull final byte[] bytes;
+
+    GeneratedClass(@NotNull Object source, @NotNull byte[] bytes) {
+      this.source = source;
+      this.bytes = bytes;
+    }
+  }
 }
@@ -17,12 +17,18 @@ package com.android.tools.idea.res;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.intellij.facet.ProjectFacetManager;
 import com.intellij.openapi.application.Application;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleUtilCore;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.project.DumbModeTask;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.VirtualFile;
@@ -36,18 +42,29 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.Set;
+import java.util.concurrent.*;
 
 public class ResourceFolderRegistry {
+  private static final Logger LOG = Logger.getInstance(ResourceFolderRegistry.class);
   private final static Object DIR_MAP_LOCK = new Object();
 
   @GuardedBy("DIR_MAP_LOCK")
   private final static Map<VirtualFile, ResourceFolderRepository> ourDirMap = Maps.newHashMap();
 
+  /**
+   * Scans queued by {@link PopulateCachesTask} which have not been published to {@link #ourDirMap} yet. Callers of
+   * {@link #get} for one of these directories wait for the background scan instead of scanning the folder a second time.
+   */
+  @GuardedBy("DIR_MAP_LOCK")
+  private final static Map<VirtualFile, Future<ResourceFolderRepository>> ourPendingMap = Maps.newHashMap();
+
   public static void reset() {
     synchronized (DIR_MAP_LOCK) {
+      for (Future<ResourceFolderRepository> pending : ourPendingMap.values()) {
+        pending.cancel(false);
+      }
+      ourPendingMap.clear();
       for (Map.Entry<VirtualFile, ResourceFolderRepository> entry : ourDirMap.entrySet()) {
         VirtualFile dir = entry.getKey();
         ResourceFolderRepository repository = entry.getValue();
@@ -68,10 +85,28 @@ public class ResourceFolderRegistry {
   public static ResourceFolderRepository get(@NotNull final AndroidFacet facet,
                                              @NotNull final VirtualFile dir,
                                              @Nullable String namespace) {
+    Future<ResourceFolderRepository> pending;
+    synchronized (DIR_MAP_LOCK) {
+      ResourceFolderRepository repository = ourDirMap.get(dir);
+      if (repository != null) {
+        return repository;
+      }
+      pending = ourPendingMap.get(dir);
+    }
+
+    Project project = facet.getModule().getProject();
+    // Only wait for a background scan when not holding the read lock: the scan itself acquires read actions, which could
+    // be blocked by a pending write action that in turn waits for this thread. Background scans are not namespaced.
+    if (pending != null && namespace == null && !ApplicationManager.getApplication().isReadAccessAllowed()) {
+      ResourceFolderRepository repository = waitForScan(pending);
+      if (repository != null) {
+        return publish(project, dir, repository);
+      }
+    }
+
     synchronized (DIR_MAP_LOCK) {
       ResourceFolderRepository repository = ourDirMap.get(dir);
       if (repository == null) {
-        Project project = facet.getModule().getProject();
         // TODO: namespaces: use the namespace as the cache key.
         repository = ResourceFolderRepository.create(facet, dir, namespace);
         putRepositoryInCache(project, dir, repository);
@@ -80,6 +115,44 @@ public class ResourceFolderRegistry {
     }
   }
 
+  @Nullable
+  private static ResourceFolderRepository waitForScan(@NotNull Future<ResourceFolderRepository> pending) {
+    try {
+      return pending.get();
+    }
+    catch (CancellationException | ExecutionException e) {
+      // The background scan did not complete; the caller falls back to scanning the folder itself.
+      return null;
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+  }
+
+  /**
+   * Makes a repository built by a background scan visible to {@link #get}. If a repository for the same directory was
+   * registered in the meantime, that one wins and the given one is disposed.
+   *
+   * @return the repository registered for the directory
+   */
+  @NotNull
+  private static ResourceFolderRepository publish(@NotNull Project project, @NotNull VirtualFile dir,
+                                                  @NotNull ResourceFolderRepository repository) {
+    synchronized (DIR_MAP_LOCK) {
+      ourPendingMap.remove(dir);
+      ResourceFolderRepository existing = ourDirMap.get(dir);
+      if (existing != null) {
+        if (existing != repository) {
+          Disposer.dispose(repository);
+        }
+        return existing;
+      }
+      putRepositoryInCache(project, dir, repository);
+      return repository;
+    }
+  }
+
   private static void putRepositoryInCache(@NotNull Project project, @NotNull final VirtualFile dir,
                                            @NotNull ResourceFolderRepository repository) {
     PsiProjectListener.addRoot(project, dir, repository);
@@ -101,24 +174,25 @@ public class ResourceFolderRegistry {
   }
 
   /**
-   * Filter out directories that are already cached in the registry.
+   * Filter out directories that are already cached in the registry, or already being scanned.
    * @param resDirectories
    */
   private static void filterOutCached(Map<VirtualFile, AndroidFacet> resDirectories) {
     synchronized (DIR_MAP_LOCK) {
       resDirectories.keySet().removeAll(ourDirMap.keySet());
+      resDirectories.keySet().removeAll(ourPendingMap.keySet());
     }
   }
 
   /**
    * Grabs resource directories from the given facets and pairs the directory with an arbitrary
-   * AndroidFacet which happens to depend on the directory.
+   * AndroidFacet which happens to depend on the directory. The directories are returned in the order of the facets.
    *
    * @param facets set of facets which may have resource directories
    */
   @NotNull
   static Map<VirtualFile, AndroidFacet> getResourceDirectoriesForFacets(@NotNull List<AndroidFacet> facets) {
-    Map<VirtualFile, AndroidFacet> resDirectories = Maps.newHashMap();
+    Map<VirtualFile, AndroidFacet> resDirectories = Maps.newLinkedHashMap();
     for (AndroidFacet facet : facets) {
       for (VirtualFile resourceDir : facet.getAllResourceDirectories()) {
         if (!resDirectories.containsKey(resourceDir)) {
@@ -131,6 +205,10 @@ public class ResourceFolderRegistry {
 
   /**
    * Populate the registry's in-memory ResourceFolderRepository caches (if not already cached).
+   *
+   * <p>Folders are scanned on a bounded pool and each repository is published as soon as its scan finishes, rather than
+   * when the whole project is done. Resource folders of modules with open editors are scanned first, and {@link #get}
+   * waits for a queued scan of a folder instead of scanning it again.
    */
   public static class PopulateCachesTask extends DumbModeTask {
     @NotNull private final Project myProject;
@@ -148,7 +226,7 @@ public class ResourceFolderRegistry {
       // Some directories in the registry may already be populated by this point, so filter them out.
       indicator.setText("Indexing resources");
       indicator.setIndeterminate(false);
-      Map<VirtualFile, AndroidFacet> resDirectories = getResourceDirectoriesForFacets(facets);
+      Map<VirtualFile, AndroidFacet> resDirectories = getResourceDirectoriesForFacets(prioritizeOpenModules(myProject, facets));
       filterOutCached(resDirectories);
       // Might already be done, as there can be a race for filling the memory caches.
       if (resDirectories.isEmpty()) {
@@ -166,54 +244,111 @@ public class ResourceFolderRegistry {
         return;
       }
       Application application = ApplicationManager.getApplication();
-      List<ResourceFolderRepository> repositories;
       // Beware if the current thread is holding the write lock. The current thread will
       // end up waiting for helper threads to finish, and the helper threads will be
       // acquiring a read lock (which would then block because of the write lock).
       assert !application.isWriteAccessAllowed();
-      repositories = executeParallel(indicator, resDirectories);
-      for (ResourceFolderRepository repository : repositories) {
-        putRepositoryInCache(myProject, repository.getResourceDir(), repository);
+      executeParallel(myProject, indicator, resDirectories);
+    }
+
+    /**
+     * Moves the facets of modules which have a file open in an editor to the front of the list.
+     */
+    @NotNull
+    private static List<AndroidFacet> prioritizeOpenModules(@NotNull Project project, @NotNull List<AndroidFacet> facets) {
+      VirtualFile[] openFiles = FileEditorManager.getInstance(project).getOpenFiles();
+      if (openFiles.length == 0) {
+        return facets;
       }
+      Set<Module> openModules = ApplicationManager.getApplication().runReadAction((Computable<Set<Module>>)() -> {
+        Set<Module> modules = Sets.newHashSet();
+        for (VirtualFile file : openFiles) {
+          Module module = ModuleUtilCore.findModuleForFile(file, project);
+          if (module != null) {
+            modules.add(module);
+          }
+        }
+        return modules;
+      });
+      List<AndroidFacet> prioritized = Lists.newArrayListWithExpectedSize(facets.size());
+      List<AndroidFacet> others = Lists.newArrayList();
+      for (AndroidFacet facet : facets) {
+        (openModules.contains(facet.getModule()) ? prioritized : others).add(facet);
+      }
+      prioritized.addAll(others);
+      return prioritized;
     }
 
-    private static List<ResourceFolderRepository> executeParallel(@NotNull ProgressIndicator indicator,
-                                                                  @NotNull Map<VirtualFile, AndroidFacet> resDirectories) {
-      int numDone = 0;
-      List<ResourceFolderRepository> repositories = Lists.newArrayList();
+    /**
+     * Scans the given directory and publishes its repository. If the scan was abandoned while running, because the task was
+     * canceled or the registry was reset, the repository is disposed instead.
+     */
+    @Nullable
+    private static ResourceFolderRepository scanAndPublish(@NotNull Project project,
+                                                           @NotNull AndroidFacet facet,
+                                                           @NotNull VirtualFile dir) {
+      ResourceFolderRepository repository = ResourceFolderRepository.create(facet, dir, null);
+      synchronized (DIR_MAP_LOCK) {
+        if (ourPendingMap.containsKey(dir)) {
+          return publish(project, dir, repository);
+        }
+      }
+      Disposer.dispose(repository);
+      return null;
+    }
+
+    private static void executeParallel(@NotNull Project project,
+                                        @NotNull ProgressIndicator indicator,
+                                        @NotNull Map<VirtualFile, AndroidFacet> resDirectories) {
       // Cap the threads to 4 for now. Scaling is okay from 1 to 2, but not necessarily much better as we go higher.
       int maxThreads = Math.min(4, Runtime.getRuntime().availableProcessors());
       ExecutorService
         parallelExecutor = AppExecutorUtil.createBoundedApplicationPoolExecutor("ResourceFolderRegistry", maxThreads);
-      List<Future<ResourceFolderRepository>> repositoryJobs = Lists.newArrayList();
-      for (Map.Entry<VirtualFile, AndroidFacet> entry : resDirectories.entrySet()) {
-        repositoryJobs.add(queueRepositoryFuture(parallelExecutor, entry.getValue(), entry.getKey()));
-      }
-      for (Future<ResourceFolderRepository> job : repositoryJobs) {
-        if (indicator.isCanceled()) {
-          break;
-        }
-        indicator.setFraction((double)numDone / resDirectories.size());
-        try {
-          repositories.add(job.get());
+      CompletionService<ResourceFolderRepository> completionService = new ExecutorCompletionService<>(parallelExecutor);
+      Map<VirtualFile, Future<ResourceFolderRepository>> repositoryJobs = Maps.newLinkedHashMap();
+      synchronized (DIR_MAP_LOCK) {
+        for (Map.Entry<VirtualFile, AndroidFacet> entry : resDirectories.entrySet()) {
+          VirtualFile dir = entry.getKey();
+          AndroidFacet facet = entry.getValue();
+          Future<ResourceFolderRepository> job = completionService.submit(() -> scanAndPublish(project, facet, dir));
+          repositoryJobs.put(dir, job);
+          ourPendingMap.put(dir, job);
         }
-        catch (ExecutionException e) {
-          // If we get an exception, that's okay -- we stop pre-populating the cache, which is just for performance.
+      }
+      int numDone = 0;
+      try {
+        while (numDone < repositoryJobs.size()) {
+          if (indicator.isCanceled()) {
+            break;
+          }
+          indicator.setFraction((double)numDone / repositoryJobs.size());
+          Future<ResourceFolderRepository> job = completionService.take();
+          ++numDone;
+          try {
+            job.get();
+          }
+          catch (ExecutionException e) {
+            // If we get an exception, that's okay -- we stop pre-populating the cache, which is just for performance.
+            LOG.debug(e);
+          }
         }
-        catch (InterruptedException e) {
-          Thread.currentThread().interrupt();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      finally {
+        // Anything not published by now (failed, canceled or interrupted) is left for get() to scan on demand. Scans which
+        // are still running dispose of their repository when they finish, see scanAndPublish.
+        synchronized (DIR_MAP_LOCK) {
+          for (Map.Entry<VirtualFile, Future<ResourceFolderRepository>> entry : repositoryJobs.entrySet()) {
+            Future<ResourceFolderRepository> job = entry.getValue();
+            if (!job.isDone()) {
+              job.cancel(false);
+            }
+            ourPendingMap.remove(entry.getKey(), job);
+          }
         }
-        ++numDone;
       }
-      return repositories;
-    }
-
-    private static Future<ResourceFolderRepository> queueRepositoryFuture(
-      @NotNull final ExecutorService myParallelBuildExecutor,
-      @NotNull final AndroidFacet facet,
-      @NotNull final VirtualFile dir) {
-      return myParallelBuildExecutor.submit(() -> ResourceFolderRepository.create(facet, dir, null));
     }
   }
-
 }
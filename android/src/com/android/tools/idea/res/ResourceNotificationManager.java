@@ -832,6 +832,17 @@ public class ResourceNotificationManager {
       myOtherGeneration = otherGeneration;
     }
 
+    /**
+     * Returns true if this version only differs from the given one by edits of the file the versions were computed for, i.e. no
+     * resource, configuration or project change happened in between.
+     */
+    public boolean isFileEditOf(@NotNull ResourceVersion previous) {
+      return myResourceGeneration == previous.myResourceGeneration &&
+             myConfigurationGeneration == previous.myConfigurationGeneration &&
+             myProjectConfigurationGeneration == previous.myProjectConfigurationGeneration &&
+             myOtherGeneration == previous.myOtherGeneration;
+    }
+
     @Override
     public boolean equals(Object o) {
       if (this == o) return true;
@@ -343,7 +343,7 @@ public class AndroidProcessHandler extends ProcessHandler implements AndroidDebu
       }
 
       LOG.info(String.format("startCapture(\"%s\")", device.getName()));
-      AndroidLogcatService.LogcatListener logListener = new ApplicationLogListener(myApplicationId, client.getClientData().getPid()) {
+      ApplicationLogListener logListener = new ApplicationLogListener(myApplicationId, client.getClientData().getPid()) {
         private final String SIMPLE_FORMAT = AndroidLogcatFormatter.createCustomFormat(false, false, false, true);
         private final AtomicBoolean myIsFirstMessage = new AtomicBoolean(true);
 
@@ -369,7 +369,7 @@ public class AndroidProcessHandler extends ProcessHandler implements AndroidDebu
         }
       };
 
-      AndroidLogcatService.getInstance().addListener(device, logListener, true);
+      AndroidLogcatService.getInstance().addListener(device, logListener, logListener.getFilter());
 
       // Remember the listener for later cleanup
       AndroidLogcatService.LogcatListener previousListener;
@@ -17,13 +17,17 @@ package com.android.tools.idea.run;
 
 import com.android.ddmlib.logcat.LogCatHeader;
 import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.tools.idea.logcat.AndroidLogcatFilter;
 import com.android.tools.idea.logcat.AndroidLogcatService;
 import com.android.tools.idea.logcat.AndroidLogcatUtils;
+import com.android.tools.idea.logcat.DefaultAndroidLogcatFilter;
 import com.google.common.base.Strings;
 import com.intellij.openapi.util.Key;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.regex.Pattern;
+
 /**
  * A logcat listener base class used by the run and debug console windows
  */
@@ -37,6 +41,19 @@ public abstract class ApplicationLogListener implements AndroidLogcatService.Log
     myPid = pid;
   }
 
+  /**
+   * Returns a filter accepting the messages this listener handles, to only replay those when it is added.
+   *
+   * @see AndroidLogcatService#addListener(com.android.ddmlib.IDevice, AndroidLogcatService.LogcatListener, AndroidLogcatFilter)
+   */
+  @NotNull
+  public AndroidLogcatFilter getFilter() {
+    return new DefaultAndroidLogcatFilter.Builder(myPackageName)
+      .setPackagePattern(Pattern.compile("^" + Pattern.quote(myPackageName) + "$"))
+      .setPid(myPid)
+      .build();
+  }
+
   @Override
   public void onLogLineReceived(@NotNull LogCatMessage line) {
     if (!myPackageName.equals(line.getHeader().getAppName()) || myPid != line.getHeader().getPid()) {
@@ -246,7 +246,7 @@ public class ConnectJavaDebuggerTask extends ConnectDebuggerTask {
         debugProcessHandler.notifyTextAvailable(message, key);
       }
     };
-    AndroidLogcatService.getInstance().addListener(device, logListener, true);
+    AndroidLogcatService.getInstance().addListener(device, logListener, logListener.getFilter());
 
     // Remove listener when process is terminated
     debugProcessHandler.addProcessListener(new ProcessAdapter() {
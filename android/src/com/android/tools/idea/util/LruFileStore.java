@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.util;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * A directory of cache files, named by their keys, which evicts the least recently used files when it grows too large.
+ * <p>
+ * Files are written to a temporary file first, then moved in place, so concurrent readers never see a partially written
+ * file. Reading a file marks it as used by updating its modification time, which is what the eviction is based on.
+ */
+public final class LruFileStore {
+  private static final Logger LOG = Logger.getInstance(LruFileStore.class);
+  private static final String TEMP_FILE_EXTENSION = ".tmp";
+
+  @NotNull private final File myDirectory;
+  @NotNull private final String myExtension;
+
+  public interface ContentReader<T> {
+    @Nullable
+    T read(@NotNull File file) throws IOException;
+  }
+
+  public interface ContentWriter {
+    void write(@NotNull File file) throws IOException;
+  }
+
+  /**
+   * @param directory the directory of the store, created when the first file is written
+   * @param extension the extension of the stored files, e.g. ".png"
+   */
+  public LruFileStore(@NotNull File directory, @NotNull String extension) {
+    myDirectory = directory;
+    myExtension = extension;
+  }
+
+  @NotNull
+  public File getDirectory() {
+    return myDirectory;
+  }
+
+  /**
+   * Returns the file storing the contents of the given key, which may not exist.
+   */
+  @NotNull
+  public File getFile(@NotNull String key) {
+    return new File(myDirectory, key + myExtension);
+  }
+
+  /**
+   * Reads the given stored file with {@code reader}, marking it as used. Returns null if the file does not exist or can't be read.
+   */
+  @Nullable
+  public <T> T read(@NotNull File file, @NotNull ContentReader<T> reader) {
+    if (!file.isFile()) {
+      return null;
+    }
+    try {
+      T contents = reader.read(file);
+      //noinspection ResultOfMethodCallIgnored
+      file.setLastModified(System.currentTimeMillis());
+      return contents;
+    }
+    catch (IOException | RuntimeException e) {
+      LOG.debug("Could not read stored file " + file, e);
+      return null;
+    }
+  }
+
+  /**
+   * Writes the given stored file with {@code writer}, replacing the previous contents. Returns whether the file was stored.
+   */
+  public boolean write(@NotNull File file, @NotNull ContentWriter writer) {
+    File tempFile = null;
+    try {
+      FileUtil.createParentDirs(file);
+      tempFile = FileUtil.createTempFile(file.getParentFile(), file.getName(), TEMP_FILE_EXTENSION, true, false);
+      writer.write(tempFile);
+      move(tempFile.toPath(), file.toPath());
+      return true;
+    }
+    catch (IOException e) {
+      LOG.debug("Could not store file " + file, e);
+      if (tempFile != null) {
+        FileUtil.delete(tempFile);
+      }
+      return false;
+    }
+  }
+
+  private static void move(@NotNull Path source, @NotNull Path target) throws IOException {
+    try {
+      Files.move(source, target, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+    catch (AtomicMoveNotSupportedException e) {
+      Files.move(source, target, REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Deletes the least recently used files if the store is larger than {@code maxSizeBytes}, until it is below three quarters of
+   * that size, so it does not need to be listed again for every new file. Returns the size of the store afterwards.
+   */
+  public synchronized long trimToSize(long maxSizeBytes) {
+    File[] files = listFiles();
+    long size = 0;
+    for (File file : files) {
+      size += file.length();
+    }
+    if (size > maxSizeBytes) {
+      Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+      for (File file : files) {
+        if (size <= maxSizeBytes * 3 / 4) {
+          break;
+        }
+        long length = file.length();
+        if (FileUtil.delete(file)) {
+          size -= length;
+        }
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Deletes the least recently used files until at most {@code maxFileCount} are left.
+   */
+  public synchronized void trimToCount(int maxFileCount) {
+    File[] files = listFiles();
+    if (files.length <= maxFileCount) {
+      return;
+    }
+    Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+    for (int i = 0; i < files.length - maxFileCount; i++) {
+      FileUtil.delete(files[i]);
+    }
+  }
+
+  @NotNull
+  private File[] listFiles() {
+    File[] files = myDirectory.listFiles((dir, name) -> name.endsWith(myExtension));
+    return files != null ? files : new File[0];
+  }
+}
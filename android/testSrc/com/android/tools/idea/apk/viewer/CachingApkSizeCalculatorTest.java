@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.apk.viewer;
+
+import com.android.tools.apk.analyzer.ApkSizeCalculator;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class CachingApkSizeCalculatorTest {
+  private final CountingCalculator myDelegate = new CountingCalculator();
+  private File myStoreDirectory;
+  private Path myApk;
+
+  @Before
+  public void setUp() throws IOException {
+    Path directory = Files.createTempDirectory("apksizes");
+    myStoreDirectory = directory.resolve("store").toFile();
+    myApk = createApk(directory.resolve("app.apk"), "content");
+  }
+
+  @Test
+  public void estimatesEachApkOnce() throws IOException {
+    CachingApkSizeCalculator calculator = new CachingApkSizeCalculator(myDelegate, myStoreDirectory, CachingApkSizeCalculator.MAX_STORED_APKS);
+    assertEquals(100, calculator.getFullApkDownloadSize(myApk));
+    assertEquals(ImmutableMap.of("/classes.dex", 60L), calculator.getDownloadSizePerFile(myApk));
+    assertEquals(100, calculator.getFullApkDownloadSize(myApk));
+    assertEquals(ImmutableMap.of("/classes.dex", 60L), calculator.getDownloadSizePerFile(myApk));
+    assertEquals(2, myDelegate.myEstimateCount);
+
+    // A copy of the APK opened later is read from the stored index
+    Path copy = Files.copy(myApk, myApk.resolveSibling("copy.apk"));
+    calculator = new CachingApkSizeCalculator(myDelegate, myStoreDirectory, CachingApkSizeCalculator.MAX_STORED_APKS);
+    assertEquals(100, calculator.getFullApkDownloadSize(copy));
+    assertEquals(ImmutableMap.of("/classes.dex", 60L), calculator.getDownloadSizePerFile(copy));
+    assertEquals(2, myDelegate.myEstimateCount);
+
+    // Raw sizes are not cached
+    assertEquals(200, calculator.getFullApkRawSize(copy));
+  }
+
+  @Test
+  public void estimatesAgainWhenTheApkChanges() throws IOException {
+    CachingApkSizeCalculator calculator = new CachingApkSizeCalculator(myDelegate, myStoreDirectory, CachingApkSizeCalculator.MAX_STORED_APKS);
+    calculator.getFullApkDownloadSize(myApk);
+    createApk(myApk, "changed content");
+    calculator.getFullApkDownloadSize(myApk);
+    assertEquals(2, myDelegate.myEstimateCount);
+  }
+
+  @Test
+  public void storeKeepsTheMostRecentlyUsedApks() throws IOException {
+    Path other = createApk(myApk.resolveSibling("other.apk"), "other content");
+    Path third = createApk(myApk.resolveSibling("third.apk"), "third content");
+    CachingApkSizeCalculator calculator = new CachingApkSizeCalculator(myDelegate, myStoreDirectory, 2);
+    calculator.getFullApkDownloadSize(myApk);
+    File[] files = myStoreDirectory.listFiles();
+    assertNotNull(files);
+    assertEquals(1, files.length);
+    assertTrue(files[0].setLastModified(1000000L));
+    calculator.getFullApkDownloadSize(other);
+    calculator.getFullApkDownloadSize(third);
+    files = myStoreDirectory.listFiles();
+    assertNotNull(files);
+    assertEquals(2, files.length);
+    assertEquals(3, myDelegate.myEstimateCount);
+
+    // The least recently used APK was evicted from the store
+    calculator = new CachingApkSizeCalculator(myDelegate, myStoreDirectory, 2);
+    calculator.getFullApkDownloadSize(third);
+    assertEquals(3, myDelegate.myEstimateCount);
+    calculator.getFullApkDownloadSize(myApk);
+    assertEquals(4, myDelegate.myEstimateCount);
+  }
+
+  private static Path createApk(Path path, String content) throws IOException {
+    try (OutputStream stream = Files.newOutputStream(path);
+         ZipOutputStream zip = new ZipOutputStream(stream)) {
+      zip.putNextEntry(new ZipEntry("classes.dex"));
+      zip.write(content.getBytes());
+      zip.closeEntry();
+    }
+    return path;
+  }
+
+  private static class CountingCalculator implements ApkSizeCalculator {
+    private int myEstimateCount;
+
+    @Override
+    public long getFullApkDownloadSize(Path apk) {
+      myEstimateCount++;
+      return 100;
+    }
+
+    @Override
+    public long getFullApkRawSize(Path apk) {
+      return 200;
+    }
+
+    @Override
+    public Map<String, Long> getDownloadSizePerFile(Path apk) {
+      myEstimateCount++;
+      return ImmutableMap.of("/classes.dex", 60L);
+    }
+
+    @Override
+    public Map<String, Long> getRawSizePerFile(Path apk) {
+      return ImmutableMap.of("/classes.dex", 120L);
+    }
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.apk.viewer.dex;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import org.jf.dexlib2.dexbacked.DexBackedDexFile;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import static com.android.tools.idea.apk.viewer.dex.GenerateProguardKeepRuleActionTest.getDexPath;
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+public class DexFileCacheTest {
+  private final DexFileCache myCache = new DexFileCache(MoreExecutors.newDirectExecutorService());
+
+  @Test
+  public void parsesEachDexFileOnce() throws Exception {
+    Path path = getDexPath("Test.dex");
+    DexBackedDexFile dexFile = myCache.get(path).get();
+    assertThat(dexFile.getClasses()).isNotEmpty();
+
+    Map<Path, DexBackedDexFile> dexFiles = myCache.get(new Path[]{path}).get();
+    assertThat(dexFiles).containsExactly(path, dexFile);
+    assertThat(myCache.get(path).get()).isSameAs(dexFile);
+
+    myCache.clear();
+    assertThat(myCache.get(path).get()).isNotSameAs(dexFile);
+  }
+
+  @Test
+  public void reportsUnreadableFiles() throws Exception {
+    Path missing = Files.createTempDirectory("dex").resolve("missing.dex");
+    try {
+      myCache.get(new Path[]{getDexPath("Test.dex"), missing}).get();
+      fail();
+    }
+    catch (ExecutionException e) {
+      assertThat(e.getCause()).isInstanceOf(IOException.class);
+    }
+  }
+}
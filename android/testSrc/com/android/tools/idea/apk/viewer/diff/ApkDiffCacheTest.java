@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.apk.viewer.diff;
+
+import com.google.common.base.Charsets;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.swing.tree.DefaultMutableTreeNode;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+public class ApkDiffCacheTest {
+  private final ApkDiffCache myCache = new ApkDiffCache(MoreExecutors.newDirectExecutorService());
+  private final AtomicInteger myComputeCount = new AtomicInteger();
+  private Path myOldApk;
+  private Path myNewApk;
+
+  @Before
+  public void setUp() throws IOException {
+    Path directory = Files.createTempDirectory("apkdiff");
+    myOldApk = createApk(directory.resolve("old.apk"), "old");
+    myNewApk = createApk(directory.resolve("new.apk"), "new");
+  }
+
+  @Test
+  public void diffsTheSameContentsOnce() throws Exception {
+    DefaultMutableTreeNode tree = getDiffTree("size");
+    assertThat(getDiffTree("size").getUserObject()).isSameAs(tree.getUserObject());
+    assertThat(myComputeCount.get()).isEqualTo(1);
+
+    // A copy with the same entries hits the cache as well
+    Path copy = Files.copy(myNewApk, myNewApk.resolveSibling("copy.apk"));
+    assertThat(myCache.getDiffTree(myOldApk, copy, "size", this::compute).get().getUserObject()).isSameAs(tree.getUserObject());
+    assertThat(myComputeCount.get()).isEqualTo(1);
+
+    // Another kind of diff is computed separately
+    assertThat(getDiffTree("fileByFile").getUserObject()).isNotSameAs(tree.getUserObject());
+    assertThat(myComputeCount.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void diffsAgainWhenTheContentsChange() throws Exception {
+    DefaultMutableTreeNode tree = getDiffTree("size");
+    createApk(myNewApk, "newer");
+    assertThat(getDiffTree("size").getUserObject()).isNotSameAs(tree.getUserObject());
+    assertThat(myComputeCount.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void eachRequestGetsItsOwnNodes() throws Exception {
+    DefaultMutableTreeNode tree = getDiffTree("size");
+    DefaultMutableTreeNode child = (DefaultMutableTreeNode)tree.getChildAt(0);
+    // Panels may modify the nodes of their tree
+    tree.removeAllChildren();
+    tree.add(new DefaultMutableTreeNode("added"));
+
+    DefaultMutableTreeNode other = getDiffTree("size");
+    assertThat(other).isNotSameAs(tree);
+    assertThat(other.getChildCount()).isEqualTo(1);
+    DefaultMutableTreeNode otherChild = (DefaultMutableTreeNode)other.getChildAt(0);
+    assertThat(otherChild).isNotSameAs(child);
+    assertThat(otherChild.getUserObject()).isSameAs(child.getUserObject());
+    assertThat(otherChild.getParent()).isSameAs(other);
+    assertThat(myComputeCount.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void failuresAreNotCached() throws Exception {
+    try {
+      myCache.getDiffTree(myOldApk, myNewApk, "size", (oldApk, newApk) -> {
+        throw new IOException("failed");
+      }).get();
+      fail();
+    }
+    catch (ExecutionException e) {
+      assertThat(e.getCause()).hasMessage("failed");
+    }
+    getDiffTree("size");
+    assertThat(myComputeCount.get()).isEqualTo(1);
+  }
+
+  private DefaultMutableTreeNode getDiffTree(String kind) throws Exception {
+    return myCache.getDiffTree(myOldApk, myNewApk, kind, this::compute).get();
+  }
+
+  private DefaultMutableTreeNode compute(Path oldApk, Path newApk) {
+    myComputeCount.incrementAndGet();
+    DefaultMutableTreeNode root = new DefaultMutableTreeNode(oldApk.getFileName() + " vs " + newApk.getFileName());
+    root.add(new DefaultMutableTreeNode("classes.dex"));
+    return root;
+  }
+
+  private static Path createApk(Path path, String content) throws IOException {
+    try (OutputStream stream = Files.newOutputStream(path);
+         ZipOutputStream zip = new ZipOutputStream(stream)) {
+      zip.putNextEntry(new ZipEntry("classes.dex"));
+      zip.write(content.getBytes(Charsets.UTF_8));
+      zip.closeEntry();
+    }
+    return path;
+  }
+}
@@ -17,14 +17,20 @@ package com.android.tools.idea.configurations;
 
 import com.android.ide.common.resources.ResourceRepository;
 import com.android.ide.common.resources.ResourceResolver;
+import com.android.ide.common.resources.ResourceValueMap;
+import com.android.resources.ResourceType;
 import com.android.sdklib.devices.Device;
 import com.android.sdklib.devices.Screen;
+import com.android.tools.idea.rendering.Locale;
+import com.android.tools.idea.res.AppResourceRepository;
+import com.android.tools.idea.res.FileResourceRepository;
 import com.android.tools.idea.res.LocalResourceRepository;
 import com.android.tools.idea.res.ModuleResourceRepository;
 import com.google.common.collect.Iterables;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.command.WriteCommandAction;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
@@ -35,6 +41,9 @@ import org.jetbrains.android.facet.AndroidFacet;
 import org.jetbrains.android.sdk.FrameworkResourceLoader;
 import org.junit.Ignore;
 
+import java.io.File;
+import java.util.Map;
+
 public class ResourceResolverCacheTest extends AndroidTestCase {
 
   public void test() throws Exception {
@@ -174,4 +183,42 @@ public class ResourceResolverCacheTest extends AndroidTestCase {
     // We've only changed the theme so the resource maps won't change. They are indexed per device config.
     assertDoesntContain(cache.myResolverMap.keySet(), customResolverMapKey);
   }
+
+  public void testConfigurationsDifferingInUnusedQualifiersShareAppResources() {
+    VirtualFile file = myFixture.copyFileToProject("render/layout1.xml", "res/layout/layout1.xml");
+    myFixture.copyFileToProject("javadoc/strings/strings.xml", "res/values/strings.xml");
+    myFixture.copyFileToProject("javadoc/strings/strings.xml", "res/values-land/strings.xml");
+    ConfigurationManager configurationManager = ConfigurationManager.getOrCreateInstance(myModule);
+    ResourceResolverCache cache = configurationManager.getResolverCache();
+    Configuration configuration = configurationManager.getConfiguration(file);
+    configuration.setDeviceStateName("Portrait");
+    Configuration french = Configuration.copy(configuration);
+    french.setLocale(Locale.create("fr"));
+    Configuration landscape = Configuration.copy(configuration);
+    landscape.setDeviceStateName("Landscape");
+
+    configuration.getResourceResolver();
+    french.getResourceResolver();
+    landscape.getResourceResolver();
+    assertEquals(3, cache.myAppResourceMap.size());
+
+    Map<ResourceType, ResourceValueMap> resources = cache.myAppResourceMap.get(configuration.getFullConfig().getUniqueKey());
+    assertNotNull(resources);
+    // No resource folder of the app has a locale qualifier, so the french configuration selects the same resources
+    assertSame(resources, cache.myAppResourceMap.get(french.getFullConfig().getUniqueKey()));
+    // but there are landscape specific resources
+    assertNotSame(resources, cache.myAppResourceMap.get(landscape.getFullConfig().getUniqueKey()));
+  }
+
+  public void testMissingResourceDirIsNotResolved() throws Exception {
+    myFixture.copyFileToProject("javadoc/strings/strings.xml", "res/values/strings.xml");
+    assertTrue(ResourceResolverCache.areResourceDirsResolved(AppResourceRepository.getOrCreateInstance(myFacet)));
+
+    File resourceDir = new File(FileUtil.createTempDirectory("aar", null), "res");
+    FileUtil.writeToFile(new File(resourceDir, "values" + File.separator + "strings.xml"), "<resources/>");
+    FileResourceRepository aarResources = FileResourceRepository.createForTest(resourceDir, null, null);
+    // The directory is gone before the repository looks it up
+    FileUtil.delete(resourceDir);
+    assertFalse(ResourceResolverCache.areResourceDirsResolved(aarResources));
+  }
 }
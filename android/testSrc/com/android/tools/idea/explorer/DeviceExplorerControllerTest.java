@@ -20,6 +20,7 @@ import com.android.tools.idea.explorer.adbimpl.AdbShellCommandException;
 import com.android.tools.idea.explorer.fs.DeviceFileSystem;
 import com.android.tools.idea.explorer.fs.DeviceFileSystemService;
 import com.android.tools.idea.explorer.mocks.*;
+import com.android.tools.idea.flags.StudioFlags;
 import com.android.tools.idea.util.FutureUtils;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -714,6 +715,83 @@ public class DeviceExplorerControllerTest extends AndroidTestCase {
     assertTrue(createdFiles.stream().anyMatch(x -> Objects.equals(x.getName(), myFooDir.getName())));
   }
 
+  public void testFileSystemTree_ContextMenu_SaveDirectoryAs_BulkDownload_Works() throws Exception {
+    myDevice1.setDirectoryDownloadSupported(true);
+    StudioFlags.DEVICE_EXPLORER_BULK_TRANSFER_ENABLED.override(true);
+    try {
+      checkSaveDirectoryAsSummary();
+    }
+    finally {
+      StudioFlags.DEVICE_EXPLORER_BULK_TRANSFER_ENABLED.clearOverride();
+    }
+  }
+
+  public void testFileSystemTree_ContextMenu_SaveDirectoryAs_BulkDownloadNotSupported_DownloadsEachFile() throws Exception {
+    // The mock entries don't support bulk downloads by default
+    StudioFlags.DEVICE_EXPLORER_BULK_TRANSFER_ENABLED.override(true);
+    try {
+      checkSaveDirectoryAsSummary();
+    }
+    finally {
+      StudioFlags.DEVICE_EXPLORER_BULK_TRANSFER_ENABLED.clearOverride();
+    }
+  }
+
+  /**
+   * Saves the "Foo" directory to a directory which already contains a file, and checks that the summary
+   * only counts the downloaded files and directories.
+   */
+  private void checkSaveDirectoryAsSummary() throws Exception {
+    // Prepare
+    myFooFile1.setSize(1_000);
+    myFooFile2.setSize(500);
+    DeviceExplorerController controller = createController();
+    controller.setup();
+    pumpEventsAndWaitForFuture(myMockView.getStartRefreshTracker().consume());
+    checkMockViewInitialState(controller, myDevice1);
+
+    myMockView.getTree().setSelectionPath(getFileEntryPath(myFoo));
+    AnAction action = getActionByText(myMockView.getFileTreeActionGroup(), "Save As...");
+    assertNotNull(action);
+    AnActionEvent e = createContentMenuItemEvent();
+    action.update(e);
+
+    File tempDirectory = FileUtil.createTempDirectory("saveAsDir", "");
+    Files.write(tempDirectory.toPath().resolve("existing.txt"), new byte[100]);
+    myDevice1.setDownloadFileChunkSize(1_000);
+    myDevice1.setDownloadFileChunkIntervalMillis(10);
+
+    replaceApplicationComponent(FileChooserFactory.class, new FileChooserFactoryImpl() {
+      @NotNull
+      @Override
+      public PathChooserDialog createPathChooser(@NotNull FileChooserDescriptor descriptor,
+                                                 @Nullable Project project,
+                                                 @Nullable Component parent) {
+        return (toSelect, callback) -> {
+          List<VirtualFile> list = Collections.singletonList(new VirtualFileWrapper(tempDirectory).getVirtualFile());
+          callback.consume(list);
+        };
+      }
+    });
+
+    // Act
+    myMockView.getStartTreeBusyIndicatorTacker().clear();
+    myMockView.getStopTreeBusyIndicatorTacker().clear();
+    myMockView.getReportMessageRelatedToNodeTracker().clear();
+    action.actionPerformed(e);
+
+    // Assert
+    pumpEventsAndWaitForFuture(myMockView.getStartTreeBusyIndicatorTacker().consume());
+    pumpEventsAndWaitForFuture(myMockView.getStopTreeBusyIndicatorTacker().consume());
+    String summaryMessage = pumpEventsAndWaitForFuture(myMockView.getReportMessageRelatedToNodeTracker().consume());
+
+    assertNotNull(summaryMessage);
+    assertTrue(summaryMessage,
+               summaryMessage.startsWith("Successfully downloaded 5 files and 2 directories for a total size of 1,500 bytes"));
+    assertEquals(1_000, new File(tempDirectory, myFooFile1.getName()).length());
+    assertTrue(new File(new File(tempDirectory, myFooDir.getName()), "fooDirFile1.txt").isFile());
+  }
+
   public void testFileSystemTree_ContextMenu_SaveMultipleFilesAs_Works() throws Exception {
     // Prepare
     DeviceExplorerController controller = createController();
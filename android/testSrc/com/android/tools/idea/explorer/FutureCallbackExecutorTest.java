@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.explorer;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class FutureCallbackExecutorTest {
+  private final FutureCallbackExecutor myExecutor = FutureCallbackExecutor.wrap(MoreExecutors.directExecutor());
+
+  @Test
+  public void testExecuteFuturesInParallelWithEmptyIterator() {
+    ListenableFuture<Void> future =
+      myExecutor.executeFuturesInParallel(Collections.emptyIterator(), element -> SettableFuture.create(), 4);
+
+    assertThat(future.isDone()).isTrue();
+  }
+
+  @Test
+  public void testExecuteFuturesInParallelRunsAtMostMaxConcurrencyTasks() {
+    List<SettableFuture<Void>> tasks = new ArrayList<>();
+    ListenableFuture<Void> future = myExecutor.executeFuturesInParallel(Arrays.asList(1, 2, 3, 4, 5).iterator(), element -> {
+      SettableFuture<Void> task = SettableFuture.create();
+      tasks.add(task);
+      return task;
+    }, 2);
+
+    assertThat(tasks).hasSize(2);
+
+    // Each completed task, successful or not, lets the next one start
+    tasks.get(0).set(null);
+    assertThat(tasks).hasSize(3);
+    tasks.get(1).setException(new RuntimeException("Expected failure"));
+    assertThat(tasks).hasSize(4);
+    tasks.get(2).set(null);
+    assertThat(tasks).hasSize(5);
+
+    // The result completes once all the tasks have completed
+    tasks.get(4).set(null);
+    assertThat(future.isDone()).isFalse();
+    tasks.get(3).set(null);
+    assertThat(future.isDone()).isTrue();
+  }
+
+  @Test
+  public void testExecuteFuturesInParallelWithFewerTasksThanMaxConcurrency() {
+    List<SettableFuture<Void>> tasks = new ArrayList<>();
+    ListenableFuture<Void> future = myExecutor.executeFuturesInParallel(Arrays.asList(1, 2).iterator(), element -> {
+      SettableFuture<Void> task = SettableFuture.create();
+      tasks.add(task);
+      return task;
+    }, 4);
+
+    assertThat(tasks).hasSize(2);
+    tasks.forEach(task -> task.set(null));
+    assertThat(future.isDone()).isTrue();
+  }
+}
@@ -32,6 +32,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import static com.android.tools.idea.explorer.adbimpl.TestDevices.COMMAND_ERROR_CHECK_SUFFIX;
 import static com.google.common.truth.Truth.assertThat;
@@ -179,6 +180,119 @@ public class AdbFileListingTest {
     assertDirectoryLink(fileListing, rootEntries, "vendor", true);
   }
 
+  @Test
+  public void test_Nexus7Api23_PrefetchChildren() throws Exception {
+    // Prepare
+    TestShellCommands commands = new TestShellCommands();
+    TestDevices.addNexus7Api23Commands(commands);
+    commands.add("for f in /charger/ /etc/; do echo LS-LS-LS-LS; ls -l -d \"$f\"; done",
+                 "LS-LS-LS-LS\r\n" +
+                 "/charger/: Permission denied\r\n" +
+                 "LS-LS-LS-LS\r\n" +
+                 "drwxr-xr-x root     root              2016-08-26 12:00\r\n");
+    commands.add("for f in /etc/ /system/; do echo LS-LS-LS-LS; ls -l \"$f\" || echo ERR-ERR-ERR-ERR; done",
+                 "LS-LS-LS-LS\r\n" +
+                 "-rw-r--r-- root     root          134 2016-08-26 12:00 hosts\r\n" +
+                 "drwxr-xr-x root     root              2016-08-26 12:00 permissions\r\n" +
+                 "LS-LS-LS-LS\r\n" +
+                 "/system/: Permission denied\r\n" +
+                 "ERR-ERR-ERR-ERR\r\n");
+    IDevice device = commands.createMockDevice();
+    Executor taskExecutor = PooledThreadExecutor.INSTANCE;
+    AdbFileListing fileListing = new AdbFileListing(device, new AdbDeviceCapabilities(device), taskExecutor);
+    AdbFileListingEntry root = waitForFuture(fileListing.getRoot());
+    List<AdbFileListingEntry> rootEntries = waitForFuture(fileListing.getChildren(root));
+    List<AdbFileListingEntry> entries = rootEntries.stream()
+      .filter(x -> x.getName().equals("charger") || x.getName().equals("etc") || x.getName().equals("system"))
+      .collect(Collectors.toList());
+
+    // Act
+    fileListing.prefetchChildrenRunAs(entries, null);
+
+    // Assert
+    assertDirectoryLink(fileListing, entries, "charger", false);
+    assertDirectoryLink(fileListing, entries, "etc", true);
+    AdbFileListingEntry etc = entries.get(1);
+    List<AdbFileListingEntry> etcEntries = waitForFuture(fileListing.getChildren(etc));
+    assertThat(etcEntries).hasSize(2);
+    assertEntry(etcEntries, "hosts", entry -> assertThat(entry.getFullPath()).isEqualTo("/etc/hosts"));
+    assertEntry(etcEntries, "permissions", entry -> assertThat(entry.isDirectory()).isTrue());
+
+    // "/system/" could not be listed in the batch, so it is listed on its own
+    AdbFileListingEntry system = entries.get(2);
+    assertThat(waitForFuture(fileListing.getChildren(system))).hasSize(14);
+  }
+
+  @Test
+  public void test_Nexus7Api23_PrefetchedChildrenAreInvalidated() throws Exception {
+    // Prepare
+    TestShellCommands commands = new TestShellCommands();
+    TestDevices.addNexus7Api23Commands(commands);
+    commands.add("for f in /system/; do echo LS-LS-LS-LS; ls -l \"$f\" || echo ERR-ERR-ERR-ERR; done",
+                 "LS-LS-LS-LS\r\n" +
+                 "drwxr-xr-x root     root              2016-05-17 12:04 app\r\n");
+    IDevice device = commands.createMockDevice();
+    Executor taskExecutor = PooledThreadExecutor.INSTANCE;
+    AdbFileListing fileListing = new AdbFileListing(device, new AdbDeviceCapabilities(device), taskExecutor);
+    AdbFileListingEntry root = waitForFuture(fileListing.getRoot());
+    List<AdbFileListingEntry> rootEntries = waitForFuture(fileListing.getChildren(root));
+    List<AdbFileListingEntry> entries = rootEntries.stream().filter(x -> x.getName().equals("system")).collect(Collectors.toList());
+
+    // Act
+    fileListing.prefetchChildrenRunAs(entries, null);
+    fileListing.invalidate("/system");
+
+    // Assert
+    assertThat(waitForFuture(fileListing.getChildren(entries.get(0)))).hasSize(14);
+  }
+
+  @Test
+  public void test_Nexus7Api23_PrefetchedChildrenOfModifiedEntryAreNotUsed() throws Exception {
+    // Prepare
+    TestShellCommands commands = new TestShellCommands();
+    TestDevices.addNexus7Api23Commands(commands);
+    commands.add("for f in /system/; do echo LS-LS-LS-LS; ls -l \"$f\" || echo ERR-ERR-ERR-ERR; done",
+                 "LS-LS-LS-LS\r\n" +
+                 "drwxr-xr-x root     root              2016-05-17 12:04 app\r\n");
+    IDevice device = commands.createMockDevice();
+    Executor taskExecutor = PooledThreadExecutor.INSTANCE;
+    AdbFileListing fileListing = new AdbFileListing(device, new AdbDeviceCapabilities(device), taskExecutor);
+    AdbFileListingEntry root = waitForFuture(fileListing.getRoot());
+    List<AdbFileListingEntry> rootEntries = waitForFuture(fileListing.getChildren(root));
+    List<AdbFileListingEntry> entries = rootEntries.stream().filter(x -> x.getName().equals("system")).collect(Collectors.toList());
+
+    // Act
+    fileListing.prefetchChildrenRunAs(entries, null);
+    // The parent directory was listed again, and the entry was modified in the meantime
+    AdbFileListingEntry modified = new AdbFileListingEntryBuilder(entries.get(0)).setDate("2017-01-01").build();
+
+    // Assert
+    assertThat(waitForFuture(fileListing.getChildren(modified))).hasSize(14);
+  }
+
+  @Test
+  public void test_Nexus7Api23_PrefetchedChildrenExpire() throws Exception {
+    // Prepare
+    TestShellCommands commands = new TestShellCommands();
+    TestDevices.addNexus7Api23Commands(commands);
+    commands.add("for f in /system/; do echo LS-LS-LS-LS; ls -l \"$f\" || echo ERR-ERR-ERR-ERR; done",
+                 "LS-LS-LS-LS\r\n" +
+                 "drwxr-xr-x root     root              2016-05-17 12:04 app\r\n");
+    IDevice device = commands.createMockDevice();
+    Executor taskExecutor = PooledThreadExecutor.INSTANCE;
+    AdbFileListing fileListing = new AdbFileListing(device, new AdbDeviceCapabilities(device), taskExecutor);
+    AdbFileListingEntry root = waitForFuture(fileListing.getRoot());
+    List<AdbFileListingEntry> rootEntries = waitForFuture(fileListing.getChildren(root));
+    List<AdbFileListingEntry> entries = rootEntries.stream().filter(x -> x.getName().equals("system")).collect(Collectors.toList());
+
+    // Act
+    fileListing.setPrefetchTimeToLiveMillis(0);
+    fileListing.prefetchChildrenRunAs(entries, null);
+
+    // Assert
+    assertThat(waitForFuture(fileListing.getChildren(entries.get(0)))).hasSize(14);
+  }
+
   @Test
   public void test_EmulatorApi25_GetRoot() throws Exception {
     // Prepare
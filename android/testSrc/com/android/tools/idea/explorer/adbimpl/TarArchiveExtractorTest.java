@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.explorer.adbimpl;
+
+import com.android.tools.idea.explorer.fs.DirectoryTransferResult;
+import com.android.tools.idea.explorer.fs.FileTransferProgress;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class TarArchiveExtractorTest {
+  @Rule
+  public TemporaryFolder myFolder = new TemporaryFolder();
+
+  private long myReportedBytes;
+  private DirectoryTransferResult myResult;
+
+  @Test
+  public void testExtractFilesAndDirectories() throws Exception {
+    // Prepare
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    addEntry(archive, "./", '5', "");
+    addEntry(archive, "./foo.txt", '0', "Hello");
+    addEntry(archive, "./bar/", '5', "");
+    addEntry(archive, "./bar/blah.txt", '0', repeat('x', 1000));
+    archive.write(new byte[1024]);
+
+    // Act
+    Path directory = extract(archive);
+
+    // Assert
+    assertThat(new String(Files.readAllBytes(directory.resolve("foo.txt")), StandardCharsets.UTF_8)).isEqualTo("Hello");
+    assertThat(Files.isDirectory(directory.resolve("bar"))).isTrue();
+    assertThat(Files.size(directory.resolve("bar").resolve("blah.txt"))).isEqualTo(1000);
+    assertThat(myReportedBytes).isEqualTo(1005);
+    // The destination directory itself is not counted
+    assertThat(myResult.getFileCount()).isEqualTo(2);
+    assertThat(myResult.getDirectoryCount()).isEqualTo(1);
+    assertThat(myResult.getByteCount()).isEqualTo(1005);
+  }
+
+  @Test
+  public void testExtractHardLinks() throws Exception {
+    // Prepare
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    addEntry(archive, "./foo.txt", '0', "Hello");
+    addEntry(archive, "./bar/foo.txt", '1', "", "./foo.txt");
+
+    // Act
+    Path directory = extract(archive);
+
+    // Assert
+    assertThat(new String(Files.readAllBytes(directory.resolve("bar").resolve("foo.txt")), StandardCharsets.UTF_8)).isEqualTo("Hello");
+    assertThat(myReportedBytes).isEqualTo(10);
+    assertThat(myResult.getFileCount()).isEqualTo(2);
+    assertThat(myResult.getDirectoryCount()).isEqualTo(0);
+  }
+
+  @Test(expected = IOException.class)
+  public void testSymbolicLinksAreRejected() throws Exception {
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    addEntry(archive, "./foo.txt", '0', "Hello");
+    addEntry(archive, "./link", '2', "", "./foo.txt");
+    extract(archive);
+  }
+
+  @Test(expected = IOException.class)
+  public void testHardLinksOutsideOfDirectoryAreRejected() throws Exception {
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    addEntry(archive, "./link", '1', "", "../foo.txt");
+    extract(archive);
+  }
+
+  @Test
+  public void testExtractLongNames() throws Exception {
+    // Prepare
+    String longName = "./" + repeat('a', 150) + "/" + repeat('b', 150) + ".txt";
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    addEntry(archive, "././@LongLink", 'L', longName + "\0");
+    addEntry(archive, longName.substring(0, 100), '0', "Long");
+    String paxName = "./" + repeat('c', 120) + ".txt";
+    String paxRecord = "path=" + paxName + "\n";
+    String paxRecords = (paxRecord.length() + 4) + " " + paxRecord;
+    addEntry(archive, "./PaxHeaders/c", 'x', paxRecords);
+    addEntry(archive, paxName.substring(0, 100), '0', "Pax");
+
+    // Act
+    Path directory = extract(archive);
+
+    // Assert
+    assertThat(new String(Files.readAllBytes(directory.resolve(longName)), StandardCharsets.UTF_8)).isEqualTo("Long");
+    assertThat(new String(Files.readAllBytes(directory.resolve(paxName)), StandardCharsets.UTF_8)).isEqualTo("Pax");
+  }
+
+  @Test(expected = IOException.class)
+  public void testEntriesOutsideOfDirectoryAreRejected() throws Exception {
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    addEntry(archive, "../foo.txt", '0', "Hello");
+    extract(archive);
+  }
+
+  @NotNull
+  private Path extract(@NotNull ByteArrayOutputStream archive) throws IOException {
+    Path archivePath = myFolder.newFile("archive.tar").toPath();
+    Files.write(archivePath, archive.toByteArray());
+    Path directory = myFolder.getRoot().toPath().resolve("extracted");
+    myResult = TarArchiveExtractor.extract(archivePath, directory, new FileTransferProgress() {
+      @Override
+      public void progress(long currentBytes, long totalBytes) {
+        assertThat(currentBytes).isAtLeast(myReportedBytes);
+        myReportedBytes = currentBytes;
+      }
+
+      @Override
+      public boolean isCancelled() {
+        return false;
+      }
+    });
+    return directory;
+  }
+
+  private static void addEntry(@NotNull ByteArrayOutputStream archive, @NotNull String name, char type, @NotNull String contents)
+    throws IOException {
+    addEntry(archive, name, type, contents, "");
+  }
+
+  private static void addEntry(@NotNull ByteArrayOutputStream archive,
+                               @NotNull String name,
+                               char type,
+                               @NotNull String contents,
+                               @NotNull String linkName) throws IOException {
+    byte[] data = contents.getBytes(StandardCharsets.UTF_8);
+    byte[] header = new byte[512];
+    put(header, 0, name);
+    put(header, 100, "0000644");
+    put(header, 124, String.format("%011o", data.length));
+    put(header, 136, String.format("%011o", 0));
+    header[156] = (byte)type;
+    put(header, 157, linkName);
+    put(header, 257, "ustar");
+    put(header, 263, "00");
+    archive.write(header);
+    archive.write(data);
+    archive.write(new byte[(512 - data.length % 512) % 512]);
+  }
+
+  private static void put(@NotNull byte[] header, int offset, @NotNull String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    System.arraycopy(bytes, 0, header, offset, bytes.length);
+  }
+
+  @NotNull
+  private static String repeat(char c, int count) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      sb.append(c);
+    }
+    return sb.toString();
+  }
+}
@@ -20,6 +20,7 @@ import com.android.tools.idea.explorer.adbimpl.AdbPathUtil;
 import com.android.tools.idea.explorer.adbimpl.AdbShellCommandException;
 import com.android.tools.idea.explorer.fs.DeviceFileEntry;
 import com.android.tools.idea.explorer.fs.DeviceFileSystem;
+import com.android.tools.idea.explorer.fs.DirectoryTransferResult;
 import com.android.tools.idea.explorer.fs.FileTransferProgress;
 import com.google.common.util.concurrent.ListenableFuture;
 import org.jetbrains.annotations.NotNull;
@@ -185,6 +186,15 @@ public class MockDeviceFileEntry implements DeviceFileEntry {
     return myFileSystem.downloadFile(this, localPath, progress);
   }
 
+  @NotNull
+  @Override
+  public ListenableFuture<DirectoryTransferResult> downloadDirectory(@NotNull Path localPath, @NotNull FileTransferProgress progress) {
+    if (!myFileSystem.isDirectoryDownloadSupported()) {
+      return DeviceFileEntry.super.downloadDirectory(localPath, progress);
+    }
+    return myFileSystem.downloadDirectory(this, localPath, progress);
+  }
+
   @NotNull
   @Override
   public ListenableFuture<Void> uploadFile(@NotNull Path localPath, @NotNull String fileName, @NotNull FileTransferProgress progress) {
@@ -20,6 +20,7 @@ import com.android.tools.idea.explorer.adbimpl.AdbShellCommandException;
 import com.android.tools.idea.explorer.fs.DeviceFileEntry;
 import com.android.tools.idea.explorer.fs.DeviceFileSystem;
 import com.android.tools.idea.explorer.fs.DeviceState;
+import com.android.tools.idea.explorer.fs.DirectoryTransferResult;
 import com.android.tools.idea.explorer.fs.FileTransferProgress;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
@@ -47,6 +48,7 @@ public class MockDeviceFileSystem implements DeviceFileSystem {
   private Throwable myDownloadError;
   private Throwable myRootDirectoryError;
   private Throwable myUploadError;
+  private boolean myDirectoryDownloadSupported;
 
   public MockDeviceFileSystem(@NotNull MockDeviceFileSystemService service, @NotNull String name) {
     myService = service;
@@ -101,6 +103,43 @@ public class MockDeviceFileSystem implements DeviceFileSystem {
     return new DownloadWorker((MockDeviceFileEntry)entry, localPath, progress).myFutureResult;
   }
 
+  @NotNull
+  public ListenableFuture<DirectoryTransferResult> downloadDirectory(@NotNull MockDeviceFileEntry entry,
+                                                                     @NotNull Path localPath,
+                                                                     @NotNull FileTransferProgress progress) {
+    if (myDownloadError != null) {
+      return FutureUtils.delayedError(myDownloadError, MockDeviceFileSystemService.OPERATION_TIMEOUT_MILLIS);
+    }
+    return FutureUtils.delayedOperation(() -> {
+      DirectoryTransferResult result = writeDirectory(entry, localPath);
+      progress.progress(result.getByteCount(), result.getByteCount());
+      return result;
+    }, MockDeviceFileSystemService.OPERATION_TIMEOUT_MILLIS);
+  }
+
+  @NotNull
+  private static DirectoryTransferResult writeDirectory(@NotNull MockDeviceFileEntry entry, @NotNull Path localPath) throws IOException {
+    Files.createDirectories(localPath);
+    int fileCount = 0;
+    int directoryCount = 0;
+    long byteCount = 0;
+    for (MockDeviceFileEntry child : entry.getMockEntries()) {
+      Path childPath = localPath.resolve(child.getName());
+      if (child.isDirectory()) {
+        DirectoryTransferResult result = writeDirectory(child, childPath);
+        fileCount += result.getFileCount();
+        directoryCount += result.getDirectoryCount() + 1;
+        byteCount += result.getByteCount();
+      }
+      else {
+        Files.write(childPath, new byte[(int)child.getSize()]);
+        fileCount++;
+        byteCount += child.getSize();
+      }
+    }
+    return new DirectoryTransferResult(fileCount, directoryCount, byteCount);
+  }
+
   @NotNull
   public ListenableFuture<Void> uploadFile(@NotNull Path localFilePath,
                                            @NotNull DeviceFileEntry remoteDirectory,
@@ -141,6 +180,14 @@ public class MockDeviceFileSystem implements DeviceFileSystem {
     myUploadError = t;
   }
 
+  public boolean isDirectoryDownloadSupported() {
+    return myDirectoryDownloadSupported;
+  }
+
+  public void setDirectoryDownloadSupported(boolean supported) {
+    myDirectoryDownloadSupported = supported;
+  }
+
   public class DownloadWorker implements Disposable {
     @NotNull private final MockDeviceFileEntry myEntry;
     @NotNull private final Path myPath;
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.gradle.dsl.model;
+
+import com.android.tools.idea.flags.StudioFlags;
+import com.google.common.collect.ImmutableList;
+import com.intellij.openapi.application.WriteAction;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+
+import static com.intellij.openapi.vfs.VfsUtil.findFileByIoFile;
+
+/**
+ * Tests for {@link GradleBuildModelCache}.
+ */
+public class GradleBuildModelCacheTest extends GradleFileModelTestCase {
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    StudioFlags.GRADLE_DSL_MODEL_CACHE_ENABLED.override(true);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      StudioFlags.GRADLE_DSL_MODEL_CACHE_ENABLED.clearOverride();
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testEachCallerGetsItsOwnModel() throws Exception {
+    writeToBuildFile("apply plugin: 'com.android.application'");
+
+    GradleBuildModelCache cache = GradleBuildModelCache.getInstance(myProject);
+    cache.parse(new Module[]{myModule});
+    VirtualFile buildFile = findFileByIoFile(myBuildFile, false);
+    assertNotNull(buildFile);
+    assertTrue(cache.isCached(buildFile));
+
+    // The model parsed ahead of time is handed out once
+    GradleBuildModel buildModel = getGradleBuildModel();
+    assertFalse(cache.isCached(buildFile));
+    GradleBuildModel otherBuildModel = getGradleBuildModel();
+    assertNotSame(buildModel, otherBuildModel);
+
+    // Changes to one model are not seen by the other callers
+    buildModel.applyPlugin("com.android.library");
+    assertEquals("apply", ImmutableList.of("com.android.application"), otherBuildModel.appliedPlugins());
+
+    applyChanges(buildModel);
+    assertEquals("apply", ImmutableList.of("com.android.application", "com.android.library"), getGradleBuildModel().appliedPlugins());
+  }
+
+  public void testModelIsParsedAgainWhenBuildFileIsModified() throws Exception {
+    writeToBuildFile("apply plugin: 'com.android.application'");
+
+    GradleBuildModelCache cache = GradleBuildModelCache.getInstance(myProject);
+    cache.parse(new Module[]{myModule});
+    VirtualFile buildFile = findFileByIoFile(myBuildFile, false);
+    assertNotNull(buildFile);
+    assertTrue(cache.isCached(buildFile));
+
+    modifyFile(myBuildFile, "apply plugin: 'com.android.library'");
+    assertFalse(cache.isCached(buildFile));
+    assertEquals("apply", ImmutableList.of("com.android.library"), getGradleBuildModel().appliedPlugins());
+  }
+
+  public void testModelIsParsedAgainWhenParentBuildFileIsModified() throws Exception {
+    writeToSettingsFile("include ':" + SUB_MODULE_NAME + "'");
+    writeToBuildFile("subprojects { apply plugin: 'com.android.application' }");
+    writeToSubModuleBuildFile("");
+
+    VirtualFile subModuleBuildFile = parseSubModule();
+    modifyFile(myBuildFile, "subprojects { apply plugin: 'com.android.library' }");
+    assertFalse(GradleBuildModelCache.getInstance(myProject).isCached(subModuleBuildFile));
+    assertEquals("apply", ImmutableList.of("com.android.library"), getSubModuleGradleBuildModel().appliedPlugins());
+  }
+
+  public void testModelIsParsedAgainWhenPropertiesFileIsModified() throws Exception {
+    writeToSubModuleBuildFile("apply plugin: 'com.android.library'");
+    writeToSubModulePropertiesFile("foo=bar");
+
+    VirtualFile subModuleBuildFile = parseSubModule();
+    modifyFile(mySubModulePropertiesFile, "foo=baz");
+    assertFalse(GradleBuildModelCache.getInstance(myProject).isCached(subModuleBuildFile));
+  }
+
+  public void testModelIsParsedAgainWhenSettingsFileIsModified() throws Exception {
+    writeToSettingsFile("");
+    writeToSubModuleBuildFile("apply plugin: 'com.android.library'");
+
+    VirtualFile subModuleBuildFile = parseSubModule();
+    modifyFile(mySettingsFile, "include ':" + SUB_MODULE_NAME + "'");
+    assertFalse(GradleBuildModelCache.getInstance(myProject).isCached(subModuleBuildFile));
+  }
+
+  public void testParseModules() throws Exception {
+    writeToBuildFile("apply plugin: 'com.android.application'");
+    writeToSubModuleBuildFile("apply plugin: 'com.android.library'");
+
+    GradleBuildModelCache cache = GradleBuildModelCache.getInstance(myProject);
+    cache.parse(new Module[]{myModule, mySubModule});
+
+    VirtualFile buildFile = findFileByIoFile(myBuildFile, false);
+    VirtualFile subModuleBuildFile = findFileByIoFile(mySubModuleBuildFile, false);
+    assertNotNull(buildFile);
+    assertNotNull(subModuleBuildFile);
+    assertTrue(cache.isCached(buildFile));
+    assertTrue(cache.isCached(subModuleBuildFile));
+    assertEquals("apply", ImmutableList.of("com.android.library"), getSubModuleGradleBuildModel().appliedPlugins());
+  }
+
+  public void testClearPrefetched() throws Exception {
+    writeToBuildFile("apply plugin: 'com.android.application'");
+
+    GradleBuildModelCache cache = GradleBuildModelCache.getInstance(myProject);
+    cache.parse(new Module[]{myModule});
+    VirtualFile buildFile = findFileByIoFile(myBuildFile, false);
+    assertNotNull(buildFile);
+    assertTrue(cache.isCached(buildFile));
+
+    cache.clearPrefetched();
+    assertFalse(cache.isCached(buildFile));
+  }
+
+  public void testReadersShareModel() throws Exception {
+    writeToBuildFile("apply plugin: 'com.android.application'");
+
+    GradleBuildModel buildModel = GradleBuildModel.read(myModule, model -> model);
+    assertSame(buildModel, GradleBuildModel.read(myModule, model -> model));
+    assertEquals("apply", ImmutableList.of("com.android.application"), GradleBuildModel.read(myModule, GradleBuildModel::appliedPlugins));
+
+    // Reading does not hand out the model parsed ahead of time, nor the other way around
+    GradleBuildModelCache cache = GradleBuildModelCache.getInstance(myProject);
+    cache.parse(new Module[]{myModule});
+    VirtualFile buildFile = findFileByIoFile(myBuildFile, false);
+    assertNotNull(buildFile);
+    assertSame(buildModel, GradleBuildModel.read(myModule, model -> model));
+    assertTrue(cache.isCached(buildFile));
+    assertNotSame(buildModel, getGradleBuildModel());
+  }
+
+  public void testSharedModelIsParsedAgainWhenBuildFileIsModified() throws Exception {
+    writeToSettingsFile("include ':" + SUB_MODULE_NAME + "'");
+    writeToBuildFile("apply plugin: 'com.android.application'");
+    writeToSubModuleBuildFile("apply plugin: 'com.android.library'");
+
+    GradleBuildModel buildModel = GradleBuildModel.read(myModule, model -> model);
+    GradleBuildModel subModuleBuildModel = GradleBuildModel.read(mySubModule, model -> model);
+
+    modifyFile(mySubModuleBuildFile, "apply plugin: 'java'");
+
+    // Only the models that depend on the modified file are parsed again
+    assertSame(buildModel, GradleBuildModel.read(myModule, model -> model));
+    assertNotSame(subModuleBuildModel, GradleBuildModel.read(mySubModule, model -> model));
+    assertEquals("apply", ImmutableList.of("java"), GradleBuildModel.read(mySubModule, GradleBuildModel::appliedPlugins));
+  }
+
+  @NotNull
+  private VirtualFile parseSubModule() {
+    GradleBuildModelCache cache = GradleBuildModelCache.getInstance(myProject);
+    cache.parse(new Module[]{mySubModule});
+    VirtualFile subModuleBuildFile = findFileByIoFile(mySubModuleBuildFile, true);
+    assertNotNull(subModuleBuildFile);
+    assertTrue(cache.isCached(subModuleBuildFile));
+    return subModuleBuildFile;
+  }
+
+  private static void modifyFile(@NotNull File file, @NotNull String text) throws IOException {
+    VirtualFile virtualFile = findFileByIoFile(file, true);
+    assertNotNull(virtualFile);
+    WriteAction.run(() -> VfsUtil.saveText(virtualFile, text));
+  }
+}
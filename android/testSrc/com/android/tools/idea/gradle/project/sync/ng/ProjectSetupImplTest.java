@@ -24,6 +24,7 @@ import com.intellij.openapi.project.Project;
 import com.intellij.testFramework.IdeaTestCase;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 
 import static org.mockito.Mockito.*;
@@ -58,7 +59,10 @@ public class ProjectSetupImplTest extends IdeaTestCase {
 
   public void testSetUpProject() {
     myProjectSetup.setUpProject(myModels, myIndicator);
-    verify(myModuleSetup).setUpModules(myModels, myIndicator);
+
+    InOrder inOrder = inOrder(myModuleSetup);
+    inOrder.verify(myModuleSetup).convertModels(myModels, myIndicator);
+    inOrder.verify(myModuleSetup).setUpModules(myModels, myIndicator);
   }
 
   public void testSetUpProjectWitError() {
@@ -89,6 +89,17 @@ public class AndroidLogFilterModelTest {
     assertThat(result.isApplicable()).isFalse();
   }
 
+  @Test
+  public void configuredFilterMatchesTagsWithSpacesOfParsedLines() throws Exception {
+    PersistentAndroidLogFilters.FilterData filterData = new PersistentAndroidLogFilters.FilterData();
+    filterData.setLogTagPattern("^Dummy Tag$");
+    myFilterModel.updateLogcatFilter(DefaultAndroidLogcatFilter.compile(filterData, "(Unused Name)"));
+
+    // The line of a message that is not remembered anymore is parsed back, with the spaces of its tag formatted as "no break" spaces
+    LogFilterModel.MyProcessingResult result = myFilterModel.processLine("01-23 12:34:56.789 1234-5678/? I/Dummy\u00A0Tag: Dummy Message");
+    assertThat(result.isApplicable()).isTrue();
+  }
+
   @Test
   public void customPatternRejectsLinesThatDontMatch() throws Exception {
     myFilterModel.updateCustomPattern(Pattern.compile("^.+/DummyTag: Dummy Message$"));
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.Log;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.ddmlib.logcat.LogCatTimestamp;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class FormattedLogcatLinesTest {
+  private final FormattedLogcatLines myLines = new FormattedLogcatLines();
+
+  @Test
+  public void formattedLinesAreNotParsedAgain() {
+    List<String> formatted = new ArrayList<>();
+    FormattedLogcatReceiver receiver = new FormattedLogcatReceiver(myLines) {
+      @Override
+      protected void receiveFormattedLogLine(@NotNull String line) {
+        formatted.add(line);
+      }
+    };
+    LogCatHeader header =
+      new LogCatHeader(Log.LogLevel.WARN, 1493, 1595, "dummy.client.name", "Dummy Tag", LogCatTimestamp.fromString("08-18 16:39:11.439"));
+    LogCatMessage first = new LogCatMessage(header, "Line1");
+    receiver.onLogLineReceived(first);
+    receiver.onLogLineReceived(new LogCatMessage(header, "Line2"));
+
+    assertThat(formatted).hasSize(2);
+    assertThat(myLines.getMessage(formatted.get(0))).isSameAs(first);
+    // Continuation lines are not logcat messages on their own
+    assertThat(myLines.getMessage(formatted.get(1))).isNull();
+  }
+
+  @Test
+  public void parsedLinesHaveTheTagsOfRememberedLines() {
+    List<String> formatted = new ArrayList<>();
+    FormattedLogcatReceiver receiver = new FormattedLogcatReceiver(myLines) {
+      @Override
+      protected void receiveFormattedLogLine(@NotNull String line) {
+        formatted.add(line);
+      }
+    };
+    LogCatHeader header =
+      new LogCatHeader(Log.LogLevel.WARN, 1493, 1595, "dummy.client.name", "Dummy Tag", LogCatTimestamp.fromString("08-18 16:39:11.439"));
+    receiver.onLogLineReceived(new LogCatMessage(header, "Line1"));
+
+    // Lines that are not remembered anymore are parsed again
+    LogCatMessage parsed = new FormattedLogcatLines().getMessage(formatted.get(0));
+    assertThat(parsed).isNotNull();
+    assertThat(parsed.getHeader().getTag()).isEqualTo(myLines.getMessage(formatted.get(0)).getHeader().getTag());
+  }
+
+  @Test
+  public void otherLinesAreParsed() {
+    LogCatMessage message = myLines.getMessage("01-23 12:34:56.789 1234-5678/? I/DummyTag: Dummy Message");
+    assertThat(message).isNotNull();
+    assertThat(message.getHeader().getTag()).isEqualTo("DummyTag");
+    assertThat(message.getMessage()).isEqualTo("Dummy Message");
+
+    assertThat(myLines.getMessage("--- INVALID LINE ---")).isNull();
+  }
+}
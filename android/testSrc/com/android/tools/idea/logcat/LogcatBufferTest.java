@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.Log;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.ddmlib.logcat.LogCatTimestamp;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class LogcatBufferTest {
+  private static final LogCatTimestamp TIMESTAMP = LogCatTimestamp.fromString("08-18 16:39:11.439");
+
+  @Test
+  public void keepsMessagesInOrder() {
+    LogcatBuffer buffer = new LogcatBuffer(Integer.MAX_VALUE);
+    addMessage(buffer, Log.LogLevel.WARN, 1493, "First", "com.first", "Line1", "Line2");
+    addMessage(buffer, Log.LogLevel.INFO, 1494, "Second", "com.second", "Line1");
+
+    List<LogCatMessage> messages = buffer.getMessages();
+    assertEquals(Arrays.asList("08-18 16:39:11.439: W/First(1493): Line1",
+                               "08-18 16:39:11.439: W/First(1493): Line2",
+                               "08-18 16:39:11.439: I/Second(1494): Line1"), toStrings(messages));
+    // Lines of the same message still share their header
+    assertSame(messages.get(0).getHeader(), messages.get(1).getHeader());
+  }
+
+  @Test
+  public void dropsOldestLinesOverBufferSize() {
+    LogcatBuffer buffer = new LogcatBuffer(10);
+    addMessage(buffer, Log.LogLevel.WARN, 1493, "First", "com.first", "Line1", "Line2");
+    addMessage(buffer, Log.LogLevel.INFO, 1494, "Second", "com.second", "Line3");
+
+    assertEquals(Arrays.asList("08-18 16:39:11.439: W/First(1493): Line2",
+                               "08-18 16:39:11.439: I/Second(1494): Line3"), toStrings(buffer.getMessages()));
+  }
+
+  @Test
+  public void growsAndWrapsAround() {
+    LogcatBuffer buffer = new LogcatBuffer(5000 * 4);
+    for (int i = 0; i < 10000; i++) {
+      Log.LogLevel level = i % 2 == 0 ? Log.LogLevel.DEBUG : Log.LogLevel.ERROR;
+      addMessage(buffer, level, 1000 + i % 3, "Tag" + i % 5, "com.app", String.format("%04d", i));
+    }
+    assertEquals(5000, buffer.size());
+
+    List<LogCatMessage> errors =
+      buffer.getMessages(new DefaultAndroidLogcatFilter.Builder("errors").setLogLevel(Log.LogLevel.ERROR).build());
+    assertEquals(2500, errors.size());
+    assertEquals("5001", errors.get(0).getMessage());
+    assertEquals("9999", errors.get(errors.size() - 1).getMessage());
+  }
+
+  @Test
+  public void filtersByHeaderAndMessage() {
+    LogcatBuffer buffer = new LogcatBuffer(Integer.MAX_VALUE);
+    addMessage(buffer, Log.LogLevel.WARN, 1493, "First", "com.first", "Line1", "Line2");
+    addMessage(buffer, Log.LogLevel.INFO, 1494, "Second", "com.second", "Line1");
+    addMessage(buffer, Log.LogLevel.ERROR, 1493, "Third", "com.first", "Line1");
+
+    assertEquals(Arrays.asList("08-18 16:39:11.439: W/First(1493): Line1",
+                               "08-18 16:39:11.439: W/First(1493): Line2",
+                               "08-18 16:39:11.439: E/Third(1493): Line1"),
+                 toStrings(buffer.getMessages(new DefaultAndroidLogcatFilter.Builder("pid").setPid(1493).build())));
+
+    assertEquals(Arrays.asList("08-18 16:39:11.439: I/Second(1494): Line1",
+                               "08-18 16:39:11.439: E/Third(1493): Line1"),
+                 toStrings(buffer.getMessages(new DefaultAndroidLogcatFilter.Builder("tag")
+                                                .setTagPattern(Pattern.compile("d$"))
+                                                .build())));
+
+    // A message is accepted as a whole when one of its lines matches
+    assertEquals(Arrays.asList("08-18 16:39:11.439: W/First(1493): Line1",
+                               "08-18 16:39:11.439: W/First(1493): Line2"),
+                 toStrings(buffer.getMessages(new DefaultAndroidLogcatFilter.Builder("message")
+                                                .setMessagePattern(Pattern.compile("Line2"))
+                                                .setPackagePattern(Pattern.compile("first"))
+                                                .build())));
+
+    assertEquals(0, buffer.getMessages(new DefaultAndroidLogcatFilter.Builder("none").setPid(1).build()).size());
+  }
+
+  @Test
+  public void filtersWithOtherFilters() {
+    LogcatBuffer buffer = new LogcatBuffer(Integer.MAX_VALUE);
+    addMessage(buffer, Log.LogLevel.WARN, 1493, "First", "com.first", "Line1", "Line2");
+    addMessage(buffer, Log.LogLevel.INFO, 1494, "Second", "com.second", "Line1");
+
+    AndroidLogcatFilter filter = new AndroidLogcatFilter() {
+      @NotNull
+      @Override
+      public String getName() {
+        return "other";
+      }
+
+      @Override
+      public boolean isApplicable(@NotNull String message, @NotNull String tag, @NotNull String pkg, int pid, @NotNull Log.LogLevel level) {
+        return level == Log.LogLevel.INFO;
+      }
+    };
+    assertEquals(Arrays.asList("08-18 16:39:11.439: I/Second(1494): Line1"), toStrings(buffer.getMessages(filter)));
+  }
+
+  private static void addMessage(@NotNull LogcatBuffer buffer,
+                                 @NotNull Log.LogLevel level,
+                                 int pid,
+                                 @NotNull String tag,
+                                 @NotNull String appName,
+                                 @NotNull String... lines) {
+    LogCatHeader header = new LogCatHeader(level, pid, 1595, appName, tag, TIMESTAMP);
+    for (String line : lines) {
+      buffer.addMessage(new LogCatMessage(header, line));
+    }
+  }
+
+  @NotNull
+  private static List<String> toStrings(@NotNull List<LogCatMessage> messages) {
+    List<String> strings = new ArrayList<>();
+    for (LogCatMessage message : messages) {
+      strings.add(message.toString());
+    }
+    return strings;
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.Log;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.ddmlib.logcat.LogCatTimestamp;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LogcatHistoryTest {
+  private static final LogCatTimestamp TIMESTAMP = LogCatTimestamp.fromString("08-18 16:39:11.439");
+
+  private final ListeningExecutorService myExecutor = MoreExecutors.newDirectExecutorService();
+  private File myRoot;
+  private LogcatHistory myHistory;
+
+  @Before
+  public void setUp() throws IOException {
+    myRoot = Files.createTempDirectory("logcat").toFile();
+    myHistory = LogcatHistory.create(myRoot, "emulator-5554", myExecutor);
+  }
+
+  @Test
+  public void readsSegmentsBack() throws Exception {
+    // One full segment, and one multi-line message in the segment being appended to
+    for (int i = 0; i < LogcatHistory.SEGMENT_LINES; i++) {
+      add(Log.LogLevel.INFO, 1000, "Tag", i, "Line" + i);
+    }
+    add(Log.LogLevel.WARN, 1001, "Other Tag", LogcatHistory.SEGMENT_LINES, "First", "Second");
+
+    assertEquals(2, myHistory.getSegmentCount());
+    List<LogCatMessage> full = myHistory.readSegment(0).get();
+    assertEquals(LogcatHistory.SEGMENT_LINES, full.size());
+    assertEquals("08-18 16:39:11.439: I/Tag(1000): Line0", full.get(0).toString());
+    List<LogCatMessage> last = myHistory.readSegment(1).get();
+    assertEquals(2, last.size());
+
+    // A session opened later sees the written segments, with the lines of a message sharing their header
+    myHistory.flush().get();
+    LogcatHistory reopened = LogcatHistory.open(myHistory.getDirectory(), myExecutor);
+    assertEquals(3, reopened.getSegmentCount());
+    last = reopened.readSegment(1).get();
+    assertEquals("08-18 16:39:11.439: W/Other Tag(1001): First", last.get(0).toString());
+    assertEquals("08-18 16:39:11.439: W/Other Tag(1001): Second", last.get(1).toString());
+    assertSame(last.get(0).getHeader(), last.get(1).getHeader());
+  }
+
+  @Test
+  public void readsMessageSplitAcrossSegments() throws Exception {
+    for (int i = 0; i < LogcatHistory.SEGMENT_LINES - 1; i++) {
+      add(Log.LogLevel.INFO, 1000, "Tag", i, "Line" + i);
+    }
+    // The first line of the message ends the first segment and the second one starts the next segment
+    add(Log.LogLevel.WARN, 1001, "Other Tag", LogcatHistory.SEGMENT_LINES, "First", "Second");
+    myHistory.flush().get();
+
+    LogcatHistory reopened = LogcatHistory.open(myHistory.getDirectory(), myExecutor);
+    List<LogCatMessage> first = reopened.readSegment(0).get();
+    assertEquals("08-18 16:39:11.439: W/Other Tag(1001): First", first.get(first.size() - 1).toString());
+    List<LogCatMessage> second = reopened.readSegment(1).get();
+    assertEquals(1, second.size());
+    assertEquals("08-18 16:39:11.439: W/Other Tag(1001): Second", second.get(0).toString());
+  }
+
+  @Test
+  public void resumeSkipsLinesSentAgain() throws Exception {
+    add(Log.LogLevel.INFO, 1000, "Tag", 0, "First", "Second");
+    myHistory.resume();
+    add(Log.LogLevel.INFO, 1000, "Tag", 1, "First", "Second");
+    LogCatTimestamp laterTimestamp = LogCatTimestamp.fromString("08-18 16:39:12.000");
+    LogCatHeader later = new LogCatHeader(Log.LogLevel.INFO, 1000, 1595, "com.app", "Tag", laterTimestamp);
+    myHistory.add(new LogCatMessage(later, "Third"), 2);
+    myHistory.add(new LogCatMessage(later, "Fourth"), 2);
+
+    List<LogCatMessage> messages = myHistory.readSegment(0).get();
+    assertEquals(4, messages.size());
+    assertEquals("08-18 16:39:12.000: I/Tag(1000): Third", messages.get(2).toString());
+  }
+
+  @Test
+  public void findsSegmentsByTime() throws Exception {
+    for (int i = 0; i < 3 * LogcatHistory.SEGMENT_LINES; i++) {
+      add(Log.LogLevel.INFO, 1000, "Tag", 10 * i, "Line");
+    }
+    assertEquals(0, myHistory.findSegment(0));
+    assertEquals(1, myHistory.findSegment(10 * LogcatHistory.SEGMENT_LINES + 5));
+    assertEquals(2, myHistory.findSegment(30 * LogcatHistory.SEGMENT_LINES - 10));
+    assertEquals(3, myHistory.findSegment(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void searchOnlyReadsSegmentsThatMayMatch() throws Exception {
+    for (int i = 0; i < LogcatHistory.SEGMENT_LINES; i++) {
+      add(Log.LogLevel.DEBUG, 1000, "Chatty", i, "Line" + i);
+    }
+    for (int i = 0; i < LogcatHistory.SEGMENT_LINES; i++) {
+      add(Log.LogLevel.DEBUG, 1001, i == 5 ? "Rare" : "Chatty", i, "Line" + i);
+    }
+    add(Log.LogLevel.ERROR, 1000, "Rare", 0, "Pending");
+
+    // The first segment can't match, so it is never read
+    File[] segments = myHistory.getDirectory().listFiles((dir, name) -> name.equals("segment-00000.gz"));
+    assertEquals(1, segments.length);
+    assertTrue(segments[0].delete());
+
+    AndroidLogcatFilter filter = new DefaultAndroidLogcatFilter.Builder("rare").setTagPattern(Pattern.compile("^Rare$")).build();
+    List<LogCatMessage> messages = myHistory.search(filter).get();
+    assertEquals(2, messages.size());
+    assertEquals("08-18 16:39:11.439: D/Rare(1001): Line5", messages.get(0).toString());
+    assertEquals("08-18 16:39:11.439: E/Rare(1000): Pending", messages.get(1).toString());
+  }
+
+  @Test
+  public void keepsLastSessions() throws Exception {
+    for (int i = 0; i < 12; i++) {
+      LogcatHistory history = LogcatHistory.create(myRoot, "emulator-5554", myExecutor);
+      history.add(new LogCatMessage(new LogCatHeader(Log.LogLevel.INFO, 1, 1, "app", "Tag", TIMESTAMP), "Line"));
+      history.flush().get();
+    }
+    assertEquals(10, LogcatHistory.getSessions(myRoot, "emulator-5554").size());
+  }
+
+  @Test
+  public void createsDirectoryOnExecutor() throws Exception {
+    ListeningExecutorService executor = MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor());
+    CountDownLatch release = new CountDownLatch(1);
+    executor.execute(() -> Uninterruptibles.awaitUninterruptibly(release));
+    LogcatHistory history = LogcatHistory.create(myRoot, "emulator-5556", executor);
+    LogcatHistory other = LogcatHistory.create(myRoot, "emulator-5556", executor);
+
+    // Sessions started in the same millisecond still get their own directory
+    assertNotEquals(history.getDirectory(), other.getDirectory());
+    assertFalse(history.getDirectory().exists());
+
+    release.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    assertTrue(history.getDirectory().isDirectory());
+    assertTrue(other.getDirectory().isDirectory());
+  }
+
+  private void add(@NotNull Log.LogLevel level, int pid, @NotNull String tag, long millis, @NotNull String... lines) {
+    LogCatHeader header = new LogCatHeader(level, pid, 1595, "com.app", tag, TIMESTAMP);
+    for (String line : lines) {
+      myHistory.add(new LogCatMessage(header, line), millis);
+    }
+  }
+}
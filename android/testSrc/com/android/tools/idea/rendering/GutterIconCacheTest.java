@@ -16,16 +16,27 @@
 package com.android.tools.idea.rendering;
 
 import com.android.tools.idea.io.TestFileUtils;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.android.AndroidTestCase;
+import org.jetbrains.annotations.NotNull;
 
+import javax.imageio.ImageIO;
+import javax.swing.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
 
 import static com.google.common.truth.Truth.assertThat;
 
@@ -53,14 +64,14 @@ public class GutterIconCacheTest extends AndroidTestCase {
   }
 
   public void testIsIconUpToDate_entryValid() {
-    GutterIconCache.getInstance().getIcon(mySampleSvgPath.toString(), null);
+    GutterIconCache.getInstance().getIcon(mySampleSvgPath.toString(), null, null);
 
     // If we haven't modified the image since creating an Icon, the cache entry is still valid
     assertThat(GutterIconCache.getInstance().isIconUpToDate(mySampleSvgPath.toString())).isTrue();
   }
 
   public void testIsIconUpToDate_entryInvalidUnsavedChanges() {
-    GutterIconCache.getInstance().getIcon(mySampleSvgPath.toString(), null);
+    GutterIconCache.getInstance().getIcon(mySampleSvgPath.toString(), null, null);
 
     // "Modify" Document by rewriting its contents
     Document document = FileDocumentManager.getInstance().getDocument(mySampleSvgFile);
@@ -72,7 +83,7 @@ public class GutterIconCacheTest extends AndroidTestCase {
 
   // FIXME: Disabled due to flakiness b/64485516
   public void disabled_testIconUpToDate_entryInvalidSavedChanges() {
-    GutterIconCache.getInstance().getIcon(mySampleSvgPath.toString(), null);
+    GutterIconCache.getInstance().getIcon(mySampleSvgPath.toString(), null, null);
 
     // Modify image resource by adding an empty comment and then save to disk
     Document document = FileDocumentManager.getInstance().getDocument(mySampleSvgFile);
@@ -86,7 +97,7 @@ public class GutterIconCacheTest extends AndroidTestCase {
   }
 
   public void testIconUpToDate_entryInvalidDiskChanges() throws Exception {
-    GutterIconCache.getInstance().getIcon(mySampleSvgPath.toString(), null);
+    GutterIconCache.getInstance().getIcon(mySampleSvgPath.toString(), null, null);
 
     // "Modify" file by resetting its lastModified field
     Files.setLastModifiedTime(mySampleSvgPath, FileTime.fromMillis(System.currentTimeMillis()));
@@ -95,4 +106,91 @@ public class GutterIconCacheTest extends AndroidTestCase {
     // Modifying the image should have invalidated the cache entry.
     assertThat(GutterIconCache.getInstance().isIconUpToDate(mySampleSvgPath.toString())).isFalse();
   }
+
+  public void testIsIconUpToDate_missingFile() {
+    GutterIconCache cache = new GutterIconCache(MoreExecutors.directExecutor(), null, GutterIconCache.MAX_CACHE_SIZE_BYTES,
+                                                GutterIconCache.MAX_STORE_SIZE_BYTES);
+    String path = mySampleSvgPath.resolveSibling("missing.png").toString();
+    assertThat(cache.getIcon(path, null, null)).isNull();
+
+    // A missing image is not rendered again until it is created
+    assertThat(cache.isIconUpToDate(path)).isTrue();
+  }
+
+  public void testCacheSizeIsBounded() throws Exception {
+    long maxSize = 12 * GutterIconCache.MAX_WIDTH * GutterIconCache.MAX_HEIGHT * 4;
+    GutterIconCache cache = new GutterIconCache(MoreExecutors.directExecutor(), null, maxSize, GutterIconCache.MAX_STORE_SIZE_BYTES);
+    for (int i = 0; i < 20; i++) {
+      Path path = createSamplePng("sample" + i + ".png");
+      assertThat(cache.getIcon(path.toString(), null, null)).isNotNull();
+    }
+
+    assertThat(cache.getCachedSizeBytes()).isAtMost(maxSize);
+  }
+
+  public void testThumbnailsAreStored() throws Exception {
+    File storeDirectory = FileUtil.createTempDirectory("gutter_icons", null);
+    String path = createSamplePng("stored.png").toString();
+
+    GutterIconCache cache = new GutterIconCache(MoreExecutors.directExecutor(), storeDirectory, GutterIconCache.MAX_CACHE_SIZE_BYTES,
+                                                GutterIconCache.MAX_STORE_SIZE_BYTES);
+    Icon icon = cache.getIcon(path, null, null);
+    assertThat(icon).isNotNull();
+    File[] stored = storeDirectory.listFiles();
+    assertThat(stored).hasLength(1);
+
+    // A new session reads the thumbnail from the store
+    GutterIconCache newSession = new GutterIconCache(MoreExecutors.directExecutor(), storeDirectory,
+                                                     GutterIconCache.MAX_CACHE_SIZE_BYTES, GutterIconCache.MAX_STORE_SIZE_BYTES);
+    Icon storedIcon = newSession.getIcon(path, null, null);
+    assertThat(storedIcon).isNotNull();
+    assertThat(storedIcon.getIconWidth()).isEqualTo(icon.getIconWidth());
+    assertThat(storeDirectory.listFiles()).hasLength(1);
+  }
+
+  public void testStoreSizeIsBounded() throws Exception {
+    File storeDirectory = FileUtil.createTempDirectory("gutter_icons", null);
+    long maxStoreSize = 2048;
+    GutterIconCache cache = new GutterIconCache(MoreExecutors.directExecutor(), storeDirectory, GutterIconCache.MAX_CACHE_SIZE_BYTES,
+                                                maxStoreSize);
+    for (int i = 0; i < 50; i++) {
+      cache.getIcon(createSamplePng("stored" + i + ".png").toString(), null, null);
+    }
+
+    File[] stored = storeDirectory.listFiles();
+    assertThat(stored).isNotEmpty();
+    long storeSize = 0;
+    for (File file : stored) {
+      storeSize += file.length();
+    }
+    assertThat(storeSize).isAtMost(maxStoreSize);
+  }
+
+  public void testIconIsRenderedInBackground() throws Exception {
+    List<Runnable> pending = new ArrayList<>();
+    GutterIconCache cache = new GutterIconCache(pending::add, null, GutterIconCache.MAX_CACHE_SIZE_BYTES,
+                                                GutterIconCache.MAX_STORE_SIZE_BYTES);
+    String path = createSamplePng("background.png").toString();
+
+    // A placeholder is returned until the icon has been rendered and the icon is only scheduled to render once
+    Icon placeholder = cache.getIcon(path, null, null);
+    assertThat(placeholder).isNotNull();
+    assertThat(cache.getIcon(path, null, null)).isSameAs(placeholder);
+    assertThat(pending).hasSize(1);
+
+    pending.get(0).run();
+    assertThat(cache.isIconUpToDate(path)).isTrue();
+    assertThat(cache.getIcon(path, null, null)).isNotSameAs(placeholder);
+  }
+
+  @NotNull
+  private Path createSamplePng(@NotNull String name) throws IOException {
+    Path path = mySampleSvgPath.resolveSibling(name);
+    BufferedImage image = new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB);
+    image.setRGB(0, 0, name.hashCode());
+    Files.createDirectories(path.getParent());
+    ImageIO.write(image, "PNG", path.toFile());
+    assertThat(LocalFileSystem.getInstance().refreshAndFindFileByIoFile(path.toFile())).isNotNull();
+    return path;
+  }
 }
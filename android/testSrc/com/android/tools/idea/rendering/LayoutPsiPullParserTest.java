@@ -16,6 +16,7 @@
 package com.android.tools.idea.rendering;
 
 import com.android.resources.ResourceFolderType;
+import com.intellij.openapi.command.WriteCommandAction;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
@@ -418,6 +419,50 @@ public class LayoutPsiPullParserTest extends AndroidTestCase {
     assertNull(parser.getAttributeValue(ANDROID_URI, ATTR_TAG));
   }
 
+  public void testSnapshotReuse() {
+    @Language("XML")
+    final String content = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" +
+                           "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"\n" +
+                           "    android:layout_width=\"match_parent\"\n" +
+                           "    android:layout_height=\"match_parent\">\n" +
+                           "    <TextView\n" +
+                           "        android:layout_width=\"wrap_content\"\n" +
+                           "        android:layout_height=\"wrap_content\"\n" +
+                           "        android:text=\"First\"/>\n" +
+                           "    <FrameLayout\n" +
+                           "        android:layout_width=\"wrap_content\"\n" +
+                           "        android:layout_height=\"wrap_content\">\n" +
+                           "        <TextView\n" +
+                           "            android:layout_width=\"wrap_content\"\n" +
+                           "            android:layout_height=\"wrap_content\"\n" +
+                           "            android:text=\"Second\"/>\n" +
+                           "    </FrameLayout>\n" +
+                           "</LinearLayout>";
+    XmlFile xmlFile = (XmlFile)myFixture.addFileToProject("res/layout/layout.xml", content);
+    RenderLogger logger = new RenderLogger("test", myModule);
+    TagSnapshot first = LayoutPsiPullParser.create(xmlFile, logger).myRoot;
+    assertNotNull(first);
+
+    // Nothing has changed so the children are shared
+    TagSnapshot second = LayoutPsiPullParser.create(xmlFile, logger).myRoot;
+    assertNotNull(second);
+    assertSame(first.children, second.children);
+
+    // Only the modified subtree is created again
+    XmlTag frameLayout = xmlFile.getRootTag().getSubTags()[1];
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> {
+      frameLayout.getSubTags()[0].setAttribute(ATTR_TEXT, ANDROID_URI, "Modified");
+    });
+    TagSnapshot third = LayoutPsiPullParser.create(xmlFile, logger).myRoot;
+    assertNotNull(third);
+    assertNotSame(second.children, third.children);
+    assertSame(second.children.get(0).children, third.children.get(0).children);
+    assertEquals("First", third.children.get(0).getAttribute(ATTR_TEXT, ANDROID_URI));
+    assertSame(third.children.get(1), third.children.get(0).getNextSibling());
+    assertEquals("Second", second.children.get(1).children.get(0).getAttribute(ATTR_TEXT, ANDROID_URI));
+    assertEquals("Modified", third.children.get(1).children.get(0).getAttribute(ATTR_TEXT, ANDROID_URI));
+  }
+
   enum NextEventType { NEXT, NEXT_TOKEN, NEXT_TAG }
 
   private void compareParsers(PsiFile file, NextEventType nextEventType) throws Exception {
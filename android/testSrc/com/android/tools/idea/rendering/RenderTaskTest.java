@@ -169,6 +169,23 @@ public class RenderTaskTest extends RenderTestBase {
     task.dispose().get(5, TimeUnit.SECONDS);
   }
 
+  public void testInflateAgainWithNewLogger() throws Exception {
+    VirtualFile file = myFixture.addFileToProject("res/layout/layout.xml", SIMPLE_LAYOUT).getVirtualFile();
+    Configuration configuration = getConfiguration(file, DEFAULT_DEVICE_ID);
+
+    RenderTask task = createRenderTask(file, configuration, mock(RenderLogger.class));
+    checkSimpleLayoutResult(task.inflate());
+
+    // Inflating again on the same task replaces the previous session and reports to the new logger
+    RenderLogger logger = mock(RenderLogger.class);
+    task.setLogger(logger);
+    RenderResult result = task.inflate();
+    checkSimpleLayoutResult(result);
+    assertSame(logger, result.getLogger());
+    checkSimpleLayoutResult(task.render());
+    task.dispose().get(5, TimeUnit.SECONDS);
+  }
+
   public void testAsyncCallAndDispose()
     throws IOException, ExecutionException, InterruptedException, BrokenBarrierException, TimeoutException {
     VirtualFile layoutFile = myFixture.addFileToProject("res/layout/foo.xml", "").getVirtualFile();
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering.multi;
+
+import com.android.tools.idea.configurations.Configuration;
+import com.android.tools.idea.rendering.Locale;
+import com.android.tools.idea.rendering.RenderLogger;
+import com.android.tools.idea.rendering.RenderService;
+import com.android.tools.idea.rendering.RenderTask;
+import com.android.tools.idea.rendering.RenderTestBase;
+import com.android.tools.idea.ui.designer.EditorDesignSurface;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.xml.XmlFile;
+import com.intellij.util.ui.UIUtil;
+import org.jetbrains.android.facet.AndroidFacet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class RenderPreviewBatchTest extends RenderTestBase {
+  private static final int MAX_THUMBNAIL_SIZE = 100;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    RenderService.setForTesting(myFacet, new MyRenderService(myFacet));
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      RenderService.setForTesting(myFacet, null);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testRenderConfigurations() throws Exception {
+    PsiFile file = myFixture.addFileToProject("res/layout/layout.xml",
+                                              "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"\n" +
+                                              "    android:layout_width=\"match_parent\"\n" +
+                                              "    android:layout_height=\"match_parent\"\n" +
+                                              "    android:background=\"#F00\"/>");
+    // The configuration manager returns the same configuration for the file, so keep copies
+    Configuration phone = Configuration.copy(getConfiguration(file.getVirtualFile(), DEFAULT_DEVICE_ID));
+    Configuration tablet = Configuration.copy(getConfiguration(file.getVirtualFile(), "Nexus 10"));
+    tablet.setDeviceStateName("Landscape");
+    Configuration french = Configuration.copy(phone);
+    french.setLocale(Locale.create("fr"));
+
+    Map<Configuration, BufferedImage> thumbnails = new LinkedHashMap<>();
+    RenderPreviewBatch batch = new RenderPreviewBatch(myFacet, (XmlFile)file, MAX_THUMBNAIL_SIZE, MoreExecutors.directExecutor());
+    batch.render(ImmutableList.of(phone, tablet, french), thumbnails::put).get(30, TimeUnit.SECONDS);
+    UIUtil.dispatchAllInvocationEvents();
+
+    assertEquals(3, thumbnails.size());
+    for (BufferedImage thumbnail : thumbnails.values()) {
+      assertNotNull(thumbnail);
+      assertTrue(thumbnail.getWidth() <= MAX_THUMBNAIL_SIZE && thumbnail.getHeight() <= MAX_THUMBNAIL_SIZE);
+      assertEquals(0xFFFF0000, thumbnail.getRGB(thumbnail.getWidth() / 2, thumbnail.getHeight() / 2));
+    }
+    // The tablet is in landscape and the phone in portrait
+    assertTrue(thumbnails.get(tablet).getWidth() > thumbnails.get(tablet).getHeight());
+    assertTrue(thumbnails.get(phone).getWidth() < thumbnails.get(phone).getHeight());
+  }
+
+  public void testCancel() throws Exception {
+    PsiFile file = myFixture.addFileToProject("res/layout/layout.xml", "<LinearLayout/>");
+    Configuration configuration = getConfiguration(file.getVirtualFile(), DEFAULT_DEVICE_ID);
+
+    Map<Configuration, BufferedImage> thumbnails = new LinkedHashMap<>();
+    List<Runnable> pending = new ArrayList<>();
+    RenderPreviewBatch batch = new RenderPreviewBatch(myFacet, (XmlFile)file, MAX_THUMBNAIL_SIZE, pending::add);
+    ListenableFuture<Void> future = batch.render(ImmutableList.of(configuration), thumbnails::put);
+    future.cancel(false);
+    // The configurations which have not started when the batch is cancelled are skipped
+    pending.forEach(Runnable::run);
+    UIUtil.dispatchAllInvocationEvents();
+
+    assertTrue(future.isCancelled());
+    assertTrue(thumbnails.isEmpty());
+  }
+
+  // Disable security manager during tests (for bazel)
+  private static class MyRenderService extends RenderService {
+    public MyRenderService(@NotNull AndroidFacet facet) {
+      super(facet);
+    }
+
+    @Override
+    @Nullable
+    public RenderTask createTask(@Nullable PsiFile psiFile,
+                                 @NotNull Configuration configuration,
+                                 @NotNull RenderLogger logger,
+                                 @Nullable EditorDesignSurface surface) {
+      RenderTask task = super.createTask(psiFile, configuration, logger, surface);
+      assert task != null;
+      task.disableSecurityManager();
+      return task;
+    }
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.res;
+
+import com.android.ide.common.res2.ResourceTable;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class AarResourceRepositoryCacheTest extends TestCase {
+  private File myRoot;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myRoot = Files.createTempDir();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      FileUtil.delete(myRoot);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testIdenticalDirectoriesAreParsedOnce() throws IOException {
+    File first = createResourceDir("first", "Hello");
+    File second = createResourceDir("second", "Hello");
+    File other = createResourceDir("other", "Bonjour");
+    AarResourceRepositoryCache cache = new AarResourceRepositoryCache(null);
+    AtomicInteger parses = new AtomicInteger();
+
+    AarResourceRepositoryCache.Contents contents = cache.getContents(first, "lib", () -> parse(parses));
+    assertSame(contents, cache.getContents(second, "lib", () -> parse(parses)));
+    assertEquals(1, parses.get());
+
+    assertNotSame(contents, cache.getContents(other, "lib", () -> parse(parses)));
+    assertNotSame(contents, cache.getContents(second, "other-lib", () -> parse(parses)));
+    assertEquals(3, parses.get());
+  }
+
+  public void testDirectoriesWithSameLayoutAreCompared() throws IOException {
+    File first = createResourceDir("first", "Hello");
+    File second = createResourceDir("second", "Jello");
+    AarResourceRepositoryCache cache = new AarResourceRepositoryCache(null);
+    AtomicInteger parses = new AtomicInteger();
+
+    AarResourceRepositoryCache.Contents contents = cache.getContents(first, "lib", () -> parse(parses));
+    assertNotSame(contents, cache.getContents(second, "lib", () -> parse(parses)));
+    assertEquals(2, parses.get());
+    // The contents of the first directory are still cached.
+    assertSame(contents, cache.getContents(first, "lib", () -> parse(parses)));
+    assertEquals(2, parses.get());
+  }
+
+  public void testDirectoryModifiedInPlaceIsParsedAgain() throws IOException {
+    File dir = createResourceDir("res", "Hello");
+    AarResourceRepositoryCache cache = new AarResourceRepositoryCache(null);
+    AtomicInteger parses = new AtomicInteger();
+    AarResourceRepositoryCache.Contents contents = cache.getContents(dir, "lib", () -> parse(parses));
+
+    // Same file sizes, so the layout of the directory does not change.
+    File strings = new File(dir, "values" + File.separator + "strings.xml");
+    long lastModified = strings.lastModified();
+    Files.write("<resources><string name=\"s\">Jello</string></resources>", strings, UTF_8);
+    assertTrue(strings.setLastModified(lastModified + 10000));
+
+    AarResourceRepositoryCache.Contents modified = cache.getContents(dir, "lib", () -> parse(parses));
+    assertNotSame(contents, modified);
+    assertEquals(2, parses.get());
+    // The new contents replace the stale ones in the cache.
+    assertSame(modified, cache.getContents(dir, "lib", () -> parse(parses)));
+    assertEquals(2, parses.get());
+  }
+
+  public void testParserExceptionIsNotWrapped() throws IOException {
+    File dir = createResourceDir("res", "Hello");
+    AarResourceRepositoryCache cache = new AarResourceRepositoryCache(null);
+    IllegalStateException exception = new IllegalStateException();
+    try {
+      cache.getContents(dir, null, () -> {
+        throw exception;
+      });
+      fail();
+    }
+    catch (IllegalStateException e) {
+      assertSame(exception, e);
+    }
+  }
+
+  public void testWeightBudgetEvictsContents() throws IOException {
+    AarResourceRepositoryCache cache = new AarResourceRepositoryCache(null, 5);
+    AtomicInteger parses = new AtomicInteger();
+    for (int i = 0; i < 10; i++) {
+      // Values of different lengths, so that the directories have different layouts.
+      cache.getContents(createResourceDir("dir" + i, Strings.repeat("v", i + 1)), null, () -> parse(parses));
+    }
+    assertEquals(10, parses.get());
+    assertThat(cache.getCachedWeight()).isAtMost(5L);
+  }
+
+  public void testDigestIndexIsPersisted() throws IOException {
+    File indexFile = new File(myRoot, "index.bin");
+    File dir = createResourceDir("res", "Hello");
+    AtomicInteger parses = new AtomicInteger();
+
+    AarResourceRepositoryCache cache = new AarResourceRepositoryCache(indexFile);
+    cache.getContents(dir, null, () -> parse(parses));
+    // Digests are only computed to compare directories with the same layout.
+    assertFalse(indexFile.isFile());
+    cache.getContents(createResourceDir("copy", "Hello"), null, () -> parse(parses));
+    assertTrue(indexFile.isFile());
+
+    // A new session reads the digests back from the index.
+    AarResourceRepositoryCache newSession = new AarResourceRepositoryCache(indexFile);
+    AarResourceRepositoryCache.Contents contents = newSession.getContents(dir, null, () -> parse(parses));
+    assertSame(contents, newSession.getContents(createResourceDir("other-copy", "Hello"), null, () -> parse(parses)));
+    assertEquals(2, parses.get());
+  }
+
+  private File createResourceDir(String name, String value) throws IOException {
+    File values = new File(myRoot, name + File.separator + "res" + File.separator + "values");
+    assertTrue(values.mkdirs());
+    Files.write("<resources><string name=\"s\">" + value + "</string></resources>", new File(values, "strings.xml"), UTF_8);
+    return values.getParentFile();
+  }
+
+  private AarResourceRepositoryCache.Contents parse(AtomicInteger parses) {
+    parses.incrementAndGet();
+    return new AarResourceRepositoryCache.Contents(new ResourceTable(), ImmutableList.of("id1"), myRoot);
+  }
+}
@@ -18,10 +18,10 @@ package com.android.tools.idea.res;
 import com.android.ide.common.rendering.api.ResourceValue;
 import com.android.ide.common.res2.ResourceItem;
 import com.android.resources.ResourceType;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ListMultimap;
 import com.google.common.io.Files;
 import com.intellij.openapi.util.io.FileUtil;
-import com.intellij.testFramework.PlatformTestUtil;
 import com.intellij.util.containers.ContainerUtil;
 import junit.framework.TestCase;
 import org.jetbrains.android.AndroidTestBase;
@@ -29,34 +29,70 @@ import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import static com.android.tools.idea.gradle.project.model.AndroidModuleModel.EXPLODED_AAR;
 import static com.google.common.truth.Truth.assertThat;
 import static com.intellij.testFramework.UsefulTestCase.assertSameElements;
 import static java.io.File.separatorChar;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 public class FileResourceRepositoryTest extends TestCase {
   private static final String LIBRARY_NAME = "com.test:test-library:1.0.0";
 
-  public void testCacheUseSoftReferences() throws IOException {
-    File dir = Files.createTempDir();
+  public void testIdenticalDirectoriesShareContents() throws IOException {
+    File first = Files.createTempDir();
+    File second = Files.createTempDir();
     try {
-      assertNotNull(FileResourceRepository.get(dir, null));
-      // We shouldn't clear it out immediately on GC *eligibility*:
-      System.gc();
-      assertNotNull(FileResourceRepository.getCached(dir));
-      // However, in low memory conditions we should:
-      try {
-        PlatformTestUtil.tryGcSoftlyReachableObjects();
-      } catch (Throwable t) {
-        // The above method can throw java.lang.OutOfMemoryError; that's fine for this test
+      for (File dir : Arrays.asList(first, second)) {
+        File values = new File(dir, "values");
+        assertTrue(values.mkdirs());
+        Files.write("<resources><string name=\"shared\">Shared</string></resources>", new File(values, "strings.xml"), UTF_8);
       }
-      System.gc();
-      assertNull(FileResourceRepository.getCached(dir));
+      FileResourceRepository firstRepository = FileResourceRepository.get(first, LIBRARY_NAME);
+      FileResourceRepository secondRepository = FileResourceRepository.get(second, LIBRARY_NAME);
+      assertNotSame(firstRepository, secondRepository);
+      assertThat(secondRepository.getResourceDirectory()).isEqualTo(second);
+      List<ResourceItem> firstItems = firstRepository.getResourceItem(ResourceType.STRING, "shared");
+      List<ResourceItem> secondItems = secondRepository.getResourceItem(ResourceType.STRING, "shared");
+      assertNotNull(firstItems);
+      assertNotNull(secondItems);
+      // Each repository has its own items, pointing into its own directory, on top of the same parsed values.
+      ResourceItem firstItem = firstItems.get(0);
+      ResourceItem secondItem = secondItems.get(0);
+      assertNotSame(firstItem, secondItem);
+      assertSame(firstItem.getValue(), secondItem.getValue());
+      assertNotNull(firstItem.getSource());
+      assertNotNull(secondItem.getSource());
+      assertThat(firstItem.getSource().getFile()).isEqualTo(new File(first, "values" + File.separator + "strings.xml"));
+      assertThat(secondItem.getSource().getFile()).isEqualTo(new File(second, "values" + File.separator + "strings.xml"));
+      assertThat(secondItem.getLibraryName()).isEqualTo(LIBRARY_NAME);
     }
     finally {
-      FileUtil.delete(dir);
+      FileUtil.delete(first);
+      FileUtil.delete(second);
+    }
+  }
+
+  public void testGetAllKeepsOrderAndCaches() throws IOException {
+    File first = Files.createTempDir();
+    File second = Files.createTempDir();
+    try {
+      List<File> dirs = Arrays.asList(first, second);
+      Map<File, String> libraryNames = ImmutableMap.of(first, "com.test:first:1.0.0", second, "com.test:second:1.0.0");
+      List<FileResourceRepository> repositories = FileResourceRepository.getAll(dirs, libraryNames);
+      assertThat(repositories).hasSize(2);
+      assertThat(repositories.get(0).getResourceDirectory()).isEqualTo(first);
+      assertThat(repositories.get(1).getResourceDirectory()).isEqualTo(second);
+      assertThat(repositories.get(1).getLibraryName()).isEqualTo("com.test:second:1.0.0");
+      assertSame(repositories.get(0), FileResourceRepository.getCached(first));
+      assertSame(repositories.get(1), FileResourceRepository.getCached(second));
+    }
+    finally {
+      FileUtil.delete(first);
+      FileUtil.delete(second);
     }
   }
 
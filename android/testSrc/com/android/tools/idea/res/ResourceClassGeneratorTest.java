@@ -182,6 +182,30 @@ public class ResourceClassGeneratorTest extends AndroidTestCase {
     //assertNotNull(clz.getField("center_vertical"));
   }
 
+  public void testClassBytesAreCached() throws Exception {
+    final ResourceRepository repository = TestResourceRepository.createRes2(new Object[]{
+      "values/strings.xml", "" +
+                            "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" +
+                            "<resources>\n" +
+                            "    <string name=\"show_all_apps\">All</string>\n" +
+                            "</resources>\n",});
+    LocalResourceRepository resources = new LocalResourceRepositoryDelegate("test", repository);
+    AppResourceRepository appResources = new AppResourceRepository(myFacet, Collections.singletonList(resources),
+                                                                   Collections.emptyList());
+    ResourceClassGenerator generator = ResourceClassGenerator.create(appResources);
+
+    byte[] stringClass = generator.generate("my.test.pkg.R$string");
+    assertNotNull(stringClass);
+    assertSame(stringClass, generator.generate("my.test.pkg.R$string"));
+    assertSame(generator.generate("my.test.pkg.R"), generator.generate("my.test.pkg.R"));
+
+    // A different package shares the field values, but gets its own class with the same ids.
+    Class<?> clz = generateClass(generator, "other.pkg.R$string");
+    assertNotNull(clz);
+    assertEquals(appResources.getResourceId(ResourceType.STRING, "show_all_apps"), clz.getField("show_all_apps").get(null));
+    assertSame(stringClass, generator.generate("my.test.pkg.R$string"));
+  }
+
   public void testStyleableMerge() throws Exception {
     final ResourceRepository repositoryA = TestResourceRepository.createRes2(new Object[]{
       "values/styles.xml", "" +
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+public class LruFileStoreTest {
+  @Rule
+  public TemporaryFolder myFolder = new TemporaryFolder();
+
+  @Test
+  public void testWriteReplacesExistingFile() throws Exception {
+    LruFileStore store = new LruFileStore(new File(myFolder.getRoot(), "store"), ".txt");
+    File file = store.getFile("key");
+
+    assertTrue(store.write(file, tempFile -> Files.write(tempFile.toPath(), "first".getBytes(UTF_8))));
+    assertTrue(store.write(file, tempFile -> Files.write(tempFile.toPath(), "second".getBytes(UTF_8))));
+
+    assertEquals("second", store.read(file, LruFileStoreTest::readText));
+    // No temporary files are left behind
+    assertArrayEquals(new String[]{"key.txt"}, store.getDirectory().list());
+  }
+
+  @Test
+  public void testFailedWriteKeepsPreviousContents() throws Exception {
+    LruFileStore store = new LruFileStore(new File(myFolder.getRoot(), "store"), ".txt");
+    File file = store.getFile("key");
+    assertTrue(store.write(file, tempFile -> Files.write(tempFile.toPath(), "first".getBytes(UTF_8))));
+
+    assertFalse(store.write(file, tempFile -> {
+      throw new IOException("disk full");
+    }));
+
+    assertEquals("first", store.read(file, LruFileStoreTest::readText));
+    assertArrayEquals(new String[]{"key.txt"}, store.getDirectory().list());
+  }
+
+  @Test
+  public void testReadMissingFile() {
+    LruFileStore store = new LruFileStore(new File(myFolder.getRoot(), "store"), ".txt");
+    assertNull(store.read(store.getFile("missing"), LruFileStoreTest::readText));
+  }
+
+  @Test
+  public void testTrimToCountKeepsMostRecentlyUsedFiles() throws Exception {
+    LruFileStore store = new LruFileStore(new File(myFolder.getRoot(), "store"), ".txt");
+    for (int i = 0; i < 3; i++) {
+      File file = store.getFile("key" + i);
+      String text = "text" + i;
+      assertTrue(store.write(file, tempFile -> Files.write(tempFile.toPath(), text.getBytes(UTF_8))));
+      assertTrue(file.setLastModified(1000L * (i + 1)));
+    }
+    // Reading the oldest file marks it as used
+    assertEquals("text0", store.read(store.getFile("key0"), LruFileStoreTest::readText));
+
+    store.trimToCount(2);
+
+    assertTrue(store.getFile("key0").isFile());
+    assertFalse(store.getFile("key1").isFile());
+    assertTrue(store.getFile("key2").isFile());
+  }
+
+  @Test
+  public void testTrimToSize() throws Exception {
+    LruFileStore store = new LruFileStore(new File(myFolder.getRoot(), "store"), ".txt");
+    for (int i = 0; i < 10; i++) {
+      File file = store.getFile("key" + i);
+      assertTrue(store.write(file, tempFile -> Files.write(tempFile.toPath(), new byte[100])));
+      assertTrue(file.setLastModified(1000L * (i + 1)));
+    }
+
+    // Below the maximum size, nothing is deleted
+    assertEquals(1000, store.trimToSize(1000));
+
+    // Above it, the oldest files are deleted until the store is at three quarters of the maximum size
+    assertEquals(600, store.trimToSize(800));
+    for (int i = 0; i < 10; i++) {
+      assertEquals(i >= 4, store.getFile("key" + i).isFile());
+    }
+  }
+
+  private static String readText(File file) throws IOException {
+    return new String(Files.readAllBytes(file.toPath()), UTF_8);
+  }
+}
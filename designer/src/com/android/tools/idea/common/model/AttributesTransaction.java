@@ -33,6 +33,8 @@ import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import static com.android.SdkConstants.ANDROID_URI;
+import static com.android.SdkConstants.ATTR_ID;
 import static com.android.SdkConstants.ATTR_LAYOUT_RESOURCE_PREFIX;
 
 /**
@@ -138,6 +140,10 @@ public class AttributesTransaction implements NlAttributesHolder {
         attribute = new PendingAttribute(namespace, name, value);
         myPendingAttributes.put(key, attribute);
       }
+      if (modified && ATTR_ID.equals(name) && ANDROID_URI.equals(namespace)) {
+        // The component id is read from the transaction while it is open
+        myModel.componentsChanged();
+      }
 
       ViewInfo viewInfo = NlComponentHelperKt.getViewInfo(myComponent);
       if (viewInfo != null) {
@@ -189,6 +195,9 @@ public class AttributesTransaction implements NlAttributesHolder {
 
     myComponent.myCurrentTransaction = null;
     boolean hadPendingChanges = !myPendingAttributes.isEmpty();
+    if (hadPendingChanges) {
+      myModel.componentsChanged();
+    }
     myPendingAttributes.clear();
     myOriginalValues.clear();
 
@@ -72,6 +72,12 @@ public class NlComponent implements NlAttributesHolder {
   private final ChangeEvent myChangeEvent = new ChangeEvent(this);
   private DependencyGraph myCachedDependencyGraph;
 
+  /**
+   * Modification count of {@link #myTag} when the model hierarchy was last synchronized with the PSI, or -1 if unknown.
+   * Used by {@link NlModel} to skip the subtrees that have not changed.
+   */
+  long mySyncedTagModificationCount = -1;
+
   /**
    * Current open attributes transaction or null if none is open
    */
@@ -104,6 +110,10 @@ public class NlComponent implements NlAttributesHolder {
   }
 
   public void setTag(@NotNull XmlTag tag) {
+    if (myTag != tag) {
+      mySyncedTagModificationCount = -1;
+      myModel.componentsChanged();
+    }
     myTag = tag;
     myTagName = tag.getName();
   }
@@ -114,7 +124,10 @@ public class NlComponent implements NlAttributesHolder {
   }
 
   public void setSnapshot(@Nullable TagSnapshot snapshot) {
-    mySnapshot = snapshot;
+    if (mySnapshot != snapshot) {
+      mySnapshot = snapshot;
+      myModel.componentsChanged();
+    }
   }
 
   public void addChild(@NotNull NlComponent component) {
@@ -136,6 +149,7 @@ public class NlComponent implements NlAttributesHolder {
       children.add(component);
     }
     component.setParent(this);
+    myModel.componentsChanged();
   }
 
   public void removeChild(@NotNull NlComponent component) {
@@ -146,6 +160,7 @@ public class NlComponent implements NlAttributesHolder {
       children.remove(component);
     }
     component.setParent(null);
+    myModel.componentsChanged();
   }
 
   public void setChildren(@Nullable List<NlComponent> components) {
@@ -158,6 +173,7 @@ public class NlComponent implements NlAttributesHolder {
         component.setParent(this);
       }
     }
+    myModel.componentsChanged();
   }
 
   @NotNull
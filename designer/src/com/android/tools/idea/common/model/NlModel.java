@@ -97,6 +97,12 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
   private final NlLayoutType myType;
   private long myConfigurationModificationCount;
 
+  /** Incremented every time the component hierarchy, or anything the {@link ComponentIndex} depends on, changes */
+  private final AtomicLong myComponentsModificationCount = new AtomicLong();
+  @Nullable private volatile ComponentIndex myComponentIndex;
+  /** Number of times the {@link ComponentIndex} has been built */
+  private volatile int myComponentIndexBuildCount;
+
   // Variable to track what triggered the latest render (if known)
   private ChangeType myModificationTrigger;
 
@@ -400,6 +406,104 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
     return myRootComponent != null ? Stream.of(myRootComponent).flatMap(NlComponent::flatten) : Stream.empty();
   }
 
+  /**
+   * Invalidates the lookup tables used by {@link #find}, {@link #findViewByTag} and {@link #findByOffset}. Called when the
+   * component hierarchy, the component tags or snapshots, or the ids in open attribute transactions change.
+   */
+  void componentsChanged() {
+    myComponentsModificationCount.incrementAndGet();
+  }
+
+  private void setRootComponent(@Nullable NlComponent rootComponent) {
+    myRootComponent = rootComponent;
+    componentsChanged();
+  }
+
+  /**
+   * Returns the lookup tables for the current component hierarchy, building them if the hierarchy or the layout file has changed
+   * since they were last built.
+   */
+  @NotNull
+  private ComponentIndex getComponentIndex() {
+    long modificationCount = myComponentsModificationCount.get();
+    // Components without a snapshot read their ids from the PSI, so edits to the file can change them
+    long fileModificationStamp = getFile().getModificationStamp();
+    ComponentIndex index = myComponentIndex;
+    if (index == null || index.myModificationCount != modificationCount || index.myFileModificationStamp != fileModificationStamp) {
+      index = new ComponentIndex(myRootComponent, modificationCount, fileModificationStamp);
+      myComponentIndex = index;
+      myComponentIndexBuildCount++;
+    }
+    return index;
+  }
+
+  @VisibleForTesting
+  int getComponentIndexBuildCount() {
+    return myComponentIndexBuildCount;
+  }
+
+  /**
+   * Id and tag lookup tables for the components of a model. The tables are immutable; a new index is built when the model changes.
+   */
+  private static final class ComponentIndex {
+    private final long myModificationCount;
+    private final long myFileModificationStamp;
+    /** Components by id. If several components have the same id, the first one in the hierarchy */
+    private final Map<String, NlComponent> myById = new HashMap<>();
+    /** Components by tag, in the order returned by {@link NlComponent#findViewsByTag(XmlTag)} */
+    private final Map<XmlTag, Object> myByTag = new IdentityHashMap<>();
+
+    private ComponentIndex(@Nullable NlComponent root, long modificationCount, long fileModificationStamp) {
+      myModificationCount = modificationCount;
+      myFileModificationStamp = fileModificationStamp;
+      if (root != null) {
+        add(root);
+      }
+    }
+
+    private void add(@NotNull NlComponent component) {
+      String id = component.getId();
+      if (id != null) {
+        myById.putIfAbsent(id, component);
+      }
+      for (NlComponent child : component.getChildren()) {
+        add(child);
+      }
+      // Most tags map to a single component so avoid allocating a list for those
+      XmlTag tag = component.getTag();
+      Object previous = myByTag.get(tag);
+      if (previous == null) {
+        myByTag.put(tag, component);
+      }
+      else if (previous instanceof NlComponent) {
+        myByTag.put(tag, Lists.newArrayList((NlComponent)previous, component));
+      }
+      else {
+        //noinspection unchecked
+        ((List<NlComponent>)previous).add(component);
+      }
+    }
+
+    @Nullable
+    private NlComponent findById(@NotNull String id) {
+      return myById.get(id);
+    }
+
+    @NotNull
+    private ImmutableList<NlComponent> findByTag(@NotNull XmlTag tag) {
+      Object components = myByTag.get(tag);
+      if (components == null) {
+        return ImmutableList.of();
+      }
+      //noinspection unchecked
+      return components instanceof NlComponent ? ImmutableList.of((NlComponent)components) : ImmutableList.copyOf((List<NlComponent>)components);
+    }
+
+    private boolean hasMultipleComponents(@NotNull XmlTag tag) {
+      return myByTag.get(tag) instanceof List;
+    }
+  }
+
   /**
    * This will warn model listeners that the model has been changed "live", without
    * the attributes of components being actually committed. Listeners such as Scene Managers will
@@ -467,13 +571,24 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
     @VisibleForTesting
     public void update(@Nullable XmlTag newRoot, @NotNull List<TagSnapshotTreeNode> roots) {
       if (newRoot == null) {
-        myModel.myRootComponent = null;
+        myModel.setRootComponent(null);
         return;
       }
 
       boolean isValidRoot = ApplicationManager.getApplication().runReadAction((Computable<Boolean>)newRoot::isValid);
       if (!isValidRoot) {
-        myModel.myRootComponent = null;
+        myModel.setRootComponent(null);
+        return;
+      }
+
+      NlComponent oldRoot = myModel.myRootComponent;
+      if (oldRoot != null && ApplicationManager.getApplication().runReadAction((Computable<Boolean>)() -> isUnchanged(oldRoot, newRoot))) {
+        // None of the tags has changed since the last synchronization, so the component hierarchy is still the same and only the
+        // snapshots of the rendered components need to be updated
+        ComponentIndex index = myModel.getComponentIndex();
+        for (TagSnapshotTreeNode root : roots) {
+          updateChangedSnapshots(root, index);
+        }
         return;
       }
 
@@ -504,7 +619,7 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
         return createTree(newRoot);
       });
 
-      myModel.myRootComponent = rootComponent;
+      myModel.setRootComponent(rootComponent);
 
       // Wipe out state in older components to make sure on reuse we don't accidentally inherit old
       // data
@@ -577,7 +692,8 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
           // (though it's unlikely for this to change across component
           // synchronization operations)
           NlComponent component = oldIds.get(id);
-          if (component != null) {
+          // Only reuse components whose tag is gone; a duplicated id must not take the component of a tag that still exists
+          if (component != null && remaining.contains(component.getTag())) {
             recordComponentMapping(tag, component);
             remaining.remove(component.getTag());
             missingIterator.remove();
@@ -652,17 +768,44 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
      * whether the tag is in the remaining set, and if so removes it,
      * otherwise adds it to the missing set.
      */
-    private static void checkMissing(XmlTag tag, Set<XmlTag> remaining, List<XmlTag> missing) {
+    private void checkMissing(XmlTag tag, Set<XmlTag> remaining, List<XmlTag> missing) {
 
       boolean found = remaining.remove(tag);
       if (!found) {
         missing.add(tag);
       }
+      else {
+        NlComponent component = myTagToComponentMap.get(tag);
+        if (component != null && isUnchanged(component, tag)) {
+          // The subtree has not changed so all the tags below are in the old hierarchy
+          removeDescendantTags(component, remaining);
+          return;
+        }
+      }
       for (XmlTag child : tag.getSubTags()) {
         checkMissing(child, remaining, missing);
       }
     }
 
+    private static void removeDescendantTags(@NotNull NlComponent component, @NotNull Set<XmlTag> remaining) {
+      for (NlComponent child : component.getChildren()) {
+        remaining.remove(child.getTag());
+        removeDescendantTags(child, remaining);
+      }
+    }
+
+    /**
+     * Returns true if the given component was synchronized with the given tag and neither the tag nor any of its children has been
+     * modified since then.
+     */
+    private static boolean isUnchanged(@NotNull NlComponent component, @NotNull XmlTag tag) {
+      if (component.getTag() != tag) {
+        return false;
+      }
+      long modificationCount = TagSnapshot.getModificationCount(tag);
+      return modificationCount != -1 && modificationCount == component.mySyncedTagModificationCount;
+    }
+
     private void gatherTagsAndSnapshots(@NotNull NlComponent component) {
       XmlTag tag = component.getTag();
 
@@ -688,6 +831,10 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
     @NotNull
     private NlComponent createTree(@NotNull XmlTag tag) {
       NlComponent component = myTagToComponentMap.get(tag);
+      if (component != null && isUnchanged(component, tag)) {
+        // Reuse the existing subtree, its components are already registered in the maps
+        return component;
+      }
       if (component == null) {
         // New component: tag didn't exist in the previous component hierarchy,
         // and no similar tag was found
@@ -725,10 +872,32 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
       else {
         component.setChildren(null);
       }
+      component.mySyncedTagModificationCount = TagSnapshot.getModificationCount(tag);
 
       return component;
     }
 
+    /**
+     * Sets the snapshots of the given tree on the components of their tags, skipping the subtrees whose snapshot was reused from the
+     * previous render. Only used when the tags have not changed, so the given index, built before any snapshot is set, stays valid.
+     */
+    private static void updateChangedSnapshots(@NotNull TagSnapshotTreeNode node, @NotNull ComponentIndex index) {
+      TagSnapshot snapshot = node.getTagSnapshot();
+      if (snapshot != null && snapshot.tag != null) {
+        ImmutableList<NlComponent> components = index.findByTag(snapshot.tag);
+        if (components.size() == 1) {
+          NlComponent component = components.get(0);
+          if (component.getSnapshot() == snapshot) {
+            return;
+          }
+          component.setSnapshot(snapshot);
+        }
+      }
+      for (TagSnapshotTreeNode child : node.getChildren()) {
+        updateChangedSnapshots(child, index);
+      }
+    }
+
     private void updateHierarchy(@NotNull TagSnapshotTreeNode node) {
       TagSnapshot snapshot = node.getTagSnapshot();
       NlComponent component;
@@ -758,12 +927,22 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
 
   @Nullable
   public NlComponent findViewByTag(@NotNull XmlTag tag) {
-    return myRootComponent != null ? myRootComponent.findViewByTag(tag) : null;
+    NlComponent root = myRootComponent;
+    if (root == null) {
+      return null;
+    }
+    ComponentIndex index = getComponentIndex();
+    if (index.hasMultipleComponents(tag)) {
+      // Rare case of a tag shared by several components; return the first one in the hierarchy
+      return root.findViewByTag(tag);
+    }
+    ImmutableList<NlComponent> components = index.findByTag(tag);
+    return components.isEmpty() ? null : components.get(0);
   }
 
   @Nullable
   public NlComponent find(@NotNull String id) {
-    return flattenComponents().filter(c -> id.equals(c.getId())).findFirst().orElse(null);
+    return myRootComponent != null ? getComponentIndex().findById(id) : null;
   }
 
   @NotNull
@@ -772,7 +951,7 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
       return ImmutableList.of();
     }
 
-    return myRootComponent.findViewsByTag(tag);
+    return getComponentIndex().findByTag(tag);
   }
 
   @Nullable
@@ -15,21 +15,47 @@
  */
 package com.android.tools.idea.common.scene;
 
+import com.android.annotations.VisibleForTesting;
 import com.android.tools.idea.common.scene.draw.DisplayList;
 import com.android.tools.idea.common.surface.DesignSurface;
+import com.android.tools.sherpa.drawing.ColorSet;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
 
 /**
  * Display a layout Scene
+ * <p>
+ * The display list is only rebuilt when the scene changes. When an unchanged list is painted again, for example because the
+ * mouse moved or another layer changed, the list is rasterized once and later paints copy the part of the raster in the clip
+ * rather than replaying every command. Commands that depend on the mouse position are left out of the raster and painted over
+ * it on every paint. Lists with animated commands are always replayed.
  */
 public class Display {
+  /** Maximum number of device pixels of the raster of the display list */
+  private static final int MAX_CACHED_PIXELS = 3840 * 2160;
+
   private long mTime;
   private DisplayList myDisplayList = new DisplayList();
   private long myDisplayListVersion = 0;
   double myScale = 0;
 
+  /** Whether the current display list has already been painted without any animated command */
+  private boolean myListIsStatic;
+  /** Image the display list is rasterized into, kept when the list changes so it can be reused for the next raster */
+  @Nullable private BufferedImage myRaster;
+  /** Whether {@link #myRaster} holds the raster of the current display list */
+  private boolean myRasterIsValid;
+  /** Area covered by the raster, in swing coordinates */
+  private final Rectangle myCachedBounds = new Rectangle();
+  private double myCachedDeviceScaleX;
+  private double myCachedDeviceScaleY;
+  @Nullable private ColorSet myCachedColorSet;
+  private boolean myCachedShowOnlySelection;
+
   public void reLayout() {
     myDisplayListVersion = 0;
   }
@@ -50,8 +76,10 @@ public class Display {
       myDisplayList.clear();
       scene.buildDisplayList(myDisplayList, mTime, sceneContext);
       myDisplayListVersion = scene.getDisplayListVersion();
+      myListIsStatic = false;
+      myRasterIsValid = false;
     }
-    draw(sceneContext, g, myDisplayList);
+    drawCached(sceneContext, g);
 
     if (needsRebuild) {
       DesignSurface designSurface = sceneContext.getSurface();
@@ -61,6 +89,97 @@ public class Display {
     }
   }
 
+  /**
+   * Paints {@link #myDisplayList}, from the raster of the list when it is up to date and covers the clip.
+   */
+  private void drawCached(@NotNull SceneContext sceneContext, @NotNull Graphics2D g) {
+    Rectangle clip = g.getClipBounds();
+    AffineTransform transform = g.getTransform();
+    double deviceScaleX = transform.getScaleX();
+    double deviceScaleY = transform.getScaleY();
+    boolean hasMouseDependentCommands = myDisplayList.hasMouseDependentCommands();
+    if (clip == null || transform.getShearX() != 0 || transform.getShearY() != 0 ||
+        (hasMouseDependentCommands && !myDisplayList.canPaintMouseDependentCommandsLast())) {
+      myRasterIsValid = false;
+      draw(sceneContext, g, myDisplayList);
+      return;
+    }
+
+    if (myRasterIsValid &&
+        myCachedBounds.contains(clip) &&
+        myCachedDeviceScaleX == deviceScaleX &&
+        myCachedDeviceScaleY == deviceScaleY &&
+        myCachedColorSet == sceneContext.getColorSet() &&
+        myCachedShowOnlySelection == sceneContext.showOnlySelection()) {
+      drawRaster(g, myCachedBounds);
+      drawMouseDependentCommands(sceneContext, g, hasMouseDependentCommands);
+      return;
+    }
+    myRasterIsValid = false;
+
+    int imageWidth = (int)Math.ceil(clip.width * deviceScaleX);
+    int imageHeight = (int)Math.ceil(clip.height * deviceScaleY);
+    boolean cacheable = myListIsStatic && imageWidth > 0 && imageHeight > 0 && (long)imageWidth * imageHeight <= MAX_CACHED_PIXELS;
+    long repaintRequests = sceneContext.getRepaintRequestCount();
+    if (!cacheable) {
+      // Only rasterize lists painted more than once; lists that are rebuilt on every frame would never be reused
+      draw(sceneContext, g, myDisplayList);
+      myListIsStatic = sceneContext.getRepaintRequestCount() == repaintRequests;
+      return;
+    }
+
+    if (myRaster == null || myRaster.getWidth() != imageWidth || myRaster.getHeight() != imageHeight) {
+      myRaster = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_ARGB);
+    }
+    Graphics2D imageGraphics = myRaster.createGraphics();
+    try {
+      // Clear the previous raster
+      imageGraphics.setComposite(AlphaComposite.Clear);
+      imageGraphics.fillRect(0, 0, imageWidth, imageHeight);
+      imageGraphics.setComposite(AlphaComposite.SrcOver);
+      imageGraphics.setRenderingHints(g.getRenderingHints());
+      imageGraphics.scale(deviceScaleX, deviceScaleY);
+      imageGraphics.translate(-clip.x, -clip.y);
+      imageGraphics.setClip(clip);
+      sceneContext.setTime(System.currentTimeMillis());
+      myDisplayList.paint(imageGraphics, sceneContext, false);
+    }
+    finally {
+      imageGraphics.dispose();
+    }
+    myCachedBounds.setBounds(clip);
+    drawRaster(g, clip);
+    drawMouseDependentCommands(sceneContext, g, hasMouseDependentCommands);
+
+    myListIsStatic = sceneContext.getRepaintRequestCount() == repaintRequests;
+    if (myListIsStatic) {
+      myRasterIsValid = true;
+      myCachedDeviceScaleX = deviceScaleX;
+      myCachedDeviceScaleY = deviceScaleY;
+      myCachedColorSet = sceneContext.getColorSet();
+      myCachedShowOnlySelection = sceneContext.showOnlySelection();
+    }
+  }
+
+  private void drawRaster(@NotNull Graphics2D g, @NotNull Rectangle bounds) {
+    assert myRaster != null;
+    AffineTransform imageTransform = AffineTransform.getTranslateInstance(bounds.x, bounds.y);
+    imageTransform.scale((double)bounds.width / myRaster.getWidth(), (double)bounds.height / myRaster.getHeight());
+    g.drawImage(myRaster, imageTransform, null);
+  }
+
+  private void drawMouseDependentCommands(@NotNull SceneContext sceneContext, @NotNull Graphics2D g, boolean hasMouseDependentCommands) {
+    if (hasMouseDependentCommands) {
+      sceneContext.setTime(System.currentTimeMillis());
+      myDisplayList.paint(g, sceneContext, true);
+    }
+  }
+
+  @VisibleForTesting
+  boolean hasCachedImage() {
+    return myRasterIsValid;
+  }
+
   public void draw(@NotNull SceneContext sceneContext, @NotNull Graphics2D g, @NotNull DisplayList list) {
     sceneContext.setTime(System.currentTimeMillis());
     list.paint(g, sceneContext);
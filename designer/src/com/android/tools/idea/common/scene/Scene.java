@@ -84,6 +84,8 @@ public class Scene implements SelectionListener, Disposable {
   public static final int IMMEDIATE_LAYOUT = 1;
   public static final int ANIMATED_LAYOUT = 2;
   private long myDisplayListVersion = 1;
+  /** Distance used to detect changes of the scale of the transforms the hit regions were collected with */
+  @AndroidDpCoordinate private static final int HIT_TRANSFORM_PROBE_DP = 1000;
   private Target myOverTarget;
   private Target mySnapTarget;
   private SceneComponent myCurrentComponent;
@@ -495,6 +497,14 @@ public class Scene implements SelectionListener, Disposable {
    */
   class HitListener implements ScenePicker.HitElementListener {
     private ScenePicker myPicker = new ScenePicker();
+    // State of the scene when the hit regions of myPicker were collected. The regions only change with the display list version,
+    // the target filter and the transform, which is identified by the Swing coordinates of two points.
+    private SceneComponent myPickerRoot;
+    private long myPickerDisplayListVersion = -1;
+    private FilterType myPickerFilter;
+    @SwingCoordinate private int myPickerOriginX;
+    @SwingCoordinate private int myPickerOriginY;
+    @SwingCoordinate private int myPickerExtent;
     double myClosestComponentDistance = Double.MAX_VALUE;
     double myClosestTargetDistance = Double.MAX_VALUE;
     ArrayList<SceneComponent> myHitComponents = new ArrayList<>();
@@ -517,9 +527,50 @@ public class Scene implements SelectionListener, Disposable {
       myHitTargets.clear();
       myClosestComponentDistance = Double.MAX_VALUE;
       myClosestTargetDistance = Double.MAX_VALUE;
+      collectHits(transform, root);
+      myPicker.find(transform.getSwingX(x), transform.getSwingY(y));
+    }
+
+    /**
+     * Fills the picker with the hit regions of the given hierarchy, unless it already holds them
+     */
+    private void collectHits(@NotNull SceneContext transform, @NotNull SceneComponent root) {
+      int originX = transform.getSwingX(0);
+      int originY = transform.getSwingY(0);
+      int extent = transform.getSwingX(HIT_TRANSFORM_PROBE_DP) - originX;
+      if (root == myPickerRoot && myDisplayListVersion == myPickerDisplayListVersion && myFilterTarget == myPickerFilter &&
+          originX == myPickerOriginX && originY == myPickerOriginY && extent == myPickerExtent) {
+        return;
+      }
       myPicker.reset();
       root.addHit(transform, myPicker);
-      myPicker.find(transform.getSwingX(x), transform.getSwingY(y));
+      myPickerRoot = root;
+      myPickerDisplayListVersion = myDisplayListVersion;
+      myPickerFilter = myFilterTarget;
+      myPickerOriginX = originX;
+      myPickerOriginY = originY;
+      myPickerExtent = extent;
+    }
+
+    /**
+     * Same as {@link #find(SceneContext, SceneComponent, int, int)} but queries the hit regions collected by the last find of
+     * {@code source} rather than collecting them again. {@code source} must have just been run with the same transform.
+     */
+    public void find(@NotNull HitListener source,
+                     @NotNull SceneContext transform,
+                     @AndroidDpCoordinate int x,
+                     @AndroidDpCoordinate int y) {
+      myHitComponents.clear();
+      myHitTargets.clear();
+      myClosestComponentDistance = Double.MAX_VALUE;
+      myClosestTargetDistance = Double.MAX_VALUE;
+      source.myPicker.setSelectListener(this);
+      try {
+        source.myPicker.find(transform.getSwingX(x), transform.getSwingY(y));
+      }
+      finally {
+        source.myPicker.setSelectListener(source);
+      }
     }
 
     @Override
@@ -674,7 +725,7 @@ public class Scene implements SelectionListener, Disposable {
     myLastMouseY = y;
     if (myRoot != null) {
       myHoverListener.find(transform, myRoot, x, y);
-      mySnapListener.find(transform, myRoot, x, y);
+      mySnapListener.find(myHoverListener, transform, x, y);
     }
     repaint();
     Target closestTarget = myHoverListener.getClosestTarget();
@@ -1041,6 +1092,7 @@ public class Scene implements SelectionListener, Disposable {
 
   public void setRoot(SceneComponent root) {
     myRoot = root;
+    needsRebuildList();
   }
 
   @Nullable
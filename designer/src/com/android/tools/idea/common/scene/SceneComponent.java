@@ -260,6 +260,7 @@ public class SceneComponent {
 
   public void removeTarget(int pos) {
     myTargets.remove(pos);
+    myScene.needsRebuildList();
   }
 
   /**
@@ -523,7 +524,10 @@ public class SceneComponent {
   }
 
   public void setToolLocked(boolean locked) {
-    myIsToolLocked = locked;
+    if (myIsToolLocked != locked) {
+      myIsToolLocked = locked;
+      myScene.needsRebuildList();
+    }
   }
 
   public boolean isToolLocked() { return myIsToolLocked; }
@@ -693,12 +697,14 @@ public class SceneComponent {
   protected void addTarget(@NotNull Target target) {
     target.setComponent(this);
     myTargets.add(target);
+    myScene.needsRebuildList();
   }
 
   public void addChild(@NotNull SceneComponent child) {
     child.removeFromParent();
     child.setParent(this);
     myChildren.add(child);
+    myScene.needsRebuildList();
   }
 
   public void removeFromParent() {
@@ -709,6 +715,7 @@ public class SceneComponent {
 
   private void remove(@NotNull SceneComponent component) {
     myChildren.remove(component);
+    myScene.needsRebuildList();
   }
 
   /**
@@ -866,6 +873,7 @@ public class SceneComponent {
     }
     myTargetProvider = targetProvider;
     myTargets.clear();
+    myScene.needsRebuildList();
     if (myTargetProvider != null) {
       myTargetProvider.createTargets(this, isParent).forEach(this::addTarget);
     }
@@ -882,6 +890,7 @@ public class SceneComponent {
 
   public void updateTargets(boolean isParent) {
     myTargets.clear();
+    myScene.needsRebuildList();
     if (myTargetProvider != null) {
       myTargetProvider.createTargets(this, isParent).forEach(this::addTarget);
     }
@@ -42,6 +42,7 @@ public class SceneContext {
   Long myTime;
   @SwingCoordinate int myMouseX = -1, myMouseY = -1;
   private boolean myShowOnlySelection = false;
+  private long myRepaintRequestCount;
 
   private SceneContext() {
     myTime = System.currentTimeMillis();
@@ -88,9 +89,18 @@ public class SceneContext {
    * Used to request Repaint
    */
   public void repaint() {
+    myRepaintRequestCount++;
+  }
 
+  /**
+   * Returns the number of repaints requested so far. Draw commands that animate request a repaint while they are painted, so
+   * a change of this count while painting means the painted content is not static.
+   */
+  public long getRepaintRequestCount() {
+    return myRepaintRequestCount;
   }
 
+
   @SwingCoordinate
   public int getSwingX(@AndroidDpCoordinate float x) {
     return (int) x;
@@ -225,6 +235,7 @@ public class SceneContext {
 
     @Override
     public void repaint() {
+      super.repaint();
       mySceneView.getSurface().repaint();
     }
 
@@ -15,10 +15,16 @@
  */
 package com.android.tools.idea.common.scene;
 
+import com.android.annotations.VisibleForTesting;
+
 import java.util.Arrays;
 
 /**
  * This class provides efficient detection of many objects
+ * <p>
+ * Once more than {@link #GRID_THRESHOLD} objects have been added, a query builds a uniform grid over the bounds of the objects
+ * so later queries only test the objects overlapping the cell under the cursor. Objects added after the grid has been built are
+ * inserted into it directly; the grid is only rebuilt after {@link #reset()} or when too many objects fall outside of it.
  */
 public class ScenePicker {
   private final static int MAX_DATA_SIZE = 10;
@@ -33,6 +39,32 @@ public class ScenePicker {
   HitElementListener mHitElementListener;
 
   private int mObjectCount = 0;
+  /** Number of objects tested by the last query */
+  private int mLastCandidateCount = 0;
+
+  /** Number of objects from which queries use the grid rather than testing every object */
+  private final static int GRID_THRESHOLD = 64;
+  /** Maximum number of columns and rows of the grid */
+  private final static int MAX_GRID_SIZE = 256;
+  /** Objects covering more cells than this are kept in a separate list rather than in every cell they cover */
+  private final static int MAX_CELLS_PER_OBJECT = 16;
+
+  private boolean mGridValid = false;
+  private int mGridLeft;
+  private int mGridTop;
+  private int mGridRight;
+  private int mGridBottom;
+  private int mCellSize;
+  private int mColumns;
+  private int mRows;
+  /** Indices of the objects overlapping each cell, in the order the objects were added */
+  private int[][] mCells = new int[0][];
+  private int[] mCellCounts = new int[0];
+  /** Indices of the objects not stored in the cells, in the order the objects were added */
+  private int[] mLargeObjects = new int[INITAL_OBJECT_STORE];
+  private int mLargeObjectCount = 0;
+  /** Number of large objects above which the grid is rebuilt, as the objects added after it was built do not fit in it */
+  private int mMaxLargeObjectCount = 0;
   private final static int OBJECT_LINE = 0;
   private final static int OBJECT_POINT = 1;
   private final static int OBJECT_CURVE = 2;
@@ -60,21 +92,156 @@ public class ScenePicker {
    * @param y location y
    */
   public void find(int x, int y) {
+    if (mObjectCount < GRID_THRESHOLD) {
+      mLastCandidateCount = mObjectCount;
+      for (int i = 0; i < mObjectCount; i++) {
+        notifyIfInRange(i, x, y);
+      }
+      return;
+    }
+    ensureGrid();
+    int[] cell = null;
+    int cellCount = 0;
+    int cellIndex = getCellIndex(x, y);
+    if (cellIndex >= 0) {
+      cell = mCells[cellIndex];
+      cellCount = mCellCounts[cellIndex];
+    }
+    mLastCandidateCount = cellCount + mLargeObjectCount;
+    // Merge the cell and the large objects so the listener is notified in the order the objects were added
+    int c = 0;
+    int l = 0;
+    while (c < cellCount || l < mLargeObjectCount) {
+      if (l == mLargeObjectCount || (c < cellCount && cell[c] < mLargeObjects[l])) {
+        notifyIfInRange(cell[c++], x, y);
+      }
+      else {
+        notifyIfInRange(mLargeObjects[l++], x, y);
+      }
+    }
+  }
+
+  @VisibleForTesting
+  int getLastCandidateCount() {
+    return mLastCandidateCount;
+  }
+
+  private void notifyIfInRange(int i, int x, int y) {
+    int p = i * 4;
+    int x1 = mRect[p++];
+    int y1 = mRect[p++];
+    int x2 = mRect[p++];
+    int y2 = mRect[p];
+    if (inRect(x, y, x1, y1, x2, y2)) {
+      SelectionEngine selector = myEngines[mTypes[i]];
+      if (selector.inRange(i, x, y)) {
+        mHitElementListener.over(mObjects[i], selector.distance());
+      }
+    }
+  }
+
+  /**
+   * Builds the grid if it has been invalidated since the last query
+   */
+  private void ensureGrid() {
+    if (mGridValid) {
+      return;
+    }
+    int left = Integer.MAX_VALUE;
+    int top = Integer.MAX_VALUE;
+    int right = Integer.MIN_VALUE;
+    int bottom = Integer.MIN_VALUE;
     for (int i = 0; i < mObjectCount; i++) {
       int p = i * 4;
-      int x1 = mRect[p++];
-      int y1 = mRect[p++];
-      int x2 = mRect[p++];
-      int y2 = mRect[p];
-      if (inRect(x, y, x1, y1, x2, y2)) {
-        SelectionEngine selector = myEngines[mTypes[i]];
-        if (selector.inRange(i, x, y)) {
-          mHitElementListener.over(mObjects[i], selector.distance());
+      left = Math.min(left, mRect[p]);
+      top = Math.min(top, mRect[p + 1]);
+      right = Math.max(right, mRect[p + 2]);
+      bottom = Math.max(bottom, mRect[p + 3]);
+    }
+    mGridLeft = left;
+    mGridTop = top;
+    mGridRight = right;
+    mGridBottom = bottom;
+    long width = (long)right - left + 1;
+    long height = (long)bottom - top + 1;
+    // Aim for about one object per cell
+    int cellSize = (int)Math.ceil(Math.sqrt((double)width * height / mObjectCount));
+    cellSize = Math.max(cellSize, (int)Math.ceil((double)Math.max(width, height) / MAX_GRID_SIZE));
+    mCellSize = Math.max(1, cellSize);
+    mColumns = (int)((width + mCellSize - 1) / mCellSize);
+    mRows = (int)((height + mCellSize - 1) / mCellSize);
+
+    int cellCount = mColumns * mRows;
+    if (mCells.length < cellCount) {
+      mCells = new int[cellCount][];
+      mCellCounts = new int[cellCount];
+    }
+    else {
+      Arrays.fill(mCellCounts, 0);
+    }
+    mLargeObjectCount = 0;
+    mGridValid = true;
+    for (int i = 0; i < mObjectCount; i++) {
+      addToGrid(i);
+    }
+    mMaxLargeObjectCount = mLargeObjectCount + MAX_CELLS_PER_OBJECT + mObjectCount / 4;
+  }
+
+  /**
+   * Adds the object at the given index to the grid. Objects must be added in increasing index order.
+   */
+  private void addToGrid(int object) {
+    int p = object * 4;
+    int x1 = mRect[p];
+    int y1 = mRect[p + 1];
+    int x2 = mRect[p + 2];
+    int y2 = mRect[p + 3];
+    if (x1 < mGridLeft || y1 < mGridTop || x2 > mGridRight || y2 > mGridBottom) {
+      addLargeObject(object);
+      return;
+    }
+    int column1 = (x1 - mGridLeft) / mCellSize;
+    int row1 = (y1 - mGridTop) / mCellSize;
+    int column2 = (x2 - mGridLeft) / mCellSize;
+    int row2 = (y2 - mGridTop) / mCellSize;
+    if ((column2 - column1 + 1) * (row2 - row1 + 1) > MAX_CELLS_PER_OBJECT) {
+      addLargeObject(object);
+      return;
+    }
+    for (int row = row1; row <= row2; row++) {
+      for (int column = column1; column <= column2; column++) {
+        int cell = row * mColumns + column;
+        int[] objects = mCells[cell];
+        int count = mCellCounts[cell];
+        if (objects == null) {
+          objects = mCells[cell] = new int[4];
+        }
+        else if (count == objects.length) {
+          objects = mCells[cell] = Arrays.copyOf(objects, count * 2);
         }
+        objects[count] = object;
+        mCellCounts[cell] = count + 1;
       }
     }
   }
 
+  private void addLargeObject(int object) {
+    if (mLargeObjectCount == mLargeObjects.length) {
+      mLargeObjects = Arrays.copyOf(mLargeObjects, mLargeObjectCount * 2);
+    }
+    mLargeObjects[mLargeObjectCount++] = object;
+  }
+
+  /**
+   * Returns the index of the cell containing the given location, or -1 if the location is outside of the grid
+   */
+  private int getCellIndex(int x, int y) {
+    if (x < mGridLeft || y < mGridTop || x > mGridRight || y > mGridBottom) {
+      return -1;
+    }
+    return ((y - mGridTop) / mCellSize) * mColumns + (x - mGridLeft) / mCellSize;
+  }
+
   /**
    * set the listener to be notified of the objects in range
    *
@@ -114,6 +281,7 @@ public class ScenePicker {
   public void reset() {
     mObjectCount = 0;
     mObjectDataUsed = 0;
+    mGridValid = false;
     Arrays.fill(mObjects, null);// delete references
   }
 
@@ -223,6 +391,10 @@ public class ScenePicker {
       mRect[off++] = y1;
       mRect[off++] = x2;
       mRect[off] = y2;
+      if (mGridValid) {
+        addToGrid(mObjectCount);
+        mGridValid = mLargeObjectCount <= mMaxLargeObjectCount;
+      }
     }
 
     boolean inRange(int object, int x, int y) {
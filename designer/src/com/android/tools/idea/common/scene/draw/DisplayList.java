@@ -31,8 +31,11 @@ import java.awt.*;
 import java.awt.geom.GeneralPath;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 
@@ -44,13 +47,20 @@ import java.util.function.Function;
 public class DisplayList {
   private final static boolean DEBUG = false;
   private ArrayList<DrawCommand> myCommands = new ArrayList<>();
+  /** Sorted tree of the commands, retained between paints until the list changes */
+  @Nullable private CommandSet mySortedCommands;
+  /** Whether any command of {@link #mySortedCommands} depends on the mouse position */
+  private boolean myHasMouseDependentCommands;
+  /** Whether the commands depending on the mouse position are painted after all the other commands of {@link #mySortedCommands} */
+  private boolean myMouseDependentCommandsAreLast;
 
   public void clear() {
     myCommands.clear();
+    mySortedCommands = null;
   }
 
-  public ArrayList<DrawCommand> getCommands() {
-    return myCommands;
+  public List<DrawCommand> getCommands() {
+    return Collections.unmodifiableList(myCommands);
   }
 
   /////////////////////////////////////////////////////////////////////////////
@@ -312,6 +322,7 @@ public class DisplayList {
 
   public void add(DrawCommand cmd) {
     myCommands.add(cmd);
+    mySortedCommands = null;
   }
 
   public UNClip addClip(SceneContext context, @AndroidDpCoordinate Rectangle r) {
@@ -320,7 +331,7 @@ public class DisplayList {
     int w = context.getSwingDimension(r.width);
     int h = context.getSwingDimension(r.height);
     Clip c = new Clip(l, t, w, h);
-    myCommands.add(c);
+    add(c);
     return new UNClip(c);
   }
 
@@ -329,7 +340,7 @@ public class DisplayList {
     int t = context.getSwingY(r.y);
     int w = context.getSwingDimension(r.width);
     int h = context.getSwingDimension(r.height);
-    myCommands.add(new Rect(l, t, w, h, color));
+    add(new Rect(l, t, w, h, color));
   }
 
   public void addRect(SceneContext context,
@@ -474,6 +485,37 @@ public class DisplayList {
       }
     }
 
+    /**
+     * Paints the commands that do or do not depend on the mouse position. Clips are always applied so the painted commands are
+     * clipped as they are by {@link #paint(Graphics2D, SceneContext)}.
+     */
+    @SuppressWarnings("ForLoopReplaceableByForEach")
+    void paint(Graphics2D g2, SceneContext sceneContext, boolean mouseDependent) {
+      for (int i = 0; i < myCommands.size(); i++) {
+        DrawCommand command = myCommands.get(i);
+        if (command instanceof CommandSet) {
+          ((CommandSet)command).paint(g2, sceneContext, mouseDependent);
+        }
+        else if (command instanceof Clip || command instanceof UNClip || command.dependsOnMousePosition() == mouseDependent) {
+          command.paint(g2, sceneContext);
+        }
+      }
+    }
+
+    /**
+     * Visits the commands in paint order, clips excluded.
+     */
+    void forEachInPaintOrder(Consumer<DrawCommand> consumer) {
+      for (DrawCommand command : myCommands) {
+        if (command instanceof CommandSet) {
+          ((CommandSet)command).forEachInPaintOrder(consumer);
+        }
+        else if (!(command instanceof Clip) && !(command instanceof UNClip)) {
+          consumer.accept(command);
+        }
+      }
+    }
+
     public void print(String s) {
       myCommands.forEach(command -> {
         if (command instanceof CommandSet) {
@@ -509,9 +551,7 @@ public class DisplayList {
       System.out.println("<");
     }
     Graphics2D g = (Graphics2D)g2.create();
-    DrawCommand[] array = myCommands.toArray(new DrawCommand[myCommands.size()]);
-    CommandSet set = new CommandSet(array, 0, array.length - 1);
-    set.sort();
+    CommandSet set = getSortedCommands();
     if (DEBUG) {
       set.print(">");
       System.out.println("-end-");
@@ -520,6 +560,63 @@ public class DisplayList {
     g.dispose();
   }
 
+  /**
+   * Paints the commands that do not depend on the mouse position, when {@code mouseDependent} is false, or only the ones that do.
+   * Painting both on top of each other is only equivalent to {@link #paint(Graphics2D, SceneContext)} if
+   * {@link #canPaintMouseDependentCommandsLast()} is true.
+   */
+  public void paint(Graphics2D g2, SceneContext sceneContext, boolean mouseDependent) {
+    if (myCommands.isEmpty()) {
+      return;
+    }
+    Graphics2D g = (Graphics2D)g2.create();
+    getSortedCommands().paint(g, sceneContext, mouseDependent);
+    g.dispose();
+  }
+
+  /**
+   * Returns true if some commands depend on the mouse position (see {@link DrawCommand#dependsOnMousePosition()}).
+   */
+  public boolean hasMouseDependentCommands() {
+    getSortedCommands();
+    return myHasMouseDependentCommands;
+  }
+
+  /**
+   * Returns true if the commands that depend on the mouse position are all painted after the other ones, so they can be painted
+   * over a raster of the other ones.
+   */
+  public boolean canPaintMouseDependentCommandsLast() {
+    getSortedCommands();
+    return myMouseDependentCommandsAreLast;
+  }
+
+  /**
+   * Returns the commands grouped by clip and sorted by level. The result is kept until the list is modified so unchanged lists
+   * are not sorted again on every paint.
+   */
+  private CommandSet getSortedCommands() {
+    if (mySortedCommands == null) {
+      DrawCommand[] array = myCommands.toArray(new DrawCommand[myCommands.size()]);
+      CommandSet set = new CommandSet(array, 0, array.length - 1);
+      set.sort();
+      boolean[] hasMouseDependent = {false};
+      boolean[] mouseDependentAreLast = {true};
+      set.forEachInPaintOrder(command -> {
+        if (command.dependsOnMousePosition()) {
+          hasMouseDependent[0] = true;
+        }
+        else if (hasMouseDependent[0]) {
+          mouseDependentAreLast[0] = false;
+        }
+      });
+      myHasMouseDependentCommands = hasMouseDependent[0];
+      myMouseDependentCommandsAreLast = mouseDependentAreLast[0];
+      mySortedCommands = set;
+    }
+    return mySortedCommands;
+  }
+
   @VisibleForTesting
   public String generateSortedDisplayList(SceneContext sceneContext) {
     DrawCommand[] array = myCommands.toArray(new DrawCommand[myCommands.size()]);
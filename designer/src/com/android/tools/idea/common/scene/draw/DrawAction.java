@@ -62,6 +62,12 @@ public class DrawAction extends DrawRegion {
     mySrcHeight = src_height;
   }
 
+  @Override
+  public boolean dependsOnMousePosition() {
+    // Only painted when the mouse is close to the source
+    return true;
+  }
+
   @Override
   public void paint(Graphics2D g, SceneContext sceneContext) {
     int r = (int)(width * 0.3);
@@ -42,6 +42,15 @@ public interface DrawCommand extends Comparable {
   void paint(Graphics2D g, SceneContext sceneContext);
   String serialize();
 
+  /**
+   * Returns true if the command paints differently depending on {@link SceneContext#getMouseX()} and
+   * {@link SceneContext#getMouseY()}. Such commands are painted on every paint rather than being rasterized with the rest of an
+   * unchanged display list.
+   */
+  default boolean dependsOnMousePosition() {
+    return false;
+  }
+
   @Override
   default int compareTo(@NotNull Object o) {
     return Integer.compare(getLevel(), ((DrawCommand)o).getLevel());
@@ -47,6 +47,12 @@ public class DrawActionHandleDrag extends NavBaseDrawCommand {
     return DRAW_ACTION_HANDLE_DRAG;
   }
 
+  @Override
+  public boolean dependsOnMousePosition() {
+    // The line ends at the mouse
+    return true;
+  }
+
   @Override
   @NotNull
   protected Object[] getProperties() {
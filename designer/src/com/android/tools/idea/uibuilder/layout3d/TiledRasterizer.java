@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.uibuilder.layout3d;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Renders a {@link TriData} with the z-buffer rasterizers of {@link Rasterize}, splitting the screen in tiles which are
+ * rendered in parallel.
+ * <p>
+ * The triangles are first binned to the tiles their bounding box overlaps, in one pass. Each tile then clears its part of
+ * the buffers and draws its triangles in their original order, clipped to the tile, so the image is identical to the one
+ * drawn by {@link Rasterize#toZBuff(float[], int[], int, int, TriData, int[], int, int, double[])} or
+ * {@link Rasterize#simple}. The bins are kept between frames so rendering the same data again does not allocate.
+ */
+public class TiledRasterizer {
+  static final int TILE_SIZE = 64;
+
+  /** Below this number of triangles the tiles are rendered on the calling thread */
+  private static final int PARALLEL_THRESHOLD = 256;
+
+  private int myTilesX;
+  private int myTilesY;
+  /** Indexes (in {@link TriData#myIndex}) of the first vertex of the triangles overlapping each tile */
+  private int[][] myBins = new int[0][];
+  private int[] myBinSizes = new int[0];
+
+  /**
+   * Clears the buffers and draws the given triangles, textured if a texture is given and flat shaded otherwise.
+   *
+   * @param zbuff   the z-buffer, of size w * h
+   * @param rgb     the image is output here
+   * @param w       the width of the image
+   * @param h       the height of the image
+   * @param tri     the transformed triangles
+   * @param texture the texture used to render the triangles with, or null to use {@link Rasterize#simple}
+   * @param tWidth  the width of the texture
+   * @param tHeight the height of the texture
+   * @param matrix  the matrix that defines the transform
+   */
+  public void render(float[] zbuff, int[] rgb, int w, int h, TriData tri, int[] texture, int tWidth, int tHeight, double[] matrix) {
+    bin(w, h, tri);
+    IntStream tiles = IntStream.range(0, myTilesX * myTilesY);
+    if (tri.myIndex.length / 3 >= PARALLEL_THRESHOLD) {
+      tiles = tiles.parallel();
+    }
+    tiles.forEach(tile -> renderTile(tile, zbuff, rgb, w, h, tri, texture, tWidth, tHeight, matrix));
+  }
+
+  private void bin(int w, int h, TriData tri) {
+    int tilesX = (w + TILE_SIZE - 1) / TILE_SIZE;
+    int tilesY = (h + TILE_SIZE - 1) / TILE_SIZE;
+    if (tilesX * tilesY != myBins.length) {
+      myBins = new int[tilesX * tilesY][16];
+      myBinSizes = new int[tilesX * tilesY];
+    }
+    myTilesX = tilesX;
+    myTilesY = tilesY;
+    Arrays.fill(myBinSizes, 0);
+
+    float[] vert = tri.myVert;
+    int[] index = tri.myIndex;
+    for (int i = 0; i < index.length; i += 3) {
+      int p1 = index[i];
+      int p2 = index[i + 1];
+      int p3 = index[i + 2];
+      // Same bounds as the rasterizers, which use 28.4 fixed-point coordinates
+      int minx = (Math.min(fixed(vert[p1]), Math.min(fixed(vert[p2]), fixed(vert[p3]))) + 0xF) >> 4;
+      int maxx = (Math.max(fixed(vert[p1]), Math.max(fixed(vert[p2]), fixed(vert[p3]))) + 0xF) >> 4;
+      int miny = (Math.min(fixed(vert[p1 + 1]), Math.min(fixed(vert[p2 + 1]), fixed(vert[p3 + 1]))) + 0xF) >> 4;
+      int maxy = (Math.max(fixed(vert[p1 + 1]), Math.max(fixed(vert[p2 + 1]), fixed(vert[p3 + 1]))) + 0xF) >> 4;
+      minx = Math.max(minx, 0);
+      miny = Math.max(miny, 0);
+      maxx = Math.min(maxx, w);
+      maxy = Math.min(maxy, h);
+      if (minx >= maxx || miny >= maxy) {
+        continue;
+      }
+      int lastTileX = (maxx - 1) / TILE_SIZE;
+      int lastTileY = (maxy - 1) / TILE_SIZE;
+      for (int tileY = miny / TILE_SIZE; tileY <= lastTileY; tileY++) {
+        for (int tileX = minx / TILE_SIZE; tileX <= lastTileX; tileX++) {
+          add(tileX + tileY * tilesX, i);
+        }
+      }
+    }
+  }
+
+  private static int fixed(float coordinate) {
+    return (int)(16.0f * coordinate + .5f);
+  }
+
+  private void add(int tile, int triangle) {
+    int size = myBinSizes[tile];
+    if (size == myBins[tile].length) {
+      myBins[tile] = Arrays.copyOf(myBins[tile], size * 2);
+    }
+    myBins[tile][size] = triangle;
+    myBinSizes[tile] = size + 1;
+  }
+
+  private void renderTile(int tile, float[] zbuff, int[] rgb, int w, int h, TriData tri,
+                          int[] texture, int tWidth, int tHeight, double[] matrix) {
+    int clipMinX = (tile % myTilesX) * TILE_SIZE;
+    int clipMinY = (tile / myTilesX) * TILE_SIZE;
+    int clipMaxX = Math.min(clipMinX + TILE_SIZE, w);
+    int clipMaxY = Math.min(clipMinY + TILE_SIZE, h);
+    for (int y = clipMinY; y < clipMaxY; y++) {
+      Arrays.fill(zbuff, y * w + clipMinX, y * w + clipMaxX, Float.MAX_VALUE);
+      Arrays.fill(rgb, y * w + clipMinX, y * w + clipMaxX, 0xFF000000);
+    }
+
+    float[] vert = tri.myVert;
+    float[] uv = tri.myTexture_uv;
+    int[] bin = myBins[tile];
+    for (int j = 0, size = myBinSizes[tile]; j < size; j++) {
+      int i = bin[j];
+      int p1 = tri.myIndex[i];
+      int p2 = tri.myIndex[i + 1];
+      int p3 = tri.myIndex[i + 2];
+      int type = (tri.mySurfaceType != null) ? tri.mySurfaceType[i / 3] : 0;
+      if (texture != null && type == 1) {
+        Rasterize.render_perspectiveAffine(zbuff, rgb, w, h,
+                                           vert[p1], vert[p1 + 1], vert[p1 + 2],
+                                           vert[p2], vert[p2 + 1], vert[p2 + 2],
+                                           vert[p3], vert[p3 + 1], vert[p3 + 2],
+                                           uv[p1], uv[p1 + 1],
+                                           uv[p2], uv[p2 + 1],
+                                           uv[p3], uv[p3 + 1],
+                                           texture, tWidth, tHeight, matrix,
+                                           clipMinX, clipMinY, clipMaxX, clipMaxY);
+      }
+      else {
+        Rasterize.flat(zbuff, rgb, w, h,
+                       vert[p1], vert[p1 + 1], vert[p1 + 2],
+                       vert[p2], vert[p2 + 1], vert[p2 + 2],
+                       vert[p3], vert[p3 + 1], vert[p3 + 2],
+                       (type == 0) ? Rasterize.BLUE : Rasterize.GRAY,
+                       clipMinX, clipMinY, clipMaxX, clipMaxY);
+      }
+    }
+  }
+}
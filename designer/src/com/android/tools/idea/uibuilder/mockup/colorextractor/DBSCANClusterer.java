@@ -15,8 +15,10 @@
  */
 package com.android.tools.idea.uibuilder.mockup.colorextractor;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 /**
  * A Cluster using the DBSCAN algorithm.
@@ -29,24 +31,32 @@ import java.util.List;
  * by:  Martin Ester, Hans-Peter Kriegel, Jörg Sander, Xiaowei Xu
  *
  * http://www2.cs.uh.edu/~ceick/7363/Papers/dbscan.pdf
+ *
+ * Identical points are merged into a single weighted point before clustering, since images usually contain many pixels of the
+ * same color. The neighborhood queries use a grid of cells of size eps over the first three coordinates, so only the points in
+ * the 27 cells around a point are compared to it. The core points are found in parallel, then the clusters are expanded from
+ * them.
  */
 @SuppressWarnings("ForLoopReplaceableByForEach")
 public class DBSCANClusterer implements Clusterer{
 
-  private int myVisited = 0;
+  private static final int UNCLASSIFIED = -1;
+  private static final int NOISE = -2;
 
-  private enum PointType {
-    NOISE,
-    BORDER,
-    CORE
-  }
+  /**
+   * Number of coordinates used to index the points in the grid
+   */
+  private static final int GRID_DIMENSION = 3;
+
+  /**
+   * Number of bits used for each coordinate of a cell in its key
+   */
+  private static final int CELL_BITS = 21;
+  private static final long CELL_MASK = (1L << CELL_BITS) - 1;
 
   private float myEps;
   private int myMinPts;
 
-  private List<List<double[]>> myClusters = new ArrayList<>();
-
-  private PointType[] myPointTypes;
   ProgressListener listener;
 
   /**
@@ -72,106 +82,118 @@ public class DBSCANClusterer implements Clusterer{
     this.listener = listener;
   }
 
+  /**
+   * Partition the input points in clusters. Each cluster contains the input points (with their duplicates) in their input order.
+   * The points which are not in any cluster are noise.
+   */
   @Override
   public List<List<double[]>> cluster(double[][] input) {
-    List<double[]> cluster = new ArrayList<>();
-    myPointTypes = new PointType[input.length];
+    // Merge the identical points
+    Map<PointKey, Integer> uniqueIndexes = new HashMap<>();
+    List<double[]> uniquePoints = new ArrayList<>();
+    int[] uniqueIndexOfInput = new int[input.length];
+    for (int i = 0; i < input.length; i++) {
+      Integer index = uniqueIndexes.putIfAbsent(new PointKey(input[i]), uniquePoints.size());
+      if (index == null) {
+        index = uniquePoints.size();
+        uniquePoints.add(input[i]);
+      }
+      uniqueIndexOfInput[i] = index;
+    }
+    double[][] points = uniquePoints.toArray(new double[uniquePoints.size()][]);
+    int[] weights = new int[points.length];
+    for (int i = 0; i < input.length; i++) {
+      weights[uniqueIndexOfInput[i]]++;
+    }
+
+    Grid grid = new Grid(points, myEps);
+    boolean[] core = findCorePoints(points, weights, grid);
+    int[] labels = expandClusters(points, weights, core, grid);
 
+    List<List<double[]>> clusters = new ArrayList<>();
     for (int i = 0; i < input.length; i++) {
-      if (myPointTypes[i] == null) { // If point is unclassified
-        if (expandCluster(input, i, cluster)) {
-          if (!cluster.isEmpty()) {
-            myClusters.add(cluster);
-            myVisited += cluster.size();
-            notifyProgress();
-          }
-          cluster = new ArrayList<>();
+      int label = labels[uniqueIndexOfInput[i]];
+      if (label >= 0) {
+        while (clusters.size() <= label) {
+          clusters.add(new ArrayList<>());
         }
+        clusters.get(label).add(input[i]);
       }
     }
-    return myClusters;
+    return clusters;
   }
 
   /**
-   * Use the point at pointIndex as a a core point and find all other
-   * points in its neighborhood.
-   * @param input The data points
-   * @param pointIndex The index of the point to expand the cluster from
-   * @param cluster The cluster to expand
-   * @return True if the cluster has been expanded
+   * A point is a core point if it has at least minPts neighbors at a distance less or equal to eps, not counting itself.
+   * The duplicates of a point are its neighbors.
    */
-  private boolean expandCluster(double[][] input, int pointIndex, List<double[]> cluster) {
-    List<Integer> seeds = regionQuery(input, pointIndex);
-
-    if (seeds.size() < myMinPts) {
-      // Points are considered ad noise, we do not add them to the cluster
-      myPointTypes[pointIndex] = PointType.NOISE;
-      for (int i = 0; i < seeds.size(); i++) {
-        myPointTypes[seeds.get(i)] = PointType.NOISE;
+  private boolean[] findCorePoints(double[][] points, int[] weights, Grid grid) {
+    boolean[] core = new boolean[points.length];
+    AtomicInteger done = new AtomicInteger();
+    int progressStep = Math.max(1, points.length / 100);
+    IntStream.range(0, points.length).parallel().forEach(pointIndex -> {
+      int[] neighbors = new int[1];
+      grid.forEachNeighbor(points, pointIndex, neighbor -> neighbors[0] += weights[neighbor]);
+      core[pointIndex] = neighbors[0] - 1 >= myMinPts;
+      int count = done.incrementAndGet();
+      if (count % progressStep == 0) {
+        notifyProgress(0.5f * count / points.length);
       }
-      return false;
+    });
+    return core;
+  }
+
+  /**
+   * Expand the clusters from each unclassified core point to all the points reachable from it through other core points.
+   *
+   * @return the index of the cluster of each point, or {@link #NOISE}
+   */
+  private int[] expandClusters(double[][] points, int[] weights, boolean[] core, Grid grid) {
+    int[] labels = new int[points.length];
+    Arrays.fill(labels, UNCLASSIFIED);
+    int clusterCount = 0;
+    int visited = 0;
+    int total = 0;
+    for (int weight : weights) {
+      total += weight;
     }
-    else {
-      // The current point has a neighborhood so its a core and
-      // all its neighbors are border points
-      cluster.add(input[pointIndex]);
-      myPointTypes[pointIndex] = PointType.CORE;
-      for (int i = 0; i < seeds.size(); i++) {
-        cluster.add(input[seeds.get(i)]);
-        myPointTypes[seeds.get(i)] = PointType.BORDER;
+
+    ArrayDeque<Integer> seeds = new ArrayDeque<>();
+    for (int pointIndex = 0; pointIndex < points.length; pointIndex++) {
+      if (labels[pointIndex] != UNCLASSIFIED) {
+        continue;
+      }
+      if (!core[pointIndex]) {
+        // Points are considered as noise unless a cluster reaches them later
+        labels[pointIndex] = NOISE;
+        continue;
       }
 
-      // We now expand the search to all the neighbors,
-      // if they have also have neighbors, they become core point
+      int cluster = clusterCount++;
+      labels[pointIndex] = cluster;
+      seeds.add(pointIndex);
       while (!seeds.isEmpty()) {
-        int currentP = seeds.get(0);
-        List<Integer> result = regionQuery(input, currentP);
-
-        if (result.size() >= myMinPts) {
-          myPointTypes[currentP] = PointType.CORE;
-          for (int i = 0; i < result.size(); i++) {
-            Integer resultP = result.get(i);
-            if (myPointTypes[resultP] == null || myPointTypes[resultP] == PointType.NOISE) {
-              // if the point is not in a cluster yet
-              if (myPointTypes[resultP] == null) {
-                // if the point has never been visited, we add it to the neighborhood
-                seeds.add(resultP);
-              }
-              myPointTypes[resultP] = PointType.BORDER;
-              cluster.add(input[resultP]);
+        int current = seeds.poll();
+        visited += weights[current];
+        grid.forEachNeighbor(points, current, neighbor -> {
+          if (labels[neighbor] == UNCLASSIFIED || labels[neighbor] == NOISE) {
+            // Only the core points extend the cluster further, the others are its border
+            if (core[neighbor]) {
+              seeds.add(neighbor);
             }
+            labels[neighbor] = cluster;
           }
-        }
-        seeds.remove(0);
+        });
       }
-      return true;
+      notifyProgress(0.5f + 0.5f * visited / total);
     }
+    return labels;
   }
 
-  private void notifyProgress() {
+  private void notifyProgress(float progress) {
     if (listener != null) {
-      listener.progress(myVisited / (float)myPointTypes.length);
-    }
-  }
-
-  /**
-   * Find all the point at a distance less or equal to eps.
-   *
-   * The distance measure is the euclidean distance.
-   * @param input The input data.
-   * @param pointIndex The index of the point in input that we have to find the neighbors of.
-   * @return A list of index of the point that are neighbor of input[pointIndex]
-   */
-  private List<Integer> regionQuery(double[][] input, int pointIndex) {
-    List<Integer> seeds = new ArrayList<>();
-    double[] current = input[pointIndex];
-    for (int i = 0; i < input.length; i++) {
-      float epsSquare = myEps * myEps;
-      if (input[i] != current && distance(input[i], current) <= epsSquare) {
-        seeds.add(i);
-      }
+      listener.progress(progress);
     }
-    return seeds;
   }
 
   /**
@@ -182,9 +204,93 @@ public class DBSCANClusterer implements Clusterer{
    */
   private static double distance(double[] neighbor, double[] point) {
     double squares = 0;
-    for (int i = 0; i < Math.min(neighbor.length, point.length); i++) {
-      squares += Math.pow(neighbor[i] - point[i], 2);
+    for (int i = 0, n = Math.min(neighbor.length, point.length); i < n; i++) {
+      double delta = neighbor[i] - point[i];
+      squares += delta * delta;
     }
     return squares;
   }
+
+  /**
+   * Uniform grid of cells of size eps, used to only compare a point to the points in the cells around it
+   */
+  private static final class Grid {
+    private final Map<Long, int[]> myCells = new HashMap<>();
+    private final long[] myCellOfPoint;
+    private final double myCellSize;
+    private final float myEpsSquare;
+
+    private Grid(double[][] points, float eps) {
+      // With eps = 0 only identical points are neighbors, any cell size works
+      myCellSize = eps > 0 ? eps : 1;
+      myEpsSquare = eps * eps;
+      myCellOfPoint = new long[points.length];
+      Map<Long, List<Integer>> cells = new HashMap<>();
+      for (int i = 0; i < points.length; i++) {
+        long[] cell = new long[GRID_DIMENSION];
+        for (int d = 0; d < Math.min(GRID_DIMENSION, points[i].length); d++) {
+          cell[d] = (long)Math.floor(points[i][d] / myCellSize);
+        }
+        myCellOfPoint[i] = key(cell[0], cell[1], cell[2]);
+        cells.computeIfAbsent(myCellOfPoint[i], key -> new ArrayList<>()).add(i);
+      }
+      cells.forEach((key, indexes) -> myCells.put(key, indexes.stream().mapToInt(Integer::intValue).toArray()));
+    }
+
+    /**
+     * Distinct cells may share a key when the coordinates overflow {@link #CELL_BITS}, which only adds candidates
+     */
+    private static long key(long x, long y, long z) {
+      return ((x & CELL_MASK) << (2 * CELL_BITS)) | ((y & CELL_MASK) << CELL_BITS) | (z & CELL_MASK);
+    }
+
+    /**
+     * Call the consumer with all the points at a distance less or equal to eps from the given point, including itself
+     */
+    private void forEachNeighbor(double[][] points, int pointIndex, IntConsumer consumer) {
+      double[] point = points[pointIndex];
+      long cell = myCellOfPoint[pointIndex];
+      long x = cell >> (2 * CELL_BITS) & CELL_MASK;
+      long y = cell >> CELL_BITS & CELL_MASK;
+      long z = cell & CELL_MASK;
+      for (long dx = -1; dx <= 1; dx++) {
+        for (long dy = -1; dy <= 1; dy++) {
+          for (long dz = -1; dz <= 1; dz++) {
+            int[] candidates = myCells.get(key(x + dx, y + dy, z + dz));
+            if (candidates == null) {
+              continue;
+            }
+            for (int i = 0; i < candidates.length; i++) {
+              if (distance(points[candidates[i]], point) <= myEpsSquare) {
+                consumer.accept(candidates[i]);
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Key comparing points by value
+   */
+  private static final class PointKey {
+    private final double[] myPoint;
+    private final int myHashCode;
+
+    private PointKey(double[] point) {
+      myPoint = point;
+      myHashCode = Arrays.hashCode(point);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof PointKey && Arrays.equals(myPoint, ((PointKey)o).myPoint);
+    }
+
+    @Override
+    public int hashCode() {
+      return myHashCode;
+    }
+  }
 }
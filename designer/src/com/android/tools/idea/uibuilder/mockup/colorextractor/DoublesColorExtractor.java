@@ -116,11 +116,14 @@ public abstract class DoublesColorExtractor extends ColorExtractor {
       // Get RGB value of the pixel
       int rgb = pixels[i];
 
-      // Prepare input data
-      new Color(rgb).getColorComponents(Colors.getLabColorSpace(), tempLAB);
-      double[] LABDoubles = {tempLAB[0], tempLAB[1], tempLAB[2]};
-      labToRgb.put(Arrays.hashCode(LABDoubles), rgb);
-      rgbToLab.put(rgb, LABDoubles);
+      // Prepare input data. Images usually contain many pixels of the same color, which only need to be converted once.
+      double[] LABDoubles = rgbToLab.get(rgb);
+      if (LABDoubles == null) {
+        new Color(rgb).getColorComponents(Colors.getLabColorSpace(), tempLAB);
+        LABDoubles = new double[]{tempLAB[0], tempLAB[1], tempLAB[2]};
+        labToRgb.put(Arrays.hashCode(LABDoubles), rgb);
+        rgbToLab.put(rgb, LABDoubles);
+      }
       clusterInput.add(LABDoubles);
     }
     return clusterInput;
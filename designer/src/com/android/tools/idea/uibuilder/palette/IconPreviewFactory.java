@@ -15,53 +15,91 @@
  */
 package com.android.tools.idea.uibuilder.palette;
 
+import com.android.annotations.VisibleForTesting;
+import com.android.ide.common.rendering.api.ItemResourceValue;
 import com.android.ide.common.rendering.api.SessionParams;
+import com.android.ide.common.rendering.api.StyleResourceValue;
+import com.android.ide.common.resources.ResourceResolver;
 import com.android.ide.common.rendering.api.ViewInfo;
 import com.android.resources.ResourceFolderType;
-import com.android.tools.adtui.common.SwingCoordinate;
+import com.android.sdklib.IAndroidTarget;
+import com.android.sdklib.devices.Device;
+import com.android.sdklib.devices.Screen;
+import com.android.sdklib.devices.State;
 import com.android.tools.idea.common.model.AndroidCoordinate;
-import com.android.tools.idea.common.model.Coordinates;
 import com.android.tools.idea.common.model.NlComponent;
 import com.android.tools.idea.common.model.NlModel;
 import com.android.tools.idea.configurations.Configuration;
 import com.android.tools.idea.rendering.*;
+import com.android.tools.idea.res.AppResourceRepository;
+import com.android.tools.idea.res.ResourceHelper;
 import com.android.tools.idea.uibuilder.api.InsertType;
 import com.android.tools.idea.uibuilder.model.*;
+import com.android.tools.idea.util.LruFileStore;
 import com.android.tools.idea.common.surface.SceneView;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import com.intellij.ide.highlighter.XmlFileType;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.Ref;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiFileFactory;
 import com.intellij.psi.XmlElementFactory;
 import com.intellij.psi.xml.XmlTag;
 import com.intellij.util.IncorrectOperationException;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import com.intellij.util.ui.UIUtil;
 import org.jetbrains.android.facet.AndroidFacet;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.awt.image.RasterFormatException;
+import java.io.File;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import static com.android.SdkConstants.ANDROID_STYLE_RESOURCE_PREFIX;
+import static com.android.SdkConstants.DOT_PNG;
 import static com.android.tools.idea.uibuilder.api.PaletteComponentHandler.NO_PREVIEW;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * IconPreviewFactory generates a preview of certain palette components.
  * The images are rendered from preview.xml and are used as an alternate representation on
  * the palette i.e. a button is rendered as the SDK button would look like on the target device.
+ * <p>
+ * The previews of a whole palette are rendered in the background by {@link #load}, in a single layoutlib session for the
+ * theme, API level and device of the layout. They are stored on disk keyed by the resolved theme, API level, device and preview
+ * XML so later sessions do not have to render them again. The store is bounded by {@link #MAX_STORE_SIZE_BYTES}.
  */
 public class IconPreviewFactory implements Disposable {
   private static final Logger LOG = Logger.getInstance(IconPreviewFactory.class);
   @AndroidCoordinate
   private static final int SHADOW_SIZE = 6;
+  /**
+   * Space kept right and below each preview for its shadow. Previews are rendered at the resolution of the device, independently of
+   * the zoom level of the surface, so this is in device pixels too.
+   */
+  @AndroidCoordinate
+  private static final int SHADOW_INCREMENT = 1 + SHADOW_SIZE;
   private static final String PREVIEW_PLACEHOLDER_FILE = "preview.xml";
   private static final String CONTAINER_ID = "TopLevelContainer";
   private static final String LINEAR_LAYOUT = "<LinearLayout\n" +
@@ -73,9 +111,53 @@ public class IconPreviewFactory implements Disposable {
                                               "    android:orientation=\"vertical\">\n" +
                                               "  %2$s\n" +
                                               "</LinearLayout>\n";
+  /** Wraps each component of a batch so the shadow below a component does not overlap the next one */
+  private static final String BATCH_ITEM = "<FrameLayout\n" +
+                                           "    android:layout_width=\"match_parent\"\n" +
+                                           "    android:layout_height=\"wrap_content\"\n" +
+                                           "    android:paddingBottom=\"%1$dpx\">\n" +
+                                           "  %2$s\n" +
+                                           "</FrameLayout>\n";
+  private static final String STORE_DIRECTORY = "caches" + File.separator + "palette_previews";
+  @VisibleForTesting static final long MAX_STORE_SIZE_BYTES = 16 * 1024 * 1024;
+  private static final int MAX_THEME_DEPTH = 50;
 
   private RenderTask myRenderTask;
   public long myRenderTimeoutSeconds = 1L;
+  public long myBatchRenderTimeoutSeconds = 20L;
+
+  /** Previews which are ready, by {@link #getPreviewKey preview key} */
+  private final Map<String, BufferedImage> myPreviews = new ConcurrentHashMap<>();
+
+  /** Keys of the previews being loaded or rendered in the background */
+  private final Set<String> myPendingKeys = ConcurrentHashMap.newKeySet();
+
+  @NotNull private final Executor myExecutor;
+
+  /** Store of the rendered previews, or null to not store them */
+  @Nullable private final LruFileStore myStore;
+  private final long myMaxStoreSizeBytes;
+
+  /** Hash of the attributes of the theme previews were last requested for, and what it was computed from */
+  @Nullable private String myThemeHash;
+  @Nullable private String myThemeHashSource;
+
+  private volatile boolean myDisposed;
+
+  public IconPreviewFactory() {
+    this(ApplicationManager.getApplication().isUnitTestMode()
+         ? MoreExecutors.directExecutor()
+         : AppExecutorUtil.createBoundedApplicationPoolExecutor("IconPreviewFactory", 1),
+         ApplicationManager.getApplication().isUnitTestMode() ? null : new File(PathManager.getSystemPath(), STORE_DIRECTORY),
+         MAX_STORE_SIZE_BYTES);
+  }
+
+  @VisibleForTesting
+  IconPreviewFactory(@NotNull Executor executor, @Nullable File storeDirectory, long maxStoreSizeBytes) {
+    myExecutor = executor;
+    myStore = storeDirectory != null ? new LruFileStore(storeDirectory, DOT_PNG) : null;
+    myMaxStoreSizeBytes = maxStoreSizeBytes;
+  }
 
   @Nullable
   private RenderTask getRenderTask(Configuration configuration) {
@@ -84,51 +166,49 @@ public class IconPreviewFactory implements Disposable {
         myRenderTask.dispose();
       }
 
-      AndroidFacet facet = AndroidFacet.getInstance(configuration.getModule());
-      if (facet == null) {
-        return null;
-      }
-      RenderService renderService = RenderService.getInstance(facet);
-      RenderLogger logger = renderService.createLogger();
-      myRenderTask = renderService.createTask(null, configuration, logger, null);
+      myRenderTask = createRenderTask(configuration);
     }
 
     return myRenderTask;
   }
 
+  @Nullable
+  private static RenderTask createRenderTask(@NotNull Configuration configuration) {
+    AndroidFacet facet = AndroidFacet.getInstance(configuration.getModule());
+    if (facet == null) {
+      return null;
+    }
+    RenderService renderService = RenderService.getInstance(facet);
+    RenderLogger logger = renderService.createLogger();
+    return renderService.createTask(null, configuration, logger, null);
+  }
+
   /**
    * Return a component image to display while dragging a component from the palette.
-   * Return null if such an image cannot be rendered. The palette must provide a fallback in this case.
+   * Return null if such an image cannot be rendered, or if it is still being rendered in the background by {@link #load}.
+   * The palette must provide a fallback in this case.
    */
   @Nullable
   public BufferedImage renderDragImage(@NotNull Palette.Item item, @NotNull SceneView sceneView) {
-    XmlElementFactory elementFactory = XmlElementFactory.getInstance(sceneView.getModel().getProject());
     String xml = item.getDragPreviewXml();
     if (xml.equals(NO_PREVIEW)) {
       return null;
     }
 
-    XmlTag tag;
-
-    try {
-      tag = elementFactory.createTagFromText(xml);
-    }
-    catch (IncorrectOperationException exception) {
-      return null;
-    }
-
     NlModel model = sceneView.getModel();
+    String key = getPreviewKey(model.getConfiguration(), xml);
+    BufferedImage preview = myPreviews.get(key);
+    if (preview != null || myPendingKeys.contains(key)) {
+      return preview;
+    }
 
-    NlComponent component = ApplicationManager.getApplication()
-      .runWriteAction((Computable<NlComponent>)() -> NlModelHelperKt.createComponent(model, sceneView, tag, null, null, InsertType.CREATE_PREVIEW));
-
-    if (component == null) {
+    String componentXml = createComponentXml(sceneView, xml);
+    if (componentXml == null) {
       return null;
     }
 
-
     // Some components require a parent to render correctly.
-    xml = String.format(LINEAR_LAYOUT, CONTAINER_ID, component.getTag().getText());
+    xml = String.format(LINEAR_LAYOUT, CONTAINER_ID, componentXml);
 
     RenderResult result = renderImage(myRenderTimeoutSeconds, getRenderTask(model.getConfiguration()), xml);
     if (result == null || !result.hasImage()) {
@@ -145,28 +225,266 @@ public class IconPreviewFactory implements Disposable {
       return null;
     }
     ViewInfo view = infos.get(0);
-    if (image.getHeight() < view.getBottom() || image.getWidth() < view.getRight() ||
-    view.getBottom() <= view.getTop() || view.getRight() <= view.getLeft()) {
-      return null;
-    }
-    @SwingCoordinate
-    int shadowIncrement = 1 + Coordinates.getSwingDimension(sceneView, SHADOW_SIZE);
 
     BufferedImage imageCopy = image.getCopy();
     if (imageCopy == null) {
       return null;
     }
+    preview = cropPreview(imageCopy, view.getLeft(), view.getTop(), view.getRight(), view.getBottom());
+    if (preview != null) {
+      myPreviews.put(key, preview);
+    }
+    return preview;
+  }
+
+  /**
+   * Loads the previews of the given items in the background. Previews stored by an earlier session are read from disk and the
+   * others are rendered together, in a single layoutlib session, then stored. Until the preview of an item is ready,
+   * {@link #renderDragImage} returns null for it and the palette falls back to the item icon.
+   */
+  @NotNull
+  public ListenableFuture<Void> load(@NotNull SceneView sceneView, @NotNull List<Palette.Item> items) {
+    Configuration configuration = sceneView.getModel().getConfiguration();
+    Map<String, File> stored = new LinkedHashMap<>();
+    Map<String, String> toRender = new LinkedHashMap<>();
+    for (Palette.Item item : items) {
+      String xml = item.getDragPreviewXml();
+      if (xml.equals(NO_PREVIEW)) {
+        continue;
+      }
+      String key = getPreviewKey(configuration, xml);
+      if (myPreviews.containsKey(key) || !myPendingKeys.add(key)) {
+        continue;
+      }
+      File file = getStoredFile(key);
+      if (file != null && file.isFile()) {
+        stored.put(key, file);
+      }
+      else {
+        toRender.put(key, xml);
+      }
+    }
+    if (stored.isEmpty() && toRender.isEmpty()) {
+      return Futures.immediateFuture(null);
+    }
+
+    SettableFuture<Void> done = SettableFuture.create();
+    myExecutor.execute(() -> {
+      try {
+        stored.forEach((key, file) -> {
+          BufferedImage preview = myStore != null ? myStore.read(file, ImageIO::read) : null;
+          if (preview != null) {
+            myPreviews.put(key, preview);
+          }
+        });
+        if (!toRender.isEmpty() && !myDisposed) {
+          renderPreviews(configuration, createComponents(sceneView, toRender));
+        }
+      }
+      finally {
+        myPendingKeys.removeAll(stored.keySet());
+        myPendingKeys.removeAll(toRender.keySet());
+        done.set(null);
+      }
+    });
+    return done;
+  }
+
+  /**
+   * Creates the components of the given preview XMLs, by preview key. View handlers expect to create components on the event
+   * dispatch thread, so each component is created in its own event rather than all of them in the one populating the palette.
+   */
+  @NotNull
+  private Map<String, String> createComponents(@NotNull SceneView sceneView, @NotNull Map<String, String> previews) {
+    Map<String, String> components = new LinkedHashMap<>();
+    for (Map.Entry<String, String> preview : previews.entrySet()) {
+      if (myDisposed) {
+        break;
+      }
+      Ref<String> componentXml = new Ref<>();
+      ApplicationManager.getApplication().invokeAndWait(() -> componentXml.set(createComponentXml(sceneView, preview.getValue())),
+                                                        ModalityState.defaultModalityState());
+      if (componentXml.get() != null) {
+        components.put(preview.getKey(), componentXml.get());
+      }
+    }
+    return components;
+  }
+
+  /**
+   * Renders the given components, by preview key, in one layout and keeps the image of each of them.
+   */
+  private void renderPreviews(@NotNull Configuration configuration, @NotNull Map<String, String> components) {
+    if (components.isEmpty()) {
+      return;
+    }
+    RenderTask renderTask = createRenderTask(configuration);
+    if (renderTask == null) {
+      return;
+    }
+    try {
+      StringBuilder children = new StringBuilder();
+      for (String componentXml : components.values()) {
+        children.append(String.format(BATCH_ITEM, SHADOW_INCREMENT, componentXml));
+      }
+      String xml = String.format(LINEAR_LAYOUT, CONTAINER_ID, children);
+      RenderResult result = renderImage(myBatchRenderTimeoutSeconds, renderTask, xml);
+      if (result == null || !result.hasImage() || result.getRootViews().isEmpty()) {
+        return;
+      }
+      List<ViewInfo> frames = result.getRootViews().get(0).getChildren();
+      BufferedImage image = result.getRenderedImage().getCopy();
+      if (frames == null || frames.size() != components.size() || image == null) {
+        LOG.debug("Could not render the palette previews");
+        return;
+      }
+
+      boolean stored = false;
+      int index = 0;
+      for (String key : components.keySet()) {
+        ViewInfo frame = frames.get(index++);
+        List<ViewInfo> views = frame.getChildren();
+        if (views == null || views.isEmpty()) {
+          continue;
+        }
+        ViewInfo view = views.get(0);
+        BufferedImage preview = cropPreview(image,
+                                            frame.getLeft() + view.getLeft(),
+                                            frame.getTop() + view.getTop(),
+                                            frame.getLeft() + view.getRight(),
+                                            frame.getTop() + view.getBottom());
+        if (preview != null) {
+          myPreviews.put(key, preview);
+          File file = getStoredFile(key);
+          if (myStore != null && file != null && myStore.write(file, tempFile -> ImageIO.write(preview, "PNG", tempFile))) {
+            stored = true;
+          }
+        }
+      }
+      if (stored) {
+        trimStore();
+      }
+    }
+    finally {
+      renderTask.dispose();
+    }
+  }
+
+  @Nullable
+  private static String createComponentXml(@NotNull SceneView sceneView, @NotNull String xml) {
+    XmlElementFactory elementFactory = XmlElementFactory.getInstance(sceneView.getModel().getProject());
+    XmlTag tag;
+
+    try {
+      tag = elementFactory.createTagFromText(xml);
+    }
+    catch (IncorrectOperationException exception) {
+      return null;
+    }
+
+    NlModel model = sceneView.getModel();
+
+    NlComponent component = ApplicationManager.getApplication()
+      .runWriteAction((Computable<NlComponent>)() -> NlModelHelperKt.createComponent(model, sceneView, tag, null, null, InsertType.CREATE_PREVIEW));
+
+    return component != null ? component.getTag().getText() : null;
+  }
+
+  /**
+   * Returns the part of the image covered by the given view bounds, extended right and down to include the shadow of the view.
+   */
+  @Nullable
+  private static BufferedImage cropPreview(@NotNull BufferedImage image,
+                                           @AndroidCoordinate int left,
+                                           @AndroidCoordinate int top,
+                                           @AndroidCoordinate int right,
+                                           @AndroidCoordinate int bottom) {
+    if (image.getHeight() < bottom || image.getWidth() < right || bottom <= top || right <= left) {
+      return null;
+    }
     try {
-      return imageCopy.getSubimage(view.getLeft(),
-                                   view.getTop(),
-                                   Math.min(view.getRight() + shadowIncrement, image.getWidth()),
-                                   Math.min(view.getBottom() + shadowIncrement, image.getHeight()));
+      return image.getSubimage(left,
+                               top,
+                               Math.min(right + SHADOW_INCREMENT, image.getWidth()) - left,
+                               Math.min(bottom + SHADOW_INCREMENT, image.getHeight()) - top);
     } catch (RasterFormatException e) {
       // catch exception
     }
     return null;
   }
 
+  @VisibleForTesting
+  @NotNull
+  String getPreviewKey(@NotNull Configuration configuration, @NotNull String xml) {
+    IAndroidTarget target = configuration.getTarget();
+    int apiLevel = target != null ? target.getVersion().getApiLevel() : -1;
+    return configuration.getTheme() + '\n' + getThemeHash(configuration) + '\n' + apiLevel + '\n' + getDeviceKey(configuration) + '\n' +
+           xml;
+  }
+
+  /**
+   * Returns what the size of a preview depends on besides its XML: the device it is rendered for, its density and its screen
+   * size in the current orientation.
+   */
+  @NotNull
+  private static String getDeviceKey(@NotNull Configuration configuration) {
+    Device device = configuration.getDevice();
+    State state = configuration.getDeviceState();
+    Screen screen = state != null ? state.getHardware().getScreen() : null;
+    return (device != null ? device.getId() : "") + '\n' +
+           configuration.getDensity().getDpiValue() + '\n' +
+           (screen != null ? screen.getXDimension() + "x" + screen.getYDimension() : "");
+  }
+
+  /**
+   * Returns a hash of the attributes of the theme of the given configuration and of its parents, so previews are rendered again
+   * when the theme is edited. It is only computed again when the configuration or the resources of the module change.
+   */
+  @NotNull
+  private synchronized String getThemeHash(@NotNull Configuration configuration) {
+    AppResourceRepository resources = AppResourceRepository.getOrCreateInstance(configuration.getModule());
+    String source = System.identityHashCode(configuration) + "\n" + configuration.getModificationCount() + '\n' +
+                    (resources != null ? resources.getModificationCount() : -1);
+    if (myThemeHash != null && source.equals(myThemeHashSource)) {
+      return myThemeHash;
+    }
+
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    String theme = configuration.getTheme();
+    ResourceResolver resolver = configuration.getResourceResolver();
+    if (theme != null && resolver != null) {
+      boolean isFramework = theme.startsWith(ANDROID_STYLE_RESOURCE_PREFIX);
+      String name = ResourceHelper.styleToTheme(theme);
+      StyleResourceValue style = resolver.getStyle(name, isFramework);
+      // Bound the walk in case of a cycle in the parents
+      for (int depth = 0; style != null && depth < MAX_THEME_DEPTH; depth++, style = resolver.getParent(style)) {
+        hasher.putBoolean(style.isFramework()).putString(style.getName(), UTF_8);
+        for (ItemResourceValue item : style.getValues()) {
+          hasher.putBoolean(item.isFrameworkAttr()).putString(item.getName(), UTF_8).putString(String.valueOf(item.getValue()), UTF_8);
+        }
+      }
+    }
+    myThemeHash = hasher.hash().toString();
+    myThemeHashSource = source;
+    return myThemeHash;
+  }
+
+  @VisibleForTesting
+  @Nullable
+  File getStoredFile(@NotNull String key) {
+    return myStore != null ? myStore.getFile(Hashing.murmur3_128().hashString(key, UTF_8).toString()) : null;
+  }
+
+  /**
+   * Deletes the least recently used previews until the store is below three quarters of its maximum size.
+   */
+  @VisibleForTesting
+  void trimStore() {
+    if (myStore != null) {
+      myStore.trimToSize(myMaxStoreSizeBytes);
+    }
+  }
+
   @Nullable
   private static RenderResult renderImage(long renderTimeoutSeconds, @Nullable RenderTask renderTask, @NotNull String xml) {
     if (renderTask == null) {
@@ -193,6 +511,7 @@ public class IconPreviewFactory implements Disposable {
 
   @Override
   public void dispose() {
+    myDisposed = true;
     if (myRenderTask != null) {
       Futures.getUnchecked(myRenderTask.dispose());
       myRenderTask = null;
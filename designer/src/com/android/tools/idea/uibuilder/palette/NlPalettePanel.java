@@ -149,8 +149,9 @@ public class NlPalettePanel extends JPanel implements Disposable, DataProvider,
 
   private void reloadPalette(NlPaletteModel model, Module module, DesignSurface designSurface) {
     Palette palette = model.getPalette(myLayoutType);
-    myPalettePanel.populateUiModel(palette, (NlDesignSurface)designSurface);
+    // Update the missing dependencies first since the palette does not load the previews of the components needing them
     myDependencyManager.setPalette(palette, module);
+    myPalettePanel.populateUiModel(palette, (NlDesignSurface)designSurface);
     repaint();
   }
 
@@ -25,6 +25,7 @@ import com.android.tools.idea.uibuilder.model.DnDTransferComponent;
 import com.android.tools.idea.uibuilder.model.DnDTransferItem;
 import com.android.tools.idea.uibuilder.model.ItemTransferable;
 import com.android.tools.idea.common.surface.DesignSurface;
+import com.android.tools.idea.common.surface.SceneView;
 import com.android.tools.idea.uibuilder.surface.NlDesignSurface;
 import com.google.wireless.android.sdk.stats.LayoutEditorEvent;
 import com.intellij.ide.util.PropertiesComponent;
@@ -53,6 +54,7 @@ import java.awt.datatransfer.UnsupportedFlavorException;
 import java.awt.dnd.DnDConstants;
 import java.awt.event.*;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Supplier;
 
@@ -195,6 +197,25 @@ public class NlPaletteTreeGrid extends JPanel implements Disposable {
       myCategoryList.setSelectedValue(ALL, true);
     }
     updateTreeModel();
+    loadPreviews(palette, designSurface);
+  }
+
+  /**
+   * Starts rendering the drag previews of the palette in the background so they do not compete with the design surface render
+   * when an item is dragged.
+   */
+  private void loadPreviews(@NotNull Palette palette, @NotNull NlDesignSurface designSurface) {
+    SceneView sceneView = designSurface.getCurrentSceneView();
+    if (sceneView == null) {
+      return;
+    }
+    List<Palette.Item> items = new ArrayList<>();
+    palette.accept(item -> {
+      if (!myDependencyManager.needsLibraryLoad(item)) {
+        items.add(item);
+      }
+    });
+    myIconPreviewFactory.load(sceneView, items);
   }
 
   private void updateTreeModel() {
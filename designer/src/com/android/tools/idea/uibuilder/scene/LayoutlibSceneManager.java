@@ -100,6 +100,10 @@ public class LayoutlibSceneManager extends SceneManager {
   @AndroidCoordinate private static final int VISUAL_EMPTY_COMPONENT_SIZE = 1;
   private long myElapsedFrameTimeMs = -1;
   private final LinkedList<Runnable> myRenderCallbacks = new LinkedList<>();
+  /** Render times of all the layout editors, by trigger */
+  private static final RenderLatencyHistogram ourRenderLatencies = new RenderLatencyHistogram();
+  /** Number of renders of a trigger between two logs of the render time summary */
+  private static final int LATENCY_SUMMARY_INTERVAL = 50;
 
   /**
    * Logs a render action.
@@ -591,15 +595,23 @@ public class LayoutlibSceneManager extends SceneManager {
 
       // Record the current version we're rendering from; we'll use that in #activate to make sure we're picking up any
       // external changes
+      ResourceNotificationManager.ResourceVersion previousVersion = myRenderedVersion;
       myRenderedVersion = resourceNotificationManager.getCurrentVersion(getModel().getFacet(), getModel().getFile(), configuration);
 
       RenderService renderService = RenderService.getInstance(getModel().getFacet());
       RenderLogger logger = renderService.createLogger();
-      if (myRenderTask != null && !myRenderTask.isDisposed()) {
-        myRenderTask.dispose();
+      if (canReuseRenderTask(previousVersion, myRenderedVersion)) {
+        // Only the layout itself was edited: the task can inflate the new version of the layout without loading the project
+        // classes and resources again
+        myRenderTask.setLogger(logger);
+      }
+      else {
+        if (myRenderTask != null && !myRenderTask.isDisposed()) {
+          myRenderTask.dispose();
+        }
+        myRenderTask = renderService.createTask(getModel().getFile(), configuration, logger, getDesignSurface());
+        setupRenderTask(myRenderTask);
       }
-      myRenderTask = renderService.createTask(getModel().getFile(), configuration, logger, getDesignSurface());
-      setupRenderTask(myRenderTask);
       if (myRenderTask != null) {
         myRenderTask.getLayoutlibCallback().setAdaptiveIconMaskPath(((NlDesignSurface)getDesignSurface()).getAdaptiveIconShape().getPathDescription());
         if (!isRenderViewPort()) {
@@ -629,6 +641,21 @@ public class LayoutlibSceneManager extends SceneManager {
     }
   }
 
+  /**
+   * Returns whether the current render task can be inflated again rather than replaced by a new one. This is the case for edits of
+   * the layout file, such as attribute changes, as long as no resource, configuration or project change happened since the task
+   * was created.
+   */
+  @GuardedBy("RENDERING_LOCK")
+  private boolean canReuseRenderTask(@Nullable ResourceNotificationManager.ResourceVersion previousVersion,
+                                     @NotNull ResourceNotificationManager.ResourceVersion currentVersion) {
+    return myRenderTask != null &&
+           !myRenderTask.isDisposed() &&
+           previousVersion != null &&
+           currentVersion.isFileEditOf(previousVersion) &&
+           getTriggerFromChangeType(getModel().getLastChangeType()) == LayoutEditorRenderResult.Trigger.EDIT;
+  }
+
   @VisibleForTesting
   protected void setupRenderTask(@Nullable RenderTask task) {
   }
@@ -717,9 +744,19 @@ public class LayoutlibSceneManager extends SceneManager {
           myRenderResultLock.writeLock().unlock();
         }
         try {
-          NlUsageTrackerManager.getInstance(surface).logRenderResult(trigger,
-                                                                     myRenderResult,
-                                                                     System.currentTimeMillis() - renderStartTimeMs);
+          long totalRenderTimeMs = System.currentTimeMillis() - renderStartTimeMs;
+          ourRenderLatencies.record(trigger, totalRenderTimeMs);
+          Logger log = Logger.getInstance(LayoutlibSceneManager.class);
+          if (log.isDebugEnabled()) {
+            if (inflated) {
+              log.debug(String.format("Render took %1$dms (layout snapshot %2$dms)",
+                                      totalRenderTimeMs, myRenderTask.getSnapshotBuildTimeMs()));
+            }
+            if (ourRenderLatencies.getCount(trigger) % LATENCY_SUMMARY_INTERVAL == 0) {
+              log.debug("Render times: " + ourRenderLatencies.getSummary());
+            }
+          }
+          NlUsageTrackerManager.getInstance(surface).logRenderResult(trigger, myRenderResult, totalRenderTimeMs);
         }
         finally {
           myRenderResultLock.readLock().unlock();
@@ -730,6 +767,11 @@ public class LayoutlibSceneManager extends SceneManager {
     getModel().notifyListenersRenderComplete();
   }
 
+  @NotNull
+  public static RenderLatencyHistogram getRenderLatencyHistogram() {
+    return ourRenderLatencies;
+  }
+
   public void setElapsedFrameTimeMs(long ms) {
     myElapsedFrameTimeMs = ms;
   }
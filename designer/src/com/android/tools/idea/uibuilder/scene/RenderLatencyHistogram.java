@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.uibuilder.scene;
+
+import com.google.wireless.android.sdk.stats.LayoutEditorRenderResult;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histograms of the render times of the layout editor, kept separately for each {@link LayoutEditorRenderResult.Trigger}.
+ * <p>
+ * Times are counted in buckets whose upper bounds are powers of two milliseconds, so percentiles are approximated by the upper
+ * bound of the bucket they fall in.
+ */
+public class RenderLatencyHistogram {
+  /** Name used for the renders that do not have a trigger */
+  static final String UNKNOWN_TRIGGER = "UNKNOWN";
+
+  /** Number of buckets; the last one counts every time over 2^(BUCKET_COUNT - 2) ms */
+  private static final int BUCKET_COUNT = 16;
+
+  private final Map<String, AtomicLongArray> myHistograms = new ConcurrentHashMap<>();
+
+  public void record(@Nullable LayoutEditorRenderResult.Trigger trigger, long timeMs) {
+    String name = trigger != null ? trigger.name() : UNKNOWN_TRIGGER;
+    myHistograms.computeIfAbsent(name, key -> new AtomicLongArray(BUCKET_COUNT)).incrementAndGet(getBucket(timeMs));
+  }
+
+  /**
+   * Returns the number of renders recorded for the given trigger
+   */
+  public long getCount(@Nullable LayoutEditorRenderResult.Trigger trigger) {
+    AtomicLongArray histogram = myHistograms.get(trigger != null ? trigger.name() : UNKNOWN_TRIGGER);
+    if (histogram == null) {
+      return 0;
+    }
+    long count = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      count += histogram.get(i);
+    }
+    return count;
+  }
+
+  /**
+   * Returns an upper bound of the given percentile (between 0 and 100) of the render times recorded for the given trigger, in
+   * milliseconds, or -1 if no render was recorded. Times beyond the last bucket are reported as {@link Long#MAX_VALUE}.
+   */
+  public long getPercentileMs(@Nullable LayoutEditorRenderResult.Trigger trigger, double percentile) {
+    AtomicLongArray histogram = myHistograms.get(trigger != null ? trigger.name() : UNKNOWN_TRIGGER);
+    long count = getCount(trigger);
+    if (histogram == null || count == 0) {
+      return -1;
+    }
+    long rank = (long)Math.ceil(count * percentile / 100);
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += histogram.get(i);
+      if (seen >= Math.max(rank, 1)) {
+        return getBucketUpperBoundMs(i);
+      }
+    }
+    return getBucketUpperBoundMs(BUCKET_COUNT - 1);
+  }
+
+  public void clear() {
+    myHistograms.clear();
+  }
+
+  /**
+   * Returns a summary of the median and 90th percentile of the render times of each trigger
+   */
+  @NotNull
+  public String getSummary() {
+    StringBuilder builder = new StringBuilder();
+    for (String name : new TreeMap<>(myHistograms).keySet()) {
+      LayoutEditorRenderResult.Trigger trigger = UNKNOWN_TRIGGER.equals(name) ? null : LayoutEditorRenderResult.Trigger.valueOf(name);
+      if (builder.length() > 0) {
+        builder.append(", ");
+      }
+      builder.append(String.format("%1$s: %2$d renders, p50 <= %3$s, p90 <= %4$s", name, getCount(trigger),
+                                   formatBound(getPercentileMs(trigger, 50)), formatBound(getPercentileMs(trigger, 90))));
+    }
+    return builder.toString();
+  }
+
+  @NotNull
+  private static String formatBound(long boundMs) {
+    return boundMs == Long.MAX_VALUE ? "inf" : boundMs + "ms";
+  }
+
+  private static int getBucket(long timeMs) {
+    if (timeMs <= 1) {
+      return 0;
+    }
+    // Bucket i holds the times in (2^(i-1), 2^i]
+    int bucket = 64 - Long.numberOfLeadingZeros(timeMs - 1);
+    return Math.min(bucket, BUCKET_COUNT - 1);
+  }
+
+  private static long getBucketUpperBoundMs(int bucket) {
+    return bucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << bucket;
+  }
+}
@@ -16,8 +16,20 @@
 
 package com.android.tools.idea.uibuilder.scout;
 
+import com.android.annotations.VisibleForTesting;
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.util.Ref;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.ref.SoftReference;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 /**
  * Inference Probability tables
@@ -41,6 +53,15 @@ public class ScoutProbabilities {
     private static final int ROOT_MARGIN_DISCOUNT = 16;
     private static final int MAX_ROOT_OVERHANG = 10;
     private static final boolean SKIP_SPARSE_COLUMNS = true;
+    /**
+     * Number of widgets from which the tables are computed under a modal progress
+     */
+    private static final int PROGRESS_THRESHOLD = 40;
+
+    /**
+     * Tables of the last inferred layout, kept while memory allows
+     */
+    private static SoftReference<Tables> ourLastTables = new SoftReference<>(null);
 
     float[][][] mProbability; // probability of a connection
     float[][][] mMargin; // margin needed for that connection
@@ -50,10 +71,14 @@ public class ScoutProbabilities {
 
     /**
      * This calculates a constraint tables
+     * <p>
+     * The tables only depend on the geometry of the widgets, so the tables of the last layout are reused when the same layout is
+     * inferred again. Large layouts are computed under a modal progress which lets the user cancel the inference.
      *
      * @param list ordered list of widgets root must be list[0]
+     * @return false if the computation was cancelled, in which case no constraints should be applied
      */
-    public void computeConstraints(ScoutWidget[] list) {
+    public boolean computeConstraints(ScoutWidget[] list) {
         if (list.length < 2) {
             throw new IllegalArgumentException("list must contain more than 1 widget");
         }
@@ -71,75 +96,142 @@ public class ScoutProbabilities {
 
         len = list.length;
 
-        mProbability = new float[len][][];
-        mMargin = new float[len][][];
+        WidgetSnapshot snapshot = new WidgetSnapshot(list);
+        Tables tables = getCachedTables(snapshot);
+        if (tables == null) {
+            tables = computeTablesWithProgress(snapshot, list[0]);
+            if (tables == null) {
+                return false;
+            }
+        }
+        // applyConstraints consumes the tables, so the cached ones are kept intact
+        tables = tables.copy();
+        mProbability = tables.mProbability;
+        mMargin = tables.mMargin;
+        mBinaryProbability = tables.mBinaryProbability;
+        mBinaryBias = tables.mBinaryBias;
+        if (DEBUG) {
+            printTable(list);
+        }
+        return true;
+    }
+
+    @VisibleForTesting
+    @Nullable
+    static Tables getCachedTables(@NotNull WidgetSnapshot snapshot) {
+        Tables tables;
+        synchronized (ScoutProbabilities.class) {
+            tables = ourLastTables.get();
+        }
+        return tables != null && tables.mSnapshot.equals(snapshot) ? tables : null;
+    }
+
+    /**
+     * Computes the tables, showing a modal progress if the layout is large and we are on the event dispatch thread
+     *
+     * @return the tables, or null if the user cancelled the computation
+     */
+    @Nullable
+    private static Tables computeTablesWithProgress(@NotNull WidgetSnapshot snapshot, @NotNull ScoutWidget root) {
+        Application application = ApplicationManager.getApplication();
+        Tables tables;
+        if (snapshot.mLength < PROGRESS_THRESHOLD || application == null || application.isUnitTestMode() ||
+            !application.isDispatchThread() || application.isWriteAccessAllowed()) {
+            tables = computeTables(snapshot);
+        }
+        else {
+            Ref<Tables> result = new Ref<>();
+            // The computation only uses the snapshot, so it does not need read access
+            boolean completed = ProgressManager.getInstance().runProcessWithProgressSynchronously(
+                    () -> result.set(computeTables(snapshot)), "Inferring Constraints", true,
+                    root.mNlComponent.getModel().getProject());
+            if (!completed) {
+                return null;
+            }
+            tables = result.get();
+        }
+        synchronized (ScoutProbabilities.class) {
+            ourLastTables = new SoftReference<>(tables);
+        }
+        return tables;
+    }
+
+    /**
+     * Computes the tables of each widget in parallel. Checks the current progress indicator, if any, for cancellation.
+     */
+    @NotNull
+    static Tables computeTables(@NotNull WidgetSnapshot snapshot) {
+        return computeTables(snapshot, true);
+    }
+
+    /**
+     * Same as {@link #computeTables(WidgetSnapshot)}
+     *
+     * @param skipMisaligned if true, the centering candidates on the wrong side of a widget are not evaluated against each
+     *                       other candidate, since they can only be centered against the root. The tables are the same either way.
+     */
+    @VisibleForTesting
+    @NotNull
+    static Tables computeTables(@NotNull WidgetSnapshot snapshot, boolean skipMisaligned) {
+        int len = snapshot.mLength;
+        Tables tables = new Tables(snapshot);
+        ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+        if (indicator != null) {
+            indicator.setIndeterminate(false);
+        }
+        AtomicInteger done = new AtomicInteger();
+        IntStream.range(1, len).parallel().forEach(i -> {
+            if (indicator != null) {
+                indicator.checkCanceled();
+            }
+            computeWidgetTables(snapshot, i, tables, skipMisaligned);
+            if (indicator != null) {
+                indicator.setFraction(done.incrementAndGet() / (double)(len - 1));
+            }
+        });
+        return tables;
+    }
+
+    /**
+     * Fills the rows of the tables for the widget i
+     */
+    private static void computeWidgetTables(WidgetSnapshot snapshot, int i, Tables tables, boolean skipMisaligned) {
+        int len = snapshot.mLength;
 
         // calculate probability for normal connections
         float[] result = new float[2]; // estimation function return 2 values probability & margin
-
-        for (int i = 1; i < len; i++) { // for all non root widgets
+        if (!snapshot.mGuideline[i]) {
             Direction[] all = Direction.getAllDirections();
-            if (list[i].isGuideline()) {
-                continue;
-            }
-            mProbability[i] = new float[all.length][];
-            mMargin[i] = new float[all.length][];
+            tables.mProbability[i] = new float[all.length][];
+            tables.mMargin[i] = new float[all.length][];
             for (int dir = 0; dir < all.length; dir++) { // for all possible connections
                 Direction direction = Direction.get(dir);
                 int connectTypes = direction.connectTypes();
 
                 // create the multidimensional array on the fly
                 // to account for the variying size of the probability space
-                mProbability[i][dir] = new float[len * connectTypes];
-                mMargin[i][dir] = new float[len * connectTypes];
+                float[] probability = tables.mProbability[i][dir] = new float[len * connectTypes];
+                float[] margin = tables.mMargin[i][dir] = new float[len * connectTypes];
 
                 // fill in all candidate connections
-                for (int candidate = 0; candidate < mMargin[i][dir].length; candidate++) {
+                for (int candidate = 0; candidate < margin.length; candidate++) {
                     int widgetNumber = candidate / connectTypes;
                     int opposite = candidate % connectTypes;
                     Direction connectTo = (opposite == 0) ? direction : direction.getOpposite();
 
-                    estimateProbability(list[i], direction, list[widgetNumber],
-                            connectTo, list, result);
-                    mProbability[i][dir][candidate] = result[RESULT_PROBABILITY];
-                    mMargin[i][dir][candidate] = result[RESULT_MARGIN];
+                    estimateProbability(snapshot, i, direction, widgetNumber, connectTo, result);
+                    probability[candidate] = result[RESULT_PROBABILITY];
+                    margin[candidate] = result[RESULT_MARGIN];
                 }
             }
         }
 
         // calculate probability for "centered" connections
-        mBinaryProbability = new float[len][2][len * 2][len * 2];
-        mBinaryBias = new float[len][2][len * 2][len * 2];
-        Direction[][] directions =
-                { { Direction.TOP, Direction.BOTTOM}, { Direction.LEFT, Direction.RIGHT} };
-        for (int i = 1; i < len; i++) {
-            for (int horizontal = 0; horizontal < 2; horizontal++) { // vert=0 or horizantal=1
-                Direction[] sides = directions[horizontal];
-                for (int candidate1 = 0; candidate1 < len * 2; candidate1++) {
-                    for (int candidate2 = 0; candidate2 < len * 2; candidate2++) {
-
-                        // candidates are 2 per widget (left/right or above/below)
-                        int widget1Number = candidate1 / 2;
-                        int widget2Number = candidate2 / 2;
-
-                        // pick the sides to connect
-                        Direction widget1Side = sides[candidate1 & 0x1];
-                        Direction widget2Side = sides[candidate2 & 0x1];
-
-                        estimateBinaryProbability(list[i], horizontal,
-                                list[widget1Number], widget1Side,
-                                list[widget2Number], widget2Side,
-                                list, result);
-                        mBinaryProbability[i][horizontal][candidate1][candidate2] =
-                                result[RESULT_PROBABILITY];
-                        mBinaryBias[i][horizontal][candidate1][candidate2] =
-                                result[RESULT_MARGIN];
-                    }
-                }
-            }
-        }
-        if (DEBUG) {
-            printTable(list);
+        tables.mBinaryProbability[i] = new float[2][len * 2][len * 2];
+        tables.mBinaryBias[i] = new float[2][len * 2][len * 2];
+        for (int horizontal = 0; horizontal < 2; horizontal++) { // vert=0 or horizantal=1
+            estimateBinaryProbabilities(snapshot, i, horizontal,
+                    tables.mBinaryProbability[i][horizontal], tables.mBinaryBias[i][horizontal], skipMisaligned);
         }
     }
 
@@ -544,15 +636,15 @@ public class ScoutProbabilities {
     /**
      * This defines the "probability" of a constraint between two widgets.
      *
+     * @param widgets the snapshot of the widgets
      * @param from    source widget
      * @param fromDir direction on that widget
      * @param to      destination widget
      * @param toDir   destination side to connect
      * @param result  populates results with probability and offset
      */
-    private static void estimateProbability(ScoutWidget from, Direction fromDir,
-            ScoutWidget to, Direction toDir,
-            ScoutWidget[] list,
+    private static void estimateProbability(WidgetSnapshot widgets, int from, Direction fromDir,
+            int to, Direction toDir,
             float[] result) {
         result[RESULT_PROBABILITY] = 0;
         result[RESULT_MARGIN] = 0;
@@ -560,40 +652,38 @@ public class ScoutProbabilities {
         if (from == to) { // 0 probability of connecting to yourself
             return;
         }
-        if (from.isGuideline()) {
+        if (widgets.mGuideline[from]) {
             return;
         }
 
-        if (to.isGuideline()) {
+        if (widgets.mGuideline[to]) {
             if ((toDir == Direction.TOP || toDir == Direction.BOTTOM) &&
-                to.isVerticalGuideline()) {
+                widgets.mVerticalGuideline[to]) {
                 return;
             }
             if ((toDir == Direction.RIGHT || toDir == Direction.LEFT) &&
-                to.isHorizontalGuideline()) {
+                widgets.mHorizontalGuideline[to]) {
                 return;
             }
         }
 
         // if it already has a baseline do not connect to it
-        if ((toDir == Direction.TOP || toDir == Direction.BOTTOM) & from.hasBaseline()) {
-            if (from.hasConnection(Direction.BASELINE)) {
-                return;
-            }
+        if ((toDir == Direction.TOP || toDir == Direction.BOTTOM) & widgets.mBaselineConnected[from]) {
+            return;
         }
 
         if (fromDir == Direction.BASELINE) { // if baseline 0  probability of connecting to non baseline
-            if (!from.hasBaseline() || !to.hasBaseline()) { // no base line
+            if (!widgets.mHasBaseline[from] || !widgets.mHasBaseline[to]) { // no base line
                 return;
             }
         }
 
-        float fromLocation = from.getLocation(fromDir);
-        float toLocation = to.getLocation(toDir);
+        float fromLocation = widgets.getLocation(from, fromDir);
+        float toLocation = widgets.getLocation(to, toDir);
         float positionDiff =
                 (fromDir.reverse()) ? fromLocation - toLocation : toLocation - fromLocation;
-        float distance = 2 * ScoutWidget.distance(from, to);
-        if (to.isRoot()) {
+        float distance = 2 * widgets.distance(from, to);
+        if (widgets.mRoot[to]) {
             distance = Math.abs(distance - ROOT_MARGIN_DISCOUNT);
         }
         // probability decreases with distance and margin distance
@@ -604,7 +694,7 @@ public class ScoutProbabilities {
             }
             probability *= 2;
         }
-        if (to.isRoot()) {
+        if (widgets.mRoot[to]) {
             probability *= 2;
         }
         result[RESULT_PROBABILITY] = (positionDiff >= 0) ? probability : NEGATIVE_GAP_FLAG;
@@ -612,59 +702,108 @@ public class ScoutProbabilities {
     }
 
     /**
-     * This defines the constraint between a widget and two widgets to the left and right of it.
-     * Currently only encourages probability between widget and root for center purposes.
+     * Fills the table of the constraints between a widget and all the pairs of widgets on each side of it.
+     * Candidates are 2 per widget (left/right or above/below side).
      *
+     * @param widgets     the snapshot of the widgets
      * @param from        source widget
      * @param orientation horizontal or vertical connections (1 is horizontal)
-     * @param to1         connect to on one side
-     * @param toDir1      direction on that widget
-     * @param to2         connect to on other side
-     * @param toDir2      direction on that widget
-     * @param result      populates results with probability and offset
+     * @param probability populated with the probability of each pair of candidates
+     * @param bias        populated with the offset of each pair of candidates
+     * @param skipMisaligned only evaluate the root candidates for a first candidate on the wrong side
      */
-    private static void estimateBinaryProbability(
-            ScoutWidget from, int orientation, // 0 = north/south 1 = east/west
-            ScoutWidget to1, Direction toDir1,
-            ScoutWidget to2, Direction toDir2,
-            ScoutWidget[] list,
-            float[] result) {
-
-        result[RESULT_PROBABILITY] = 0;
-        result[RESULT_MARGIN] = 0;
-        if (from == to1 || from == to2) { // cannot center on yourself
-            return;
-        }
-        if (from.isGuideline()) {
+    private static void estimateBinaryProbabilities(WidgetSnapshot widgets, int from, int orientation,
+            float[][] probability, float[][] bias, boolean skipMisaligned) {
+        if (widgets.mGuideline[from]) {
             return;
         }
         // if it already has a baseline do not connect to it
-        if ((orientation == Direction.ORIENTATION_VERTICAL) & from.hasBaseline()) {
-            if (from.hasConnection(Direction.BASELINE)) {
-                return;
-            }
+        if ((orientation == Direction.ORIENTATION_VERTICAL) & widgets.mBaselineConnected[from]) {
+            return;
         }
         // distance normalizing scale factor
         float scale = 0.5f *
-                ((orientation == Direction.ORIENTATION_VERTICAL) ? from.getParent().getHeight() :
-                        from.getParent().getWidth());
+                ((orientation == Direction.ORIENTATION_VERTICAL) ? widgets.mParentHeight :
+                        widgets.mParentWidth);
         Direction fromLeft = Direction.getDirections(orientation)[0];
         Direction fromRight = Direction.getDirections(orientation)[1];
+        float location1 = widgets.getLocation(from, fromLeft);
+        float location2 = widgets.getLocation(from, fromRight);
+
+        // Everything which only depends on one of the candidates is computed once
+        int candidates = widgets.mLength * 2;
+        float[] positionDiff1 = new float[candidates];
+        float[] positionDiff2 = new float[candidates];
+        float[] distance = new float[candidates];
+        for (int candidate = 0; candidate < candidates; candidate++) {
+            int widgetNumber = candidate / 2;
+            float toLoc = widgets.getLocation(widgetNumber, (candidate & 0x1) == 0 ? fromLeft : fromRight);
+            positionDiff1[candidate] = location1 - toLoc;
+            positionDiff2[candidate] = toLoc - location2;
+            distance[candidate] = widgets.distance(from, widgetNumber) / scale;
+        }
 
-        float location1 = from.getLocation(fromLeft);
-        float location2 = from.getLocation(fromRight);
-        float toLoc1 = to1.getLocation(toDir1);
-        float toLoc2 = to2.getLocation(toDir2);
-        float positionDiff1 = location1 - toLoc1;
-        float positionDiff2 = toLoc2 - location2;
+        float[] result = new float[2];
+        for (int candidate1 = 0; candidate1 < candidates; candidate1++) {
+            if (candidate1 / 2 == from) { // cannot center on yourself
+                continue;
+            }
+            boolean root1 = widgets.mRoot[candidate1 / 2];
+            if (skipMisaligned && positionDiff1[candidate1] < 0 && !root1) {
+                // Not aligned: only centering against the root (candidates 0 and 1), which may overhang, can work
+                Arrays.fill(probability[candidate1], NEGATIVE_GAP_FLAG);
+                probability[candidate1][from * 2] = 0;
+                probability[candidate1][from * 2 + 1] = 0;
+                for (int candidate2 = 0; candidate2 < 2; candidate2++) {
+                    if (widgets.mRoot[candidate2 / 2] && candidate2 / 2 != from) {
+                        estimateBinaryProbability(positionDiff1[candidate1], positionDiff2[candidate2], root1, true,
+                                distance[candidate1], distance[candidate2], result);
+                        probability[candidate1][candidate2] = result[RESULT_PROBABILITY];
+                        bias[candidate1][candidate2] = result[RESULT_MARGIN];
+                    }
+                }
+                continue;
+            }
+            for (int candidate2 = 0; candidate2 < candidates; candidate2++) {
+                if (candidate2 / 2 == from) { // cannot center on yourself
+                    continue;
+                }
+                estimateBinaryProbability(positionDiff1[candidate1], positionDiff2[candidate2],
+                        root1, widgets.mRoot[candidate2 / 2], distance[candidate1], distance[candidate2], result);
+                probability[candidate1][candidate2] = result[RESULT_PROBABILITY];
+                bias[candidate1][candidate2] = result[RESULT_MARGIN];
+            }
+        }
+    }
+
+    /**
+     * This defines the constraint between a widget and two widgets to the left and right of it.
+     * Currently only encourages probability between widget and root for center purposes.
+     *
+     * @param positionDiff1 gap between the widget and the first widget
+     * @param positionDiff2 gap between the widget and the second widget
+     * @param root1         true if the first widget is the root
+     * @param root2         true if the second widget is the root
+     * @param distance1     normalized distance to the first widget
+     * @param distance2     normalized distance to the second widget
+     * @param result        populates results with probability and offset
+     */
+    private static void estimateBinaryProbability(
+            float positionDiff1, float positionDiff2,
+            boolean root1, boolean root2,
+            float distance1, float distance2,
+            float[] result) {
+
+        result[RESULT_PROBABILITY] = 0;
+        result[RESULT_MARGIN] = 0;
 
         if (positionDiff1 < 0 || positionDiff2 < 0) { // do not center if not aligned
             boolean badCandidate = true;
-            if (positionDiff2 < 0 && to2.isRoot() && positionDiff2 > -MAX_ROOT_OVERHANG) {
+            if (positionDiff2 < 0 && root2 && positionDiff2 > -MAX_ROOT_OVERHANG) {
                 badCandidate = false;
                 positionDiff2 = 0;
             }
-            if (positionDiff1 < 0 && to1.isRoot() && positionDiff2 > -MAX_ROOT_OVERHANG) {
+            if (positionDiff1 < 0 && root1 && positionDiff2 > -MAX_ROOT_OVERHANG) {
                 badCandidate = false;
                 positionDiff2 = 0;
             }
@@ -674,19 +813,166 @@ public class ScoutProbabilities {
             }
         }
 
-        float distance1 = ScoutWidget.distance(from, to1) / scale;
-        float distance2 = ScoutWidget.distance(from, to2) / scale;
         float diff = Math.abs(positionDiff1 - positionDiff2);
         float probability = ((diff < SLOPE_CENTER_CONNECTION) ? 1 : 0); // favor close distance
         probability = probability / (1+ distance1 + distance2);
         probability += 1 / (1 + Math.abs(positionDiff1 - positionDiff2));
         probability *=
-                (to1.isRoot() && to2.isRoot()) ? 2 : ((SUPPORT_CENTER_TO_NON_ROOT) ? 1f : 0);
+                (root1 && root2) ? 2 : ((SUPPORT_CENTER_TO_NON_ROOT) ? 1f : 0);
 
         result[RESULT_PROBABILITY] = probability;
         result[RESULT_MARGIN] = Math.min(positionDiff1,positionDiff2);
     }
 
+    /**
+     * The geometry and the flags of the widgets used by the estimators. It is captured on the calling thread so the tables can
+     * be computed on other threads, and identifies the layout the tables were computed for.
+     */
+    static final class WidgetSnapshot {
+        final int mLength;
+        /** Location of each side of each widget, indexed by widget * 5 + direction */
+        final float[] mLocations;
+        /** Bounds used for the distances, with the guidelines made infinitely long, indexed by widget * 4 */
+        final float[] mBounds;
+        final boolean[] mRoot;
+        final boolean[] mGuideline;
+        final boolean[] mVerticalGuideline;
+        final boolean[] mHorizontalGuideline;
+        final boolean[] mHasBaseline;
+        /** True if the widget has a baseline and is connected by it */
+        final boolean[] mBaselineConnected;
+        final float mParentWidth;
+        final float mParentHeight;
+
+        WidgetSnapshot(ScoutWidget[] list) {
+            mLength = list.length;
+            Direction[] all = Direction.getAllDirections();
+            mLocations = new float[mLength * all.length];
+            mBounds = new float[mLength * 4];
+            mRoot = new boolean[mLength];
+            mGuideline = new boolean[mLength];
+            mVerticalGuideline = new boolean[mLength];
+            mHorizontalGuideline = new boolean[mLength];
+            mHasBaseline = new boolean[mLength];
+            mBaselineConnected = new boolean[mLength];
+            for (int i = 0; i < mLength; i++) {
+                ScoutWidget widget = list[i];
+                for (Direction direction : all) {
+                    mLocations[i * all.length + direction.getDirection()] = widget.getLocation(direction);
+                }
+                mRoot[i] = widget.isRoot();
+                mGuideline[i] = widget.isGuideline();
+                mVerticalGuideline[i] = widget.isVerticalGuideline();
+                mHorizontalGuideline[i] = widget.isHorizontalGuideline();
+                mHasBaseline[i] = widget.hasBaseline();
+                mBaselineConnected[i] = mHasBaseline[i] && widget.hasConnection(Direction.BASELINE);
+
+                float x1 = widget.getLocation(Direction.LEFT);
+                float x2 = widget.getLocation(Direction.RIGHT);
+                float y1 = widget.getLocation(Direction.TOP);
+                float y2 = widget.getLocation(Direction.BOTTOM);
+                if (mVerticalGuideline[i]) {
+                    y1 = -10000; // make the line infinite long
+                    y2 = 10000;
+                }
+                if (mHorizontalGuideline[i]) {
+                    x1 = -10000; // make the line infinite long
+                    x2 = 10000;
+                }
+                mBounds[i * 4] = x1;
+                mBounds[i * 4 + 1] = y1;
+                mBounds[i * 4 + 2] = x2;
+                mBounds[i * 4 + 3] = y2;
+            }
+            mParentWidth = list[0].getWidth();
+            mParentHeight = list[0].getHeight();
+        }
+
+        float getLocation(int widget, Direction direction) {
+            return mLocations[widget * Direction.getAllDirections().length + direction.getDirection()];
+        }
+
+        /**
+         * Same as {@link ScoutWidget#distance(ScoutWidget, ScoutWidget)}
+         */
+        float distance(int a, int b) {
+            return ScoutWidget.distance(mBounds[a * 4], mBounds[a * 4 + 1], mBounds[a * 4 + 2], mBounds[a * 4 + 3],
+                                        mBounds[b * 4], mBounds[b * 4 + 1], mBounds[b * 4 + 2], mBounds[b * 4 + 3]);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof WidgetSnapshot)) {
+                return false;
+            }
+            WidgetSnapshot other = (WidgetSnapshot)o;
+            return mLength == other.mLength &&
+                   mParentWidth == other.mParentWidth &&
+                   mParentHeight == other.mParentHeight &&
+                   Arrays.equals(mLocations, other.mLocations) &&
+                   Arrays.equals(mBounds, other.mBounds) &&
+                   Arrays.equals(mRoot, other.mRoot) &&
+                   Arrays.equals(mGuideline, other.mGuideline) &&
+                   Arrays.equals(mVerticalGuideline, other.mVerticalGuideline) &&
+                   Arrays.equals(mHorizontalGuideline, other.mHorizontalGuideline) &&
+                   Arrays.equals(mHasBaseline, other.mHasBaseline) &&
+                   Arrays.equals(mBaselineConnected, other.mBaselineConnected);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(mLocations) + Arrays.hashCode(mBaselineConnected);
+        }
+    }
+
+    /**
+     * The inference tables computed for a {@link WidgetSnapshot}
+     */
+    static final class Tables {
+        final WidgetSnapshot mSnapshot;
+        final float[][][] mProbability;
+        final float[][][] mMargin;
+        final float[][][][] mBinaryProbability;
+        final float[][][][] mBinaryBias;
+
+        Tables(WidgetSnapshot snapshot) {
+            this(snapshot, new float[snapshot.mLength][][], new float[snapshot.mLength][][],
+                 new float[snapshot.mLength][][][], new float[snapshot.mLength][][][]);
+        }
+
+        private Tables(WidgetSnapshot snapshot, float[][][] probability, float[][][] margin,
+                       float[][][][] binaryProbability, float[][][][] binaryBias) {
+            mSnapshot = snapshot;
+            mProbability = probability;
+            mMargin = margin;
+            mBinaryProbability = binaryProbability;
+            mBinaryBias = binaryBias;
+        }
+
+        Tables copy() {
+            return new Tables(mSnapshot, deepCopy(mProbability), deepCopy(mMargin),
+                              deepCopy(mBinaryProbability), deepCopy(mBinaryBias));
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T deepCopy(T array) {
+            if (array instanceof float[]) {
+                return (T)((float[])array).clone();
+            }
+            if (array instanceof Object[]) {
+                Object[] copy = ((Object[])array).clone();
+                for (int i = 0; i < copy.length; i++) {
+                    copy[i] = deepCopy(copy[i]);
+                }
+                return (T)copy;
+            }
+            return array;
+        }
+    }
+
     /*-----------------------------------------------------------------------*/
     // Printing fuctions (for use in debugging)
     /*-----------------------------------------------------------------------*/
@@ -363,8 +363,9 @@ public class ScoutWidget implements Comparable<ScoutWidget> {
    */
   public static void computeConstraints(ScoutWidget[] list) {
     ScoutProbabilities table = new ScoutProbabilities();
-    table.computeConstraints(list);
-    table.applyConstraints(list);
+    if (table.computeConstraints(list)) {
+      table.applyConstraints(list);
+    }
   }
 
   private static Direction lookupType(int dir) {
@@ -898,6 +899,13 @@ public class ScoutWidget implements Comparable<ScoutWidget> {
       bx1 = -10000; // make the line infinite long
       bx2 = 10000;
     }
+    return distance(ax1, ay1, ax2, ay2, bx1, by1, bx2, by2);
+  }
+
+  /**
+   * calculates the distance between two rectangles at there closest point to each other
+   */
+  static float distance(float ax1, float ay1, float ax2, float ay2, float bx1, float by1, float bx2, float by2) {
     float xdiff11 = Math.abs(ax1 - bx1);
     float xdiff12 = Math.abs(ax1 - bx2);
     float xdiff21 = Math.abs(ax2 - bx1);
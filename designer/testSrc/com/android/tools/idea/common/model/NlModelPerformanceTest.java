@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.common.model;
+
+import com.android.tools.idea.common.fixtures.ComponentDescriptor;
+import com.android.tools.idea.uibuilder.LayoutTestCase;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.psi.xml.XmlTag;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.android.SdkConstants.*;
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Checks that the component lookups and the PSI synchronization of {@link NlModel} on a layout with {@link #VIEW_COUNT} views
+ * do not redo work when nothing has changed.
+ */
+public class NlModelPerformanceTest extends LayoutTestCase {
+  private static final int VIEW_COUNT = 1000;
+
+  private NlModel myModel;
+  private List<NlComponent> myComponents;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    ComponentDescriptor[] children = new ComponentDescriptor[VIEW_COUNT];
+    for (int i = 0; i < VIEW_COUNT; i++) {
+      children[i] = component(TEXT_VIEW)
+        .withBounds(0, i, 100, 1)
+        .id("@id/text" + i)
+        .width("100dp")
+        .height("1dp");
+    }
+    myModel = model("large.xml", component(LINEAR_LAYOUT)
+      .withBounds(0, 0, 1000, VIEW_COUNT)
+      .matchParentWidth()
+      .matchParentHeight()
+      .children(children)).build();
+    myComponents = myModel.flattenComponents().collect(Collectors.toList());
+    assertThat(myComponents).hasSize(VIEW_COUNT + 1);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      myModel = null;
+      myComponents = null;
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testFindById() {
+    int buildCount = myModel.getComponentIndexBuildCount();
+    for (int i = 0; i < VIEW_COUNT; i++) {
+      assertThat(myModel.find("text" + i)).isSameAs(myComponents.get(i + 1));
+    }
+    assertThat(myModel.getComponentIndexBuildCount()).isAtMost(buildCount + 1);
+  }
+
+  public void testFindByTag() {
+    int buildCount = myModel.getComponentIndexBuildCount();
+    for (NlComponent component : myComponents) {
+      assertThat(myModel.findViewByTag(component.getTag())).isSameAs(component);
+    }
+    assertThat(myModel.getComponentIndexBuildCount()).isAtMost(buildCount + 1);
+  }
+
+  public void testFindByOffset() {
+    int buildCount = myModel.getComponentIndexBuildCount();
+    for (NlComponent component : myComponents) {
+      assertThat(myModel.findByOffset(component.getTag().getTextOffset())).contains(component);
+    }
+    assertThat(myModel.getComponentIndexBuildCount()).isAtMost(buildCount + 1);
+  }
+
+  public void testIndexIsRebuiltOnlyWhenTheFileChanges() {
+    assertThat(myModel.find("text0")).isNotNull();
+    int buildCount = myModel.getComponentIndexBuildCount();
+
+    modifyText(myComponents.get(1), "Text");
+    assertThat(myModel.find("text0")).isNotNull();
+    assertThat(myModel.find("text1")).isNotNull();
+    assertThat(myModel.getComponentIndexBuildCount()).isEqualTo(buildCount + 1);
+  }
+
+  public void testSyncWithoutChangesKeepsIndex() {
+    XmlTag rootTag = myModel.getFile().getRootTag();
+    assertThat(rootTag).isNotNull();
+    myModel.syncWithPsi(rootTag, Collections.emptyList());
+    assertThat(myModel.find("text0")).isNotNull();
+    int buildCount = myModel.getComponentIndexBuildCount();
+
+    for (int i = 0; i < 20; i++) {
+      myModel.syncWithPsi(rootTag, Collections.emptyList());
+      assertThat(myModel.find("text" + i)).isSameAs(myComponents.get(i + 1));
+    }
+    assertThat(myModel.getComponentIndexBuildCount()).isEqualTo(buildCount);
+  }
+
+  public void testSyncAfterSingleAttributeChange() {
+    XmlTag rootTag = myModel.getFile().getRootTag();
+    assertThat(rootTag).isNotNull();
+    myModel.syncWithPsi(rootTag, Collections.emptyList());
+
+    for (int i = 0; i < 20; i++) {
+      modifyText(myComponents.get(1 + i * (VIEW_COUNT / 20)), "Text " + i);
+      myModel.syncWithPsi(rootTag, Collections.emptyList());
+    }
+
+    // The components must survive the synchronization
+    assertThat(myModel.flattenComponents().collect(Collectors.toList())).containsExactlyElementsIn(myComponents).inOrder();
+  }
+
+  private void modifyText(@NotNull NlComponent component, @NotNull String text) {
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> component.getTag().setAttribute(ATTR_TEXT, ANDROID_URI, text));
+  }
+}
@@ -809,6 +809,69 @@ public class NlModelTest extends LayoutTestCase {
     }
   }
 
+  public void testFindIsUpdatedWithModel() {
+    NlModel model = createDefaultModelBuilder(true).build();
+    NlComponent text = model.find("myText1");
+    assertThat(text).isNotNull();
+    assertThat(model.findViewByTag(text.getTag())).isSameAs(text);
+    assertThat(model.findByOffset(text.getTag().getTextOffset())).containsExactly(text);
+
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> text.setAttribute(ANDROID_URI, ATTR_ID, "@+id/renamed"));
+    assertThat(model.find("myText1")).isNull();
+    assertThat(model.find("renamed")).isSameAs(text);
+
+    NlComponent parent = text.getParent();
+    assertThat(parent).isNotNull();
+    parent.removeChild(text);
+    assertThat(model.find("renamed")).isNull();
+    assertThat(model.findViewByTag(text.getTag())).isNull();
+  }
+
+  public void testSyncOnlyUpdatesModifiedSubtree() {
+    NlModel model = model("nested.xml", component(LINEAR_LAYOUT)
+      .withBounds(0, 0, 1000, 1000)
+      .matchParentWidth()
+      .matchParentHeight()
+      .children(
+        component(LINEAR_LAYOUT)
+          .withBounds(0, 0, 500, 500)
+          .id("@id/inner")
+          .width("500dp")
+          .height("500dp")
+          .children(
+            component(TEXT_VIEW)
+              .withBounds(0, 0, 100, 100)
+              .id("@id/text")
+              .width("100dp")
+              .height("100dp")),
+        component(BUTTON)
+          .withBounds(0, 500, 100, 100)
+          .id("@id/button")
+          .width("100dp")
+          .height("100dp")
+      )).build();
+    XmlTag rootTag = model.getFile().getRootTag();
+    assertThat(rootTag).isNotNull();
+    model.syncWithPsi(rootTag, Collections.emptyList());
+
+    NlComponent inner = model.find("inner");
+    NlComponent button = model.find("button");
+    assertThat(inner).isNotNull();
+    assertThat(button).isNotNull();
+    List<NlComponent> innerChildren = inner.children;
+    List<NlComponent> rootChildren = model.getComponents().get(0).children;
+
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> button.getTag().setAttribute(ATTR_TEXT, ANDROID_URI, "Modified"));
+    model.syncWithPsi(rootTag, Collections.emptyList());
+
+    // The unmodified subtree is reused as is while the modified path is rebuilt
+    assertThat(model.find("inner")).isSameAs(inner);
+    assertThat(model.find("button")).isSameAs(button);
+    assertThat(inner.children).isSameAs(innerChildren);
+    assertThat(model.getComponents().get(0).children).isNotSameAs(rootChildren);
+    assertThat(model.getComponents().get(0).getChildren()).containsExactly(inner, button).inOrder();
+  }
+
   @Override
   public void tearDown() throws Exception {
     super.tearDown();
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.common.scene;
+
+import com.android.tools.idea.common.fixtures.ModelBuilder;
+import com.android.tools.idea.uibuilder.scene.SceneTest;
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+import static com.android.SdkConstants.CONSTRAINT_LAYOUT;
+import static com.android.SdkConstants.TEXT_VIEW;
+
+public class DisplayTest extends SceneTest {
+  @Override
+  @NotNull
+  public ModelBuilder createModel() {
+    return model("constraint.xml",
+                 component(CONSTRAINT_LAYOUT)
+                   .id("@+id/root")
+                   .withBounds(0, 0, 1000, 1000)
+                   .width("1000dp")
+                   .height("1000dp")
+                   .children(
+                     component(TEXT_VIEW)
+                       .id("@+id/button")
+                       .withBounds(100, 200, 100, 20)
+                       .width("100dp")
+                       .height("20dp")
+                   ));
+  }
+
+  public void testUnchangedListIsRasterized() {
+    Display display = new Display();
+    BufferedImage image = new BufferedImage(500, 500, BufferedImage.TYPE_INT_ARGB);
+
+    paint(display, image, new Rectangle(0, 0, 500, 500));
+    assertFalse(display.hasCachedImage());
+
+    // The second paint of the same list keeps a raster of it, which is used for any clip it covers
+    paint(display, image, new Rectangle(0, 0, 500, 500));
+    assertTrue(display.hasCachedImage());
+    paint(display, image, new Rectangle(10, 10, 20, 20));
+    assertTrue(display.hasCachedImage());
+
+    // Changes of the scene drop the raster
+    myScene.needsRebuildList();
+    paint(display, image, new Rectangle(0, 0, 500, 500));
+    assertFalse(display.hasCachedImage());
+    paint(display, image, new Rectangle(0, 0, 500, 500));
+    assertTrue(display.hasCachedImage());
+  }
+
+  public void testRasterMatchesList() {
+    Display display = new Display();
+    BufferedImage direct = new BufferedImage(500, 500, BufferedImage.TYPE_INT_ARGB);
+    BufferedImage cached = new BufferedImage(500, 500, BufferedImage.TYPE_INT_ARGB);
+
+    paint(display, direct, new Rectangle(0, 0, 500, 500));
+    paint(display, cached, new Rectangle(0, 0, 500, 500));
+    assertTrue(display.hasCachedImage());
+    for (int y = 0; y < 500; y++) {
+      for (int x = 0; x < 500; x++) {
+        // Compositing the raster may round the channels of translucent pixels differently
+        Color expected = new Color(direct.getRGB(x, y), true);
+        Color actual = new Color(cached.getRGB(x, y), true);
+        String message = "Pixel at " + x + "," + y;
+        assertTrue(message, Math.abs(expected.getAlpha() - actual.getAlpha()) <= 1);
+        if (expected.getAlpha() == 255) {
+          assertEquals(message, expected, actual);
+        }
+      }
+    }
+  }
+
+  private void paint(@NotNull Display display, @NotNull BufferedImage image, @NotNull Rectangle clip) {
+    Graphics2D g = image.createGraphics();
+    try {
+      g.setClip(clip);
+      display.draw(SceneContext.get(), g, myScene);
+    }
+    finally {
+      g.dispose();
+    }
+  }
+}
@@ -20,6 +20,10 @@ import junit.framework.TestCase;
 
 import java.awt.*;
 import java.awt.geom.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 
 /**
  * Test ScenePicker
@@ -342,4 +346,109 @@ public class ScenePickerTest extends TestCase {
       scenePicker.find((int)x, (int)y);
     }
   }
+
+  public void testGridMatchesLinearScan() {
+    Random random = new Random(42);
+    ScenePicker scenePicker = new ScenePicker();
+    // Reference pickers each hold fewer objects than needed to build the grid
+    List<ScenePicker> references = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      if (i % 50 == 0) {
+        references.add(new ScenePicker());
+      }
+      addRandomShape(random, i, scenePicker, references.get(references.size() - 1));
+    }
+    assertSameHits(random, scenePicker, references);
+
+    // Objects added after the grid was built, some of them outside of it
+    for (int i = 2000; i < 2500; i++) {
+      if (i % 50 == 0) {
+        references.add(new ScenePicker());
+      }
+      ScenePicker reference = references.get(references.size() - 1);
+      if (i % 10 == 0) {
+        scenePicker.addRect(i, 2, 1000 + i, 1000 + i, 1100 + i, 1100 + i);
+        reference.addRect(i, 2, 1000 + i, 1000 + i, 1100 + i, 1100 + i);
+      }
+      else {
+        addRandomShape(random, i, scenePicker, reference);
+      }
+    }
+    assertSameHits(random, scenePicker, references);
+
+    scenePicker.reset();
+    scenePicker.addPoint(1, 5, 10, 10);
+    List<Object> hits = new ArrayList<>();
+    scenePicker.setSelectListener((obj, dist) -> hits.add(obj));
+    scenePicker.find(10, 10);
+    assertEquals(Collections.singletonList(1), hits);
+  }
+
+  public void testHoverOnManyTargets() {
+    ScenePicker scenePicker = new ScenePicker();
+    int[] hits = new int[1];
+    scenePicker.setSelectListener((obj, dist) -> hits[0]++);
+    // 5000 targets laid out like the anchors and resize handles of a large layout
+    for (int i = 0; i < 5000; i++) {
+      int x = (i % 100) * 20;
+      int y = (i / 100) * 20;
+      if (i % 2 == 0) {
+        scenePicker.addCircle(i, 4, x, y, 3);
+      }
+      else {
+        scenePicker.addRect(i, 2, x, y, x + 8, y + 8);
+      }
+    }
+    for (int i = 0; i < 1000; i++) {
+      scenePicker.find((i * 7) % 2000, (i * 13) % 1000);
+      // Only the targets around the cursor are tested
+      assertTrue(scenePicker.getLastCandidateCount() < 100);
+    }
+    assertTrue(hits[0] > 0);
+  }
+
+  private static void addRandomShape(Random random, int id, ScenePicker... pickers) {
+    int x = random.nextInt(2000);
+    int y = random.nextInt(2000);
+    int w = random.nextInt(random.nextInt(10) == 0 ? 1000 : 50);
+    int h = random.nextInt(50);
+    int range = random.nextInt(10);
+    int type = random.nextInt(4);
+    for (ScenePicker picker : pickers) {
+      switch (type) {
+        case 0:
+          picker.addRect(id, range, x, y, x + w, y + h);
+          break;
+        case 1:
+          picker.addLine(id, range, x, y, x + w, y + h);
+          break;
+        case 2:
+          picker.addPoint(id, range, x, y);
+          break;
+        default:
+          picker.addCircle(id, range, x, y, h / 2);
+          break;
+      }
+    }
+  }
+
+  private static void assertSameHits(Random random, ScenePicker scenePicker, List<ScenePicker> references) {
+    List<Object> hits = new ArrayList<>();
+    List<Object> expected = new ArrayList<>();
+    scenePicker.setSelectListener((obj, dist) -> hits.add(obj + "@" + dist));
+    for (ScenePicker reference : references) {
+      reference.setSelectListener((obj, dist) -> expected.add(obj + "@" + dist));
+    }
+    for (int i = 0; i < 2000; i++) {
+      int x = random.nextInt(2200) - 100;
+      int y = random.nextInt(2200) - 100;
+      hits.clear();
+      expected.clear();
+      scenePicker.find(x, y);
+      for (ScenePicker reference : references) {
+        reference.find(x, y);
+      }
+      assertEquals("Hits at " + x + "," + y, expected, hits);
+    }
+  }
 }
@@ -33,7 +33,7 @@ import com.android.tools.idea.naveditor.surface.NavDesignSurface;
 import com.android.tools.idea.naveditor.surface.NavView;
 import com.android.tools.idea.uibuilder.LayoutTestUtilities;
 
-import java.util.ArrayList;
+import java.util.List;
 
 import static java.awt.event.MouseEvent.BUTTON1;
 import static org.mockito.ArgumentMatchers.anyInt;
@@ -128,7 +128,7 @@ public class LevelTest extends NavigationTestCase {
     DisplayList displayList = new DisplayList();
     decorator.buildList(displayList, 0, SceneContext.get(), component);
 
-    ArrayList<DrawCommand> commands = displayList.getCommands();
+    List<DrawCommand> commands = displayList.getCommands();
     assertEquals(1, commands.size());
     return commands.get(0).getLevel();
   }
@@ -25,7 +25,7 @@ import com.android.tools.sherpa.drawing.ColorSet;
 import junit.framework.TestCase;
 
 import java.awt.*;
-import java.util.ArrayList;
+import java.util.List;
 
 import static org.mockito.Mockito.*;
 
@@ -95,7 +95,7 @@ public class ScreenLabelTargetTest extends TestCase {
   private void verifyDrawCommands(DrawCommand drawCommand) {
     DisplayList displayList = new DisplayList();
     myScreenLabelTarget.render(displayList, mySceneContext);
-    ArrayList<DrawCommand> list = displayList.getCommands();
+    List<DrawCommand> list = displayList.getCommands();
     assertEquals(list.size(), 1);
     assertEquals(drawCommand.serialize(), list.get(0).serialize());
   }
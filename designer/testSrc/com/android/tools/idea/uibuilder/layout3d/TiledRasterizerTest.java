@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.uibuilder.layout3d;
+
+import com.intellij.testFramework.PlatformTestUtil;
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class TiledRasterizerTest extends TestCase {
+  private static final int WIDTH = 500;
+  private static final int HEIGHT = 300;
+  private static final int TEXTURE_SIZE = 32;
+
+  public void testMatchesSerialRasterizer() {
+    int[] texture = createTexture();
+    double[] matrix = new double[16];
+    TiledRasterizer rasterizer = new TiledRasterizer();
+
+    for (int triangles : new int[]{1, 10, 1000}) {
+      TriData tri = createTriangles(triangles, new Random(triangles));
+
+      float[] expectedZ = new float[WIDTH * HEIGHT];
+      int[] expectedRgb = new int[WIDTH * HEIGHT];
+      Arrays.fill(expectedZ, Float.MAX_VALUE);
+      Arrays.fill(expectedRgb, 0xFF000000);
+      Rasterize.toZBuff(expectedZ, expectedRgb, WIDTH, HEIGHT, tri, texture, TEXTURE_SIZE, TEXTURE_SIZE, matrix);
+
+      // The buffers are reused, so fill them with garbage to check they are cleared
+      float[] z = new float[WIDTH * HEIGHT];
+      int[] rgb = new int[WIDTH * HEIGHT];
+      Arrays.fill(z, -1);
+      Arrays.fill(rgb, 0x123456);
+      rasterizer.render(z, rgb, WIDTH, HEIGHT, tri, texture, TEXTURE_SIZE, TEXTURE_SIZE, matrix);
+
+      assertTrue(Arrays.equals(expectedZ, z));
+      assertTrue(Arrays.equals(expectedRgb, rgb));
+    }
+  }
+
+  public void testMatchesSimpleRasterizer() {
+    TriData tri = createTriangles(500, new Random(1));
+
+    float[] expectedZ = new float[WIDTH * HEIGHT];
+    int[] expectedRgb = new int[WIDTH * HEIGHT];
+    Arrays.fill(expectedZ, Float.MAX_VALUE);
+    Arrays.fill(expectedRgb, 0xFF000000);
+    Rasterize.simple(expectedZ, expectedRgb, WIDTH, HEIGHT, tri);
+
+    float[] z = new float[WIDTH * HEIGHT];
+    int[] rgb = new int[WIDTH * HEIGHT];
+    new TiledRasterizer().render(z, rgb, WIDTH, HEIGHT, tri, null, 0, 0, null);
+
+    assertTrue(Arrays.equals(expectedZ, z));
+    assertTrue(Arrays.equals(expectedRgb, rgb));
+  }
+
+  /**
+   * Checks a full HD frame, which is split in many more tiles than the other tests, with enough triangles to cross most of them
+   */
+  public void testMatchesSerialRasterizerOnLargeFrame() {
+    int width = 1920;
+    int height = 1080;
+    int[] texture = createTexture();
+    double[] matrix = new double[16];
+    TriData tri = createTriangles(10000, new Random(10000), width, height);
+
+    float[] expectedZ = new float[width * height];
+    int[] expectedRgb = new int[width * height];
+    Arrays.fill(expectedZ, Float.MAX_VALUE);
+    Arrays.fill(expectedRgb, 0xFF000000);
+    Rasterize.toZBuff(expectedZ, expectedRgb, width, height, tri, texture, TEXTURE_SIZE, TEXTURE_SIZE, matrix);
+
+    float[] z = new float[width * height];
+    int[] rgb = new int[width * height];
+    new TiledRasterizer().render(z, rgb, width, height, tri, texture, TEXTURE_SIZE, TEXTURE_SIZE, matrix);
+
+    assertTrue(Arrays.equals(expectedZ, z));
+    assertTrue(Arrays.equals(expectedRgb, rgb));
+  }
+
+  public void testPerformance() {
+    int width = 1920;
+    int height = 1080;
+    int[] texture = createTexture();
+    double[] matrix = new double[16];
+    TriData tri = createTriangles(10000, new Random(10000), width, height);
+    float[] z = new float[width * height];
+    int[] rgb = new int[width * height];
+    TiledRasterizer rasterizer = new TiledRasterizer();
+
+    PlatformTestUtil.startPerformanceTest("layout3d tiled rasterization", 500, () -> {
+      for (int i = 0; i < 10; i++) {
+        rasterizer.render(z, rgb, width, height, tri, texture, TEXTURE_SIZE, TEXTURE_SIZE, matrix);
+      }
+    }).attempts(3).usesAllCPUCores().assertTiming();
+  }
+
+  private static TriData createTriangles(int count, Random random) {
+    return createTriangles(count, random, WIDTH, HEIGHT);
+  }
+
+  /**
+   * Creates triangles of both windings and surface types, some of them partly off screen
+   */
+  private static TriData createTriangles(int count, Random random, int width, int height) {
+    TriData tri = new TriData();
+    tri.myVert = new float[count * 9];
+    tri.myTexture_uv = new float[count * 9];
+    tri.myIndex = new int[count * 3];
+    tri.mySurfaceType = new int[count];
+    for (int i = 0; i < count; i++) {
+      float cx = random.nextFloat() * width * 1.2f - width * 0.1f;
+      float cy = random.nextFloat() * height * 1.2f - height * 0.1f;
+      float size = random.nextFloat() * 100;
+      for (int v = 0; v < 3; v++) {
+        int p = i * 9 + v * 3;
+        tri.myVert[p] = cx + (random.nextFloat() - 0.5f) * size;
+        tri.myVert[p + 1] = cy + (random.nextFloat() - 0.5f) * size;
+        tri.myVert[p + 2] = random.nextFloat() * 100;
+        tri.myTexture_uv[p] = random.nextFloat() * TEXTURE_SIZE;
+        tri.myTexture_uv[p + 1] = random.nextFloat() * TEXTURE_SIZE;
+        tri.myIndex[i * 3 + v] = p;
+      }
+      tri.mySurfaceType[i] = random.nextInt(3);
+    }
+    return tri;
+  }
+
+  private static int[] createTexture() {
+    int[] texture = new int[TEXTURE_SIZE * TEXTURE_SIZE];
+    for (int i = 0; i < texture.length; i++) {
+      texture[i] = (i * 0x10204) & 0xFFFFFF;
+    }
+    return texture;
+  }
+}
@@ -17,10 +17,11 @@ package com.android.tools.idea.uibuilder.mockup.colorextractor;
 
 import org.junit.Test;
 
-import java.util.List;
+import java.util.*;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 
 public class DBSCANClustererTest {
 
@@ -65,4 +66,99 @@ public class DBSCANClustererTest {
     assertNotNull(cluster3);
     assertEquals(4, cluster3.size());
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testDuplicatesAreNeighbors() throws Exception {
+    double[][] data = new double[][]{
+      new double[]{1., 1., 1.},
+      new double[]{1., 1., 1.},
+      new double[]{1., 1., 1.},
+      new double[]{50., 50., 50.},
+    };
+
+    List<List<double[]>> clusters = new DBSCANClusterer(1, 2).cluster(data);
+    assertEquals(1, clusters.size());
+    assertEquals(3, clusters.get(0).size());
+    // The clusters contain the input points in their input order
+    for (int i = 0; i < 3; i++) {
+      assertSame(data[i], clusters.get(0).get(i));
+    }
+
+    assertEquals(0, new DBSCANClusterer(1, 3).cluster(data).size());
+  }
+
+  @Test
+  public void testMatchesLinearRegionQuery() throws Exception {
+    Random random = new Random(1);
+    double[][] data = new double[5000][];
+    for (int i = 0; i < data.length; i++) {
+      // Few distinct values so there are many duplicates and dense regions
+      data[i] = new double[]{random.nextInt(40) / 2., random.nextInt(40) / 2. - 10, random.nextInt(20) / 2.};
+    }
+
+    for (int minPts : new int[]{0, 3, 10}) {
+      List<List<double[]>> clusters = new DBSCANClusterer(0.8f, minPts).cluster(data);
+      assertEquals(linearDbscan(data, 0.8f, minPts), toLabels(data, clusters));
+    }
+  }
+
+  /**
+   * Straightforward DBSCAN comparing every pair of points, returning the cluster index of each point or -1 for the noise
+   */
+  private static List<Integer> linearDbscan(double[][] data, float eps, int minPts) {
+    Integer[] labels = new Integer[data.length];
+    int clusterCount = 0;
+    for (int i = 0; i < data.length; i++) {
+      if (labels[i] != null) {
+        continue;
+      }
+      List<Integer> neighbors = linearRegionQuery(data, i, eps);
+      if (neighbors.size() - 1 < minPts) {
+        labels[i] = -1;
+        continue;
+      }
+      int cluster = clusterCount++;
+      labels[i] = cluster;
+      Deque<Integer> seeds = new ArrayDeque<>(neighbors);
+      while (!seeds.isEmpty()) {
+        int current = seeds.poll();
+        if (labels[current] != null && labels[current] != -1) {
+          continue;
+        }
+        labels[current] = cluster;
+        List<Integer> currentNeighbors = linearRegionQuery(data, current, eps);
+        if (currentNeighbors.size() - 1 >= minPts) {
+          seeds.addAll(currentNeighbors);
+        }
+      }
+    }
+    return Arrays.asList(labels);
+  }
+
+  private static List<Integer> linearRegionQuery(double[][] data, int index, float eps) {
+    List<Integer> neighbors = new ArrayList<>();
+    for (int i = 0; i < data.length; i++) {
+      double dx = data[i][0] - data[index][0];
+      double dy = data[i][1] - data[index][1];
+      double dz = data[i][2] - data[index][2];
+      if (dx * dx + dy * dy + dz * dz <= eps * eps) {
+        neighbors.add(i);
+      }
+    }
+    return neighbors;
+  }
+
+  private static List<Integer> toLabels(double[][] data, List<List<double[]>> clusters) {
+    Map<double[], Integer> labels = new IdentityHashMap<>();
+    for (int i = 0; i < clusters.size(); i++) {
+      for (double[] point : clusters.get(i)) {
+        assertEquals(null, labels.put(point, i));
+      }
+    }
+    List<Integer> result = new ArrayList<>();
+    for (double[] point : data) {
+      result.add(labels.getOrDefault(point, -1));
+    }
+    return result;
+  }
+}
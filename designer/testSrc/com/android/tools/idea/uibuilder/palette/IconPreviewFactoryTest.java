@@ -27,7 +27,12 @@ import com.android.tools.idea.common.SyncNlModel;
 import com.android.tools.idea.common.fixtures.ModelBuilder;
 import com.android.tools.idea.common.model.NlLayoutType;
 import com.android.tools.idea.uibuilder.surface.ScreenView;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.psi.PsiDocumentManager;
 import com.intellij.psi.PsiFile;
 import org.jetbrains.android.facet.AndroidFacet;
 import org.jetbrains.annotations.NotNull;
@@ -39,13 +44,20 @@ import java.io.File;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+import static com.android.SdkConstants.DOT_PNG;
 import static com.android.SdkConstants.RELATIVE_LAYOUT;
 import static java.io.File.separator;
 
 public class IconPreviewFactoryTest extends LayoutTestCase {
   private static final float MAX_PERCENT_DIFFERENT = 6.5f;
+  private static final String PREVIEW_STYLES = "<resources>\n" +
+                                               "  <style name=\"PreviewTheme\" parent=\"android:Theme.Material\">\n" +
+                                               "    <item name=\"android:colorAccent\">%1$s</item>\n" +
+                                               "  </style>\n" +
+                                               "</resources>\n";
   private Palette.Item myItem;
   private ScreenView myScreenView;
   private IconPreviewFactory myFactory;
@@ -94,6 +106,119 @@ public class IconPreviewFactoryTest extends LayoutTestCase {
     assertNull(myFactory.renderDragImage(myItem, myScreenView));
   }
 
+  public void testLoadRendersPreviewsInBackground() throws Exception {
+    myFactory.load(myScreenView, Collections.singletonList(myItem)).get();
+
+    // A render timeout of 0 makes direct renders fail, so the image can only come from the background render
+    myFactory.myRenderTimeoutSeconds = 0L;
+    BufferedImage image = myFactory.renderDragImage(myItem, myScreenView);
+    File goldenFile = new File(getTestDataPath() + separator + "palette" + separator + "TextView.png");
+    BufferedImage goldenImage = ImageIO.read(goldenFile);
+    assertNotNull(image);
+    ImageDiffUtil.assertImageSimilar("TextView.png", goldenImage, image, MAX_PERCENT_DIFFERENT);
+  }
+
+  public void testLoadReadsStoredPreviews() throws Exception {
+    File storeDirectory = FileUtil.createTempDirectory("palette_previews", null);
+    String key = myFactory.getPreviewKey(myScreenView.getModel().getConfiguration(), myItem.getDragPreviewXml());
+
+    IconPreviewFactory factory = new IconPreviewFactory(MoreExecutors.directExecutor(), storeDirectory, IconPreviewFactory.MAX_STORE_SIZE_BYTES);
+    try {
+      factory.load(myScreenView, Collections.singletonList(myItem)).get();
+      File storedFile = factory.getStoredFile(key);
+      assertNotNull(storedFile);
+      assertTrue(storedFile.isFile());
+
+      // Replace the stored preview to check that the next session reads it instead of rendering again
+      //noinspection UndesirableClassUsage
+      ImageIO.write(new BufferedImage(3, 2, BufferedImage.TYPE_INT_ARGB), "PNG", storedFile);
+    }
+    finally {
+      Disposer.dispose(factory);
+    }
+
+    IconPreviewFactory nextSession = new IconPreviewFactory(MoreExecutors.directExecutor(), storeDirectory, IconPreviewFactory.MAX_STORE_SIZE_BYTES);
+    try {
+      nextSession.load(myScreenView, Collections.singletonList(myItem)).get();
+      BufferedImage image = nextSession.renderDragImage(myItem, myScreenView);
+      assertNotNull(image);
+      assertEquals(3, image.getWidth());
+      assertEquals(2, image.getHeight());
+    }
+    finally {
+      Disposer.dispose(nextSession);
+    }
+  }
+
+  public void testPreviewKeyDependsOnThemeAttributes() throws Exception {
+    PsiFile styles = myFixture.addFileToProject("res/values/preview_styles.xml", String.format(PREVIEW_STYLES, "#FF0000"));
+    Configuration configuration = myScreenView.getModel().getConfiguration();
+    configuration.setTheme("@style/PreviewTheme");
+    String xml = myItem.getDragPreviewXml();
+    String key = myFactory.getPreviewKey(configuration, xml);
+    assertEquals(key, myFactory.getPreviewKey(configuration, xml));
+
+    Document document = PsiDocumentManager.getInstance(getProject()).getDocument(styles);
+    assertNotNull(document);
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> {
+      document.setText(String.format(PREVIEW_STYLES, "#00FF00"));
+      PsiDocumentManager.getInstance(getProject()).commitDocument(document);
+    });
+    assertFalse(key.equals(myFactory.getPreviewKey(configuration, xml)));
+  }
+
+  public void testPreviewKeyDependsOnDevice() throws Exception {
+    Configuration configuration = myScreenView.getModel().getConfiguration();
+    String xml = myItem.getDragPreviewXml();
+    configuration.setDevice(configuration.getConfigurationManager().getDeviceById("Nexus 6P"), false);
+    String key = myFactory.getPreviewKey(configuration, xml);
+
+    configuration.setDevice(configuration.getConfigurationManager().getDeviceById("Nexus S"), false);
+    assertFalse(key.equals(myFactory.getPreviewKey(configuration, xml)));
+  }
+
+  public void testPreviewSizeDoesNotDependOnScale() throws Exception {
+    BufferedImage image = myFactory.renderDragImage(myItem, myScreenView);
+    assertNotNull(image);
+
+    ScreenView zoomedScreenView = screen((SyncNlModel)myScreenView.getModel()).withScale(myScreenView.getScale() * 4).getScreen();
+    IconPreviewFactory factory = new IconPreviewFactory();
+    try {
+      factory.myRenderTimeoutSeconds = Long.MAX_VALUE;
+      BufferedImage zoomedImage = factory.renderDragImage(myItem, zoomedScreenView);
+      assertNotNull(zoomedImage);
+      assertEquals(image.getWidth(), zoomedImage.getWidth());
+      assertEquals(image.getHeight(), zoomedImage.getHeight());
+    }
+    finally {
+      Disposer.dispose(factory);
+    }
+  }
+
+  public void testStoreIsTrimmed() throws Exception {
+    File storeDirectory = FileUtil.createTempDirectory("palette_previews", null);
+    IconPreviewFactory factory = new IconPreviewFactory(MoreExecutors.directExecutor(), storeDirectory, 1000);
+    try {
+      for (int i = 0; i < 10; i++) {
+        File file = new File(storeDirectory, i + DOT_PNG);
+        FileUtil.writeToFile(file, new byte[200]);
+        assertTrue(file.setLastModified(1000000L * (i + 1)));
+      }
+      factory.trimStore();
+
+      // The least recently used previews are deleted until the store is below three quarters of its maximum size
+      File[] files = storeDirectory.listFiles();
+      assertNotNull(files);
+      assertEquals(3, files.length);
+      assertFalse(new File(storeDirectory, "6" + DOT_PNG).exists());
+      assertTrue(new File(storeDirectory, "7" + DOT_PNG).exists());
+      assertTrue(new File(storeDirectory, "9" + DOT_PNG).exists());
+    }
+    finally {
+      Disposer.dispose(factory);
+    }
+  }
+
   private Palette loadPalette() throws Exception {
     NlPaletteModel model = NlPaletteModel.get(myFacet);
 
@@ -82,7 +82,7 @@ public class NlPaletteTreeGridTest extends LayoutTestCase {
     registerApplicationComponent(JavaDocViewer.class, myJavaDocViewer);
     registerApplicationComponent(PropertiesComponent.class, new PropertiesComponentMock());
     myCloseToolWindowCallback = mock(Runnable.class);
-    myIconPreviewFactory = new IconPreviewFactory();
+    myIconPreviewFactory = mock(IconPreviewFactory.class);
     PsiFile file = myFixture.configureByText("res/layout/mine.xml", "<LinearLayout/>");
     Configuration configuration = ConfigurationManager.getOrCreateInstance(myFacet).getConfiguration(file.getVirtualFile());
     when(mySurface.getConfiguration()).thenReturn(configuration);
@@ -96,7 +96,6 @@ public class NlPaletteTreeGridTest extends LayoutTestCase {
     try {
       cleanUsageTrackerAfterTesting(mySurface);
       Disposer.dispose(myPanel);
-      Disposer.dispose(myIconPreviewFactory);
     } finally {
       super.tearDown();
     }
@@ -178,6 +177,20 @@ public class NlPaletteTreeGridTest extends LayoutTestCase {
     assertThat(lastSelectedItem.value.getTagName()).isEqualTo(COORDINATOR_LAYOUT);
   }
 
+  public void testPopulateLoadsPreviewsOfAvailableItems() {
+    Palette palette = NlPaletteModel.get(myFacet).getPalette(NlLayoutType.LAYOUT);
+    Palette.Item coordinatorLayout = findItem(palette, COORDINATOR_LAYOUT);
+    when(myDependencyManager.needsLibraryLoad(eq(coordinatorLayout))).thenReturn(true);
+
+    myPanel.populateUiModel(palette, mySurface);
+
+    //noinspection unchecked
+    ArgumentCaptor<List<Palette.Item>> items = ArgumentCaptor.forClass((Class)List.class);
+    verify(myIconPreviewFactory).load(eq(mySurface.getCurrentSceneView()), items.capture());
+    assertThat(items.getValue()).contains(findItem(palette, TEXT_VIEW));
+    assertThat(items.getValue()).doesNotContain(coordinatorLayout);
+  }
+
   public void testSetFilter() {
     Palette palette = NlPaletteModel.get(myFacet).getPalette(NlLayoutType.LAYOUT);
     myPanel.populateUiModel(palette, mySurface);
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.uibuilder.scene;
+
+import com.google.wireless.android.sdk.stats.LayoutEditorRenderResult.Trigger;
+import junit.framework.TestCase;
+
+public class RenderLatencyHistogramTest extends TestCase {
+  public void testPercentiles() {
+    RenderLatencyHistogram histogram = new RenderLatencyHistogram();
+    assertEquals(-1, histogram.getPercentileMs(Trigger.EDIT, 50));
+
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(Trigger.EDIT, i);
+    }
+    assertEquals(100, histogram.getCount(Trigger.EDIT));
+    assertEquals(64, histogram.getPercentileMs(Trigger.EDIT, 50));
+    assertEquals(128, histogram.getPercentileMs(Trigger.EDIT, 90));
+    assertEquals(1, histogram.getPercentileMs(Trigger.EDIT, 0));
+
+    histogram.record(Trigger.EDIT, 1_000_000);
+    assertEquals(Long.MAX_VALUE, histogram.getPercentileMs(Trigger.EDIT, 100));
+  }
+
+  public void testTriggersAreKeptSeparately() {
+    RenderLatencyHistogram histogram = new RenderLatencyHistogram();
+    histogram.record(Trigger.EDIT, 10);
+    histogram.record(Trigger.BUILD, 1000);
+    histogram.record(null, 3);
+
+    assertEquals(1, histogram.getCount(Trigger.EDIT));
+    assertEquals(16, histogram.getPercentileMs(Trigger.EDIT, 90));
+    assertEquals(1024, histogram.getPercentileMs(Trigger.BUILD, 90));
+    assertEquals(4, histogram.getPercentileMs(null, 90));
+    assertEquals("BUILD: 1 renders, p50 <= 1024ms, p90 <= 1024ms, " +
+                 "EDIT: 1 renders, p50 <= 16ms, p90 <= 16ms, " +
+                 "UNKNOWN: 1 renders, p50 <= 4ms, p90 <= 4ms", histogram.getSummary());
+
+    histogram.clear();
+    assertEquals(0, histogram.getCount(Trigger.EDIT));
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.uibuilder.scene;
+
+import com.android.tools.idea.common.fixtures.ComponentDescriptor;
+import com.android.tools.idea.common.fixtures.ModelBuilder;
+import com.android.tools.idea.common.model.NlComponent;
+import com.android.tools.idea.uibuilder.scout.Scout;
+import org.jetbrains.annotations.NotNull;
+
+import static com.android.SdkConstants.*;
+
+/**
+ * Check the inference on a layout with many widgets
+ */
+public class ScoutTest10 extends SceneTest {
+  private static final int ROWS = 12;
+  private static final int COLUMNS = 10;
+
+  @Override
+  @NotNull
+  public ModelBuilder createModel() {
+    ComponentDescriptor[] children = new ComponentDescriptor[ROWS * COLUMNS];
+    for (int row = 0; row < ROWS; row++) {
+      for (int column = 0; column < COLUMNS; column++) {
+        children[row * COLUMNS + column] = component(TEXT_VIEW)
+          .id("@+id/textview" + row + "_" + column)
+          .withBounds(40 + column * 190, 40 + row * 160, 150, 100)
+          .width("75dp")
+          .height("50dp");
+      }
+    }
+    return model("constraint.xml",
+                 component(CONSTRAINT_LAYOUT)
+                   .id("@+id/content_main")
+                   .withBounds(0, 0, 2000, 2000)
+                   .width("1000dp")
+                   .height("1000dp")
+                   .children(children));
+  }
+
+  public void testInferManyWidgets() {
+    NlComponent root = myModel.getComponents().get(0);
+    long start = System.currentTimeMillis();
+    Scout.inferConstraintsAndCommit(myModel.getComponents());
+    long elapsed = System.currentTimeMillis() - start;
+    assertTrue("Inference took " + elapsed + "ms", elapsed < 30000);
+
+    for (NlComponent child : root.getChildren()) {
+      boolean horizontal = child.getAttribute(SHERPA_URI, ATTR_LAYOUT_START_TO_START_OF) != null ||
+                           child.getAttribute(SHERPA_URI, ATTR_LAYOUT_START_TO_END_OF) != null ||
+                           child.getAttribute(SHERPA_URI, ATTR_LAYOUT_END_TO_START_OF) != null ||
+                           child.getAttribute(SHERPA_URI, ATTR_LAYOUT_END_TO_END_OF) != null ||
+                           child.getAttribute(SHERPA_URI, ATTR_LAYOUT_LEFT_TO_LEFT_OF) != null ||
+                           child.getAttribute(SHERPA_URI, ATTR_LAYOUT_LEFT_TO_RIGHT_OF) != null ||
+                           child.getAttribute(SHERPA_URI, ATTR_LAYOUT_RIGHT_TO_LEFT_OF) != null ||
+                           child.getAttribute(SHERPA_URI, ATTR_LAYOUT_RIGHT_TO_RIGHT_OF) != null;
+      boolean vertical = child.getAttribute(SHERPA_URI, ATTR_LAYOUT_TOP_TO_TOP_OF) != null ||
+                         child.getAttribute(SHERPA_URI, ATTR_LAYOUT_TOP_TO_BOTTOM_OF) != null ||
+                         child.getAttribute(SHERPA_URI, ATTR_LAYOUT_BOTTOM_TO_TOP_OF) != null ||
+                         child.getAttribute(SHERPA_URI, ATTR_LAYOUT_BOTTOM_TO_BOTTOM_OF) != null ||
+                         child.getAttribute(SHERPA_URI, ATTR_LAYOUT_BASELINE_TO_BASELINE_OF) != null;
+      assertTrue(child.getId() + " is not constrained", horizontal || vertical);
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.uibuilder.scout;
+
+import com.android.tools.idea.common.fixtures.ComponentDescriptor;
+import com.android.tools.idea.common.fixtures.ModelBuilder;
+import com.android.tools.idea.uibuilder.scene.SceneTest;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+import static com.android.SdkConstants.CONSTRAINT_LAYOUT;
+import static com.android.SdkConstants.TEXT_VIEW;
+
+public class ScoutProbabilitiesTest extends SceneTest {
+  private static final int ROWS = 6;
+  private static final int COLUMNS = 5;
+
+  @Override
+  @NotNull
+  public ModelBuilder createModel() {
+    // A grid of widgets, the last of which overhangs the root
+    ComponentDescriptor[] children = new ComponentDescriptor[ROWS * COLUMNS + 1];
+    for (int row = 0; row < ROWS; row++) {
+      for (int column = 0; column < COLUMNS; column++) {
+        children[row * COLUMNS + column] = component(TEXT_VIEW)
+          .id("@+id/textview" + row + "_" + column)
+          .withBounds(40 + column * 190 + row * 7, 40 + row * 160, 150, 100)
+          .width("75dp")
+          .height("50dp");
+      }
+    }
+    children[ROWS * COLUMNS] = component(TEXT_VIEW)
+      .id("@+id/overhanging")
+      .withBounds(-6, 1000, 150, 100)
+      .width("75dp")
+      .height("50dp");
+    return model("constraint.xml",
+                 component(CONSTRAINT_LAYOUT)
+                   .id("@+id/content_main")
+                   .withBounds(0, 0, 1000, 1100)
+                   .width("500dp")
+                   .height("550dp")
+                   .children(children));
+  }
+
+  public void testSkippingMisalignedCandidatesDoesNotChangeTables() {
+    ScoutProbabilities.WidgetSnapshot snapshot = new ScoutProbabilities.WidgetSnapshot(getWidgets());
+
+    ScoutProbabilities.Tables skipped = ScoutProbabilities.computeTables(snapshot, true);
+    ScoutProbabilities.Tables evaluated = ScoutProbabilities.computeTables(snapshot, false);
+
+    assertTrue(Arrays.deepEquals(evaluated.mProbability, skipped.mProbability));
+    assertTrue(Arrays.deepEquals(evaluated.mMargin, skipped.mMargin));
+    assertTrue(Arrays.deepEquals(evaluated.mBinaryProbability, skipped.mBinaryProbability));
+    assertTrue(Arrays.deepEquals(evaluated.mBinaryBias, skipped.mBinaryBias));
+  }
+
+  public void testTablesAreReusedForSameLayout() {
+    ScoutWidget[] widgets = getWidgets();
+    ScoutProbabilities.WidgetSnapshot snapshot = new ScoutProbabilities.WidgetSnapshot(widgets);
+
+    ScoutProbabilities probabilities = new ScoutProbabilities();
+    assertTrue(probabilities.computeConstraints(widgets));
+    ScoutProbabilities.Tables cached = ScoutProbabilities.getCachedTables(snapshot);
+    assertNotNull(cached);
+
+    // Each caller gets a copy of the cached tables, as applying the constraints modifies them
+    assertNotSame(cached.mBinaryProbability, probabilities.mBinaryProbability);
+    assertTrue(Arrays.deepEquals(cached.mBinaryProbability, probabilities.mBinaryProbability));
+
+    ScoutProbabilities otherProbabilities = new ScoutProbabilities();
+    assertTrue(otherProbabilities.computeConstraints(getWidgets()));
+    assertSame(cached, ScoutProbabilities.getCachedTables(snapshot));
+    assertTrue(Arrays.deepEquals(cached.mProbability, otherProbabilities.mProbability));
+
+    // Another layout replaces the cached tables
+    ScoutWidget[] otherWidgets = Arrays.copyOf(widgets, widgets.length - 1);
+    assertTrue(new ScoutProbabilities().computeConstraints(otherWidgets));
+    assertNull(ScoutProbabilities.getCachedTables(snapshot));
+    assertNotNull(ScoutProbabilities.getCachedTables(new ScoutProbabilities.WidgetSnapshot(otherWidgets)));
+  }
+
+  public void testComputationCanBeCancelled() {
+    ScoutProbabilities.WidgetSnapshot snapshot = new ScoutProbabilities.WidgetSnapshot(getWidgets());
+    // Cancel once the tables of the first widget are computed
+    ProgressIndicator indicator = new EmptyProgressIndicator() {
+      @Override
+      public void setFraction(double fraction) {
+        cancel();
+      }
+    };
+
+    try {
+      ProgressManager.getInstance().runProcess(() -> ScoutProbabilities.computeTables(snapshot), indicator);
+      fail("The computation was not cancelled");
+    }
+    catch (ProcessCanceledException expected) {
+    }
+  }
+
+  @NotNull
+  private ScoutWidget[] getWidgets() {
+    return ScoutWidget.getWidgetArray(myModel.getComponents().get(0));
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.sherpa.interaction.tests;
+
+import android.support.constraint.solver.widgets.ConstraintAnchor;
+import android.support.constraint.solver.widgets.ConstraintWidget;
+import android.support.constraint.solver.widgets.ConstraintWidgetContainer;
+import com.android.tools.sherpa.drawing.ViewTransform;
+import com.android.tools.sherpa.structure.WidgetCompanion;
+import com.android.tools.sherpa.structure.WidgetsScene;
+
+import java.util.Arrays;
+
+/**
+ * Benchmark for WidgetsScene#layoutForDrag
+ * This replays the same drag on a large layout, solving the whole tree on each event and
+ * then only the part affected by the dragged widget, and prints the solve time per event
+ */
+public class DragReplay {
+  private static final int GROUPS = 20;
+  private static final int WIDGETS_PER_GROUP = 25;
+  private static final int EVENTS = 200;
+
+  private final WidgetsScene mScene = new WidgetsScene();
+  private final ViewTransform mTransform = new ViewTransform();
+  private final ConstraintWidgetContainer mRoot = new ConstraintWidgetContainer();
+  private ConstraintWidget mDragged;
+
+  DragReplay() {
+    mRoot.setDebugName("root");
+    mRoot.setDimension(1000, 40 * GROUPS * WIDGETS_PER_GROUP);
+    mRoot.setCompanionWidget(WidgetCompanion.create(mRoot));
+    mScene.addWidget(mRoot);
+    // Each group is a fixed size container holding a vertical chain of widgets
+    for (int i = 0; i < GROUPS; i++) {
+      ConstraintWidgetContainer group = new ConstraintWidgetContainer();
+      group.setDebugName(mScene.createContainerName("group"));
+      group.setOrigin(0, i * 40 * WIDGETS_PER_GROUP);
+      group.setDimension(1000, 40 * WIDGETS_PER_GROUP);
+      add(mRoot, group);
+      ConstraintWidget previous = null;
+      for (int j = 0; j < WIDGETS_PER_GROUP; j++) {
+        ConstraintWidget widget = new ConstraintWidget(10, j * 40, 100, 30);
+        widget.setDebugName("widget" + i + "_" + j);
+        add(group, widget);
+        if (previous == null) {
+          widget.connect(ConstraintAnchor.Type.TOP, group, ConstraintAnchor.Type.TOP, 8);
+        } else {
+          widget.connect(ConstraintAnchor.Type.TOP, previous, ConstraintAnchor.Type.BOTTOM, 8);
+        }
+        widget.connect(ConstraintAnchor.Type.LEFT, group, ConstraintAnchor.Type.LEFT, 8);
+        previous = widget;
+      }
+      if (i == GROUPS / 2) {
+        mDragged = group.getChildren().get(0);
+      }
+    }
+    mRoot.layout();
+  }
+
+  private void add(ConstraintWidgetContainer parent, ConstraintWidget widget) {
+    widget.setCompanionWidget(WidgetCompanion.create(widget));
+    parent.add(widget);
+    mScene.setWidget(widget);
+  }
+
+  /**
+   * Replay the drag, returning the solve time of each event in nanoseconds
+   *
+   * @param incremental if true, use WidgetsScene#layoutForDrag, otherwise solve the whole tree
+   * @return the solve times
+   */
+  long[] replay(boolean incremental) {
+    long[] times = new long[EVENTS];
+    for (int i = 0; i < EVENTS; i++) {
+      mDragged.getAnchor(ConstraintAnchor.Type.LEFT).setMargin(8 + i % 100);
+      if (incremental) {
+        mScene.layoutForDrag(mDragged, mTransform);
+        times[i] = mScene.getLastSolveTime();
+      } else {
+        long time = System.nanoTime();
+        mRoot.layout();
+        mScene.updatePositions(mTransform);
+        times[i] = System.nanoTime() - time;
+      }
+    }
+    return times;
+  }
+
+  private static String summary(long[] times) {
+    long[] sorted = times.clone();
+    Arrays.sort(sorted);
+    return String.format("median %.3fms, p90 %.3fms, max %.3fms",
+                         sorted[sorted.length / 2] * 1E-6f,
+                         sorted[sorted.length * 9 / 10] * 1E-6f,
+                         sorted[sorted.length - 1] * 1E-6f);
+  }
+
+  public static void main(String[] args) {
+    DragReplay replay = new DragReplay();
+    // warm up
+    replay.replay(false);
+    replay.replay(true);
+    System.out.println(GROUPS * WIDGETS_PER_GROUP + " widgets, " + EVENTS + " drag events");
+    System.out.println("full solve:        " + summary(replay.replay(false)));
+    System.out.println("incremental solve: " + summary(replay.replay(true)));
+  }
+}
@@ -29,6 +29,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Locale;
 
 /**
  * Represent a list of widgets and the associated operations
@@ -36,8 +37,11 @@ import java.util.HashMap;
 public class WidgetsScene {
 
     private HashMap<Object, ConstraintWidget> mWidgets = new HashMap<>();
+    // number of widgets using each lower case debug name, updated along with mWidgets
+    private final HashMap<String, Integer> mNames = new HashMap<>();
     private WidgetContainer mRoot;
     private Selection mSelection;
+    private long mLastSolveTime;
 
     /**
      * Clear the scene
@@ -48,6 +52,7 @@ public class WidgetsScene {
             mSelection.clear();
         }
         mWidgets.clear();
+        mNames.clear();
     }
 
     /**
@@ -77,7 +82,9 @@ public class WidgetsScene {
      */
     public void setWidgets(HashMap<Object, ConstraintWidget> widgets) {
         mWidgets = widgets;
+        mNames.clear();
         for (ConstraintWidget widget : mWidgets.values()) {
+            addName(widget);
             if (widget.isRoot()) {
                 mRoot = (WidgetContainer) widget;
             }
@@ -114,7 +121,7 @@ public class WidgetsScene {
         if (parent == null) {
             return;
         }
-        for (ConstraintWidget widget : mWidgets.values()) {
+        for (ConstraintWidget widget : parent.getChildren()) {
             widget.disconnectWidget(container);
         }
         ArrayList<ConstraintWidget> children =
@@ -126,7 +133,7 @@ public class WidgetsScene {
             child.setY(child.getY() + container.getY());
         }
         parent.remove(container);
-        mWidgets.remove(getTag(container));
+        forgetWidget(container);
     }
 
     /**
@@ -161,14 +168,17 @@ public class WidgetsScene {
                 removeWidget(w);
             }
         }
-        for (ConstraintWidget w : mWidgets.values()) {
+        WidgetContainer parent = (WidgetContainer) widget.getParent();
+        // Only the siblings of the widget can be connected to it
+        Collection<ConstraintWidget> connected =
+                parent != null ? parent.getChildren() : mWidgets.values();
+        for (ConstraintWidget w : connected) {
             w.disconnectWidget(widget);
         }
-        WidgetContainer parent = (WidgetContainer) widget.getParent();
         if (parent != null) {
             parent.remove(widget);
         }
-        mWidgets.remove(getTag(widget));
+        forgetWidget(widget);
         if (mRoot == widget) {
             mRoot = null;
         }
@@ -472,14 +482,7 @@ public class WidgetsScene {
         int counter = 1;
         while (!valid) {
             String candidate = name + counter;
-            boolean exists = false;
-            for (ConstraintWidget widget : mWidgets.values()) {
-                if (widget.getDebugName().equalsIgnoreCase(candidate)) {
-                    exists = true;
-                    break;
-                }
-            }
-            if (!exists) {
+            if (!mNames.containsKey(candidate.toLowerCase(Locale.US))) {
                 valid = true;
                 name = candidate;
             } else {
@@ -546,7 +549,7 @@ public class WidgetsScene {
         } else {
             removeWidget(oldContainer);
         }
-        mWidgets.remove(getTag(oldContainer));
+        forgetWidget(oldContainer);
         setWidget(newContainer);
         if (mRoot != null) {
             mRoot.layout();
@@ -666,7 +669,40 @@ public class WidgetsScene {
      * @param widget widget to add to the scene
      */
     public void setWidget(ConstraintWidget widget) {
-        mWidgets.put(getTag(widget), widget);
+        ConstraintWidget previous = mWidgets.put(getTag(widget), widget);
+        if (previous == widget) {
+            return;
+        }
+        if (previous != null) {
+            removeName(previous);
+        }
+        addName(widget);
+    }
+
+    /**
+     * Remove the widget from the scene indexes, without touching the widget tree
+     *
+     * @param widget the widget to forget
+     */
+    private void forgetWidget(ConstraintWidget widget) {
+        if (mWidgets.remove(getTag(widget)) != null) {
+            removeName(widget);
+        }
+    }
+
+    private void addName(ConstraintWidget widget) {
+        String name = widget.getDebugName();
+        if (name != null) {
+            mNames.merge(name.toLowerCase(Locale.US), 1, Integer::sum);
+        }
+    }
+
+    private void removeName(ConstraintWidget widget) {
+        String name = widget.getDebugName();
+        if (name != null) {
+            mNames.computeIfPresent(name.toLowerCase(Locale.US),
+                    (key, count) -> count > 1 ? count - 1 : null);
+        }
     }
 
     public void addWidget(ConstraintWidget widget) {
@@ -805,6 +841,113 @@ public class WidgetsScene {
         widget.connect(widget.getAnchor(ConstraintAnchor.Type.BOTTOM), bottom, 0);
     }
 
+    /**
+     * Re-solve the layout after the given widget has been moved or resized, e.g. on each
+     * drag event, and update the positions of the widgets that may have moved.
+     * <p>
+     * Rather than solving the whole tree, only the innermost container whose size does
+     * not depend on its content is solved again, so the other subtrees keep their previous
+     * results. If the widget is not connected to anything and its container does not wrap
+     * its content, the widget is the only one affected and nothing is solved.
+     * <p>
+     * Nothing drags widgets of a WidgetsScene in the editor anymore: the layout editor
+     * drags through the designer Scene, and SingleWidgetView never solves on drag. This
+     * is only called by the {@code DragReplay} harness.
+     *
+     * @param widget        the widget that has been moved or resized
+     * @param viewTransform the view transform
+     */
+    public void layoutForDrag(ConstraintWidget widget, ViewTransform viewTransform) {
+        long start = System.nanoTime();
+        WidgetContainer container = getSolveContainer(widget);
+        if (container != null) {
+            container.layout();
+            updatePositions(container, viewTransform);
+        } else {
+            updatePositions(widget, viewTransform);
+        }
+        mLastSolveTime = System.nanoTime() - start;
+    }
+
+    /**
+     * Accessor to the time taken by the last call to {@link #layoutForDrag}
+     *
+     * @return the time in nanoseconds
+     */
+    public long getLastSolveTime() {
+        return mLastSolveTime;
+    }
+
+    /**
+     * Return the container that needs to be solved again when the given widget changes
+     *
+     * @param widget the widget that changed
+     * @return the container to solve, or null if only the widget itself is affected
+     */
+    private WidgetContainer getSolveContainer(ConstraintWidget widget) {
+        ConstraintWidget parent = widget.getParent();
+        if (!(parent instanceof WidgetContainer)) {
+            return widget instanceof WidgetContainer ? (WidgetContainer) widget : null;
+        }
+        if (!dependsOnContent(parent) && !isConnected(widget, (WidgetContainer) parent)) {
+            return null;
+        }
+        // If the size of the container depends on its children, its own parent is affected too
+        while (parent.getParent() instanceof WidgetContainer && dependsOnContent(parent)) {
+            parent = parent.getParent();
+        }
+        return (WidgetContainer) parent;
+    }
+
+    private static boolean dependsOnContent(ConstraintWidget container) {
+        return container.getHorizontalDimensionBehaviour()
+                == ConstraintWidget.DimensionBehaviour.WRAP_CONTENT
+                || container.getVerticalDimensionBehaviour()
+                == ConstraintWidget.DimensionBehaviour.WRAP_CONTENT;
+    }
+
+    /**
+     * Return true if the widget has a constraint, or if one of its siblings is
+     * constrained to it
+     */
+    private static boolean isConnected(ConstraintWidget widget, WidgetContainer parent) {
+        for (ConstraintAnchor anchor : widget.getAnchors()) {
+            if (anchor.isConnected()) {
+                return true;
+            }
+        }
+        for (ConstraintWidget sibling : parent.getChildren()) {
+            if (sibling == widget) {
+                continue;
+            }
+            for (ConstraintAnchor anchor : sibling.getAnchors()) {
+                if (anchor.isConnected() && anchor.getTarget().getOwner() == widget) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Update the positions of the given widget and of its descendants
+     *
+     * @param widget        the widget we start from
+     * @param viewTransform the view transform
+     */
+    private static void updatePositions(ConstraintWidget widget, ViewTransform viewTransform) {
+        widget.updateDrawPosition();
+        WidgetCompanion companion = (WidgetCompanion) widget.getCompanionWidget();
+        if (companion != null) {
+            companion.getWidgetInteractionTargets().updatePosition(viewTransform);
+        }
+        if (widget instanceof WidgetContainer) {
+            for (ConstraintWidget child : ((WidgetContainer) widget).getChildren()) {
+                updatePositions(child, viewTransform);
+            }
+        }
+    }
+
     /**
      * Make sure the positions of the interaction targets are correctly updated
      *